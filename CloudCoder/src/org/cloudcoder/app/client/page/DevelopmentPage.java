@@ -39,11 +39,13 @@ import org.cloudcoder.app.shared.model.Change;
 import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
 import org.cloudcoder.app.shared.model.CompilerDiagnostic;
 import org.cloudcoder.app.shared.model.Language;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemText;
 import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionType;
 import org.cloudcoder.app.shared.model.TestResult;
 import org.cloudcoder.app.shared.model.User;
 import org.cloudcoder.app.shared.util.Publisher;
@@ -119,6 +121,8 @@ public class DevelopmentPage extends CloudCoderPage {
 
 		public static final int FLUSH_CHANGES_INTERVAL_MS = 2000;
 		private static final int POLL_SUBMISSION_RESULT_INTERVAL_MS = 1000;
+		private static final int BACKGROUND_COMPILE_DELAY_MS = 2000;
+		private static final int POLL_COMPILATION_RESULT_INTERVAL_MS = 500;
 
 		private LayoutPanel northLayoutPanel;
 		private ProblemDescriptionView problemDescriptionView;
@@ -138,6 +142,10 @@ public class DevelopmentPage extends CloudCoderPage {
 		private Timer flushPendingChangeEventsTimer;
 		private Mode mode;
 		private Timer checkPendingSubmissionTimer;
+		private Timer backgroundCompileTimer;
+		private Timer checkPendingCompilationTimer;
+		private boolean compileSupported;
+		private boolean compileRequestedByUser;
 		private Runnable onCleanCallback;
 
 		public UI() {
@@ -249,6 +257,22 @@ public class DevelopmentPage extends CloudCoderPage {
 				}
 			});
 			
+			// Add compile handler
+			compileSupported = SubmissionType.isCompileOnlySupported(problem.getProblemType().getLanguage());
+			devActionsPanel.setCompileHandler(new Runnable() {
+				@Override
+				public void run() {
+					if (!compileSupported) {
+						addSessionObject(StatusMessage.information("Compilation is not supported for this problem"));
+						return;
+					}
+					if (mode == Mode.EDITING) {
+						backgroundCompileTimer.cancel();
+						doCompile(true);
+					}
+				}
+			});
+			
 			// Add reset handler
 			devActionsPanel.setResetHandler(new Runnable() {
 				@Override
@@ -356,7 +380,7 @@ public class DevelopmentPage extends CloudCoderPage {
 		}
 
 		protected void doSubmitRPC(final Problem problem, final String text) {
-			RPC.submitService.submit(problem.getProblemId(), text, new AsyncCallback<Void>() {
+			RPC.submitService.submit(problem.getProblemId(), text, new AsyncCallback<Integer>() {
 				@Override
 				public void onFailure(Throwable caught) {
 					if (caught instanceof CloudCoderAuthenticationException) {
@@ -375,13 +399,65 @@ public class DevelopmentPage extends CloudCoderPage {
 				}
 
 				@Override
-				public void onSuccess(Void result) {
+				public void onSuccess(Integer submissionId) {
 					// Start polling for the SubmissionResult
 					checkPendingSubmissionTimer.scheduleRepeating(POLL_SUBMISSION_RESULT_INTERVAL_MS);
 				}
 			});
 		}
 		
+		/**
+		 * Send the current editor text to the server to be compiled (but
+		 * not tested), so that compiler diagnostics can be shown
+		 * while the user is still editing.
+		 * 
+		 * @param requestedByUser true if the user clicked the Compile button,
+		 *                        false if this is a background compilation
+		 */
+		private void doCompile(boolean requestedByUser) {
+			compileRequestedByUser = requestedByUser;
+			if (requestedByUser) {
+				addSessionObject(StatusMessage.pending("Compiling your code..."));
+			}
+			
+			Problem problem = getSession().get(Problem.class);
+			String text = aceEditor.getText();
+			
+			doCompileRPC(problem, text);
+		}
+		
+		protected void doCompileRPC(final Problem problem, final String text) {
+			RPC.submitService.compile(problem.getProblemId(), text, new AsyncCallback<Boolean>() {
+				@Override
+				public void onFailure(Throwable caught) {
+					if (caught instanceof CloudCoderAuthenticationException) {
+						recoverFromServerSessionTimeout(new Runnable(){
+							public void run() {
+								// Try again!
+								doCompileRPC(problem, text);
+							}
+						});
+					} else {
+						GWT.log("Error requesting compilation", caught);
+						if (compileRequestedByUser) {
+							addSessionObject(StatusMessage.error("Error: " + caught.getMessage()));
+						}
+					}
+				}
+				
+				@Override
+				public void onSuccess(Boolean result) {
+					if (result) {
+						// Start polling for the CompilationResult
+						checkPendingCompilationTimer.scheduleRepeating(POLL_COMPILATION_RESULT_INTERVAL_MS);
+					} else if (compileRequestedByUser) {
+						// Server is busy testing submissions
+						addSessionObject(StatusMessage.information("Server is busy, please try again shortly"));
+					}
+				}
+			});
+		}
+		
 		private void doResetProblem() {
 			GWT.log("Resetting problem");
 			
@@ -452,6 +528,11 @@ public class DevelopmentPage extends CloudCoderPage {
 						
 						Change change = ChangeFromAceOnChangeEvent.convert(obj, user.getId(), problem.getProblemId());
 						changeList.addChange(change);
+						
+						// Compile in the background once the user pauses typing
+						if (compileSupported && backgroundCompileTimer != null) {
+							backgroundCompileTimer.schedule(BACKGROUND_COMPILE_DELAY_MS);
+						}
 					} catch (Exception e) {
 						Window.alert("Caught exception! " + e.getMessage());
 					}
@@ -490,6 +571,9 @@ public class DevelopmentPage extends CloudCoderPage {
 					// create (but do not start) a timer to periodically poll to check
 					// if a submission has completed compilation/testing
 					createCheckPendingSubmissionTimer();
+					
+					// create (but do not start) timers for background compilation
+					createCompileTimers();
 				}
 			});
 		}
@@ -651,6 +735,90 @@ public class DevelopmentPage extends CloudCoderPage {
 			};
 		}
 		
+		private void createCompileTimers() {
+			// Timer to compile in the background when the user pauses typing:
+			// it is rescheduled on every edit.
+			backgroundCompileTimer = new Timer() {
+				@Override
+				public void run() {
+					// Don't compile while a submission is being tested
+					if (mode == Mode.EDITING) {
+						doCompile(false);
+					}
+				}
+			};
+			
+			// Timer to poll for a pending CompilationResult.
+			checkPendingCompilationTimer = new Timer() {
+				private boolean checking;
+				
+				@Override
+				public void run() {
+					if (!checking) {
+						checking = true;
+						checkCompilationRPC();
+					}
+				}
+				
+				protected void checkCompilationRPC() {
+					RPC.submitService.checkCompilation(new AsyncCallback<CompilationResult>() {
+						@Override
+						public void onFailure(Throwable caught) {
+							if (caught instanceof CloudCoderAuthenticationException) {
+								recoverFromServerSessionTimeout(new Runnable() {
+									@Override
+									public void run() {
+										// Try again!
+										checkCompilationRPC();
+									}
+								});
+							} else {
+								// Most likely the compilation was superseded or shed:
+								// not worth bothering the user about.
+								checking = false;
+								GWT.log("Error checking pending compilation", caught);
+								checkPendingCompilationTimer.cancel();
+							}
+						}
+						
+						@Override
+						public void onSuccess(CompilationResult result) {
+							checking = false;
+							if (result != null) {
+								checkPendingCompilationTimer.cancel();
+								onReceiveCompilationResult(result);
+							}
+						}
+					});
+				}
+			};
+		}
+		
+		private void onReceiveCompilationResult(CompilationResult result) {
+			if (mode != Mode.EDITING) {
+				// A submission is in progress, and its results take precedence
+				return;
+			}
+			
+			CompilerDiagnostic[] compilerDiagnosticList = result.getCompilerDiagnosticList();
+			if (compilerDiagnosticList == null) {
+				compilerDiagnosticList = new CompilerDiagnostic[0]; // paranoia
+			}
+			addSessionObject(compilerDiagnosticList);
+			
+			if (compileRequestedByUser) {
+				if (result.getOutcome() == CompilationOutcome.SUCCESS) {
+					addSessionObject(StatusMessage.goodNews("Code compiled successfully"));
+				} else {
+					addSessionObject(StatusMessage.error("Error compiling code"));
+				}
+			}
+			
+			if (compilerDiagnosticList.length > 0) {
+				resultsTabPanel.selectTab(compilerDiagnosticListView);
+			}
+		}
+		
 		private void onReceiveSubmissionResult(SubmissionResult result) {
 			if (result==null){
 				addSessionObject(StatusMessage.error("Results from Builder are empty"));
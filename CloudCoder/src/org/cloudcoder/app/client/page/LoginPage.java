@@ -3,6 +3,7 @@ package org.cloudcoder.app.client.page;
 import org.cloudcoder.app.client.model.Session;
 import org.cloudcoder.app.client.rpc.RPC;
 import org.cloudcoder.app.shared.model.ConfigurationSettingName;
+import org.cloudcoder.app.shared.model.LoginThrottledException;
 import org.cloudcoder.app.shared.model.User;
 import org.cloudcoder.app.shared.util.SubscriptionRegistrar;
 
@@ -146,7 +147,13 @@ public class LoginPage extends CloudCoderPage {
 				@Override
 				public void onFailure(Throwable caught) {
 					loggingInLabel.setText("");
-					errorLabel.setText("Error communicating with server (are you connected to the network?)");
+					if (caught instanceof LoginThrottledException) {
+						int retryAfterSeconds = ((LoginThrottledException) caught).getRetryAfterSeconds();
+						errorLabel.setText(caught.getMessage() + ": please try again in " + retryAfterSeconds +
+								(retryAfterSeconds == 1 ? " second" : " seconds"));
+					} else {
+						errorLabel.setText("Error communicating with server (are you connected to the network?)");
+					}
 				}
 				
 				@Override
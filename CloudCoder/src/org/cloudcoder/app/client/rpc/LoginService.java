@@ -19,6 +19,7 @@ package org.cloudcoder.app.client.rpc;
 
 import org.cloudcoder.app.shared.model.Activity;
 import org.cloudcoder.app.shared.model.InitErrorException;
+import org.cloudcoder.app.shared.model.LoginThrottledException;
 import org.cloudcoder.app.shared.model.User;
 
 import com.google.gwt.user.client.rpc.RemoteService;
@@ -33,8 +34,10 @@ public interface LoginService extends RemoteService {
 	 * @param password the password
 	 * @return the authenticated User object, or null if the username/password
 	 *         combination is not found
+	 * @throws LoginThrottledException if the login was refused because of too many
+	 *         recent failed attempts, or because the server is too busy
 	 */
-	public User login(String userName, String password);
+	public User login(String userName, String password) throws LoginThrottledException;
 	
 	/**
 	 * Logout current User.
@@ -18,7 +18,9 @@
 package org.cloudcoder.app.client.rpc;
 
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
+import org.cloudcoder.app.shared.model.CompilationResult;
 import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionInfo;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 
 import com.google.gwt.user.client.rpc.RemoteService;
@@ -31,9 +33,11 @@ public interface SubmitService extends RemoteService {
 	 * 
 	 * @param problemId
 	 * @param programText
+	 * @return the submission id, which can be used to check on the submission
+	 *         with {@link #getSubmissionInfo(int)} and {@link #getSubmissionResult(int)}
 	 * @throws CloudCoderAuthenticationException
 	 */
-    public void submit(int problemId, String programText) throws CloudCoderAuthenticationException, SubmissionException;
+    public Integer submit(int problemId, String programText) throws CloudCoderAuthenticationException, SubmissionException;
     
     /**
      * Check to see if a {@link SubmissionResult} for the most-recently-submitted
@@ -44,4 +48,53 @@ public interface SubmitService extends RemoteService {
      * @throws CloudCoderAuthenticationException
      */
     public SubmissionResult checkSubmission()  throws CloudCoderAuthenticationException, SubmissionException;
+    
+    /**
+     * Get information about a submission made by the current user:
+     * its state, position in the queue, timestamps, and (once it is
+     * done) its result.
+     * 
+     * @param submissionId the submission id returned by {@link #submit(int, String)}
+     * @return a SubmissionInfo, or null if there is no such submission
+     * @throws CloudCoderAuthenticationException
+     */
+    public SubmissionInfo getSubmissionInfo(int submissionId) throws CloudCoderAuthenticationException;
+    
+    /**
+     * Check to see if a {@link SubmissionResult} for a submission made by
+     * the current user is available.
+     * 
+     * @param submissionId the submission id returned by {@link #submit(int, String)}
+     * @return a SubmissionResult, or null if compilation/testing of the
+     *         submission has not completed yet
+     * @throws CloudCoderAuthenticationException
+     * @throws SubmissionException if there is no such submission, or if
+     *                             compilation/testing failed to complete
+     */
+    public SubmissionResult getSubmissionResult(int submissionId) throws CloudCoderAuthenticationException, SubmissionException;
+    
+    /**
+     * Send program text for the current problem to the server to be compiled
+     * (but not tested).  Any previous pending compilation is cancelled.
+     * Compilation requests are low priority, and may be shed if the
+     * server is busy.
+     * 
+     * @param problemId
+     * @param programText
+     * @return true if the program text was accepted for compilation,
+     *         false if the server is too busy
+     * @throws CloudCoderAuthenticationException
+     */
+    public Boolean compile(int problemId, String programText) throws CloudCoderAuthenticationException, SubmissionException;
+    
+    /**
+     * Check to see if a {@link CompilationResult} for the most-recently-compiled
+     * program text is available.
+     * 
+     * @return a CompilationResult, or null if compilation has not completed yet
+     * @throws CloudCoderAuthenticationException
+     * @throws SubmissionException if there is no pending compilation, or if compilation failed
+     *                             to complete (e.g., because it was shed)
+     */
+    public CompilationResult checkCompilation() throws CloudCoderAuthenticationException, SubmissionException;
 }
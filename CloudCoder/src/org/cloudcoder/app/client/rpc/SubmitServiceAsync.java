@@ -17,13 +17,23 @@
 
 package org.cloudcoder.app.client.rpc;
 
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.SubmissionInfo;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 
 import com.google.gwt.user.client.rpc.AsyncCallback;
 
 public interface SubmitServiceAsync
 {
-    void submit(int problemId, String programText, AsyncCallback<Void> callback);
+    void submit(int problemId, String programText, AsyncCallback<Integer> callback);
 
 	void checkSubmission(AsyncCallback<SubmissionResult> callback);
+
+	void getSubmissionInfo(int submissionId, AsyncCallback<SubmissionInfo> callback);
+
+	void getSubmissionResult(int submissionId, AsyncCallback<SubmissionResult> callback);
+
+	void compile(int problemId, String programText, AsyncCallback<Boolean> callback);
+
+	void checkCompilation(AsyncCallback<CompilationResult> callback);
 }
@@ -40,6 +40,7 @@ public class DevActionsPanel extends ResizeComposite {
 	 */
 	private static final double BUTTON_WIDTH_PX = 120.0;
 	private Runnable submitHandler;
+	private Runnable compileHandler;
 	private Runnable resetHandler;
 	
 	/**
@@ -62,6 +63,19 @@ public class DevActionsPanel extends ResizeComposite {
 		layoutPanel.setWidgetRightWidth(submitButton, 0.0, Unit.PX, BUTTON_WIDTH_PX, Unit.PX);
 		layoutPanel.setWidgetBottomHeight(submitButton, 10.0, Unit.PX, BUTTON_HEIGHT_PX, Unit.PX);
 		
+		Button compileButton = new Button("Compile");
+		compileButton.addClickHandler(new ClickHandler() {
+			@Override
+			public void onClick(ClickEvent event) {
+				if (compileHandler != null) {
+					compileHandler.run();
+				}
+			}
+		});
+		layoutPanel.add(compileButton);
+		layoutPanel.setWidgetRightWidth(compileButton, 0.0, Unit.PX, BUTTON_WIDTH_PX, Unit.PX);
+		layoutPanel.setWidgetBottomHeight(compileButton, 10.0 + BUTTON_HEIGHT_PX + 10.0, Unit.PX, BUTTON_HEIGHT_PX, Unit.PX);
+		
 		Button resetButton = new Button("Reset");
 		resetButton.addClickHandler(new ClickHandler() {
 			@Override
@@ -73,7 +87,7 @@ public class DevActionsPanel extends ResizeComposite {
 		});
 		layoutPanel.add(resetButton);
 		layoutPanel.setWidgetRightWidth(resetButton, 0.0, Unit.PX, BUTTON_WIDTH_PX, Unit.PX);
-		layoutPanel.setWidgetBottomHeight(resetButton, 10.0 + BUTTON_HEIGHT_PX + 10.0, Unit.PX, BUTTON_HEIGHT_PX, Unit.PX);
+		layoutPanel.setWidgetBottomHeight(resetButton, 10.0 + 2*(BUTTON_HEIGHT_PX + 10.0), Unit.PX, BUTTON_HEIGHT_PX, Unit.PX);
 
 		initWidget(layoutPanel);
 	}
@@ -87,6 +101,15 @@ public class DevActionsPanel extends ResizeComposite {
 		this.submitHandler = submitHandler;
 	}
 	
+	/**
+	 * Set the handler to run when the Compile button is clicked.
+	 * 
+	 * @param compileHandler handler to run when the Compile button is clicked
+	 */
+	public void setCompileHandler(Runnable compileHandler) {
+		this.compileHandler = compileHandler;
+	}
+	
 	/**
 	 * Set the handler to run when the Reset button is clicked.
 	 * 
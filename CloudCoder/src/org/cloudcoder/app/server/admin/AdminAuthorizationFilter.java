@@ -31,7 +31,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.bind.DatatypeConverter;
 
-import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.PasswordVerifier;
+import org.cloudcoder.app.shared.model.LoginThrottledException;
 import org.cloudcoder.app.shared.model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -94,7 +95,14 @@ public abstract class AdminAuthorizationFilter implements Filter {
 		// FIXME: This only works with database authentication
 		// authentication with imap requires use of web.xml
 		// which filter cannot access
-		User user = Database.getInstance().authenticateUser(userName, password);
+		User user;
+		try {
+			user = PasswordVerifier.getInstance().authenticate(userName, password, req);
+		} catch (LoginThrottledException e) {
+			logger.info("Admin auth: login refused for " + userName + ": " + e.getMessage());
+			AdminServletUtil.unavailable(resp, e.getMessage(), e.getRetryAfterSeconds());
+			return;
+		}
 		if (user == null) {
 			logger.info("Admin auth: username/password mismatch for " + userName);
 			AdminServletUtil.unauthorized(resp);
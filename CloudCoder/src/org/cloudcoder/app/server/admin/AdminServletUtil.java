@@ -53,4 +53,20 @@ public abstract class AdminServletUtil {
 		resp.addHeader("WWW-Authenticate", "Basic realm=\"" + AdminAuthorizationFilter.CLOUDCODER_ADMIN_REALM_NAME + "\"");
 	}
 
+	/**
+	 * Send back a 503 (Service Unavailable) response, asking the
+	 * client to retry later.
+	 * 
+	 * @param resp              the HttpServletResponse
+	 * @param message           message explaining why the request can't be handled now
+	 * @param retryAfterSeconds number of seconds after which the client should retry
+	 * @throws IOException
+	 */
+	public static void unavailable(HttpServletResponse resp, String message, int retryAfterSeconds) throws IOException {
+		resp.setContentType("text/plain");
+		resp.getWriter().println(message);
+		resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		resp.addHeader("Retry-After", String.valueOf(retryAfterSeconds));
+	}
+
 }
@@ -0,0 +1,103 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.admin;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cloudcoder.app.server.submitsvc.oop.BuilderAutoscaler;
+import org.cloudcoder.app.server.submitsvc.oop.OutOfProcessSubmitService;
+
+/**
+ * Servlet to report the status of the submission queue and Builders,
+ * and to manually scale the number of Builders when the
+ * {@link BuilderAutoscaler} is enabled.
+ * GET returns the status as plain text.  POST with the parameter
+ * <code>action=scaleUp</code> or <code>action=scaleDown</code>
+ * starts or drains one Builder (within the autoscaler's bounds);
+ * only users listed in the <code>cloudcoder.admin.users</code>
+ * context parameter may do this.
+ * 
+ * @author David Hovemeyer
+ */
+public class Builders extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		OutOfProcessSubmitService submitService = OutOfProcessSubmitService.getInstance();
+		if (submitService == null) {
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			return;
+		}
+		
+		resp.setContentType("text/plain");
+		PrintWriter w = resp.getWriter();
+		w.println("queueDepth: " + submitService.getQueueDepth());
+		w.println("oldestWaitMillis: " + submitService.getOldestWaitMillis());
+		w.println("builderConnections: " + submitService.getNumBuilderConnections());
+		
+		BuilderAutoscaler autoscaler = submitService.getAutoscaler();
+		w.println("autoscaler: " + (autoscaler != null ? "enabled" : "disabled"));
+		if (autoscaler != null) {
+			w.println("minBuilders: " + autoscaler.getMinBuilders());
+			w.println("maxBuilders: " + autoscaler.getMaxBuilders());
+			w.println("activeBuilders: " + autoscaler.getNumActiveBuilders());
+			for (String builder : autoscaler.getManagedBuilderDescriptions()) {
+				w.println("builder: " + builder);
+			}
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		OutOfProcessSubmitService submitService = OutOfProcessSubmitService.getInstance();
+		BuilderAutoscaler autoscaler = submitService != null ? submitService.getAutoscaler() : null;
+		if (autoscaler == null) {
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Autoscaler is not enabled");
+			return;
+		}
+		
+		String action = req.getParameter("action");
+		boolean changed;
+		if ("scaleUp".equals(action)) {
+			changed = autoscaler.scaleUp("admin request");
+		} else if ("scaleDown".equals(action)) {
+			changed = autoscaler.scaleDown("admin request");
+		} else {
+			AdminServletUtil.badRequest(resp);
+			return;
+		}
+		
+		resp.setContentType("text/plain");
+		resp.getWriter().println(changed ? "ok" : "at limit");
+	}
+}
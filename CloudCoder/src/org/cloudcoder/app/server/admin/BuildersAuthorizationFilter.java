@@ -0,0 +1,107 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.admin;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.shared.model.CourseRegistration;
+import org.cloudcoder.app.shared.model.CourseRegistrationType;
+import org.cloudcoder.app.shared.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Authorization filter for the {@link Builders} servlet.
+ * Ensures that the client has authenticated as an instructor
+ * in at least one course.  Starting and stopping Builders
+ * (a POST to the {@link Builders} servlet) affects every course,
+ * so it is further restricted to the users listed in the
+ * <code>cloudcoder.admin.users</code> context parameter.
+ * 
+ * @author David Hovemeyer
+ */
+public class BuildersAuthorizationFilter extends AdminAuthorizationFilter {
+	private static final Logger logger = LoggerFactory.getLogger(BuildersAuthorizationFilter.class);
+	
+	private static final String BUILDERS_SERVLET_PATH = "/admin/builders";
+	
+	private Set<String> adminUserNames;
+	
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.server.admin.AdminAuthorizationFilter#init(javax.servlet.FilterConfig)
+	 */
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		adminUserNames = new HashSet<String>();
+		String adminUsers = filterConfig.getServletContext().getInitParameter("cloudcoder.admin.users");
+		if (adminUsers != null) {
+			for (String userName : adminUsers.split(",")) {
+				userName = userName.trim();
+				if (!userName.equals("")) {
+					adminUserNames.add(userName);
+				}
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.server.admin.AdminAuthorizationFilter#checkAuthorization(org.cloudcoder.app.shared.model.User, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, javax.servlet.FilterChain)
+	 */
+	@Override
+	protected void checkAuthorization(User user, HttpServletRequest req,
+			HttpServletResponse resp, FilterChain chain) throws IOException,
+			ServletException {
+		List<? extends Object[]> triples = Database.getInstance().getCoursesForUser(user);
+
+		boolean isInstructor = false;
+		for (Object[] triple : triples) {
+			CourseRegistration reg = (CourseRegistration) triple[2];
+			if (reg.getRegistrationType() == CourseRegistrationType.INSTRUCTOR) {
+				isInstructor = true;
+				break;
+			}
+		}
+		
+		if (!isInstructor) {
+			logger.info("Admin auth: user " + user.getUsername() + " is not an instructor");
+			AdminServletUtil.unauthorized(resp);
+			return;
+		}
+		
+		if (req.getMethod().equals("POST")
+				&& BUILDERS_SERVLET_PATH.equals(req.getServletPath())
+				&& !adminUserNames.contains(user.getUsername())) {
+			logger.info("Admin auth: user " + user.getUsername() + " is not an admin, can't start or stop Builders");
+			AdminServletUtil.unauthorized(resp);
+			return;
+		}
+		
+		chain.doFilter(req, resp);
+	}
+
+}
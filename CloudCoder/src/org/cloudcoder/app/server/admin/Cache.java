@@ -0,0 +1,105 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.admin;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cloudcoder.app.server.persist.CachingDatabase;
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.DatabaseCacheServletContextListener;
+import org.cloudcoder.app.server.persist.IDatabase;
+import org.cloudcoder.app.server.persist.JDBCDatabase;
+import org.cloudcoder.app.server.persist.ReadThroughCache;
+import org.cloudcoder.app.server.persist.StatementCache;
+
+/**
+ * Servlet to report the size and hit ratio of each of the webapp's
+ * database caches (see {@link CachingDatabase}), and the hit ratio
+ * of the per-connection prepared statement caches (see {@link StatementCache}),
+ * and (if a read replica is configured) how many read-only transactions
+ * ran on the replica and on the primary database.
+ * GET returns the statistics as plain text.  POST with the parameter
+ * <code>action=invalidate</code> discards all cached data, e.g. after
+ * problems have been changed by a command line tool.
+ * 
+ * @author David Hovemeyer
+ */
+public class Cache extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		resp.setContentType("text/plain");
+		PrintWriter w = resp.getWriter();
+		w.println("statements: hits=" + StatementCache.getHits() + ", misses=" + StatementCache.getMisses() +
+				", hitRatio=" + String.format("%.3f", StatementCache.getHitRatio()));
+		
+		IDatabase database = Database.getInstance();
+		if (database instanceof CachingDatabase) {
+			database = ((CachingDatabase) database).getDelegate();
+		}
+		if (database instanceof JDBCDatabase && ((JDBCDatabase) database).hasReplica()) {
+			JDBCDatabase jdbcDatabase = (JDBCDatabase) database;
+			w.println("read-only transactions: replica=" + jdbcDatabase.getReplicaReadOnlyCount() +
+					", primary=" + jdbcDatabase.getPrimaryReadOnlyCount());
+		}
+		
+		CachingDatabase db = DatabaseCacheServletContextListener.getCachingDatabase();
+		if (db == null) {
+			w.println("database cache: disabled");
+			return;
+		}
+		for (ReadThroughCache<?, ?> cache : db.getCaches()) {
+			w.println(cache.getName() + ": size=" + cache.size() + "/" + cache.getMaxEntries() +
+					", hits=" + cache.getHits() + ", misses=" + cache.getMisses() +
+					", invalidations=" + cache.getInvalidations() +
+					", hitRatio=" + String.format("%.3f", cache.getHitRatio()));
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		CachingDatabase db = DatabaseCacheServletContextListener.getCachingDatabase();
+		if (db == null) {
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Database cache is not enabled");
+			return;
+		}
+		if (!"invalidate".equals(req.getParameter("action"))) {
+			AdminServletUtil.badRequest(resp);
+			return;
+		}
+		
+		db.invalidateAll();
+		resp.setContentType("text/plain");
+		resp.getWriter().println("ok");
+	}
+}
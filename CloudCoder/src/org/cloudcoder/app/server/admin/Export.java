@@ -0,0 +1,311 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.admin;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.ExportQuery;
+import org.cloudcoder.app.server.persist.ExportRowHandler;
+import org.cloudcoder.app.server.persist.ExportType;
+import org.cloudcoder.app.shared.model.Course;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.json.JSONConversion;
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Servlet to export a course's data for research: submission receipts,
+ * test results, changes, or code snapshots.  URLs are of the form
+ * <code>/cloudcoder/admin/export/<i>course id</i>/<i>type</i></code>,
+ * where the type is <code>receipts</code>, <code>testResults</code>,
+ * <code>changes</code>, or <code>snapshots</code>.  Optional parameters:
+ * <ul>
+ * <li><code>format</code>: <code>csv</code> (the default) or <code>ndjson</code>
+ *     (one JSON object per line)</li>
+ * <li><code>problem</code>: export only data for this problem</li>
+ * <li><code>from</code>, <code>to</code>: export only data for events in this
+ *     time range (as milliseconds since the epoch, or <code>yyyy-MM-dd</code>)</li>
+ * </ul>
+ * Rows are written as they are read from the database, and the response is
+ * flushed periodically (so it is sent using chunked transfer encoding), so
+ * an export of any size uses a constant amount of memory.  So that exports
+ * don't slow down students and instructors using CloudCoder, exports run on
+ * the read replica (if there is one), at a low thread priority, and at most
+ * <code>cloudcoder.export.maxConcurrent</code> exports run at the same time.
+ * 
+ * @author David Hovemeyer
+ */
+public class Export extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	
+	private static final Logger logger = LoggerFactory.getLogger(Export.class);
+	
+	/** Default maximum number of exports that can run at the same time. */
+	public static final int DEFAULT_MAX_CONCURRENT_EXPORTS = 2;
+	
+	// Number of rows written between flushes of the response
+	private static final int FLUSH_INTERVAL = 500;
+	
+	// Seconds after which a client whose export was refused should retry
+	private static final int RETRY_AFTER_SECONDS = 60;
+	
+	private Semaphore exportPermits;
+	
+	/* (non-Javadoc)
+	 * @see javax.servlet.GenericServlet#init()
+	 */
+	@Override
+	public void init() throws ServletException {
+		String maxConcurrent = getServletContext().getInitParameter("cloudcoder.export.maxConcurrent");
+		int permits = maxConcurrent != null ? Integer.parseInt(maxConcurrent.trim()) : DEFAULT_MAX_CONCURRENT_EXPORTS;
+		exportPermits = new Semaphore(permits);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		Course course = (Course) req.getAttribute(RequestAttributeKeys.COURSE_KEY);
+		
+		String[] parts = getPathParts(req);
+		ExportType type = (parts != null && parts.length == 2) ? ExportType.forName(parts[1]) : null;
+		String format = req.getParameter("format") != null ? req.getParameter("format") : "csv";
+		ExportQuery query;
+		try {
+			query = new ExportQuery(
+					type,
+					course.getId(),
+					req.getParameter("problem") != null ? Integer.parseInt(req.getParameter("problem")) : -1,
+					parseTimestamp(req.getParameter("from"), 0L),
+					parseTimestamp(req.getParameter("to"), Long.MAX_VALUE));
+		} catch (IllegalArgumentException e) {
+			AdminServletUtil.badRequest(resp);
+			return;
+		} catch (ParseException e) {
+			AdminServletUtil.badRequest(resp);
+			return;
+		}
+		if (type == null || !(format.equals("csv") || format.equals("ndjson"))) {
+			AdminServletUtil.badRequest(resp);
+			return;
+		}
+		
+		if (!exportPermits.tryAcquire()) {
+			logger.info("Refusing export of {} for course {}: too many exports in progress", type.getName(), course.getId());
+			AdminServletUtil.unavailable(resp, "Too many exports in progress: please try again later", RETRY_AFTER_SECONDS);
+			return;
+		}
+		
+		Thread thread = Thread.currentThread();
+		int priority = thread.getPriority();
+		try {
+			thread.setPriority(Thread.MIN_PRIORITY);
+			
+			String extension = format.equals("csv") ? "csv" : "ndjson";
+			resp.setContentType(format.equals("csv") ? "text/csv" : "application/x-ndjson");
+			resp.setCharacterEncoding("UTF-8");
+			resp.addHeader("Content-disposition",
+					"attachment;filename=course" + course.getId() + "-" + type.getName() + "." + extension);
+			
+			RowWriter writer = format.equals("csv")
+					? new CSVRowWriter(type, resp)
+					: new NDJSONRowWriter(type, resp);
+			
+			long start = System.currentTimeMillis();
+			int numRows = Database.getInstance().exportData(query, writer);
+			writer.finish();
+			logger.info("Exported {} {} rows for course {} in {} ms",
+					new Object[]{numRows, type.getName(), course.getId(), System.currentTimeMillis() - start});
+		} finally {
+			thread.setPriority(priority);
+			exportPermits.release();
+		}
+	}
+	
+	/**
+	 * Get the parts of the path info of a request to the export servlet.
+	 * 
+	 * @param req the request
+	 * @return the parts of the path info (the course id, and the export type
+	 *         if specified), or null if the request has no path info
+	 */
+	static String[] getPathParts(HttpServletRequest req) {
+		String pathInfo = req.getPathInfo();
+		if (pathInfo == null) {
+			return null;
+		}
+		if (pathInfo.startsWith("/")) {
+			pathInfo = pathInfo.substring(1);
+		}
+		return pathInfo.split("/");
+	}
+	
+	private static long parseTimestamp(String value, long defaultValue) throws ParseException {
+		if (value == null) {
+			return defaultValue;
+		}
+		if (value.matches("\\d{4}-\\d{2}-\\d{2}")) {
+			return new SimpleDateFormat("yyyy-MM-dd").parse(value).getTime();
+		}
+		return Long.parseLong(value);
+	}
+	
+	/**
+	 * Base class for writing exported rows to the response.
+	 */
+	private static abstract class RowWriter implements ExportRowHandler {
+		protected final ExportType type;
+		private final HttpServletResponse resp;
+		protected final PrintWriter out;
+		private int numRows;
+		
+		public RowWriter(ExportType type, HttpServletResponse resp) throws IOException {
+			this.type = type;
+			this.resp = resp;
+			this.out = resp.getWriter();
+		}
+		
+		@Override
+		public boolean handleRow(Object[] row) {
+			writeRow(row);
+			numRows++;
+			if (numRows % FLUSH_INTERVAL == 0) {
+				try {
+					resp.flushBuffer();
+				} catch (IOException e) {
+					// The client went away
+					return false;
+				}
+			}
+			// The PrintWriter doesn't throw IOExceptions: stop if the client went away
+			return !out.checkError();
+		}
+		
+		public void finish() {
+			out.flush();
+		}
+		
+		protected abstract void writeRow(Object[] row);
+		
+		/**
+		 * Convert the model objects in an exported row to JSON objects,
+		 * omitting the fields that aren't exported.
+		 */
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		protected List<Map<String, Object>> convertRow(Object[] row) {
+			List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+			for (int i = 0; i < row.length; i++) {
+				ModelObjectSchema schema = type.getSchemaList().get(i);
+				Map<String, Object> obj = JSONConversion.convertModelObjectToJSON(row[i], schema);
+				for (Object field : schema.getFieldList()) {
+					if (!ExportType.isExported((ModelObjectField<?, ?>) field)) {
+						obj.remove(((ModelObjectField<?, ?>) field).getName());
+					}
+				}
+				result.add(obj);
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Write exported rows as CSV, with a header row naming each column
+	 * as <i>schema</i>.<i>field</i>.
+	 */
+	private static class CSVRowWriter extends RowWriter {
+		private final CSVWriter csv;
+		
+		public CSVRowWriter(ExportType type, HttpServletResponse resp) throws IOException {
+			super(type, resp);
+			csv = new CSVWriter(out);
+			
+			List<String> header = new ArrayList<String>();
+			for (ModelObjectSchema<?> schema : type.getSchemaList()) {
+				for (ModelObjectField<?, ?> field : schema.getFieldList()) {
+					if (ExportType.isExported(field)) {
+						header.add(schema.getName() + "." + field.getName());
+					}
+				}
+			}
+			csv.writeNext(header.toArray(new String[header.size()]));
+		}
+		
+		@Override
+		protected void writeRow(Object[] row) {
+			List<String> entry = new ArrayList<String>();
+			for (Map<String, Object> obj : convertRow(row)) {
+				for (Object value : obj.values()) {
+					entry.add(value != null ? String.valueOf(value) : "");
+				}
+			}
+			csv.writeNext(entry.toArray(new String[entry.size()]));
+		}
+		
+		@Override
+		public void finish() {
+			try {
+				csv.flush();
+			} catch (IOException e) {
+				// The client went away
+			}
+			super.finish();
+		}
+	}
+	
+	/**
+	 * Write exported rows as newline-delimited JSON: each row is a
+	 * JSON object with one member per schema (e.g., "event" and "change").
+	 */
+	private static class NDJSONRowWriter extends RowWriter {
+		public NDJSONRowWriter(ExportType type, HttpServletResponse resp) throws IOException {
+			super(type, resp);
+		}
+		
+		@Override
+		protected void writeRow(Object[] row) {
+			Map<String, Object> line = new LinkedHashMap<String, Object>();
+			List<Map<String, Object>> objs = convertRow(row);
+			for (int i = 0; i < objs.size(); i++) {
+				line.put(type.getSchemaList().get(i).getName(), objs.get(i));
+			}
+			out.print(JSONValue.toJSONString(line));
+			out.print('\n');
+		}
+	}
+}
@@ -0,0 +1,48 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.admin;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Authorization filter for the {@link Export} servlet.
+ * Ensures that the client has authenticated as an instructor
+ * in the course whose data is being exported.
+ * 
+ * @author David Hovemeyer
+ */
+public class ExportAuthorizationFilter extends CourseAdminAuthorizationFilter {
+
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.server.admin.CourseAdminAuthorizationFilter#getCourseId(javax.servlet.http.HttpServletRequest)
+	 */
+	@Override
+	protected int getCourseId(HttpServletRequest req) {
+		String[] parts = Export.getPathParts(req);
+		if (parts == null) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(parts[0]);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+}
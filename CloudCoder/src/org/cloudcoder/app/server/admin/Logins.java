@@ -0,0 +1,68 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.admin;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cloudcoder.app.server.persist.LoginRateLimiter;
+import org.cloudcoder.app.server.persist.PasswordVerifier;
+
+/**
+ * Servlet to report login statistics from the {@link PasswordVerifier}:
+ * how many passwords are waiting to be checked, how long they waited
+ * and took to hash, and how many logins were refused because the server
+ * was busy or because of too many failed attempts.
+ * GET returns the statistics as plain text.
+ * 
+ * @author David Hovemeyer
+ */
+public class Logins extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		PasswordVerifier verifier = PasswordVerifier.getInstance();
+		
+		resp.setContentType("text/plain");
+		PrintWriter w = resp.getWriter();
+		w.println("queued: " + verifier.getQueueDepth());
+		w.println("verified: " + verifier.getVerified() + ", failed: " + verifier.getFailed());
+		w.println("rejected (busy): " + verifier.getRejectedBusy() + ", timed out: " + verifier.getTimedOut());
+		w.println(String.format("queue wait millis: avg=%.1f, max=%.1f",
+				verifier.getAverageQueueWaitMillis(), verifier.getMaxQueueWaitMillis()));
+		w.println(String.format("hash millis: avg=%.1f, max=%.1f",
+				verifier.getAverageHashMillis(), verifier.getMaxHashMillis()));
+		printLimiter(w, "usernames", verifier.getUserLimiter());
+		printLimiter(w, "addresses", verifier.getAddressLimiter());
+	}
+
+	private void printLimiter(PrintWriter w, String name, LoginRateLimiter limiter) {
+		w.println(name + ": tracked=" + limiter.size() + ", refused=" + limiter.getRefused() +
+				", maxFailures=" + limiter.getMaxFailures() + ", windowMillis=" + limiter.getWindowMillis());
+	}
+}
@@ -0,0 +1,224 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.changelog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Event;
+
+/**
+ * Coalesce consecutive keystroke-level {@link Change}s into larger changes
+ * before they are stored.  The editor reports every keystroke as a separate
+ * change, so typing "hello" produces five INSERT_TEXT changes (and five
+ * events).  The following are merged, provided that they are by the same
+ * user on the same problem, are within a single line, contain no newlines,
+ * and are no more than the coalescing window apart:
+ * <ul>
+ * <li>INSERT_TEXT changes where each insertion starts where the previous one ended
+ *     (ordinary typing)</li>
+ * <li>REMOVE_TEXT changes where each removal ends where the previous one
+ *     started (backspace)</li>
+ * <li>REMOVE_TEXT changes at the same start column (forward delete)</li>
+ * </ul>
+ * Applying the coalesced changes yields exactly the same text as applying
+ * the original changes.  The timing of the original keystrokes is recorded
+ * in the coalesced change's timing field (see {@link Change#setTiming(String)}).
+ * 
+ * @author David Hovemeyer
+ */
+public class ChangeCoalescer {
+	private final long windowMillis;
+	private final boolean recordTiming;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param windowMillis maximum time between consecutive changes that
+	 *                     can be merged
+	 * @param recordTiming true if the timing of the original changes
+	 *                     should be recorded in coalesced changes
+	 */
+	public ChangeCoalescer(long windowMillis, boolean recordTiming) {
+		this.windowMillis = windowMillis;
+		this.recordTiming = recordTiming;
+	}
+	
+	/**
+	 * Coalesce a list of changes.  The original Change objects are not modified.
+	 * 
+	 * @param changeList the list of changes, in order
+	 * @return the coalesced changes (the original array if no changes could be merged)
+	 */
+	public Change[] coalesce(Change[] changeList) {
+		List<Change> result = new ArrayList<Change>(changeList.length);
+		
+		int i = 0;
+		while (i < changeList.length) {
+			Change first = changeList[i];
+			if (!isCoalescable(first)) {
+				result.add(first);
+				i++;
+				continue;
+			}
+			
+			// Try to extend a run starting with this change
+			Change merged = null;
+			StringBuilder timing = null;
+			Change last = first;
+			int j = i + 1;
+			while (j < changeList.length && canMerge(merged != null ? merged : first, last, changeList[j])) {
+				if (merged == null) {
+					merged = copy(first);
+					if (recordTiming) {
+						timing = new StringBuilder();
+						appendTiming(timing, first, first);
+					}
+				}
+				merge(merged, changeList[j]);
+				if (timing != null) {
+					appendTiming(timing, first, changeList[j]);
+				}
+				last = changeList[j];
+				j++;
+			}
+			
+			if (merged != null) {
+				if (timing != null) {
+					merged.setTiming(timing.toString());
+				}
+				result.add(merged);
+			} else {
+				result.add(first);
+			}
+			i = j;
+		}
+		
+		return result.size() == changeList.length ? changeList : result.toArray(new Change[result.size()]);
+	}
+
+	/**
+	 * Repair the end columns of changes stored before the end_col column
+	 * of the changes table was stored correctly: such changes have the end
+	 * column equal to the start column.  For single-line INSERT_TEXT and
+	 * REMOVE_TEXT changes, the end column can be derived from the text.
+	 * (Without this, historical changes can't be coalesced.)  Changes that
+	 * don't need repairing are returned as is; the others are copied.
+	 * 
+	 * @param changeList list of changes loaded from the database
+	 * @return the changes with their end columns repaired (the original
+	 *         array if none needed repairing)
+	 */
+	public static Change[] repairLegacyEndColumns(Change[] changeList) {
+		Change[] result = changeList;
+		for (int i = 0; i < changeList.length; i++) {
+			Change change = changeList[i];
+			ChangeType type = change.getType();
+			String text = change.getText();
+			if ((type == ChangeType.INSERT_TEXT || type == ChangeType.REMOVE_TEXT)
+					&& text != null
+					&& text.length() > 0
+					&& text.indexOf('\n') < 0
+					&& change.getStartRow() == change.getEndRow()
+					&& change.getEndColumn() == change.getStartColumn()) {
+				if (result == changeList) {
+					result = changeList.clone();
+				}
+				Change repaired = copy(change);
+				repaired.setEndColumn(change.getStartColumn() + text.length());
+				result[i] = repaired;
+			}
+		}
+		return result;
+	}
+
+	private static boolean isCoalescable(Change change) {
+		ChangeType type = change.getType();
+		if (type != ChangeType.INSERT_TEXT && type != ChangeType.REMOVE_TEXT) {
+			return false;
+		}
+		String text = change.getText();
+		return text != null
+				&& text.length() > 0
+				&& text.indexOf('\n') < 0
+				&& change.getStartRow() == change.getEndRow()
+				&& change.getEndColumn() - change.getStartColumn() == text.length();
+	}
+	
+	private boolean canMerge(Change current, Change last, Change next) {
+		if (!isCoalescable(next) || next.getType() != current.getType()) {
+			return false;
+		}
+		Event a = current.getEvent(), b = next.getEvent();
+		if (a.getUserId() != b.getUserId() || a.getProblemId() != b.getProblemId()) {
+			return false;
+		}
+		long delta = b.getTimestamp() - last.getEvent().getTimestamp();
+		if (delta < 0 || delta > windowMillis) {
+			return false;
+		}
+		if (next.getStartRow() != current.getStartRow()) {
+			return false;
+		}
+		if (current.getType() == ChangeType.INSERT_TEXT) {
+			// next insertion must start where the current one ends
+			return next.getStartColumn() == current.getEndColumn();
+		} else {
+			// backspace: next removal ends where the current one starts;
+			// forward delete: next removal starts at the same column
+			return next.getEndColumn() == current.getStartColumn()
+					|| next.getStartColumn() == current.getStartColumn();
+		}
+	}
+	
+	private static void merge(Change merged, Change next) {
+		if (merged.getType() == ChangeType.INSERT_TEXT) {
+			merged.setText(merged.getText() + next.getText());
+			merged.setEndColumn(next.getEndColumn());
+		} else if (next.getEndColumn() == merged.getStartColumn()) {
+			// backspace
+			merged.setText(next.getText() + merged.getText());
+			merged.setStartColumn(next.getStartColumn());
+		} else {
+			// forward delete
+			merged.setText(merged.getText() + next.getText());
+			merged.setEndColumn(merged.getStartColumn() + merged.getText().length());
+		}
+	}
+	
+	private static Change copy(Change change) {
+		Event orig = change.getEvent();
+		Change copy = new Change(change.getType(),
+				change.getStartRow(), change.getStartColumn(),
+				change.getEndRow(), change.getEndColumn(),
+				orig.getTimestamp(), orig.getUserId(), orig.getProblemId(),
+				change.getText());
+		return copy;
+	}
+	
+	private static void appendTiming(StringBuilder timing, Change first, Change change) {
+		if (timing.length() > 0) {
+			timing.append(',');
+		}
+		timing.append(change.getText().length());
+		timing.append('@');
+		timing.append(change.getEvent().getTimestamp() - first.getEvent().getTimestamp());
+	}
+}
@@ -0,0 +1,339 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.changelog;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.PersistenceException;
+import org.cloudcoder.app.server.persist.ReadYourWrites;
+import org.cloudcoder.app.shared.model.Change;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group commit for the change log.  Each logChange RPC used to run its own
+ * database transaction, so with many students editing at once the database
+ * spent most of its time committing tiny transactions.  The ChangeLogWriter
+ * collects change batches from all sessions, and a single writer thread
+ * stores them in one transaction per group: a group is written when the
+ * oldest batch has waited for the group commit interval, or when enough
+ * changes have accumulated.  The RPC returns only after the group containing
+ * its batch has been committed, so a successful logChange still means that
+ * the changes are in the database.
+ * 
+ * The number of queued changes is bounded.  When the writer falls behind and the
+ * buffer is full, new batches wait briefly for space, and are then
+ * rejected with a {@link PersistenceException}: the client keeps the
+ * rejected changes and sends them again later.  When the webapp shuts down,
+ * all queued changes are written before {@link #contextDestroyed(ServletContextEvent)}
+ * returns.
+ * 
+ * If writing a group fails with an unexpected error (even an {@link Error}),
+ * the unfinished batches in the group are failed and the writer carries on.
+ * If the writer thread dies anyway, the queued batches are failed, and
+ * later changes are written directly by the caller's thread.
+ * 
+ * Before being queued, each batch is passed through a {@link ChangeCoalescer},
+ * which merges runs of keystroke-level changes into single changes.
+ * 
+ * @author David Hovemeyer
+ */
+public class ChangeLogWriter implements ServletContextListener, Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(ChangeLogWriter.class);
+	
+	private static volatile ChangeLogWriter instance;
+	
+	/**
+	 * A batch of changes from one logChange RPC, and its outcome.
+	 */
+	private static class PendingBatch {
+		final Change[] changeList;
+		final long enqueueTime;
+		boolean done;
+		RuntimeException error;
+		
+		PendingBatch(Change[] changeList) {
+			this.changeList = changeList;
+			this.enqueueTime = System.currentTimeMillis();
+		}
+		
+		synchronized void complete(RuntimeException error) {
+			if (done) {
+				return;
+			}
+			this.error = error;
+			this.done = true;
+			notifyAll();
+		}
+		
+		synchronized void await() throws InterruptedException {
+			while (!done) {
+				wait();
+			}
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+	
+	private final Object lock = new Object();
+	private final LinkedList<PendingBatch> queue = new LinkedList<PendingBatch>();
+	private int queuedChanges;
+	private boolean shutdown;
+	private Thread thread;
+	
+	private long groupCommitMillis;
+	private int maxGroupChanges;
+	private int maxQueuedChanges;
+	private long enqueueTimeoutMillis;
+	private ChangeCoalescer coalescer;
+	
+	/**
+	 * Store given changes in the database.  If the ChangeLogWriter is running,
+	 * the changes are coalesced and written as part of a group commit;
+	 * otherwise, they are written directly.  Either way, the changes have been
+	 * committed when this method returns.  Note that because of coalescing,
+	 * the given Change objects are not necessarily the ones stored, so their
+	 * event ids should not be relied on.
+	 * 
+	 * @param changeList the changes to store
+	 * @throws PersistenceException if the changes could not be stored,
+	 *         or if the change log buffer is full
+	 */
+	public static void storeChanges(Change[] changeList) {
+		ChangeLogWriter writer = instance;
+		if (writer != null && writer.coalescer != null) {
+			changeList = writer.coalescer.coalesce(changeList);
+		}
+		if (writer == null || !writer.enqueueAndWait(changeList)) {
+			Database.getInstance().storeChanges(changeList);
+		} else {
+			// The changes were written by the writer thread, so record
+			// the write on behalf of the current session
+			ReadYourWrites.recordWrite();
+		}
+	}
+	
+	/**
+	 * Enqueue given changes and wait for them to be committed.
+	 * 
+	 * @param changeList the changes
+	 * @return true if the changes were committed, false if the writer is
+	 *         shut down (and the caller should write them directly)
+	 */
+	private boolean enqueueAndWait(Change[] changeList) {
+		PendingBatch batch = new PendingBatch(changeList);
+		
+		try {
+			synchronized (lock) {
+				if (shutdown) {
+					return false;
+				}
+				
+				// Wait for space.  A batch is always accepted if the queue
+				// is empty, even if it is larger than the maximum.
+				long deadline = System.currentTimeMillis() + enqueueTimeoutMillis;
+				while (queuedChanges > 0 && queuedChanges + changeList.length > maxQueuedChanges) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						logger.warn("Change log buffer is full ({} changes queued): rejecting batch", queuedChanges);
+						throw new PersistenceException("Change log buffer is full", null);
+					}
+					lock.wait(remaining);
+				}
+				
+				queue.add(batch);
+				queuedChanges += changeList.length;
+				lock.notifyAll();
+			}
+			
+			batch.await();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PersistenceException("Interrupted while storing changes", e);
+		}
+	}
+	
+	@Override
+	public void run() {
+		try {
+			writeGroups();
+		} catch (Throwable e) {
+			logger.error("Change log writer thread died, changes will be written directly", e);
+		} finally {
+			// Don't leave callers waiting for batches that will never be
+			// written, and don't accept any more batches
+			List<PendingBatch> abandoned;
+			synchronized (lock) {
+				shutdown = true;
+				abandoned = new ArrayList<PendingBatch>(queue);
+				queue.clear();
+				queuedChanges = 0;
+				lock.notifyAll();
+			}
+			fail(abandoned, null);
+		}
+	}
+	
+	private void writeGroups() {
+		while (true) {
+			List<PendingBatch> group = new ArrayList<PendingBatch>();
+			int groupChanges = 0;
+			
+			synchronized (lock) {
+				try {
+					while (queue.isEmpty() && !shutdown) {
+						lock.wait();
+					}
+					if (queue.isEmpty()) {
+						// shut down, and everything has been written
+						return;
+					}
+					
+					// Give other sessions a chance to add to the group
+					long deadline = queue.getFirst().enqueueTime + groupCommitMillis;
+					while (!shutdown && queuedChanges < maxGroupChanges) {
+						long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0) {
+							break;
+						}
+						lock.wait(remaining);
+					}
+				} catch (InterruptedException e) {
+					// Write whatever is queued, then exit
+					shutdown = true;
+				}
+				
+				// Take batches from the queue, up to the maximum group size
+				// (but always at least one batch)
+				while (!queue.isEmpty()
+						&& (group.isEmpty() || groupChanges + queue.getFirst().changeList.length <= maxGroupChanges)) {
+					PendingBatch batch = queue.removeFirst();
+					group.add(batch);
+					groupChanges += batch.changeList.length;
+				}
+			}
+			
+			try {
+				write(group, groupChanges);
+			} catch (Throwable e) {
+				// Most likely an Error such as OutOfMemoryError.  Callers
+				// would wait forever for batches that aren't completed,
+				// so fail them, and carry on with the next group.
+				logger.error("Error writing group of " + group.size() + " batches", e);
+				fail(group, e);
+			} finally {
+				synchronized (lock) {
+					queuedChanges -= groupChanges;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+	
+	private void fail(List<PendingBatch> group, Throwable cause) {
+		PersistenceException error = new PersistenceException("Could not store changes", cause);
+		for (PendingBatch batch : group) {
+			batch.complete(error);
+		}
+	}
+
+	private void write(List<PendingBatch> group, int groupChanges) {
+		if (group.size() == 1) {
+			writeSeparately(group);
+			return;
+		}
+		
+		Change[] all = new Change[groupChanges];
+		int count = 0;
+		for (PendingBatch batch : group) {
+			System.arraycopy(batch.changeList, 0, all, count, batch.changeList.length);
+			count += batch.changeList.length;
+		}
+		
+		try {
+			Database.getInstance().storeChanges(all);
+			logger.debug("Group commit of {} changes from {} batches", groupChanges, group.size());
+			for (PendingBatch batch : group) {
+				batch.complete(null);
+			}
+		} catch (RuntimeException e) {
+			// Don't let one bad batch cause the others in the group to fail:
+			// retry each batch in its own transaction
+			logger.warn("Group commit of " + group.size() + " batches failed, retrying individually", e);
+			writeSeparately(group);
+		}
+	}
+
+	private void writeSeparately(List<PendingBatch> group) {
+		for (PendingBatch batch : group) {
+			try {
+				Database.getInstance().storeChanges(batch.changeList);
+				batch.complete(null);
+			} catch (RuntimeException e) {
+				batch.complete(e);
+			}
+		}
+	}
+	
+	private static long getParam(ServletContext ctx, String name, long defaultValue) {
+		String value = ctx.getInitParameter(name);
+		return value != null ? Long.parseLong(value.trim()) : defaultValue;
+	}
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext ctx = event.getServletContext();
+		groupCommitMillis = getParam(ctx, "cloudcoder.changelog.groupCommitMillis", 50L);
+		maxGroupChanges = (int) getParam(ctx, "cloudcoder.changelog.maxGroupChanges", 2000L);
+		maxQueuedChanges = (int) getParam(ctx, "cloudcoder.changelog.maxQueuedChanges", 50000L);
+		enqueueTimeoutMillis = getParam(ctx, "cloudcoder.changelog.enqueueTimeoutMillis", 2000L);
+		long coalesceWindowMillis = getParam(ctx, "cloudcoder.changelog.coalesceWindowMillis", 1000L);
+		boolean recordTiming = !"false".equals(ctx.getInitParameter("cloudcoder.changelog.recordTiming"));
+		coalescer = (coalesceWindowMillis > 0) ? new ChangeCoalescer(coalesceWindowMillis, recordTiming) : null;
+		
+		thread = new Thread(this, "ChangeLogWriter");
+		thread.start();
+		instance = this;
+		logger.info("Change log writer started: groupCommitMillis={}, maxGroupChanges={}, maxQueuedChanges={}",
+				new Object[]{ groupCommitMillis, maxGroupChanges, maxQueuedChanges });
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		instance = null;
+		synchronized (lock) {
+			shutdown = true;
+			lock.notifyAll();
+		}
+		try {
+			thread.join();
+			logger.info("Change log writer shut down");
+		} catch (InterruptedException e) {
+			throw new IllegalStateException("Interrupted while waiting for change log writer to shut down", e);
+		}
+	}
+}
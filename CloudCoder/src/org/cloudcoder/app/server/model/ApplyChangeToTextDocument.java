@@ -23,7 +23,13 @@ import org.cloudcoder.app.shared.model.Change;
  * Apply a Change object to a TextDocument.
  */
 public class ApplyChangeToTextDocument {
-	private static final boolean DEBUG = true;
+	/**
+	 * If true, the integrity of the TextDocument is checked after each change.
+	 * This is linear in the size of the document, so it is only enabled
+	 * (by setting the system property cloudcoder.textdocument.validate to true)
+	 * when testing.
+	 */
+	private static final boolean VALIDATE = Boolean.getBoolean("cloudcoder.textdocument.validate");
 
 	/**
 	 * Apply a Change object to a TextDocument.
@@ -76,14 +82,8 @@ public class ApplyChangeToTextDocument {
 		}
 		
 		// check integrity of TextDocument
-		if (DEBUG) {
-			for (int i = 0; i < doc.getNumLines(); i++) {
-				String line = doc.getLine(i);
-				int nl = line.indexOf('\n');
-				if (nl >= 0 && nl != line.length() - 1) {
-					throw new IllegalStateException("Line has enbedded newline!");
-				}
-			}
+		if (VALIDATE) {
+			doc.checkIntegrity();
 		}
 	}
 	
@@ -107,13 +107,17 @@ public class ApplyChangeToTextDocument {
 		
 		// line contains embedded newlines: need to split
 		doc.removeLine(index);
-		boolean done = false;
-		while (!done) {
-			doc.insertLine(index, text.substring(0, nl+1));
+		int start = 0;
+		while (nl >= 0) {
+			doc.insertLine(index, text.substring(start, nl+1));
 			index++;
-			text = text.substring(nl + 1);
-			nl = text.indexOf('\n');
-			done = (nl < 0);
+			start = nl + 1;
+			nl = text.indexOf('\n', start);
+		}
+		if (start < text.length()) {
+			// text following the last newline (only happens when
+			// text is inserted into a final line with no newline)
+			doc.insertLine(index, text.substring(start));
 		}
 	}
 }
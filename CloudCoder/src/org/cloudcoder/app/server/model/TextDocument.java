@@ -22,15 +22,37 @@ import java.util.List;
 
 /**
  * Simple text document class; treats document as sequence of lines.
+ * The lines are stored in a balanced binary tree (an AVL tree in which
+ * each node records the number of lines in its subtree), so that
+ * accessing, replacing, inserting, and removing a line at a given index
+ * are all O(log n) in the number of lines.  This makes replaying a long
+ * sequence of {@link org.cloudcoder.app.shared.model.Change}s
+ * efficient even for large documents.
  */
 public class TextDocument {
-	private List<String> lineList;
+	/**
+	 * Tree node: stores one line of text.
+	 */
+	private static class Node {
+		String line;
+		Node left, right;
+		int height;
+		int size;
+		
+		Node(String line) {
+			this.line = line;
+			this.height = 1;
+			this.size = 1;
+		}
+	}
+	
+	private Node root;
 
 	/**
 	 * Constructor: initialize empty text document.
 	 */
 	public TextDocument() {
-		lineList = new ArrayList<String>();
+		root = null;
 	}
 
 	/**
@@ -39,14 +61,14 @@ public class TextDocument {
 	 * @param line line of text to append
 	 */
 	public void append(String line) {
-		lineList.add(line);
+		root = insert(root, size(root), line);
 	}
 	
 	/**
 	 * @return number of lines of text in document
 	 */
 	public int getNumLines() {
-		return lineList.size();
+		return size(root);
 	}
 	
 	/**
@@ -56,7 +78,7 @@ public class TextDocument {
 	 * @return line of text
 	 */
 	public String getLine(int index) {
-		return lineList.get(index);
+		return find(index).line;
 	}
 	
 	/**
@@ -66,7 +88,7 @@ public class TextDocument {
 	 * @param line text value to set as new value of line
 	 */
 	public void setLine(int index, String line) {
-		lineList.set(index, line);
+		find(index).line = line;
 	}
 	
 	/**
@@ -77,7 +99,10 @@ public class TextDocument {
 	 * @param line line of text to insert
 	 */
 	public void insertLine(int index, String line) {
-		lineList.add(index, line);
+		if (index < 0 || index > size(root)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+		}
+		root = insert(root, index, line);
 	}
 
 	/**
@@ -87,7 +112,8 @@ public class TextDocument {
 	 * @param index index of line to remove
 	 */
 	public void removeLine(int index) {
-		lineList.remove(index);
+		checkIndex(index);
+		root = remove(root, index);
 	}
 
 	/**
@@ -95,19 +121,204 @@ public class TextDocument {
 	 */
 	public String getText() {
 		StringBuilder buf = new StringBuilder();
-
-		for (String s : lineList) {
-			buf.append(s);
-		}
-		
+		appendText(root, buf);
 		return buf.toString();
 	}
 
 	public void setText(String text) {
-		lineList.clear();
 		String[] lines = text.split("\n");
+		List<String> lineList = new ArrayList<String>(lines.length);
 		for (String line : lines) {
 			lineList.add(line + "\n");
 		}
+		root = build(lineList, 0, lineList.size());
+	}
+
+	/**
+	 * Set the text of the document so that {@link #getText()} returns
+	 * exactly the given text.  Unlike {@link #setText(String)}, the last
+	 * line is not forced to end in a newline, and trailing empty lines
+	 * are preserved.  This is used to restore a document from text
+	 * previously returned by {@link #getText()}.
+	 * 
+	 * @param text the text
+	 */
+	public void restoreText(String text) {
+		List<String> lineList = new ArrayList<String>();
+		int start = 0;
+		while (start < text.length()) {
+			int nl = text.indexOf('\n', start);
+			int end = (nl >= 0) ? nl + 1 : text.length();
+			lineList.add(text.substring(start, end));
+			start = end;
+		}
+		root = build(lineList, 0, lineList.size());
+	}
+	
+	/**
+	 * Check the integrity of the document: every line may contain
+	 * a newline only as its last character, and the tree must be
+	 * balanced with correct subtree sizes.  This is expensive
+	 * (linear in the size of the document), so it is intended only
+	 * for testing.
+	 * 
+	 * @throws IllegalStateException if the document is not valid
+	 */
+	public void checkIntegrity() {
+		checkIntegrity(root);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size(root)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+		}
+	}
+	
+	private Node find(int index) {
+		checkIndex(index);
+		Node n = root;
+		while (true) {
+			int leftSize = size(n.left);
+			if (index < leftSize) {
+				n = n.left;
+			} else if (index > leftSize) {
+				index -= leftSize + 1;
+				n = n.right;
+			} else {
+				return n;
+			}
+		}
+	}
+	
+	private static int size(Node n) {
+		return (n != null) ? n.size : 0;
+	}
+	
+	private static int height(Node n) {
+		return (n != null) ? n.height : 0;
+	}
+	
+	private static void update(Node n) {
+		n.size = size(n.left) + size(n.right) + 1;
+		n.height = Math.max(height(n.left), height(n.right)) + 1;
+	}
+	
+	private static Node rotateRight(Node n) {
+		Node l = n.left;
+		n.left = l.right;
+		l.right = n;
+		update(n);
+		update(l);
+		return l;
+	}
+	
+	private static Node rotateLeft(Node n) {
+		Node r = n.right;
+		n.right = r.left;
+		r.left = n;
+		update(n);
+		update(r);
+		return r;
+	}
+	
+	private static Node balance(Node n) {
+		update(n);
+		int bf = height(n.left) - height(n.right);
+		if (bf > 1) {
+			if (height(n.left.left) < height(n.left.right)) {
+				n.left = rotateLeft(n.left);
+			}
+			return rotateRight(n);
+		} else if (bf < -1) {
+			if (height(n.right.right) < height(n.right.left)) {
+				n.right = rotateRight(n.right);
+			}
+			return rotateLeft(n);
+		}
+		return n;
+	}
+	
+	private static Node insert(Node n, int index, String line) {
+		if (n == null) {
+			return new Node(line);
+		}
+		int leftSize = size(n.left);
+		if (index <= leftSize) {
+			n.left = insert(n.left, index, line);
+		} else {
+			n.right = insert(n.right, index - leftSize - 1, line);
+		}
+		return balance(n);
+	}
+	
+	private static Node remove(Node n, int index) {
+		int leftSize = size(n.left);
+		if (index < leftSize) {
+			n.left = remove(n.left, index);
+		} else if (index > leftSize) {
+			n.right = remove(n.right, index - leftSize - 1);
+		} else {
+			if (n.left == null) {
+				return n.right;
+			}
+			if (n.right == null) {
+				return n.left;
+			}
+			// Replace with the first line of the right subtree
+			Node succ = n.right;
+			while (succ.left != null) {
+				succ = succ.left;
+			}
+			n.line = succ.line;
+			n.right = removeFirst(n.right);
+		}
+		return balance(n);
+	}
+	
+	private static Node removeFirst(Node n) {
+		if (n.left == null) {
+			return n.right;
+		}
+		n.left = removeFirst(n.left);
+		return balance(n);
+	}
+	
+	private static Node build(List<String> lineList, int start, int end) {
+		if (start >= end) {
+			return null;
+		}
+		int mid = (start + end) >>> 1;
+		Node n = new Node(lineList.get(mid));
+		n.left = build(lineList, start, mid);
+		n.right = build(lineList, mid + 1, end);
+		update(n);
+		return n;
+	}
+	
+	private static void appendText(Node n, StringBuilder buf) {
+		while (n != null) {
+			appendText(n.left, buf);
+			buf.append(n.line);
+			n = n.right;
+		}
+	}
+	
+	private static void checkIntegrity(Node n) {
+		if (n == null) {
+			return;
+		}
+		checkIntegrity(n.left);
+		checkIntegrity(n.right);
+		int nl = n.line.indexOf('\n');
+		if (nl >= 0 && nl != n.line.length() - 1) {
+			throw new IllegalStateException("Line has embedded newline!");
+		}
+		if (n.size != size(n.left) + size(n.right) + 1) {
+			throw new IllegalStateException("Incorrect subtree size");
+		}
+		if (n.height != Math.max(height(n.left), height(n.right)) + 1
+				|| Math.abs(height(n.left) - height(n.right)) > 1) {
+			throw new IllegalStateException("Tree is not balanced");
+		}
 	}
 }
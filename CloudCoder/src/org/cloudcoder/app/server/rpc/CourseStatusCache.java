@@ -0,0 +1,162 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.rpc;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.shared.model.Course;
+import org.cloudcoder.app.shared.model.ProblemAndSubmissionReceipt;
+import org.cloudcoder.app.shared.model.User;
+
+/**
+ * Short-lived per-user cache of course status: the problems in a course
+ * along with the user's latest and best submission receipts for each problem.
+ * Students return to the courses page frequently, and the status only
+ * changes when the user submits (or when an instructor changes the
+ * problems in the course), so an entry is reused until it expires
+ * after {@link #TTL_MILLIS} milliseconds or is invalidated.
+ * 
+ * @author David Hovemeyer
+ */
+public class CourseStatusCache {
+	/**
+	 * How long a cached course status remains valid.
+	 * This bounds how stale an entry can be if it is changed in a way
+	 * this webapp doesn't see (e.g., by a retest).
+	 */
+	public static final long TTL_MILLIS = 15000L;
+	
+	/**
+	 * When the number of users with cached entries exceeds this,
+	 * expired entries are removed.
+	 */
+	private static final int PRUNE_THRESHOLD = 5000;
+	
+	private static class Entry {
+		final long expiration;
+		final List<ProblemAndSubmissionReceipt> status;
+		
+		Entry(long expiration, List<ProblemAndSubmissionReceipt> status) {
+			this.expiration = expiration;
+			this.status = status;
+		}
+	}
+	
+	private static final CourseStatusCache instance = new CourseStatusCache();
+	
+	/**
+	 * @return the singleton instance
+	 */
+	public static CourseStatusCache getInstance() {
+		return instance;
+	}
+	
+	// Map of user ids to maps of course ids to entries
+	private final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, Entry>> userMap;
+	
+	// Incremented on every invalidation, so that a status loaded
+	// concurrently with an invalidation is not cached
+	private final AtomicLong invalidationCount;
+	
+	private CourseStatusCache() {
+		this.userMap = new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, Entry>>();
+		this.invalidationCount = new AtomicLong();
+	}
+	
+	/**
+	 * Get the status of given course for given user, loading it from
+	 * the database if there is no valid cached entry.
+	 * 
+	 * @param user    the user
+	 * @param course  the course
+	 * @return list of problems in the course and the user's submission receipts
+	 */
+	public List<ProblemAndSubmissionReceipt> getCourseStatus(User user, Course course) {
+		long now = System.currentTimeMillis();
+		
+		ConcurrentHashMap<Integer, Entry> courseMap = userMap.get(user.getId());
+		if (courseMap != null) {
+			Entry entry = courseMap.get(course.getId());
+			if (entry != null && now < entry.expiration) {
+				return entry.status;
+			}
+		}
+		
+		long count = invalidationCount.get();
+		List<ProblemAndSubmissionReceipt> status = Collections.unmodifiableList(
+				Database.getInstance().getProblemAndSubscriptionReceiptsInCourse(user, course));
+		
+		if (userMap.size() > PRUNE_THRESHOLD) {
+			prune(now);
+		}
+		if (courseMap == null) {
+			courseMap = new ConcurrentHashMap<Integer, Entry>();
+			ConcurrentHashMap<Integer, Entry> existing = userMap.putIfAbsent(user.getId(), courseMap);
+			if (existing != null) {
+				courseMap = existing;
+			}
+		}
+		courseMap.put(course.getId(), new Entry(now + TTL_MILLIS, status));
+		if (invalidationCount.get() != count) {
+			// An invalidation happened while loading: the status might be stale
+			courseMap.remove(course.getId());
+		}
+		
+		return status;
+	}
+	
+	/**
+	 * Invalidate all cached course status for given user.
+	 * Should be called when a submission receipt is added for the user.
+	 * 
+	 * @param userId the user id
+	 */
+	public void invalidate(int userId) {
+		invalidationCount.incrementAndGet();
+		userMap.remove(userId);
+	}
+	
+	/**
+	 * Invalidate all cached course status.
+	 * Should be called when the problems in a course are changed.
+	 */
+	public void invalidateAll() {
+		invalidationCount.incrementAndGet();
+		userMap.clear();
+	}
+	
+	private void prune(long now) {
+		for (Iterator<ConcurrentHashMap<Integer, Entry>> i = userMap.values().iterator(); i.hasNext(); ) {
+			ConcurrentHashMap<Integer, Entry> courseMap = i.next();
+			for (Iterator<Map.Entry<Integer, Entry>> j = courseMap.entrySet().iterator(); j.hasNext(); ) {
+				if (j.next().getValue().expiration <= now) {
+					j.remove();
+				}
+			}
+			if (courseMap.isEmpty()) {
+				i.remove();
+			}
+		}
+	}
+}
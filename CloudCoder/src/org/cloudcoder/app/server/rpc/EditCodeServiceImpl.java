@@ -17,12 +17,12 @@
 
 package org.cloudcoder.app.server.rpc;
 
-import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
 import org.cloudcoder.app.client.rpc.EditCodeService;
+import org.cloudcoder.app.server.changelog.ChangeLogWriter;
 import org.cloudcoder.app.server.model.ApplyChangeToTextDocument;
 import org.cloudcoder.app.server.model.TextDocument;
 import org.cloudcoder.app.server.persist.Database;
@@ -65,6 +65,7 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
 
 			// If appropriate, record that the user has started the problem
 			Database.getInstance().getOrAddLatestSubmissionReceipt(user, problem);
+			CourseStatusCache.getInstance().invalidate(user.getId());
 		}
 
 		return problem;
@@ -85,6 +86,9 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
 
     	ProblemText text = doLoadCurrentText(user, problem);
     	
+    	// Start counting changes towards the next text checkpoint
+    	getThreadLocalRequest().getSession().setAttribute(SessionAttributeKeys.CHANGES_SINCE_CHECKPOINT_KEY, Integer.valueOf(0));
+    	
     	if (DEBUG_CODE_DELTAS) {
 	    	// Keep a TextDocument in the session for debugging code deltas
 	    	TextDocument doc = new TextDocument();
@@ -96,61 +100,7 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
     }
 
 	protected ProblemText doLoadCurrentText(User user, Problem problem) {
-    	Change mostRecent = Database.getInstance().getMostRecentChange(user, problem.getProblemId());
-
-    	if (mostRecent == null) {
-    		// Presumably, user has never worked on this problem.
-    		logger.debug("No changes recorded for user " + user.getId() + ", problem " + problem.getProblemId());
-    		
-    		// If the problem has a skeleton, it is the initial problem text.
-    		// Otherwise, just use the empty string.
-    		String initialText = problem.hasSkeleton() ? problem.getSkeleton() : "";
-    		ProblemText initialProblemText = new ProblemText(initialText, true);
-    		
-    		return initialProblemText;
-    	} else {
-    		Change change = mostRecent; // result.get(0);
-
-    		// If the Change is a full text change, great.
-    		if (change.getType() == ChangeType.FULL_TEXT) {
-    			return new ProblemText(change.getText(), false);
-    		}
-
-    		// Otherwise, find the last full-text change (if any) and
-    		// apply all later changes.
-    		
-    		// Find the most recent full-text change.
-    		Change fullText = Database.getInstance().getMostRecentFullTextChange(user, problem.getProblemId());
-    		
-    		// Text doc to accumulate changes.
-    		TextDocument textDocument = new TextDocument();
-    		
-    		// Find the base revision (event id) that the deltas are relative to, if any.
-    		int baseRev;
-    		if (fullText != null) {
-    			// found a full-text change to use as a base revision
-    			textDocument.setText(fullText.getText());
-    			baseRev = fullText.getEventId();
-    		} else {
-    			// no full-text change exists: base revision is implicitly the empty document
-    			baseRev = -1;
-    		}
-    		
-    		// Get all deltas that follow the base revision.
-    		List<Change> deltaList = Database.getInstance().getAllChangesNewerThan(user, problem.getProblemId(), baseRev);
-    		
-    		// Apply the deltas to the base revision.
-    		try {
-        		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
-	    		for (Change delta : deltaList) {
-	    			applicator.apply(delta, textDocument);
-	    		}
-	    		return new ProblemText(textDocument.getText(), false);
-    		} catch (RuntimeException e) {
-    			// FIXME: should do something smarter than this 
-    			return new ProblemText(fullText != null ? fullText.getText() : "", false);
-    		}
-    	}
+		return TextCheckpointer.getInstance().loadCurrentText(user, problem);
 	}
 
 	@Override
@@ -183,8 +133,11 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
 			change.getEvent().setTimestamp(orig + clientServerTimeDelta);
 		}
 
-		// Insert changes
-		Database.getInstance().storeChanges(changeList);
+		// Insert changes (as part of a group commit)
+		ChangeLogWriter.storeChanges(changeList);
+		
+		// Request a text checkpoint if enough changes have accumulated
+		updateCheckpointCount(user, changeList);
 		
 		if (DEBUG_CODE_DELTAS) {
 			// For debugging - keep a TextDocument in the session,
@@ -209,4 +162,21 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
 		return true;
 	}
 
+	private void updateCheckpointCount(User user, Change[] changeList) {
+		HttpSession session = getThreadLocalRequest().getSession();
+		Problem problem = (Problem) session.getAttribute(SessionAttributeKeys.PROBLEM_KEY);
+		if (problem == null || changeList.length == 0 || changeList[0].getEvent().getProblemId() != problem.getProblemId()) {
+			return;
+		}
+		
+		Integer count = (Integer) session.getAttribute(SessionAttributeKeys.CHANGES_SINCE_CHECKPOINT_KEY);
+		int numChanges = (count != null) ? count.intValue() : 0;
+		for (Change change : changeList) {
+			// A full-text change is itself a base revision
+			numChanges = (change.getType() == ChangeType.FULL_TEXT) ? 0 : numChanges + 1;
+		}
+		
+		numChanges = TextCheckpointer.getInstance().changesStored(user, problem, numChanges);
+		session.setAttribute(SessionAttributeKeys.CHANGES_SINCE_CHECKPOINT_KEY, Integer.valueOf(numChanges));
+	}
 }
@@ -22,7 +22,7 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.bind.DatatypeConverter;
@@ -48,13 +48,10 @@ import org.cloudcoder.app.shared.model.CourseRegistration;
 import org.cloudcoder.app.shared.model.CourseRegistrationType;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.OperationResult;
-import org.cloudcoder.app.shared.model.Pair;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemAndSubmissionReceipt;
 import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.ProblemAuthorship;
-import org.cloudcoder.app.shared.model.ProblemList;
-import org.cloudcoder.app.shared.model.SubmissionReceipt;
 import org.cloudcoder.app.shared.model.Term;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.User;
@@ -132,8 +129,10 @@ public class GetCoursesAndProblemsServiceImpl extends RemoteServiceServlet
 		User user = ServletUtil.checkClientIsAuthenticated(getThreadLocalRequest());
 
 		List<Problem> resultList = Database.getInstance().getProblemsInCourse(user, course).getProblemList();
-		for (Problem p : resultList) {
-			logger.info(p.getTestname() + " - " + p.getBriefDescription());
+		if (logger.isDebugEnabled()) {
+			for (Problem p : resultList) {
+				logger.debug(p.getTestname() + " - " + p.getBriefDescription());
+			}
 		}
 		
 		return resultList.toArray(new Problem[resultList.size()]);
@@ -144,8 +143,10 @@ public class GetCoursesAndProblemsServiceImpl extends RemoteServiceServlet
 		User user = Database.getInstance().getUserGivenId(userId);
 		
 		List<Problem> resultList = Database.getInstance().getProblemsInCourse(user, course).getProblemList();
-		for (Problem p : resultList) {
-			logger.warn(p.getTestname() + " - " + p.getBriefDescription());
+		if (logger.isDebugEnabled()) {
+			for (Problem p : resultList) {
+				logger.debug(p.getTestname() + " - " + p.getBriefDescription());
+			}
 		}
 		
 		return resultList.toArray(new Problem[resultList.size()]);
@@ -162,7 +163,7 @@ public class GetCoursesAndProblemsServiceImpl extends RemoteServiceServlet
 		
 		logger.info("getting submission receipts for authenticated user "+user.getUsername());
 		
-		List<ProblemAndSubmissionReceipt> resultList = Database.getInstance().getProblemAndSubscriptionReceiptsInCourse(user, course);
+		List<ProblemAndSubmissionReceipt> resultList = CourseStatusCache.getInstance().getCourseStatus(user, course);
 		return resultList.toArray(new ProblemAndSubmissionReceipt[resultList.size()]);
 	}
 	
@@ -173,20 +174,17 @@ public class GetCoursesAndProblemsServiceImpl extends RemoteServiceServlet
 	public ProblemAndSubmissionReceipt[] getProblemAndSubscriptionReceipts(
 			Course course, User user) throws CloudCoderAuthenticationException {
 
-		logger.warn("yay! getting submission receipts for user "+user.getUsername());
-		
-		List<ProblemAndSubmissionReceipt> resultList = new LinkedList<ProblemAndSubmissionReceipt>();
-		ProblemList problems = Database.getInstance().getProblemsInCourse(user, course);
-		for(Problem p : problems.getProblemList()){
-			List<Pair<User, SubmissionReceipt>> e = Database.getInstance().getBestSubmissionReceipts(course, p.getProblemId());
-			for(Pair<User,SubmissionReceipt> pair : e){
-				if(pair.getLeft().getId() == user.getId()){
-					resultList.add(new ProblemAndSubmissionReceipt(p,pair.getRight()));
-				}
+		logger.info("getting submission receipts for user "+user.getUsername());
+		
+		// Report the user's best submission receipt for each problem
+		// the user has submitted
+		List<ProblemAndSubmissionReceipt> resultList = new ArrayList<ProblemAndSubmissionReceipt>();
+		for (ProblemAndSubmissionReceipt status : CourseStatusCache.getInstance().getCourseStatus(user, course)) {
+			if (status.getBestReceipt() != null) {
+				resultList.add(new ProblemAndSubmissionReceipt(status.getProblem(), status.getBestReceipt()));
 			}
 		}
 		
-		//List<ProblemAndSubmissionReceipt> resultList = Database.getInstance().getBestSubmissionReceipts(course, problemId).getProblemAndSubscriptionReceiptsInCourse(user, course);
 		return resultList.toArray(new ProblemAndSubmissionReceipt[resultList.size()]);
 	}
 	
@@ -212,6 +210,7 @@ public class GetCoursesAndProblemsServiceImpl extends RemoteServiceServlet
 		
 		// Store in database
 		Database.getInstance().storeProblemAndTestCaseList(problemAndTestCaseList, course, user);
+		CourseStatusCache.getInstance().invalidateAll();
 
 		// Return updated object
 		return problemAndTestCaseList;
@@ -345,6 +344,7 @@ public class GetCoursesAndProblemsServiceImpl extends RemoteServiceServlet
 		
 		// Store the exercise in the database
 		exercise = Database.getInstance().storeProblemAndTestCaseList(exercise, course, user);
+		CourseStatusCache.getInstance().invalidateAll();
 		
 		return exercise;
 	}
@@ -354,6 +354,7 @@ public class GetCoursesAndProblemsServiceImpl extends RemoteServiceServlet
 		// Make sure a user is authenticated
 		User user = ServletUtil.checkClientIsAuthenticated(getThreadLocalRequest());
 		boolean result = Database.getInstance().deleteProblem(user, course, problem);
+		CourseStatusCache.getInstance().invalidateAll();
 		return new OperationResult(result, result ? "Problem deleted successfully" : "Could not delete problem");
 	}
 }
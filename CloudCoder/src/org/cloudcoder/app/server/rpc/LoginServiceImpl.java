@@ -26,8 +26,10 @@ import javax.servlet.http.HttpSession;
 import org.cloudcoder.app.client.rpc.LoginService;
 import org.cloudcoder.app.server.persist.Database;
 import org.cloudcoder.app.server.persist.InitErrorList;
+import org.cloudcoder.app.server.persist.PasswordVerifier;
 import org.cloudcoder.app.shared.model.Activity;
 import org.cloudcoder.app.shared.model.InitErrorException;
+import org.cloudcoder.app.shared.model.LoginThrottledException;
 import org.cloudcoder.app.shared.model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,7 +71,7 @@ public class LoginServiceImpl extends RemoteServiceServlet implements LoginServi
     private static final int SESSION_TIMEOUT_IN_SECONDS = 30 * 60;
 
 	@Override
-	public User login(String userName, String password) {
+	public User login(String userName, String password) throws LoginThrottledException {
 	    // Can this method be called anywhere?
 	    // Does AdminAuthorizationFilter have access to the ServletConfig?
         
@@ -88,7 +90,7 @@ public class LoginServiceImpl extends RemoteServiceServlet implements LoginServi
 	    	}
 	    } else {
 	    	// Login by checking provided credentials against database 
-		    user = Database.getInstance().authenticateUser(userName, password);
+		    user = PasswordVerifier.getInstance().authenticate(userName, password, getThreadLocalRequest());
 	    }
 	    
 	    if (user == null) {
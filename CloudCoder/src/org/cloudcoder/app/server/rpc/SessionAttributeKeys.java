@@ -42,8 +42,20 @@ public interface SessionAttributeKeys {
 	 */
 	public static final String PROBLEM_KEY = "problem";
 
-	public static final String FUTURE_SUBMISSION_RESULT_KEY = "future";
+	/**
+	 * Key to get the id of the most recent full submission.
+	 */
+	public static final String SUBMISSION_ID_KEY = "submissionId";
 
-	public static final String FULL_TEXT_CHANGE_KEY = "fullText";
+	/**
+	 * Key to get the pending compile-only submission's future result.
+	 */
+	public static final String COMPILE_FUTURE_SUBMISSION_RESULT_KEY = "compileFuture";
+
+	/**
+	 * Key to get the number of changes logged for the current problem
+	 * since the last text checkpoint was requested.
+	 */
+	public static final String CHANGES_SINCE_CHECKPOINT_KEY = "changesSinceCheckpoint";
 
 }
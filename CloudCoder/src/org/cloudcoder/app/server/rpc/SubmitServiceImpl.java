@@ -28,13 +28,14 @@ import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
 import org.cloudcoder.app.shared.model.Change;
 import org.cloudcoder.app.shared.model.ChangeType;
-import org.cloudcoder.app.shared.model.IContainsEvent;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
+import org.cloudcoder.app.shared.model.CompilationResult;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionException;
-import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionInfo;
 import org.cloudcoder.app.shared.model.SubmissionResult;
-import org.cloudcoder.app.shared.model.SubmissionStatus;
+import org.cloudcoder.app.shared.model.SubmissionState;
+import org.cloudcoder.app.shared.model.SubmissionType;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.User;
 import org.slf4j.Logger;
@@ -54,7 +55,7 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 	private static final Logger logger=LoggerFactory.getLogger(SubmitServiceImpl.class);
 
 	@Override
-	public void submit(int problemId, String programText) throws CloudCoderAuthenticationException, SubmissionException {
+	public Integer submit(int problemId, String programText) throws CloudCoderAuthenticationException, SubmissionException {
 		// Make sure that client is authenticated and has permission to edit the given problem
 		User user = ServletUtil.checkClientIsAuthenticated(getThreadLocalRequest());
 
@@ -80,11 +81,15 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 		
 		ISubmitService submitService = DefaultSubmitService.getInstance();
 
+		// The submit service stores the SubmissionReceipt when testing completes,
+		// and tracks the submission by the full-text change's event id
 		logger.info("Passing submission to submit service...");
-		IFutureSubmissionResult future = submitService.submitAsync(problem, testCaseList, programText);
+		submitService.submitAsync(problem, testCaseList, fullTextChange);
 		
-		// Put the full-text Change and IFutureSubmissionResult in the user's session.
-		addSessionObjects(session, fullTextChange, future);
+		// Put the submission id in the user's session.
+		Integer submissionId = fullTextChange.getEventId();
+		session.setAttribute(SessionAttributeKeys.SUBMISSION_ID_KEY, submissionId);
+		return submissionId;
 	}
 	
 	/* (non-Javadoc)
@@ -103,27 +108,29 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 			throw new CloudCoderAuthenticationException();
 		}
 		
-		// Retrieve session objects for submission
-		IFutureSubmissionResult future =
-				(IFutureSubmissionResult) session.getAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY);
-		Change fullTextChange =
-				(Change) session.getAttribute(SessionAttributeKeys.FULL_TEXT_CHANGE_KEY);
+		// Retrieve id of most recent submission
+		Integer submissionId = (Integer) session.getAttribute(SessionAttributeKeys.SUBMISSION_ID_KEY);
 		
-		if (future == null) {
+		if (submissionId == null) {
+			// The submission may have been made before the submit service
+			// restarted: if so, its receipt is stored when testing completes
+			IFutureSubmissionResult recovered =
+					DefaultSubmitService.getInstance().getRecoveredSubmission(user.getId(), problem.getProblemId());
+			if (recovered != null) {
+				return recovered.poll();
+			}
 			throw new SubmissionException("No pending submission in session");
 		}
-		if (fullTextChange == null) {
-			throw new SubmissionException("No full-text change for pending submission in session");
-		}
 		
-		// See if the SubmissionResult is ready
+		// See if the SubmissionResult is ready.  (Its SubmissionReceipt
+		// was stored by the submit service before the result became ready.)
 		SubmissionResult result;
 		try {
-			result = future.poll();
+			result = getSubmissionResult(user, submissionId);
 		} catch (SubmissionException e) {
-			// If poll() throws an exception, the submission completed
-			// with an error, but it did complete, so clear the session objects.
-			clearSessionObjects(session);
+			// The submission completed with an error, but it did
+			// complete, so clear the session object.
+			session.removeAttribute(SessionAttributeKeys.SUBMISSION_ID_KEY);
 			throw e;
 		}
 		if (result == null) {
@@ -131,40 +138,130 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 			return null;
 		}
 		
-		// We are just trusting that the submission result is for the
-		// correct problem...
-
-		// Add a SubmissionReceipt to the database
-		SubmissionReceipt receipt = createSubmissionReceipt(fullTextChange, result, user, problem);
-		Database.getInstance().insertSubmissionReceipt(receipt, result.getTestResults());
-		
 		int numResult=0;
 		if (result!=null && result.getTestResults()!=null) {
 		    numResult=result.getTestResults().length;
 		}
 		logger.info("Compilation "+result.getCompilationResult()+", received " +numResult+" TestResults");
 		
-		// Clear session objects for submission
-		clearSessionObjects(session);
+		// Clear session object for submission
+		session.removeAttribute(SessionAttributeKeys.SUBMISSION_ID_KEY);
 		
 		return result;
 	}
-
-	private void addSessionObjects(HttpSession session, Change fullTextChange, IFutureSubmissionResult future) {
-		session.setAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY, future);
-		session.setAttribute(SessionAttributeKeys.FULL_TEXT_CHANGE_KEY, fullTextChange);
+	
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.client.rpc.SubmitService#getSubmissionInfo(int)
+	 */
+	@Override
+	public SubmissionInfo getSubmissionInfo(int submissionId) throws CloudCoderAuthenticationException {
+		// Make sure user is authenticated
+		User user = ServletUtil.checkClientIsAuthenticated(getThreadLocalRequest());
+		
+		return DefaultSubmitService.getInstance().getSubmissionInfo(user.getId(), submissionId);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.client.rpc.SubmitService#getSubmissionResult(int)
+	 */
+	@Override
+	public SubmissionResult getSubmissionResult(int submissionId) throws CloudCoderAuthenticationException, SubmissionException {
+		// Make sure user is authenticated
+		User user = ServletUtil.checkClientIsAuthenticated(getThreadLocalRequest());
+		
+		return getSubmissionResult(user, submissionId);
 	}
 
-	private void clearSessionObjects(HttpSession session) {
-		session.removeAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY);
-		session.removeAttribute(SessionAttributeKeys.FULL_TEXT_CHANGE_KEY);
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.client.rpc.SubmitService#compile(int, java.lang.String)
+	 */
+	@Override
+	public Boolean compile(int problemId, String programText) throws CloudCoderAuthenticationException, SubmissionException {
+		// Make sure that client is authenticated and has permission to edit the given problem
+		ServletUtil.checkClientIsAuthenticated(getThreadLocalRequest());
+
+		HttpSession session = getThreadLocalRequest().getSession();
+
+		// The Problem should be stored in the user's session
+		Problem problem = (Problem) session.getAttribute(SessionAttributeKeys.PROBLEM_KEY);
+		if (problem == null || problem.getProblemId() != problemId) {
+			throw new CloudCoderAuthenticationException();
+		}
+		
+		if (!SubmissionType.isCompileOnlySupported(problem.getProblemType().getLanguage())) {
+			throw new SubmissionException("Compilation is not supported for " + problem.getProblemType().getLanguage());
+		}
+		
+		// The previous compilation (if any) is superseded by this one
+		IFutureSubmissionResult prev =
+				(IFutureSubmissionResult) session.getAttribute(SessionAttributeKeys.COMPILE_FUTURE_SUBMISSION_RESULT_KEY);
+		if (prev != null) {
+			prev.cancel();
+			session.removeAttribute(SessionAttributeKeys.COMPILE_FUTURE_SUBMISSION_RESULT_KEY);
+		}
+		
+		// Note that no full-text change is stored: the program text
+		// is only being compiled, and the client will continue
+		// to log changes as usual.
+		List<TestCase> testCaseList = Database.getInstance().getTestCasesForProblem(problemId);
+		
+		IFutureSubmissionResult future = DefaultSubmitService.getInstance().submitCompileOnlyAsync(problem, testCaseList, programText);
+		if (future == null) {
+			// Builders are busy
+			return false;
+		}
+		
+		session.setAttribute(SessionAttributeKeys.COMPILE_FUTURE_SUBMISSION_RESULT_KEY, future);
+		return true;
 	}
+	
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.client.rpc.SubmitService#checkCompilation()
+	 */
+	@Override
+	public CompilationResult checkCompilation() throws CloudCoderAuthenticationException, SubmissionException {
+		// Make sure user is authenticated
+		ServletUtil.checkClientIsAuthenticated(getThreadLocalRequest());
 
-	private SubmissionReceipt createSubmissionReceipt(IContainsEvent mostRecentChange, SubmissionResult result, User user, Problem problem) {
-		SubmissionStatus status = result.determineSubmissionStatus();
+		HttpSession session = getThreadLocalRequest().getSession();
+		
+		IFutureSubmissionResult future =
+				(IFutureSubmissionResult) session.getAttribute(SessionAttributeKeys.COMPILE_FUTURE_SUBMISSION_RESULT_KEY);
+		if (future == null) {
+			throw new SubmissionException("No pending compilation in session");
+		}
+		
+		SubmissionResult result;
+		try {
+			result = future.poll();
+		} catch (SubmissionException e) {
+			session.removeAttribute(SessionAttributeKeys.COMPILE_FUTURE_SUBMISSION_RESULT_KEY);
+			throw e;
+		}
+		if (result == null) {
+			// compilation not completed yet
+			return null;
+		}
+		
+		session.removeAttribute(SessionAttributeKeys.COMPILE_FUTURE_SUBMISSION_RESULT_KEY);
+		return result.getCompilationResult();
+	}
 
-		SubmissionReceipt receipt = SubmissionReceipt.create(user, problem, status, mostRecentChange.getEventId(),
-				result.getNumTestsAttempted(), result.getNumTestsPassed());
-		return receipt;
+	private SubmissionResult getSubmissionResult(User user, int submissionId) throws SubmissionException {
+		SubmissionInfo info = DefaultSubmitService.getInstance().getSubmissionInfo(user.getId(), submissionId);
+		if (info == null) {
+			throw new SubmissionException("No such submission");
+		}
+		if (info.getState() != SubmissionState.DONE) {
+			// submission result not ready yet
+			return null;
+		}
+		if (info.getError() != null) {
+			throw new SubmissionException(info.getError());
+		}
+		if (info.getResult() == null) {
+			throw new SubmissionException("Submission could not be tested");
+		}
+		return info.getResult();
 	}
 }
@@ -0,0 +1,246 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.rpc;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudcoder.app.server.model.ApplyChangeToTextDocument;
+import org.cloudcoder.app.server.model.TextDocument;
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemText;
+import org.cloudcoder.app.shared.model.TextCheckpoint;
+import org.cloudcoder.app.shared.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reconstruct the current text of a user's work on a problem, and maintain
+ * {@link TextCheckpoint}s so that reconstruction only needs to replay
+ * a short tail of deltas.  Without checkpoints, the only base revisions are
+ * full-text changes (which are recorded only on submissions and problem loads),
+ * so a long editing session without a submission would require every
+ * delta to be fetched and replayed each time the text is loaded.
+ * 
+ * Checkpoints are written in a background thread, and are written
+ * in two situations: when loading the text required replaying at least
+ * {@link #CHECKPOINT_INTERVAL} deltas, and when at least
+ * {@link #CHECKPOINT_INTERVAL} changes have been logged since the
+ * last checkpoint was requested.  Because a checkpoint records the
+ * event id of the last change it reflects, it is always safe to use
+ * as a base revision, even if more changes are logged while it is
+ * being computed.
+ * 
+ * @author David Hovemeyer
+ */
+public class TextCheckpointer {
+	private static final Logger logger = LoggerFactory.getLogger(TextCheckpointer.class);
+	
+	/**
+	 * Number of deltas after which a new checkpoint should be written.
+	 */
+	public static final int CHECKPOINT_INTERVAL = 200;
+	
+	/**
+	 * Maximum number of pending checkpoint tasks.  Checkpoints are purely
+	 * an optimization, so if the queue is full, new tasks are discarded.
+	 */
+	private static final int MAX_PENDING = 1000;
+	
+	private static final TextCheckpointer instance = new TextCheckpointer();
+	
+	/**
+	 * @return the singleton instance
+	 */
+	public static TextCheckpointer getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Result of reconstructing the current text.
+	 */
+	private static class LoadResult {
+		final ProblemText problemText;
+		final int lastEventId;
+		final int numDeltasApplied;
+		
+		LoadResult(ProblemText problemText, int lastEventId, int numDeltasApplied) {
+			this.problemText = problemText;
+			this.lastEventId = lastEventId;
+			this.numDeltasApplied = numDeltasApplied;
+		}
+	}
+	
+	private final ExecutorService executor;
+	
+	private TextCheckpointer() {
+		executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_PENDING),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "TextCheckpointer");
+						t.setDaemon(true);
+						return t;
+					}
+				},
+				new ThreadPoolExecutor.DiscardPolicy());
+	}
+	
+	/**
+	 * Load the current text for given user and problem.
+	 * If a long chain of deltas had to be replayed, a checkpoint
+	 * is scheduled so that subsequent loads are faster.
+	 * 
+	 * @param user     the User
+	 * @param problem  the Problem
+	 * @return the current text
+	 */
+	public ProblemText loadCurrentText(User user, Problem problem) {
+		LoadResult result = load(user, problem);
+		if (result.numDeltasApplied >= CHECKPOINT_INTERVAL) {
+			scheduleStore(new TextCheckpoint(user.getId(), problem.getProblemId(), result.lastEventId, result.problemText.getText()));
+		}
+		return result.problemText;
+	}
+	
+	/**
+	 * Called after a batch of changes has been stored.
+	 * Updates the count of changes since the last checkpoint,
+	 * and schedules a checkpoint if the count has reached
+	 * {@link #CHECKPOINT_INTERVAL}.
+	 * 
+	 * @param user         the User
+	 * @param problem      the Problem the changes apply to
+	 * @param numChanges   number of changes logged since the last checkpoint
+	 *                     was requested (including the ones just stored)
+	 * @return the updated count of changes since the last checkpoint was requested
+	 *         (0 if a checkpoint was just scheduled)
+	 */
+	public int changesStored(final User user, final Problem problem, int numChanges) {
+		if (numChanges < CHECKPOINT_INTERVAL) {
+			return numChanges;
+		}
+		
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					LoadResult result = load(user, problem);
+					if (result.numDeltasApplied > 0) {
+						store(new TextCheckpoint(user.getId(), problem.getProblemId(), result.lastEventId, result.problemText.getText()));
+					}
+				} catch (RuntimeException e) {
+					logger.warn("Could not create text checkpoint for user " + user.getId() + ", problem " + problem.getProblemId(), e);
+				}
+			}
+		});
+		
+		return 0;
+	}
+	
+	private void scheduleStore(final TextCheckpoint checkpoint) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				store(checkpoint);
+			}
+		});
+	}
+
+	private void store(TextCheckpoint checkpoint) {
+		try {
+			Database.getInstance().storeTextCheckpoint(checkpoint);
+			logger.debug("Stored text checkpoint for user {}, problem {} at event {}",
+					new Object[]{ checkpoint.getUserId(), checkpoint.getProblemId(), checkpoint.getEventId() });
+		} catch (RuntimeException e) {
+			logger.warn("Could not store text checkpoint for user " + checkpoint.getUserId() + ", problem " + checkpoint.getProblemId(), e);
+		}
+	}
+	
+	private LoadResult load(User user, Problem problem) {
+		Change mostRecent = Database.getInstance().getMostRecentChange(user, problem.getProblemId());
+		
+		if (mostRecent == null) {
+			// Presumably, user has never worked on this problem.
+			logger.debug("No changes recorded for user " + user.getId() + ", problem " + problem.getProblemId());
+			
+			// If the problem has a skeleton, it is the initial problem text.
+			// Otherwise, just use the empty string.
+			String initialText = problem.hasSkeleton() ? problem.getSkeleton() : "";
+			return new LoadResult(new ProblemText(initialText, true), -1, 0);
+		}
+		
+		// If the Change is a full text change, great.
+		if (mostRecent.getType() == ChangeType.FULL_TEXT) {
+			return new LoadResult(new ProblemText(mostRecent.getText(), false), mostRecent.getEventId(), 0);
+		}
+		
+		// Otherwise, find the most recent base revision (checkpoint or
+		// full-text change) and apply all later changes.
+		Change fullText = Database.getInstance().getMostRecentFullTextChange(user, problem.getProblemId());
+		TextCheckpoint checkpoint = Database.getInstance().getTextCheckpoint(user, problem.getProblemId());
+		
+		// Text doc to accumulate changes.
+		TextDocument textDocument = new TextDocument();
+		
+		// Find the base revision (event id) that the deltas are relative to, if any.
+		int baseRev;
+		String baseText;
+		if (checkpoint != null && (fullText == null || checkpoint.getEventId() > fullText.getEventId())) {
+			// the checkpoint is more recent than any full-text change:
+			// restore the exact document it was taken from
+			baseText = checkpoint.getText();
+			baseRev = checkpoint.getEventId();
+			textDocument.restoreText(baseText);
+		} else if (fullText != null) {
+			// found a full-text change to use as a base revision
+			baseText = fullText.getText();
+			baseRev = fullText.getEventId();
+			textDocument.setText(baseText);
+		} else {
+			// no full-text change exists: base revision is implicitly the empty document
+			baseText = null;
+			baseRev = -1;
+		}
+		
+		// Get all deltas that follow the base revision.
+		List<Change> deltaList = Database.getInstance().getAllChangesNewerThan(user, problem.getProblemId(), baseRev);
+		
+		// Apply the deltas to the base revision.
+		try {
+			ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+			int lastEventId = baseRev;
+			for (Change delta : deltaList) {
+				applicator.apply(delta, textDocument);
+				lastEventId = delta.getEventId();
+			}
+			return new LoadResult(new ProblemText(textDocument.getText(), false), lastEventId, deltaList.size());
+		} catch (RuntimeException e) {
+			// FIXME: should do something smarter than this 
+			return new LoadResult(new ProblemText(baseText != null ? baseText : "", false), baseRev, 0);
+		}
+	}
+}
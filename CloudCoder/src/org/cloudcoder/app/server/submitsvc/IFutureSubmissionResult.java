@@ -39,4 +39,11 @@ public interface IFutureSubmissionResult {
 	 * @throws SubmissionException
 	 */
 	public SubmissionResult poll() throws SubmissionException;
+	
+	/**
+	 * Cancel the submission.  If compilation/testing has not started yet,
+	 * it will not be performed.  Only useful for submissions whose
+	 * results are no longer needed (e.g., superseded compile-only submissions).
+	 */
+	public void cancel();
 }
@@ -19,8 +19,11 @@ package org.cloudcoder.app.server.submitsvc;
 
 import java.util.List;
 
+import org.cloudcoder.app.shared.model.Change;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionInfo;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
 
@@ -42,12 +45,61 @@ public interface ISubmitService {
 	 * eventually will yield a {@link SubmissionResult}
 	 * (which will contain a list of TestResults,
 	 * a CompilationResult, and in future versions could contain results
-	 * from static error checkers).
+	 * from static error checkers).  When testing completes, the submit
+	 * service stores the submission's {@link SubmissionReceipt} before
+	 * the result is made available, so the submission is recorded even
+	 * if nobody polls for its result.
 	 * 
-	 * @param problem      a Problem
-	 * @param programText  program text
+	 * @param problem        a Problem
+	 * @param testCaseList   the Problem's test cases
+	 * @param fullTextChange the full-text {@link Change} containing the
+	 *                       submitted program text (it also identifies the
+	 *                       user and the edit event the receipt refers to)
 	 * @return an {@link IFutureSubmissionResult}, which will eventually yield
 	 *         a {@link SubmissionResult}
 	 */
-	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText) throws SubmissionException;
+	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, Change fullTextChange) throws SubmissionException;
+	
+	/**
+	 * Submit a problem and program text to be compiled, but not tested.
+	 * Compile-only submissions are handled at a lower priority than
+	 * full submissions, and may be shed when the submit service is busy.
+	 * The {@link SubmissionResult} eventually yielded by the returned
+	 * {@link IFutureSubmissionResult} will contain only a CompilationResult.
+	 * 
+	 * @param problem      a Problem
+	 * @param testCaseList the Problem's test cases (a Builder may need them
+	 *                     if it has not seen the Problem before)
+	 * @param programText  program text
+	 * @return an {@link IFutureSubmissionResult}, or null if the submission
+	 *         was shed because the submit service is busy
+	 */
+	public IFutureSubmissionResult submitCompileOnlyAsync(Problem problem, List<TestCase> testCaseList, String programText);
+	
+	/**
+	 * Find a submission made by a user before the submit service was
+	 * restarted, whose result has not been delivered.  When a recovered
+	 * submission's result is available, its {@link SubmissionReceipt}
+	 * has already been stored.
+	 * 
+	 * @param userId    the user id
+	 * @param problemId the problem id
+	 * @return an {@link IFutureSubmissionResult} for the recovered submission,
+	 *         or null if there is none
+	 */
+	public IFutureSubmissionResult getRecoveredSubmission(int userId, int problemId);
+	
+	/**
+	 * Get information about a full submission: its state, position in
+	 * the queue, timestamps, and (once it is done) its result.
+	 * Submissions are identified by the event id of the full-text
+	 * {@link Change} passed to {@link #submitAsync(Problem, List, Change)}.
+	 * 
+	 * @param userId       the id of the user asking (only the user who made
+	 *                     the submission may see it)
+	 * @param submissionId the submission id
+	 * @return the {@link SubmissionInfo}, or null if there is no such
+	 *         submission by the user
+	 */
+	public SubmissionInfo getSubmissionInfo(int userId, int submissionId);
 }
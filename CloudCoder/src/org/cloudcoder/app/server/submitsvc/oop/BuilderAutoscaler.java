@@ -0,0 +1,381 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts and stops Builder daemon processes based on the depth of the
+ * submission queue and how long the oldest submission has been waiting.
+ * Builders are started on a configured set of hosts (spreading them
+ * as evenly as possible), subject to minimum and maximum bounds.
+ * After scaling up or down, no further scaling in the same direction
+ * is done until a cooldown period has elapsed (this includes
+ * restarting Builders to get back up to the minimum).  Scaling down drains
+ * the most recently started Builder: it finishes the submissions
+ * it is testing before exiting.
+ * 
+ * @author David Hovemeyer
+ */
+public class BuilderAutoscaler implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(BuilderAutoscaler.class);
+	
+	/** Default interval between checks of the submission queue. */
+	public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 2000L;
+	
+	/** Default wait time of the oldest queued submission that triggers a scale-up. */
+	public static final long DEFAULT_SCALE_UP_WAIT_MILLIS = 5000L;
+	
+	/** Default time the queue must be idle before triggering a scale-down. */
+	public static final long DEFAULT_SCALE_DOWN_IDLE_MILLIS = 120000L;
+	
+	/** Default cooldown after a scale-up. */
+	public static final long DEFAULT_SCALE_UP_COOLDOWN_MILLIS = 30000L;
+	
+	/** Default cooldown after a scale-down. */
+	public static final long DEFAULT_SCALE_DOWN_COOLDOWN_MILLIS = 120000L;
+	
+	/**
+	 * A Builder daemon instance started by the autoscaler.
+	 */
+	private static class ManagedBuilder {
+		final String host;
+		final String instanceName;
+		final long startTime;
+		boolean draining;
+		
+		ManagedBuilder(String host, String instanceName, long startTime) {
+			this.host = host;
+			this.instanceName = instanceName;
+			this.startTime = startTime;
+		}
+		
+		@Override
+		public String toString() {
+			return instanceName + "@" + host + (draining ? " (draining)" : "");
+		}
+	}
+
+	private ServerTask serverTask;
+	private IBuilderLauncher launcher;
+	private List<String> hostList;
+	private int minBuilders;
+	private int maxBuilders;
+	private long checkIntervalMillis;
+	private long scaleUpWaitMillis;
+	private long scaleDownIdleMillis;
+	private long scaleUpCooldownMillis;
+	private long scaleDownCooldownMillis;
+	
+	private Object lock;
+	private List<ManagedBuilder> managedBuilderList;
+	private String instanceNamePrefix;
+	private int instanceCount;
+	private long lastScaleUpTime;
+	private long lastScaleDownTime;
+	private long idleSince;
+	private volatile boolean shutdownRequested;
+	private Thread thread;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param serverTask   the {@link ServerTask} whose queue should be monitored
+	 * @param launcher     the {@link IBuilderLauncher} to use to start and stop Builders
+	 * @param hostList     hosts on which Builders may be started
+	 * @param minBuilders  minimum number of Builder instances
+	 * @param maxBuilders  maximum number of Builder instances
+	 */
+	public BuilderAutoscaler(ServerTask serverTask, IBuilderLauncher launcher, List<String> hostList, int minBuilders, int maxBuilders) {
+		if (hostList.isEmpty() || minBuilders < 0 || maxBuilders < minBuilders) {
+			throw new IllegalArgumentException("Invalid autoscaler configuration");
+		}
+		this.serverTask = serverTask;
+		this.launcher = launcher;
+		this.hostList = new ArrayList<String>(hostList);
+		this.minBuilders = minBuilders;
+		this.maxBuilders = maxBuilders;
+		this.checkIntervalMillis = DEFAULT_CHECK_INTERVAL_MILLIS;
+		this.scaleUpWaitMillis = DEFAULT_SCALE_UP_WAIT_MILLIS;
+		this.scaleDownIdleMillis = DEFAULT_SCALE_DOWN_IDLE_MILLIS;
+		this.scaleUpCooldownMillis = DEFAULT_SCALE_UP_COOLDOWN_MILLIS;
+		this.scaleDownCooldownMillis = DEFAULT_SCALE_DOWN_COOLDOWN_MILLIS;
+		this.lock = new Object();
+		this.managedBuilderList = new ArrayList<ManagedBuilder>();
+		this.instanceNamePrefix = "autoscale" + Long.toString(System.currentTimeMillis(), 36) + "-";
+	}
+	
+	public void setCheckIntervalMillis(long checkIntervalMillis) {
+		this.checkIntervalMillis = checkIntervalMillis;
+	}
+	
+	public void setScaleUpWaitMillis(long scaleUpWaitMillis) {
+		this.scaleUpWaitMillis = scaleUpWaitMillis;
+	}
+	
+	public void setScaleDownIdleMillis(long scaleDownIdleMillis) {
+		this.scaleDownIdleMillis = scaleDownIdleMillis;
+	}
+	
+	public void setScaleUpCooldownMillis(long scaleUpCooldownMillis) {
+		this.scaleUpCooldownMillis = scaleUpCooldownMillis;
+	}
+	
+	public void setScaleDownCooldownMillis(long scaleDownCooldownMillis) {
+		this.scaleDownCooldownMillis = scaleDownCooldownMillis;
+	}
+	
+	/**
+	 * Start the autoscaler thread.
+	 */
+	public void start() {
+		thread = new Thread(this, "BuilderAutoscaler");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	@Override
+	public void run() {
+		idleSince = System.currentTimeMillis();
+		while (!shutdownRequested) {
+			try {
+				check();
+			} catch (RuntimeException e) {
+				logger.error("Error in autoscaler", e);
+			}
+			try {
+				Thread.sleep(checkIntervalMillis);
+			} catch (InterruptedException e) {
+				// most likely shutdown was requested
+			}
+		}
+	}
+
+	/**
+	 * Check the submission queue, and start or drain a Builder if appropriate.
+	 */
+	void check() {
+		long now = System.currentTimeMillis();
+		int queueDepth = serverTask.getQueueDepth();
+		long oldestWait = serverTask.getOldestWaitMillis();
+		int numConnections = serverTask.getNumWorkerTasks();
+		
+		if (queueDepth > 0) {
+			idleSince = now;
+		}
+		
+		int numActive = getNumActiveBuilders();
+		if (numActive < minBuilders) {
+			// Bring up to the minimum all at once, but not more often than
+			// the scale-up cooldown allows: otherwise, Builders that fail to
+			// start (or exit right away) would be restarted on every check.
+			if (now - lastScaleUpTime >= scaleUpCooldownMillis) {
+				for (int i = numActive; i < minBuilders; i++) {
+					if (!scaleUp("below minimum")) {
+						break;
+					}
+				}
+			}
+		} else if ((oldestWait >= scaleUpWaitMillis || queueDepth > numConnections)
+				&& numActive < maxBuilders
+				&& now - lastScaleUpTime >= scaleUpCooldownMillis) {
+			scaleUp("queue depth " + queueDepth + ", oldest wait " + oldestWait + " ms");
+		} else if (queueDepth == 0
+				&& now - idleSince >= scaleDownIdleMillis
+				&& numActive > minBuilders
+				&& now - lastScaleDownTime >= scaleDownCooldownMillis
+				&& now - lastScaleUpTime >= scaleDownCooldownMillis) {
+			scaleDown("queue idle for " + (now - idleSince) + " ms");
+		}
+	}
+
+	/**
+	 * Start one more Builder, if the maximum has not been reached.
+	 * 
+	 * @param reason reason for scaling up (for logging)
+	 * @return true if a Builder was started
+	 */
+	public boolean scaleUp(String reason) {
+		ManagedBuilder builder;
+		synchronized (lock) {
+			if (countActive() >= maxBuilders) {
+				return false;
+			}
+			builder = new ManagedBuilder(chooseHost(), instanceNamePrefix + (++instanceCount), System.currentTimeMillis());
+			managedBuilderList.add(builder);
+			lastScaleUpTime = builder.startTime;
+		}
+		
+		logger.info("Autoscaler starting Builder {} ({})", builder, reason);
+		try {
+			launcher.start(builder.host, builder.instanceName);
+			return true;
+		} catch (IOException e) {
+			logger.error("Could not start Builder " + builder, e);
+			synchronized (lock) {
+				managedBuilderList.remove(builder);
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Drain the most recently started Builder, if the minimum has not been reached.
+	 * Draining happens in the background.
+	 * 
+	 * @param reason reason for scaling down (for logging)
+	 * @return true if a Builder is being drained
+	 */
+	public boolean scaleDown(String reason) {
+		final ManagedBuilder builder;
+		synchronized (lock) {
+			if (countActive() <= minBuilders) {
+				return false;
+			}
+			builder = findNewestActive();
+			builder.draining = true;
+			lastScaleDownTime = System.currentTimeMillis();
+		}
+		
+		logger.info("Autoscaler draining Builder {} ({})", builder, reason);
+		Thread drainThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain(builder);
+			}
+		}, "BuilderAutoscaler-drain-" + builder.instanceName);
+		drainThread.setDaemon(true);
+		drainThread.start();
+		return true;
+	}
+	
+	private void drain(ManagedBuilder builder) {
+		try {
+			launcher.drain(builder.host, builder.instanceName);
+			logger.info("Builder {} has exited", builder.instanceName);
+		} catch (IOException e) {
+			logger.error("Error draining Builder " + builder, e);
+		} finally {
+			synchronized (lock) {
+				managedBuilderList.remove(builder);
+			}
+		}
+	}
+	
+	/**
+	 * Stop the autoscaler and drain all of the Builders it started.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void shutdown() throws InterruptedException {
+		shutdownRequested = true;
+		if (thread != null) {
+			thread.interrupt();
+			thread.join();
+		}
+		
+		List<ManagedBuilder> toDrain = new ArrayList<ManagedBuilder>();
+		synchronized (lock) {
+			for (ManagedBuilder builder : managedBuilderList) {
+				if (!builder.draining) {
+					builder.draining = true;
+					toDrain.add(builder);
+				}
+			}
+		}
+		for (ManagedBuilder builder : toDrain) {
+			drain(builder);
+		}
+	}
+	
+	/**
+	 * @return number of Builders started by the autoscaler that are not draining
+	 */
+	public int getNumActiveBuilders() {
+		synchronized (lock) {
+			return countActive();
+		}
+	}
+	
+	/**
+	 * @return descriptions of all Builders started by the autoscaler
+	 */
+	public List<String> getManagedBuilderDescriptions() {
+		List<String> result = new ArrayList<String>();
+		synchronized (lock) {
+			for (ManagedBuilder builder : managedBuilderList) {
+				result.add(builder.toString());
+			}
+		}
+		return result;
+	}
+	
+	public int getMinBuilders() {
+		return minBuilders;
+	}
+	
+	public int getMaxBuilders() {
+		return maxBuilders;
+	}
+
+	private int countActive() {
+		int count = 0;
+		for (ManagedBuilder builder : managedBuilderList) {
+			if (!builder.draining) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	private ManagedBuilder findNewestActive() {
+		ManagedBuilder newest = null;
+		for (ManagedBuilder builder : managedBuilderList) {
+			if (!builder.draining && (newest == null || builder.startTime >= newest.startTime)) {
+				newest = builder;
+			}
+		}
+		return newest;
+	}
+
+	/**
+	 * Choose the host with the fewest active Builders.
+	 */
+	private String chooseHost() {
+		String best = null;
+		int bestCount = Integer.MAX_VALUE;
+		for (String host : hostList) {
+			int count = 0;
+			for (ManagedBuilder builder : managedBuilderList) {
+				if (!builder.draining && builder.host.equals(host)) {
+					count++;
+				}
+			}
+			if (count < bestCount) {
+				best = host;
+				bestCount = count;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,135 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.UnknownHostException;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509KeyManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Create the TLS server socket that Builders connect to.
+ * Used by {@link OutOfProcessSubmitService}, and by tools (such as the
+ * submission replay tool) that need to accept connections from real
+ * Builders without running inside the webapp.
+ * 
+ * @author David Hovemeyer
+ */
+public class BuilderServerSocketFactory {
+	private static final Logger logger=LoggerFactory.getLogger(BuilderServerSocketFactory.class);
+
+	/**
+	 * Create the TLS server socket that Builders connect to.
+	 * 
+	 * @param port             the port to listen on
+	 * @param keystoreFilename classpath resource name of the keystore
+	 *                         (defaultkeystore.jks is used if it can't be found)
+	 * @param keystorePassword the keystore password
+	 * @return the server socket
+	 */
+	public static ServerSocket createSSLServerSocket(int port, String keystoreFilename, String keystorePassword)
+	throws IOException, UnknownHostException, KeyStoreException, NoSuchAlgorithmException, CertificateException, NoSuchProviderException, UnrecoverableKeyException, KeyManagementException
+	{
+	    String keyStoreType="JKS";
+        InputStream keyStoreInputStream=BuilderServerSocketFactory.class.getClassLoader().getResourceAsStream(keystoreFilename);
+        if (keyStoreInputStream == null) {
+            logger.warn("Could not find keystore file {}, will try defaultkeystore.jks", keystoreFilename);
+            //XXX hack; these are the defaults.  Would be nice for
+            keystoreFilename="defaultkeystore.jks";
+            keystorePassword="changeit";
+            keyStoreInputStream=BuilderServerSocketFactory.class.getClassLoader().getResourceAsStream("defaultkeystore.jks");
+            if (keyStoreInputStream == null) {
+        	        throw new IOException("Could not load keystore from resource " + keystoreFilename);
+            }
+        }
+        
+        logger.info("Using keystore {}", keystoreFilename);
+        
+        // Load the keystore
+        KeyStore keyStore = KeyStore.getInstance(keyStoreType);
+        keyStore.load(keyStoreInputStream, keystorePassword.toCharArray());
+
+        TrustManagerFactory trustManagerFactory=TrustManagerFactory.getInstance("PKIX", "SunJSSE");
+        //trustManagerFactory.init(trustStore);
+        // XXX Load the cert (public key) here instead of the private key?
+        trustManagerFactory.init(keyStore);
+
+        // TrustManager
+        X509TrustManager x509TrustManager = null;
+        for (TrustManager trustManager : trustManagerFactory.getTrustManagers()) {
+            if (trustManager instanceof X509TrustManager) {
+                x509TrustManager = (X509TrustManager) trustManager;
+                break;
+            }
+        }
+        if (x509TrustManager == null) {
+            throw new IllegalArgumentException("Cannot find x509TrustManager");
+        }
+
+        // KeyManager
+        KeyManagerFactory keyManagerFactory =
+                KeyManagerFactory.getInstance("SunX509", "SunJSSE");
+        keyManagerFactory.init(keyStore, keystorePassword.toCharArray());
+        X509KeyManager x509KeyManager = null;
+        for (KeyManager keyManager : keyManagerFactory.getKeyManagers()) {
+            if (keyManager instanceof X509KeyManager) {
+                x509KeyManager = (X509KeyManager) keyManager;
+                break;
+            }
+        }
+        if (x509KeyManager == null) {
+            throw new NullPointerException();
+        }
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        // the final null means use the default secure random source
+        sslContext.init(new KeyManager[]{x509KeyManager},
+                new TrustManager[]{x509TrustManager}, null);
+
+        SSLServerSocketFactory serverSocketFactory =
+                sslContext.getServerSocketFactory();
+        SSLServerSocket serverSocket =
+                (SSLServerSocket) serverSocketFactory.createServerSocket(port);
+
+        //serverSocket.setNeedClientAuth(true);
+        serverSocket.setNeedClientAuth(false);
+        // prevent older protocols from being used, especially SSL2 which is insecure
+        serverSocket.setEnabledProtocols(new String[]{"TLSv1"});
+        return serverSocket;
+	}
+}
@@ -0,0 +1,111 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link IBuilderLauncher} that controls Builder daemons using the
+ * Builder's daemon controller commands ("start" and "shutdown").
+ * Builders on the local host are started directly; Builders on other
+ * hosts are started using ssh, which must be configured to allow
+ * non-interactive logins.
+ * 
+ * @author David Hovemeyer
+ */
+public class DaemonBuilderLauncher implements IBuilderLauncher {
+	private static final Logger logger = LoggerFactory.getLogger(DaemonBuilderLauncher.class);
+
+	private String builderCommand;
+	private String builderDir;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param builderCommand  command that runs the Builder's daemon controller,
+	 *                        e.g., "java -jar cloudcoderBuilder.jar"
+	 * @param builderDir      directory (on each host) to run the command in
+	 */
+	public DaemonBuilderLauncher(String builderCommand, String builderDir) {
+		this.builderCommand = builderCommand;
+		this.builderDir = builderDir;
+	}
+	
+	@Override
+	public void start(String host, String instanceName) throws IOException {
+		runCommand(host, instanceName, "start");
+	}
+	
+	@Override
+	public void drain(String host, String instanceName) throws IOException {
+		// The daemon's shutdown command waits for the Builder threads
+		// to finish their current submissions
+		runCommand(host, instanceName, "shutdown");
+	}
+
+	private void runCommand(String host, String instanceName, String daemonCommand) throws IOException {
+		String cmd = builderCommand + " --instance=" + instanceName + " " + daemonCommand;
+		
+		List<String> args = new ArrayList<String>();
+		ProcessBuilder pb = new ProcessBuilder(args);
+		if (isLocalHost(host)) {
+			args.addAll(Arrays.asList(cmd.trim().split("\\s+")));
+			pb.directory(new File(builderDir));
+		} else {
+			args.add("ssh");
+			args.add(host);
+			args.add("cd '" + builderDir + "' && " + cmd);
+		}
+		pb.redirectErrorStream(true);
+		
+		logger.info("Running {} on {}", cmd, host);
+		Process process = pb.start();
+		
+		// Discard output, so the process can't block writing it
+		InputStream in = process.getInputStream();
+		try {
+			byte[] buf = new byte[4096];
+			while (in.read(buf) >= 0) {
+				// discard
+			}
+		} finally {
+			in.close();
+		}
+		
+		try {
+			int exitCode = process.waitFor();
+			if (exitCode != 0) {
+				throw new IOException(cmd + " on " + host + " exited with code " + exitCode);
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted waiting for " + cmd + " on " + host);
+		}
+	}
+
+	private static boolean isLocalHost(String host) {
+		return host.equals("localhost") || host.equals("127.0.0.1");
+	}
+}
@@ -0,0 +1,49 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.IOException;
+
+/**
+ * Interface for starting and stopping Builder daemon processes
+ * on behalf of a {@link BuilderAutoscaler}.
+ * 
+ * @author David Hovemeyer
+ */
+public interface IBuilderLauncher {
+	/**
+	 * Start a Builder daemon instance.  Returns once the daemon
+	 * has been launched (not necessarily once it has connected).
+	 * 
+	 * @param host          the host to start the Builder on
+	 * @param instanceName  the daemon instance name
+	 * @throws IOException if the Builder could not be started
+	 */
+	public void start(String host, String instanceName) throws IOException;
+	
+	/**
+	 * Gracefully shut down a Builder daemon instance: the Builder
+	 * finishes any submission it is currently testing before exiting.
+	 * Blocks until the daemon has exited.
+	 * 
+	 * @param host          the host the Builder is running on
+	 * @param instanceName  the daemon instance name
+	 * @throws IOException if the Builder could not be shut down
+	 */
+	public void drain(String host, String instanceName) throws IOException;
+}
@@ -19,11 +19,15 @@ package org.cloudcoder.app.server.submitsvc.oop;
 
 import java.util.List;
 
+import org.cloudcoder.app.server.persist.ReadYourWrites;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.Submission;
 import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
 import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionState;
+import org.cloudcoder.app.shared.model.SubmissionType;
 import org.cloudcoder.app.shared.model.TestCase;
 
 /**
@@ -35,13 +39,32 @@ import org.cloudcoder.app.shared.model.TestCase;
 public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 	private Object lock = new Object();
 	private Submission submission;
+	private SubmissionType submissionType;
+	private long enqueueTime;
+	private volatile boolean cancelled;
 	private boolean ready;
 	private SubmissionResult submissionResult;
 	private Exception error;
 	private int numAttempts;
+	private SubmissionJournal journal;
+	private long journalId;
+	private boolean delivered;
+	private SubmissionReceiptPersister persister;
+	private int userId;
+	private int changeEventId;
+	private String sessionKey;
+	private SubmissionRegistry registry;
+	private int submissionId;
+	private SubmissionReceipt receipt;
 	
 	public OOPBuildServiceSubmission(Submission submission) {
+		this(submission, SubmissionType.FULL);
+	}
+	
+	public OOPBuildServiceSubmission(Submission submission, SubmissionType submissionType) {
 		this.submission = submission;
+		this.submissionType = submissionType;
+		this.enqueueTime = System.currentTimeMillis();
 	}
 	
 	/* (non-Javadoc)
@@ -78,6 +101,170 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 		}
 	}
 	
+	/**
+	 * Record this submission's events in given {@link SubmissionJournal},
+	 * so that it can be recovered if the webapp restarts before its result
+	 * is delivered.
+	 * 
+	 * @param journal   the {@link SubmissionJournal}
+	 * @param journalId the submission's journal id
+	 */
+	public void setJournal(SubmissionJournal journal, long journalId) {
+		this.journal = journal;
+		this.journalId = journalId;
+	}
+	
+	/**
+	 * Have the {@link SubmissionReceipt} for this submission stored
+	 * by given {@link SubmissionReceiptPersister} when testing completes,
+	 * before the submission becomes ready.
+	 * 
+	 * @param persister     the {@link SubmissionReceiptPersister}
+	 * @param userId        the id of the user who made the submission
+	 * @param changeEventId the event id of the full-text change containing the program text
+	 */
+	public void setReceiptPersister(SubmissionReceiptPersister persister, int userId, int changeEventId) {
+		this.persister = persister;
+		this.userId = userId;
+		this.changeEventId = changeEventId;
+	}
+	
+	/**
+	 * Set the {@link ReadYourWrites} session key of the user who made
+	 * the submission, so that storing the receipt (in another thread)
+	 * counts as a write by the user's session.
+	 * 
+	 * @param sessionKey the session key, or null if there is none
+	 */
+	public void setSessionKey(String sessionKey) {
+		this.sessionKey = sessionKey;
+	}
+	
+	/**
+	 * @return the {@link ReadYourWrites} session key of the user who made
+	 *         the submission, or null if there is none
+	 */
+	public String getSessionKey() {
+		return sessionKey;
+	}
+	
+	/**
+	 * @return the id of the user who made the submission
+	 */
+	public int getUserId() {
+		return userId;
+	}
+	
+	/**
+	 * @return the event id of the full-text change containing the program text
+	 */
+	public int getChangeEventId() {
+		return changeEventId;
+	}
+	
+	/**
+	 * Track this submission's state in given {@link SubmissionRegistry},
+	 * and publish its result there when it becomes ready.
+	 * 
+	 * @param registry     the {@link SubmissionRegistry}
+	 * @param submissionId the submission id
+	 */
+	public void setRegistry(SubmissionRegistry registry, int submissionId) {
+		this.registry = registry;
+		this.submissionId = submissionId;
+	}
+	
+	/**
+	 * @param receipt the stored {@link SubmissionReceipt} for this submission
+	 */
+	public void setReceipt(SubmissionReceipt receipt) {
+		this.receipt = receipt;
+	}
+	
+	/**
+	 * Called when this submission is sent to a Builder.
+	 */
+	public void dispatched() {
+		if (journal != null) {
+			journal.dispatched(journalId);
+		}
+		if (registry != null) {
+			registry.setState(submissionId, SubmissionState.DISPATCHED);
+		}
+	}
+	
+	/**
+	 * Called when the Builder has been sent the program text
+	 * and is compiling and testing it.
+	 */
+	public void testing() {
+		if (registry != null) {
+			registry.setState(submissionId, SubmissionState.TESTING);
+		}
+	}
+	
+	/**
+	 * Called when testing could not be completed and this submission
+	 * is being put back in the queue.
+	 */
+	public void requeued() {
+		if (registry != null) {
+			registry.setState(submissionId, SubmissionState.QUEUED);
+		}
+	}
+	
+	/**
+	 * Record (once) that this submission's result has been delivered
+	 * (its receipt has been stored), so it won't be recovered if the
+	 * webapp restarts.
+	 */
+	protected void markDelivered() {
+		synchronized (lock) {
+			if (journal == null || delivered) {
+				return;
+			}
+			delivered = true;
+		}
+		journal.delivered(journalId);
+	}
+	
+	/**
+	 * @return true if this submission was recovered from the {@link SubmissionJournal}
+	 *         after a restart
+	 */
+	public boolean isRecovered() {
+		return false;
+	}
+	
+	/**
+	 * @return the {@link SubmissionType}
+	 */
+	public SubmissionType getSubmissionType() {
+		return submissionType;
+	}
+	
+	/**
+	 * @return the time (in milliseconds since the epoch) when this submission was created
+	 */
+	public long getEnqueueTime() {
+		return enqueueTime;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult#cancel()
+	 */
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * @return true if this submission has been cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
 	public void setSubmissionResult(SubmissionResult result) {
 		this.submissionResult = result;
 	}
@@ -85,6 +272,29 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 	public void setError(Exception e) {
 		this.error = e;
 	}
+
+	/**
+	 * @return the {@link SubmissionResult}, or null if testing did not complete
+	 */
+	public SubmissionResult getSubmissionResult() {
+		return submissionResult;
+	}
+	
+	/**
+	 * @return the error that prevented testing from completing, or null if there was none
+	 */
+	public Exception getError() {
+		return error;
+	}
+	
+	/**
+	 * @return true if testing has completed (or been given up on)
+	 */
+	public boolean isReady() {
+		synchronized (lock) {
+			return ready;
+		}
+	}
 	
 	/**
 	 * Mark this submission as being "ready", meaning that
@@ -92,8 +302,27 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 	 * completed due to repeated failures, and we've given up.
 	 * Either setSubmissionResult() or setError()
 	 * must be called before setting ready to true.
+	 * If there is a {@link SubmissionReceiptPersister}, the submission
+	 * becomes ready once its receipt has been stored.
 	 */
 	public void setReady() {
+		if (journal != null) {
+			journal.completed(journalId, submissionResult, error);
+		}
+		if (persister != null) {
+			persister.persist(this);
+		} else {
+			publish();
+		}
+	}
+	
+	/**
+	 * Make the result of this submission available.
+	 */
+	protected void publish() {
+		if (registry != null) {
+			registry.publish(submissionId, submissionResult, error, receipt);
+		}
 		synchronized (lock) {
 			this.ready = true;
 			lock.notifyAll();
@@ -17,36 +17,37 @@
 
 package org.cloudcoder.app.server.submitsvc.oop;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.UnknownHostException;
-import java.security.KeyManagementException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.net.ssl.KeyManager;
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.SSLServerSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
-import javax.net.ssl.X509KeyManager;
-import javax.net.ssl.X509TrustManager;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.ReadYourWrites;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
 import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.QueuedSubmissionStatus;
 import org.cloudcoder.app.shared.model.Submission;
 import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionInfo;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionState;
+import org.cloudcoder.app.shared.model.SubmissionType;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,20 +72,41 @@ public class OutOfProcessSubmitService implements ISubmitService, ServletContext
 	}
 	
 	public static final int DEFAULT_PORT = 47374;
+	
+	private static final int MAX_RECOVERY_ATTEMPTS = 60;
 
 	private ServerTask serverTask;
 	private Thread serverThread;
+	private SharedSubmissionQueue sharedQueue;
+	private SubmissionJournal journal;
+	private SubmissionReceiptPersister persister;
+	private SubmissionRegistry registry;
+	private Map<String, RecoveredSubmission> recoveredSubmissions = new ConcurrentHashMap<String, RecoveredSubmission>();
+	private BuilderAutoscaler autoscaler;
 	private String keystoreFilename;
 	private String keystorePassword;
 	
 	@Override
-	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText) 
+	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, Change fullTextChange) 
 	throws SubmissionException 
 	{
+		String programText = fullTextChange.getText();
+		int userId = fullTextChange.getEvent().getUserId();
+		int changeEventId = fullTextChange.getEventId();
+		
 		if (serverTask == null) {
 			throw new IllegalStateException();
 		}
 		
+		if (sharedQueue != null) {
+			// Multi-node mode: a Builder connected to any node may test
+			// the submission
+			SharedQueueFutureSubmissionResult future =
+					sharedQueue.submit(problem, userId, changeEventId, programText, SubmissionType.FULL);
+			registry.register(changeEventId, userId, problem.getProblemId(), System.currentTimeMillis(), future);
+			return future;
+		}
+		
 		if (serverTask.getNumWorkerTasks() == 0) {
 			// If no remote Builder threads are connected and running,
 			// then there is no point in adding this submission to the queue,
@@ -93,83 +115,142 @@ public class OutOfProcessSubmitService implements ISubmitService, ServletContext
 			throw new SubmissionException("Cannot test submission: no Builders are available");
 		}
 
-		// Add the submission to the queue.
-		OOPBuildServiceSubmission future = new OOPBuildServiceSubmission(
+		// Add the submission to the queue.  When testing completes, the
+		// receipt is stored and the result is published in the registry,
+		// where the returned future will find it.
+		OOPBuildServiceSubmission submission = new OOPBuildServiceSubmission(
 				new Submission(problem, testCaseList, programText));
-		serverTask.submit(future);
+		submission.setReceiptPersister(persister, userId, changeEventId);
+		submission.setSessionKey(ReadYourWrites.getSessionKey());
+		registry.register(changeEventId, userId, problem.getProblemId(), submission.getEnqueueTime(), null);
+		submission.setRegistry(registry, changeEventId);
+		if (journal != null) {
+			// Record the submission before queueing it, so that it
+			// can be recovered if the webapp restarts
+			submission.setJournal(journal, journal.enqueued(problem.getProblemId(),
+					userId, changeEventId, programText));
+		}
+		try {
+			serverTask.submit(submission);
+		} catch (SubmissionException e) {
+			registry.publish(changeEventId, null, e, null);
+			throw e;
+		}
+		
+		return new StoredFutureSubmissionResult(changeEventId);
+	}
+	
+	@Override
+	public IFutureSubmissionResult submitCompileOnlyAsync(Problem problem, List<TestCase> testCaseList, String programText) {
+		if (serverTask == null) {
+			throw new IllegalStateException();
+		}
+		
+		// Compile-only submissions go in their own lane of the queue,
+		// and are shed if the Builders are busy
+		if (sharedQueue != null) {
+			if (sharedQueue.shouldShedCompileOnly()) {
+				logger.debug("Shedding compile-only submission");
+				return null;
+			}
+			return sharedQueue.submit(problem, 0, 0, programText, SubmissionType.COMPILE_ONLY);
+		}
+		OOPBuildServiceSubmission future = new OOPBuildServiceSubmission(
+				new Submission(problem, testCaseList, programText), SubmissionType.COMPILE_ONLY);
+		if (!serverTask.submitCompileOnly(future)) {
+			logger.debug("Shedding compile-only submission");
+			return null;
+		}
 		
 		return future;
 	}
 	
-	private ServerSocket createSSLServerSocket(int port)
-	throws IOException, UnknownHostException, KeyStoreException, NoSuchAlgorithmException, CertificateException, NoSuchProviderException, UnrecoverableKeyException, KeyManagementException
-	{
-	    String keyStoreType="JKS";
-        InputStream keyStoreInputStream=this.getClass().getClassLoader().getResourceAsStream(keystoreFilename);
-        if (keyStoreInputStream == null) {
-            logger.warn("Could not find keystore file {}, will try defaultkeystore.jks", keystoreFilename);
-            //XXX hack; these are the defaults.  Would be nice for
-            keystoreFilename="defaultkeystore.jks";
-            keystorePassword="changeit";
-            keyStoreInputStream=this.getClass().getClassLoader().getResourceAsStream("defaultkeystore.jks");
-            if (keyStoreInputStream == null) {
-        	        throw new IOException("Could not load keystore from resource " + keystoreFilename);
-            }
-        }
-        
-        logger.info("Using keystore {}", keystoreFilename);
-        
-        // Load the keystore
-        KeyStore keyStore = KeyStore.getInstance(keyStoreType);
-        keyStore.load(keyStoreInputStream, keystorePassword.toCharArray());
-
-        TrustManagerFactory trustManagerFactory=TrustManagerFactory.getInstance("PKIX", "SunJSSE");
-        //trustManagerFactory.init(trustStore);
-        // XXX Load the cert (public key) here instead of the private key?
-        trustManagerFactory.init(keyStore);
-
-        // TrustManager
-        X509TrustManager x509TrustManager = null;
-        for (TrustManager trustManager : trustManagerFactory.getTrustManagers()) {
-            if (trustManager instanceof X509TrustManager) {
-                x509TrustManager = (X509TrustManager) trustManager;
-                break;
-            }
-        }
-        if (x509TrustManager == null) {
-            throw new IllegalArgumentException("Cannot find x509TrustManager");
-        }
-
-        // KeyManager
-        KeyManagerFactory keyManagerFactory =
-                KeyManagerFactory.getInstance("SunX509", "SunJSSE");
-        keyManagerFactory.init(keyStore, keystorePassword.toCharArray());
-        X509KeyManager x509KeyManager = null;
-        for (KeyManager keyManager : keyManagerFactory.getKeyManagers()) {
-            if (keyManager instanceof X509KeyManager) {
-                x509KeyManager = (X509KeyManager) keyManager;
-                break;
-            }
-        }
-        if (x509KeyManager == null) {
-            throw new NullPointerException();
-        }
-
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        // the final null means use the default secure random source
-        sslContext.init(new KeyManager[]{x509KeyManager},
-                new TrustManager[]{x509TrustManager}, null);
-
-        SSLServerSocketFactory serverSocketFactory =
-                sslContext.getServerSocketFactory();
-        SSLServerSocket serverSocket =
-                (SSLServerSocket) serverSocketFactory.createServerSocket(port);
-
-        //serverSocket.setNeedClientAuth(true);
-        serverSocket.setNeedClientAuth(false);
-        // prevent older protocols from being used, especially SSL2 which is insecure
-        serverSocket.setEnabledProtocols(new String[]{"TLSv1"});
-        return serverSocket;
+	@Override
+	public IFutureSubmissionResult getRecoveredSubmission(int userId, int problemId) {
+		if (recoveredSubmissions.isEmpty()) {
+			return null;
+		}
+		
+		// Forget recovered submissions outside the retention window
+		long cutoff = System.currentTimeMillis() - journal.getRetentionMillis();
+		for (Iterator<RecoveredSubmission> i = recoveredSubmissions.values().iterator(); i.hasNext(); ) {
+			if (i.next().getEnqueueTime() < cutoff) {
+				i.remove();
+			}
+		}
+		
+		String key = userId + ":" + problemId;
+		RecoveredSubmission submission = recoveredSubmissions.get(key);
+		if (submission != null && submission.isReady()) {
+			// The result is being delivered
+			recoveredSubmissions.remove(key);
+		}
+		return submission;
+	}
+	
+	@Override
+	public SubmissionInfo getSubmissionInfo(int userId, int submissionId) {
+		SubmissionRegistry.RegisteredSubmission entry = registry.get(submissionId);
+		if (entry != null && entry.getUserId() == userId && entry.getFuture() != null && !entry.isDone()) {
+			// Multi-node mode: check on the submission in the shared queue
+			SharedQueueFutureSubmissionResult future = (SharedQueueFutureSubmissionResult) entry.getFuture();
+			try {
+				SubmissionResult result = future.poll();
+				if (result != null) {
+					registry.publish(submissionId, result, null,
+							Database.getInstance().getSubmissionReceiptForChange(userId, submissionId));
+				} else if (future.getLastStatus() == QueuedSubmissionStatus.CLAIMED) {
+					registry.setState(submissionId, SubmissionState.TESTING);
+				}
+			} catch (SubmissionException e) {
+				registry.publish(submissionId, null, e, null);
+			}
+		}
+		
+		SubmissionInfo info = registry.getInfo(submissionId, userId);
+		if (info == null) {
+			// Not registered (the webapp restarted, the submission was made
+			// on another node, or it was forgotten): if it's done, its
+			// receipt and test results are in the database
+			info = getStoredSubmissionInfo(userId, submissionId);
+		}
+		return info;
+	}
+	
+	/**
+	 * Get a {@link SubmissionInfo} for a finished submission from its
+	 * stored {@link SubmissionReceipt}.  Compiler diagnostics aren't stored,
+	 * so the {@link SubmissionResult} has only the compilation outcome.
+	 */
+	private SubmissionInfo getStoredSubmissionInfo(int userId, int submissionId) {
+		SubmissionReceipt receipt = Database.getInstance().getSubmissionReceiptForChange(userId, submissionId);
+		if (receipt == null) {
+			return null;
+		}
+		
+		CompilationOutcome outcome;
+		switch (receipt.getStatus()) {
+		case COMPILE_ERROR:
+			outcome = CompilationOutcome.FAILURE;
+			break;
+		case BUILD_ERROR:
+			outcome = CompilationOutcome.BUILDER_ERROR;
+			break;
+		default:
+			outcome = CompilationOutcome.SUCCESS;
+			break;
+		}
+		SubmissionResult result = new SubmissionResult(new CompilationResult(outcome));
+		result.setTestResults(Database.getInstance().getTestResultsForSubmission(receipt.getEventId()));
+		
+		SubmissionInfo info = new SubmissionInfo();
+		info.setSubmissionId(submissionId);
+		info.setProblemId(receipt.getEvent().getProblemId());
+		info.setState(SubmissionState.DONE);
+		info.setDoneTime(receipt.getEvent().getTimestamp());
+		info.setResult(result);
+		info.setReceipt(receipt);
+		return info;
 	}
 	
 	public void start(int port) throws IOException {
@@ -177,7 +258,7 @@ public class OutOfProcessSubmitService implements ISubmitService, ServletContext
 	    ServerSocket serverSocket = null;
 		
 		try {
-	        serverSocket=createSSLServerSocket(port);
+	        serverSocket=BuilderServerSocketFactory.createSSLServerSocket(port, keystoreFilename, keystorePassword);
 	        if (serverSocket==null) {
 	            logger.error("Null SSLServerSocket");
 	            throw new RuntimeException("Null SSLServerSocket");
@@ -188,15 +269,276 @@ public class OutOfProcessSubmitService implements ISubmitService, ServletContext
 		    throw new RuntimeException(e);
 		}
 		
-		serverTask = new ServerTask(serverSocket);
+		serverTask = new ServerTask(serverSocket, sharedQueue != null ? sharedQueue : new SubmissionQueue());
 		serverThread = new Thread(serverTask);
 		serverThread.start();
 		logger.info("Out of process submit service server thread started");
 	}
 	
+	/**
+	 * @return number of full submissions waiting for a Builder
+	 */
+	public int getQueueDepth() {
+		return serverTask.getQueueDepth();
+	}
+	
+	/**
+	 * @return number of milliseconds the oldest waiting submission has been waiting
+	 */
+	public long getOldestWaitMillis() {
+		return serverTask.getOldestWaitMillis();
+	}
+	
+	/**
+	 * @return number of Builder threads currently connected
+	 */
+	public int getNumBuilderConnections() {
+		return serverTask.getNumWorkerTasks();
+	}
+	
+	/**
+	 * @return the {@link SharedSubmissionQueue}, or null if multi-node mode is not enabled
+	 */
+	public SharedSubmissionQueue getSharedQueue() {
+		return sharedQueue;
+	}
+	
+	/**
+	 * @return the {@link SubmissionRegistry} tracking full submissions
+	 */
+	public SubmissionRegistry getRegistry() {
+		return registry;
+	}
+	
+	/**
+	 * @return number of completed submissions whose receipts are waiting to be stored
+	 */
+	public int getReceiptQueueDepth() {
+		return persister.getQueueDepth();
+	}
+	
+	/**
+	 * @return the {@link BuilderAutoscaler}, or null if autoscaling is not enabled
+	 */
+	public BuilderAutoscaler getAutoscaler() {
+		return autoscaler;
+	}
+	
+	/**
+	 * Start a {@link BuilderAutoscaler} if enabled by the
+	 * <code>cloudcoder.autoscaler.*</code> context parameters.
+	 */
+	private void startAutoscaler(ServletContext ctx) {
+		if (!Boolean.parseBoolean(getParam(ctx, "cloudcoder.autoscaler.enabled", "false"))) {
+			return;
+		}
+		
+		List<String> hostList = new ArrayList<String>();
+		for (String host : getParam(ctx, "cloudcoder.autoscaler.hosts", "localhost").split(",")) {
+			if (!host.trim().equals("")) {
+				hostList.add(host.trim());
+			}
+		}
+		
+		IBuilderLauncher launcher = new DaemonBuilderLauncher(
+				getParam(ctx, "cloudcoder.autoscaler.builderCommand", "java -jar cloudcoderBuilder.jar"),
+				getParam(ctx, "cloudcoder.autoscaler.builderDir", "."));
+		autoscaler = new BuilderAutoscaler(
+				serverTask,
+				launcher,
+				hostList,
+				Integer.parseInt(getParam(ctx, "cloudcoder.autoscaler.minBuilders", "0")),
+				Integer.parseInt(getParam(ctx, "cloudcoder.autoscaler.maxBuilders", "4")));
+		autoscaler.setScaleUpWaitMillis(Long.parseLong(getParam(ctx, "cloudcoder.autoscaler.scaleUpWaitMillis",
+				String.valueOf(BuilderAutoscaler.DEFAULT_SCALE_UP_WAIT_MILLIS))));
+		autoscaler.setScaleDownIdleMillis(Long.parseLong(getParam(ctx, "cloudcoder.autoscaler.scaleDownIdleMillis",
+				String.valueOf(BuilderAutoscaler.DEFAULT_SCALE_DOWN_IDLE_MILLIS))));
+		autoscaler.setScaleUpCooldownMillis(Long.parseLong(getParam(ctx, "cloudcoder.autoscaler.scaleUpCooldownMillis",
+				String.valueOf(BuilderAutoscaler.DEFAULT_SCALE_UP_COOLDOWN_MILLIS))));
+		autoscaler.setScaleDownCooldownMillis(Long.parseLong(getParam(ctx, "cloudcoder.autoscaler.scaleDownCooldownMillis",
+				String.valueOf(BuilderAutoscaler.DEFAULT_SCALE_DOWN_COOLDOWN_MILLIS))));
+		autoscaler.start();
+		logger.info("Builder autoscaler started, hosts={}", hostList);
+	}
+	
+	/**
+	 * Create the {@link SubmissionReceiptPersister}, configured by the
+	 * <code>cloudcoder.submitsvc.receipts.*</code> context parameters,
+	 * and the {@link SubmissionRegistry}.
+	 */
+	private void createReceiptPersister(ServletContext ctx) {
+		persister = new SubmissionReceiptPersister(
+				Integer.parseInt(getParam(ctx, "cloudcoder.submitsvc.receipts.numThreads",
+						String.valueOf(SubmissionReceiptPersister.DEFAULT_NUM_THREADS))),
+				Integer.parseInt(getParam(ctx, "cloudcoder.submitsvc.receipts.queueCapacity",
+						String.valueOf(SubmissionReceiptPersister.DEFAULT_QUEUE_CAPACITY))));
+		registry = new SubmissionRegistry(
+				Integer.parseInt(getParam(ctx, "cloudcoder.submitsvc.receipts.maxResults",
+						String.valueOf(SubmissionRegistry.DEFAULT_MAX_ENTRIES))),
+				Long.parseLong(getParam(ctx, "cloudcoder.submitsvc.receipts.resultRetentionMillis",
+						String.valueOf(SubmissionRegistry.DEFAULT_RETENTION_MILLIS))));
+	}
+	
+	/**
+	 * Create a {@link SharedSubmissionQueue} if multi-node mode is enabled
+	 * by the <code>cloudcoder.submitsvc.shared.*</code> context parameters.
+	 * In multi-node mode, several webapp nodes share one database, and
+	 * submissions are queued in the database, so that Builders connected
+	 * to any node can test submissions made on any node.
+	 */
+	private void createSharedQueue(ServletContext ctx, int port) {
+		if (!Boolean.parseBoolean(getParam(ctx, "cloudcoder.submitsvc.shared.enabled", "false"))) {
+			return;
+		}
+		
+		String nodeName = getParam(ctx, "cloudcoder.submitsvc.shared.nodeName", "").trim();
+		if (nodeName.equals("")) {
+			// Host name and submit service port identify the node,
+			// even when several nodes run on the same host
+			try {
+				nodeName = InetAddress.getLocalHost().getHostName() + ":" + port;
+			} catch (UnknownHostException e) {
+				nodeName = "localhost:" + port;
+			}
+		}
+		if (nodeName.length() > 100) {
+			nodeName = nodeName.substring(0, 100);
+		}
+		
+		sharedQueue = new SharedSubmissionQueue(nodeName);
+		sharedQueue.setReceiptPersister(persister);
+		sharedQueue.setClaimTimeoutMillis(Long.parseLong(getParam(ctx, "cloudcoder.submitsvc.shared.claimTimeoutMillis",
+				String.valueOf(SharedSubmissionQueue.DEFAULT_CLAIM_TIMEOUT_MILLIS))));
+		sharedQueue.setMaxPendingMillis(Long.parseLong(getParam(ctx, "cloudcoder.submitsvc.shared.maxPendingMillis",
+				String.valueOf(SharedSubmissionQueue.DEFAULT_MAX_PENDING_MILLIS))));
+		sharedQueue.setResultRetentionMillis(Long.parseLong(getParam(ctx, "cloudcoder.submitsvc.shared.resultRetentionMillis",
+				String.valueOf(SharedSubmissionQueue.DEFAULT_RESULT_RETENTION_MILLIS))));
+		logger.info("Using shared submission queue, node name is {}", nodeName);
+	}
+	
+	/**
+	 * Open the {@link SubmissionJournal} if one is configured by the
+	 * <code>cloudcoder.submitsvc.journal.*</code> context parameters.
+	 * The journal isn't needed in multi-node mode, since the shared
+	 * submission queue is stored in the database.
+	 */
+	private void openJournal(ServletContext ctx) throws IOException {
+		String fileName = getParam(ctx, "cloudcoder.submitsvc.journal.file", "").trim();
+		if (fileName.equals("")) {
+			return;
+		}
+		if (sharedQueue != null) {
+			logger.info("Submission journal is not used with the shared submission queue");
+			return;
+		}
+		
+		SubmissionJournal journal = new SubmissionJournal(new File(fileName));
+		journal.setRetentionMillis(Long.parseLong(getParam(ctx, "cloudcoder.submitsvc.journal.retentionMillis",
+				String.valueOf(SubmissionJournal.DEFAULT_RETENTION_MILLIS))));
+		journal.setCompactBytes(Long.parseLong(getParam(ctx, "cloudcoder.submitsvc.journal.compactBytes",
+				String.valueOf(SubmissionJournal.DEFAULT_COMPACT_BYTES))));
+		final List<SubmissionJournal.Entry> entries = journal.recover();
+		this.journal = journal;
+		logger.info("Using submission journal {}", fileName);
+		
+		if (!entries.isEmpty()) {
+			// Recovery needs the database, which may not be configured yet
+			Thread recoveryThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					recoverSubmissions(entries);
+				}
+			}, "SubmissionJournal recovery");
+			recoveryThread.setDaemon(true);
+			recoveryThread.start();
+		}
+	}
+	
+	/**
+	 * Put submissions recovered from the journal back in the queue
+	 * (or, if testing completed, store their results).
+	 */
+	private void recoverSubmissions(List<SubmissionJournal.Entry> entries) {
+		int numRecovered = 0;
+		for (SubmissionJournal.Entry entry : entries) {
+			for (int attempt = 1; ; attempt++) {
+				try {
+					recoverSubmission(entry);
+					numRecovered++;
+					break;
+				} catch (RuntimeException e) {
+					if (attempt >= MAX_RECOVERY_ATTEMPTS) {
+						logger.error("Could not recover submission " + entry.getId() + " from journal", e);
+						break;
+					}
+					try {
+						Thread.sleep(1000L);
+					} catch (InterruptedException ie) {
+						return;
+					}
+				}
+			}
+		}
+		logger.info("Recovered {} submission(s) from journal", numRecovered);
+	}
+	
+	private void recoverSubmission(SubmissionJournal.Entry entry) {
+		Problem problem = Database.getInstance().getProblem(entry.getProblemId());
+		List<TestCase> testCaseList = (problem != null)
+				? Database.getInstance().getTestCasesForProblem(entry.getProblemId())
+				: null;
+		RecoveredSubmission submission = new RecoveredSubmission(
+				new Submission(problem, testCaseList, entry.getProgramText()), entry);
+		submission.setJournal(journal, entry.getId());
+		submission.setReceiptPersister(persister, entry.getUserId(), entry.getChangeEventId());
+		registry.register(entry.getChangeEventId(), entry.getUserId(), entry.getProblemId(), entry.getEnqueueTime(), null);
+		submission.setRegistry(registry, entry.getChangeEventId());
+		recoveredSubmissions.put(entry.getUserId() + ":" + entry.getProblemId(), submission);
+		
+		if (entry.isComplete()) {
+			// Testing completed, but the result was never delivered
+			try {
+				if (entry.getResult() != null) {
+					submission.setSubmissionResult(SharedSubmissionQueue.deserializeResult(entry.getResult()));
+				} else {
+					submission.setError(new SubmissionException(entry.getError() != null
+							? entry.getError()
+							: "Submission could not be tested"));
+				}
+			} catch (IOException e) {
+				submission.setError(e);
+			}
+			submission.setReady();
+		} else if (problem == null) {
+			submission.setError(new SubmissionException("Problem " + entry.getProblemId() + " no longer exists"));
+			submission.setReady();
+		} else {
+			try {
+				serverTask.submit(submission);
+			} catch (SubmissionException e) {
+				submission.setError(e);
+				submission.setReady();
+			}
+		}
+	}
+	
+	private static String getParam(ServletContext ctx, String name, String defaultValue) {
+		String value = ctx.getInitParameter(name);
+		return value != null ? value : defaultValue;
+	}
+	
 	public void shutdown() throws InterruptedException {
+		if (autoscaler != null) {
+			autoscaler.shutdown();
+			autoscaler = null;
+		}
 		serverTask.shutdown();
 		serverThread.join();
+		persister.shutdown();
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
 	}
 
 	@Override
@@ -218,7 +560,11 @@ public class OutOfProcessSubmitService implements ISubmitService, ServletContext
 			String p = event.getServletContext().getInitParameter("cloudcoder.submitsvc.oop.port");
 			int port = (p != null) ? Integer.parseInt(p) : DEFAULT_PORT;
 			
+			createReceiptPersister(event.getServletContext());
+			createSharedQueue(event.getServletContext(), port);
 			start(port);
+			openJournal(event.getServletContext());
+			startAutoscaler(event.getServletContext());
 			instance = this;
 		} catch (IOException e) {
 			throw new IllegalStateException("Could not create server thread for oop submit service", e);
@@ -0,0 +1,58 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+
+/**
+ * A submission recovered from the {@link SubmissionJournal} after a
+ * restart.  The session of the user who made the submission is gone,
+ * so the result is made available to the user's next poll by user and
+ * problem.  As with any other submission, the {@link SubmissionReceipt}
+ * is stored by the {@link SubmissionReceiptPersister} when testing completes,
+ * unless it was already stored before the restart (the webapp may have
+ * stopped after storing the receipt but before recording the delivery
+ * in the journal).
+ * 
+ * @author David Hovemeyer
+ */
+public class RecoveredSubmission extends OOPBuildServiceSubmission {
+	private final SubmissionJournal.Entry entry;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param submission the {@link Submission} (Problem, TestCases, and program text)
+	 * @param entry      the {@link SubmissionJournal.Entry} the submission was recovered from
+	 */
+	public RecoveredSubmission(Submission submission, SubmissionJournal.Entry entry) {
+		super(submission);
+		this.entry = entry;
+	}
+	
+	@Override
+	public boolean isRecovered() {
+		return true;
+	}
+	
+	@Override
+	public long getEnqueueTime() {
+		return entry.getEnqueueTime();
+	}
+}
@@ -20,7 +20,6 @@ package org.cloudcoder.app.server.submitsvc.oop;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.slf4j.Logger;
@@ -35,13 +34,24 @@ import org.slf4j.LoggerFactory;
 public class ServerTask implements Runnable {
     private static final Logger logger=LoggerFactory.getLogger(ServerTask.class);
 
-	private LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue;
+	private SubmissionQueue submissionQueue;
 	private ServerSocket serverSocket;
 	private WorkerTaskSet workerTaskSet;
 	private volatile boolean shutdownRequested;
 	
 	public ServerTask(ServerSocket serverSocket) {
-		this.submissionQueue = new LinkedBlockingQueue<OOPBuildServiceSubmission>();
+		this(serverSocket, new SubmissionQueue());
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param serverSocket    the server socket on which Builders connect
+	 * @param submissionQueue the {@link SubmissionQueue} from which the
+	 *                        {@link WorkerTask}s will take submissions
+	 */
+	public ServerTask(ServerSocket serverSocket, SubmissionQueue submissionQueue) {
+		this.submissionQueue = submissionQueue;
 		this.serverSocket = serverSocket;
 		this.workerTaskSet = new WorkerTaskSet();
 		this.shutdownRequested = false;
@@ -51,9 +61,39 @@ public class ServerTask implements Runnable {
 		return workerTaskSet.getNumWorkerTasks();
 	}
 	
+	/**
+	 * @return number of full submissions waiting for a Builder
+	 */
+	public int getQueueDepth() {
+		return submissionQueue.getNumFullPending();
+	}
+	
+	/**
+	 * @return number of milliseconds the oldest waiting full submission has been waiting
+	 */
+	public long getOldestWaitMillis() {
+		return submissionQueue.getOldestFullWaitMillis();
+	}
+	
 	public void submit(OOPBuildServiceSubmission submission) throws SubmissionException {
 		// add it to the queue so a worker can grab it	
-	    submissionQueue.add(submission);
+	    submissionQueue.offer(submission);
+	}
+	
+	/**
+	 * Submit a compile-only submission, unless the Builders are
+	 * busy with full submissions (in which case it is shed).
+	 * 
+	 * @param submission the compile-only submission
+	 * @return true if the submission was queued, false if it was shed
+	 */
+	public boolean submitCompileOnly(OOPBuildServiceSubmission submission) {
+		// If there are at least as many full submissions waiting as there
+		// are Builder connections, all Builders have real work to do
+		if (submissionQueue.getNumFullPending() >= workerTaskSet.getNumWorkerTasks()) {
+			return false;
+		}
+		return submissionQueue.offer(submission);
 	}
 	
 	@Override
@@ -0,0 +1,143 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.shared.model.QueuedSubmission;
+import org.cloudcoder.app.shared.model.QueuedSubmissionStatus;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link IFutureSubmissionResult} for a submission in the
+ * {@link SharedSubmissionQueue}.  The submission result is retrieved
+ * from the database by the queued submission's id, so it doesn't matter
+ * which node's Builder tested the submission.  Only the id is kept,
+ * so this object can be stored in (and replicated with) a session.
+ * 
+ * @author David Hovemeyer
+ */
+public class SharedQueueFutureSubmissionResult implements IFutureSubmissionResult, Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = LoggerFactory.getLogger(SharedQueueFutureSubmissionResult.class);
+	
+	private final int queuedSubmissionId;
+	private final long enqueueTime;
+	private final long maxPendingMillis;
+	private SubmissionResult result;
+	private QueuedSubmissionStatus lastStatus;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param queuedSubmissionId the id of the {@link QueuedSubmission}
+	 * @param enqueueTime        the time the submission was queued
+	 * @param maxPendingMillis   number of milliseconds the submission may wait without being claimed
+	 */
+	public SharedQueueFutureSubmissionResult(int queuedSubmissionId, long enqueueTime, long maxPendingMillis) {
+		this.queuedSubmissionId = queuedSubmissionId;
+		this.enqueueTime = enqueueTime;
+		this.maxPendingMillis = maxPendingMillis;
+	}
+	
+	/**
+	 * @return the id of the {@link QueuedSubmission}
+	 */
+	public int getQueuedSubmissionId() {
+		return queuedSubmissionId;
+	}
+	
+	/**
+	 * @return the status of the {@link QueuedSubmission} the last time
+	 *         it was polled, or null if it hasn't been polled
+	 */
+	public QueuedSubmissionStatus getLastStatus() {
+		return lastStatus;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult#poll()
+	 */
+	@Override
+	public SubmissionResult poll() throws SubmissionException {
+		if (result != null) {
+			return result;
+		}
+		
+		QueuedSubmission queuedSubmission = Database.getInstance().getQueuedSubmission(queuedSubmissionId);
+		if (queuedSubmission == null) {
+			throw new SubmissionException("Submission result is no longer available");
+		}
+		lastStatus = queuedSubmission.getStatus();
+		
+		switch (queuedSubmission.getStatus()) {
+		case PENDING:
+			if (System.currentTimeMillis() - enqueueTime > maxPendingMillis) {
+				// Nobody has claimed the submission: most likely no Builders
+				// are connected to any node.  Fail (unless it was claimed
+				// in the meantime) so there is an obvious diagnostic
+				// on the client side.
+				queuedSubmission.setStatus(QueuedSubmissionStatus.FAILED);
+				queuedSubmission.setError("Cannot test submission: no Builders are available");
+				if (Database.getInstance().updateQueuedSubmission(queuedSubmission, QueuedSubmissionStatus.PENDING, "")) {
+					throw new SubmissionException(queuedSubmission.getError());
+				}
+			}
+			return null;
+			
+		case CLAIMED:
+			return null;
+			
+		case COMPLETE:
+			try {
+				result = SharedSubmissionQueue.deserializeResult(queuedSubmission.getResult());
+			} catch (IOException e) {
+				throw new SubmissionException("Error testing submission", e);
+			}
+			return result;
+			
+		default:
+			throw new SubmissionException(queuedSubmission.getError() != null
+					? queuedSubmission.getError()
+					: "Error testing submission");
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult#cancel()
+	 */
+	@Override
+	public void cancel() {
+		// Only a submission that hasn't been claimed yet can be cancelled
+		QueuedSubmission queuedSubmission = new QueuedSubmission();
+		queuedSubmission.setId(queuedSubmissionId);
+		queuedSubmission.setStatus(QueuedSubmissionStatus.CANCELLED);
+		queuedSubmission.setError("Compile-only submission was superseded");
+		try {
+			Database.getInstance().updateQueuedSubmission(queuedSubmission, QueuedSubmissionStatus.PENDING, "");
+		} catch (RuntimeException e) {
+			logger.error("Error cancelling queued submission", e);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.IOException;
+
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.shared.model.QueuedSubmission;
+import org.cloudcoder.app.shared.model.QueuedSubmissionStatus;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A submission claimed from the {@link SharedSubmissionQueue}.
+ * When testing completes, the submission receipt and then the
+ * submission result (or error) are stored in the database, where
+ * the node that queued the submission can retrieve the result.
+ * 
+ * @author David Hovemeyer
+ */
+public class SharedQueueSubmission extends OOPBuildServiceSubmission {
+	private static final Logger logger = LoggerFactory.getLogger(SharedQueueSubmission.class);
+	
+	private final QueuedSubmission queuedSubmission;
+	private final String claimant;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param submission       the {@link Submission} (Problem, TestCases, and program text)
+	 * @param queuedSubmission the claimed {@link QueuedSubmission}
+	 * @param persister        the {@link SubmissionReceiptPersister} to store the
+	 *                         receipt of a full submission, or null if none
+	 */
+	public SharedQueueSubmission(Submission submission, QueuedSubmission queuedSubmission,
+			SubmissionReceiptPersister persister) {
+		super(submission, queuedSubmission.getSubmissionType());
+		this.queuedSubmission = queuedSubmission;
+		this.claimant = queuedSubmission.getClaimedBy();
+		
+		// The claim counts as an attempt, and the WorkerTask counts
+		// its own attempt before testing
+		setNumAttempts(queuedSubmission.getNumAttempts() - 1);
+		
+		// The node that tests a full submission stores its receipt
+		// (before storing the result, so a node polling for the result
+		// will find the receipt already stored)
+		if (queuedSubmission.getSubmissionType() == SubmissionType.FULL && persister != null) {
+			setReceiptPersister(persister, queuedSubmission.getUserId(), queuedSubmission.getChangeEventId());
+		}
+	}
+	
+	/**
+	 * @return the claimed {@link QueuedSubmission}
+	 */
+	public QueuedSubmission getQueuedSubmission() {
+		return queuedSubmission;
+	}
+	
+	@Override
+	public long getEnqueueTime() {
+		return queuedSubmission.getEnqueueTime();
+	}
+	
+	/**
+	 * Release the claim on this submission, so that it can be
+	 * claimed again (by any node).
+	 * 
+	 * @return true if the claim was released, false if the claim had already been lost
+	 */
+	public boolean release() {
+		queuedSubmission.setStatus(QueuedSubmissionStatus.PENDING);
+		queuedSubmission.setClaimedBy("");
+		queuedSubmission.setClaimTime(0L);
+		return Database.getInstance().updateQueuedSubmission(queuedSubmission, QueuedSubmissionStatus.CLAIMED, claimant);
+	}
+	
+	/**
+	 * Store the submission result (or error) in the database,
+	 * where the node that queued the submission will find it.
+	 */
+	@Override
+	protected void publish() {
+		SubmissionResult result = getSubmissionResult();
+		Exception error = getError();
+		if (error == null && result != null) {
+			try {
+				queuedSubmission.setResult(SharedSubmissionQueue.serializeResult(result));
+				queuedSubmission.setStatus(QueuedSubmissionStatus.COMPLETE);
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null || result == null) {
+			queuedSubmission.setStatus(QueuedSubmissionStatus.FAILED);
+			queuedSubmission.setError(error != null
+					? error.getMessage()
+					: "Too many failed attempts to test submission");
+		}
+		
+		try {
+			if (!Database.getInstance().updateQueuedSubmission(queuedSubmission, QueuedSubmissionStatus.CLAIMED, claimant)) {
+				logger.warn("Claim on submission {} was lost before its result could be stored", queuedSubmission.getId());
+			}
+		} catch (RuntimeException e) {
+			// The claim will time out, and the submission will be tested again
+			logger.error("Error storing submission result in shared queue", e);
+		}
+		
+		super.publish();
+	}
+}
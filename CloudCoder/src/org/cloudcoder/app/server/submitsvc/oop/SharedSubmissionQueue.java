@@ -0,0 +1,440 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.shared.model.Pair;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.QueuedSubmission;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionType;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SubmissionQueue} shared by all of the webapp nodes using the
+ * same database.  Submissions are stored as {@link QueuedSubmission}s
+ * in the database, and the {@link WorkerTask}s on every node claim
+ * them from there, so a Builder connected to any node can test a
+ * submission made on any node.  Submission results are stored with
+ * the queued submission, and are retrieved by a
+ * {@link SharedQueueFutureSubmissionResult} on the node where the
+ * submission was made.
+ * 
+ * The same policies as the in-memory queue apply: full submissions are
+ * claimed before compile-only submissions, and compile-only submissions
+ * are shed when they have waited too long to be useful or when full
+ * submissions are waiting.
+ * 
+ * @author David Hovemeyer
+ */
+public class SharedSubmissionQueue extends SubmissionQueue {
+	private static final Logger logger = LoggerFactory.getLogger(SharedSubmissionQueue.class);
+	
+	/**
+	 * Default number of milliseconds after which a claimed submission is
+	 * assumed to have been abandoned (because the node that claimed it
+	 * has gone away), and is made available to be claimed again.
+	 */
+	public static final long DEFAULT_CLAIM_TIMEOUT_MILLIS = 5L * 60L * 1000L;
+	
+	/**
+	 * Default number of milliseconds a submission may wait without being
+	 * claimed before it fails.  A node can't tell whether Builders are
+	 * connected to other nodes, so this takes the place of failing
+	 * early when no Builders are connected.
+	 */
+	public static final long DEFAULT_MAX_PENDING_MILLIS = 5L * 60L * 1000L;
+	
+	/**
+	 * Default number of milliseconds finished submissions (and their results)
+	 * are kept before being deleted.
+	 */
+	public static final long DEFAULT_RESULT_RETENTION_MILLIS = 60L * 60L * 1000L;
+	
+	/**
+	 * Number of milliseconds between checks of the database for
+	 * pending submissions.
+	 */
+	public static final long CHECK_INTERVAL_MILLIS = 250L;
+	
+	/**
+	 * Number of milliseconds between clean ups of the shared queue.
+	 */
+	public static final long CLEAN_UP_INTERVAL_MILLIS = 60L * 1000L;
+	
+	private final String nodeName;
+	private long claimTimeoutMillis;
+	private long maxPendingMillis;
+	private long resultRetentionMillis;
+	private SubmissionReceiptPersister persister;
+	
+	private final Object lock;
+	private boolean submittedLocally;
+	private long statsTime;
+	private int numFullPending;
+	private long oldestFullEnqueueTime;
+	private int numCompileOnlyPending;
+	private long lastCleanUpTime;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param nodeName name identifying this webapp node (must be unique among the nodes)
+	 */
+	public SharedSubmissionQueue(String nodeName) {
+		this.nodeName = nodeName;
+		this.claimTimeoutMillis = DEFAULT_CLAIM_TIMEOUT_MILLIS;
+		this.maxPendingMillis = DEFAULT_MAX_PENDING_MILLIS;
+		this.resultRetentionMillis = DEFAULT_RESULT_RETENTION_MILLIS;
+		this.lock = new Object();
+	}
+	
+	/**
+	 * @return the name identifying this webapp node
+	 */
+	public String getNodeName() {
+		return nodeName;
+	}
+	
+	/**
+	 * @param claimTimeoutMillis number of milliseconds after which a claim is assumed to be abandoned
+	 */
+	public void setClaimTimeoutMillis(long claimTimeoutMillis) {
+		this.claimTimeoutMillis = claimTimeoutMillis;
+	}
+	
+	/**
+	 * @param maxPendingMillis number of milliseconds a submission may wait without being claimed
+	 */
+	public void setMaxPendingMillis(long maxPendingMillis) {
+		this.maxPendingMillis = maxPendingMillis;
+	}
+	
+	/**
+	 * @param resultRetentionMillis number of milliseconds finished submissions are kept
+	 */
+	public void setResultRetentionMillis(long resultRetentionMillis) {
+		this.resultRetentionMillis = resultRetentionMillis;
+	}
+	
+	/**
+	 * @param persister the {@link SubmissionReceiptPersister} which stores the receipts
+	 *                  of full submissions tested by this node's Builders
+	 */
+	public void setReceiptPersister(SubmissionReceiptPersister persister) {
+		this.persister = persister;
+	}
+	
+	/**
+	 * Add a submission to the shared queue.
+	 * 
+	 * @param problem        the {@link Problem}
+	 * @param userId         the id of the user who made the submission
+	 * @param changeEventId  the event id of the full-text change containing
+	 *                       the program text (0 for a compile-only submission)
+	 * @param programText    the program text
+	 * @param submissionType the {@link SubmissionType}
+	 * @return a {@link SharedQueueFutureSubmissionResult} which can be used
+	 *         (on any node) to retrieve the submission result
+	 */
+	public SharedQueueFutureSubmissionResult submit(Problem problem, int userId, int changeEventId,
+			String programText, SubmissionType submissionType) {
+		QueuedSubmission queuedSubmission = new QueuedSubmission();
+		queuedSubmission.setProblemId(problem.getProblemId());
+		queuedSubmission.setUserId(userId);
+		queuedSubmission.setChangeEventId(changeEventId);
+		queuedSubmission.setSubmissionType(submissionType);
+		queuedSubmission.setNode(nodeName);
+		queuedSubmission.setEnqueueTime(System.currentTimeMillis());
+		queuedSubmission.setProgramText(programText);
+		Database.getInstance().enqueueSubmission(queuedSubmission);
+		
+		// Wake up local workers, so that if a Builder is connected to this
+		// node, it can start testing right away
+		synchronized (lock) {
+			submittedLocally = true;
+			lock.notifyAll();
+		}
+		
+		return new SharedQueueFutureSubmissionResult(queuedSubmission.getId(), queuedSubmission.getEnqueueTime(), maxPendingMillis);
+	}
+	
+	/**
+	 * Check whether a compile-only submission should be shed rather than
+	 * queued: this is the case if any full submissions are waiting
+	 * (meaning that the Builders are busy with real work), or if the
+	 * compile-only lane is full.
+	 * 
+	 * @return true if a compile-only submission should be shed
+	 */
+	public boolean shouldShedCompileOnly() {
+		synchronized (lock) {
+			refreshStats();
+			return numFullPending > 0 || numCompileOnlyPending >= MAX_PENDING_COMPILE_ONLY;
+		}
+	}
+	
+	/**
+	 * Put a submission whose testing could not be completed back in the
+	 * shared queue, so that it can be claimed again (by any node).
+	 * 
+	 * @param submission the submission (must be a {@link SharedQueueSubmission})
+	 * @return true
+	 */
+	@Override
+	public boolean offer(OOPBuildServiceSubmission submission) {
+		if (!(submission instanceof SharedQueueSubmission)) {
+			throw new IllegalArgumentException("Only claimed submissions may be put back in the shared queue");
+		}
+		try {
+			if (!((SharedQueueSubmission) submission).release()) {
+				logger.warn("Claim on submission was lost before it could be released");
+			}
+		} catch (RuntimeException e) {
+			// The claim will time out, and the submission will be claimed again
+			logger.error("Error releasing claim on submission", e);
+		}
+		return true;
+	}
+	
+	/**
+	 * Wait for a submission to be available, and claim it.
+	 * Full submissions are claimed in preference to compile-only submissions.
+	 * 
+	 * @param timeoutMillis maximum number of milliseconds to wait
+	 * @return the claimed submission, or null if no submission became available
+	 * @throws InterruptedException
+	 */
+	@Override
+	public OOPBuildServiceSubmission poll(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		String claimant = nodeName + "#" + Thread.currentThread().getId();
+		
+		while (true) {
+			try {
+				cleanUpIfNeeded();
+				if (mayHavePending()) {
+					QueuedSubmission queuedSubmission = Database.getInstance().claimQueuedSubmission(claimant, System.currentTimeMillis());
+					if (queuedSubmission == null) {
+						noPending();
+					} else {
+						SharedQueueSubmission submission = createSubmission(queuedSubmission);
+						if (submission != null) {
+							return submission;
+						}
+						continue;
+					}
+				}
+			} catch (RuntimeException e) {
+				// Most likely the database is unavailable: keep trying,
+				// but not more often than the check interval
+				logger.error("Error claiming submission from shared queue", e);
+				noPending();
+			}
+			
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return null;
+			}
+			synchronized (lock) {
+				if (!submittedLocally) {
+					lock.wait(Math.min(remaining, CHECK_INTERVAL_MILLIS));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return number of full submissions waiting (on all nodes)
+	 */
+	@Override
+	public int getNumFullPending() {
+		synchronized (lock) {
+			refreshStats();
+			return numFullPending;
+		}
+	}
+	
+	/**
+	 * @return number of milliseconds the oldest waiting full submission
+	 *         (on any node) has been waiting, or 0 if no full submissions are waiting
+	 */
+	@Override
+	public long getOldestFullWaitMillis() {
+		synchronized (lock) {
+			refreshStats();
+			return numFullPending > 0 ? System.currentTimeMillis() - oldestFullEnqueueTime : 0L;
+		}
+	}
+	
+	/**
+	 * @return number of compile-only submissions waiting (on all nodes)
+	 */
+	@Override
+	public int getNumCompileOnlyPending() {
+		synchronized (lock) {
+			refreshStats();
+			return numCompileOnlyPending;
+		}
+	}
+	
+	/**
+	 * Create a {@link SharedQueueSubmission} for a claimed {@link QueuedSubmission}.
+	 * Compile-only submissions which have waited too long are shed,
+	 * as are submissions whose problem no longer exists.
+	 * 
+	 * @return the {@link SharedQueueSubmission}, or null if the submission was shed
+	 */
+	private SharedQueueSubmission createSubmission(QueuedSubmission queuedSubmission) {
+		String error = null;
+		Problem problem = null;
+		List<TestCase> testCaseList = null;
+		
+		if (queuedSubmission.getSubmissionType() == SubmissionType.COMPILE_ONLY
+				&& System.currentTimeMillis() - queuedSubmission.getEnqueueTime() > MAX_COMPILE_ONLY_WAIT_MILLIS) {
+			error = "Compile-only submission was shed due to load";
+		} else {
+			problem = Database.getInstance().getProblem(queuedSubmission.getProblemId());
+			if (problem == null) {
+				error = "Problem " + queuedSubmission.getProblemId() + " no longer exists";
+			} else {
+				testCaseList = Database.getInstance().getTestCasesForProblem(problem.getProblemId());
+			}
+		}
+		
+		SharedQueueSubmission submission = new SharedQueueSubmission(
+				new Submission(problem, testCaseList, queuedSubmission.getProgramText()), queuedSubmission, persister);
+		if (error != null) {
+			submission.setError(new SubmissionException(error));
+			submission.setReady();
+			return null;
+		}
+		return submission;
+	}
+	
+	/**
+	 * @return true if there may be pending submissions to claim
+	 */
+	private boolean mayHavePending() {
+		synchronized (lock) {
+			if (submittedLocally) {
+				return true;
+			}
+			refreshStats();
+			return numFullPending > 0 || numCompileOnlyPending > 0;
+		}
+	}
+	
+	/**
+	 * Note that an attempt to claim a submission found nothing pending.
+	 */
+	private void noPending() {
+		synchronized (lock) {
+			submittedLocally = false;
+			numFullPending = 0;
+			numCompileOnlyPending = 0;
+			statsTime = System.currentTimeMillis();
+		}
+	}
+	
+	/**
+	 * Refresh the pending submission statistics, if they are out of date.
+	 * Caller must hold the lock.  Statistics are refreshed at most once
+	 * per check interval, no matter how many workers are waiting, so
+	 * the cost to the database doesn't grow with the number of Builders.
+	 */
+	private void refreshStats() {
+		long now = System.currentTimeMillis();
+		if (now - statsTime < CHECK_INTERVAL_MILLIS) {
+			return;
+		}
+		statsTime = now;
+		try {
+			Pair<Integer, Long> full = Database.getInstance().getPendingQueuedSubmissionStats(SubmissionType.FULL);
+			Pair<Integer, Long> compileOnly = Database.getInstance().getPendingQueuedSubmissionStats(SubmissionType.COMPILE_ONLY);
+			numFullPending = full.getLeft();
+			oldestFullEnqueueTime = full.getRight();
+			numCompileOnlyPending = compileOnly.getLeft();
+		} catch (RuntimeException e) {
+			logger.error("Error getting shared submission queue statistics", e);
+		}
+	}
+	
+	/**
+	 * Periodically return abandoned claims to the queue and delete
+	 * old finished submissions.  Every node does this, which is harmless.
+	 */
+	private void cleanUpIfNeeded() {
+		long now = System.currentTimeMillis();
+		synchronized (lock) {
+			if (now - lastCleanUpTime < CLEAN_UP_INTERVAL_MILLIS) {
+				return;
+			}
+			lastCleanUpTime = now;
+		}
+		int numRequeued = Database.getInstance().cleanUpQueuedSubmissions(now - claimTimeoutMillis, now - resultRetentionMillis);
+		if (numRequeued > 0) {
+			logger.warn("Returned {} abandoned submission(s) to the shared queue", numRequeued);
+		}
+	}
+	
+	/**
+	 * Serialize a {@link SubmissionResult} so that it can be stored
+	 * in a {@link QueuedSubmission}.
+	 * 
+	 * @param result the {@link SubmissionResult}
+	 * @return the serialized {@link SubmissionResult}
+	 * @throws IOException
+	 */
+	public static byte[] serializeResult(SubmissionResult result) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(result);
+		out.close();
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Deserialize a {@link SubmissionResult} stored in a {@link QueuedSubmission}.
+	 * 
+	 * @param data the serialized {@link SubmissionResult}
+	 * @return the {@link SubmissionResult}
+	 * @throws IOException
+	 */
+	public static SubmissionResult deserializeResult(byte[] data) throws IOException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		try {
+			return (SubmissionResult) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Could not deserialize submission result", e);
+		} finally {
+			in.close();
+		}
+	}
+}
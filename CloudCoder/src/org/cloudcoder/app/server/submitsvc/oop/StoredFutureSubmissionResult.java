@@ -0,0 +1,83 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.Serializable;
+
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+
+/**
+ * {@link IFutureSubmissionResult} for a submission whose result will be
+ * published in the {@link SubmissionRegistry}.  Only the submission
+ * id is kept, so this object is cheap to keep in a session, and polling
+ * it is just a lookup in the registry.
+ * 
+ * @author David Hovemeyer
+ */
+public class StoredFutureSubmissionResult implements IFutureSubmissionResult, Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	private final int submissionId;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param submissionId the submission id
+	 */
+	public StoredFutureSubmissionResult(int submissionId) {
+		this.submissionId = submissionId;
+	}
+	
+	/**
+	 * @return the submission id
+	 */
+	public int getSubmissionId() {
+		return submissionId;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult#poll()
+	 */
+	@Override
+	public SubmissionResult poll() throws SubmissionException {
+		OutOfProcessSubmitService submitService = OutOfProcessSubmitService.getInstance();
+		SubmissionRegistry.RegisteredSubmission entry = (submitService != null)
+				? submitService.getRegistry().get(submissionId)
+				: null;
+		if (entry == null) {
+			throw new SubmissionException("Submission result is no longer available");
+		}
+		if (!entry.isDone()) {
+			return null;
+		}
+		if (entry.getError() != null) {
+			throw new SubmissionException("Error testing submission", entry.getError());
+		}
+		return entry.getResult();
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult#cancel()
+	 */
+	@Override
+	public void cancel() {
+		// Full submissions are always tested
+	}
+}
@@ -0,0 +1,617 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of submission events (enqueue, dispatch to a
+ * Builder, completion, and delivery of the result), stored in a local
+ * file so that queued and in-flight submissions survive a webapp restart.
+ * Records are written and fsynced in batches by a writer thread: a
+ * caller that must know its record is durable (enqueue and delivery)
+ * waits for the batch containing it, so concurrent submissions share
+ * the cost of an fsync.
+ * 
+ * On startup, the journal is replayed to find submissions whose results
+ * were never delivered.  Submissions older than the retention window
+ * are forgotten.  The journal is compacted (rewritten with only the
+ * records of undelivered submissions) on startup, and whenever it has
+ * grown large enough.
+ * 
+ * Each record is a length, a body, and a CRC-32 of the body, so a record
+ * torn by a crash is detected (and it and anything following it ignored)
+ * on replay.
+ * 
+ * @author David Hovemeyer
+ */
+public class SubmissionJournal {
+	private static final Logger logger = LoggerFactory.getLogger(SubmissionJournal.class);
+	
+	/**
+	 * Default retention window: submissions queued longer ago than this
+	 * are not recovered.
+	 */
+	public static final long DEFAULT_RETENTION_MILLIS = 60L * 60L * 1000L;
+	
+	/**
+	 * Default journal size (in bytes) at which the journal is compacted.
+	 */
+	public static final long DEFAULT_COMPACT_BYTES = 4L * 1024L * 1024L;
+	
+	private static final byte ENQUEUE = 1;
+	private static final byte DISPATCH = 2;
+	private static final byte COMPLETE = 3;
+	private static final byte DELIVERED = 4;
+	
+	private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+	
+	/**
+	 * A submission whose result has not (yet) been delivered.
+	 */
+	public static class Entry {
+		private long id;
+		private long enqueueTime;
+		private int problemId;
+		private int userId;
+		private int changeEventId;
+		private String programText;
+		private boolean complete;
+		private byte[] result;
+		private String error;
+		private byte[] enqueueRecord;
+		private byte[] completeRecord;
+		
+		/** @return the journal id of the submission */
+		public long getId() { return id; }
+		/** @return the time (in milliseconds since the epoch) the submission was queued */
+		public long getEnqueueTime() { return enqueueTime; }
+		/** @return the problem id */
+		public int getProblemId() { return problemId; }
+		/** @return the id of the user who made the submission */
+		public int getUserId() { return userId; }
+		/** @return the event id of the full-text change containing the program text */
+		public int getChangeEventId() { return changeEventId; }
+		/** @return the program text */
+		public String getProgramText() { return programText; }
+		/** @return true if testing completed (successfully or not) */
+		public boolean isComplete() { return complete; }
+		/** @return the serialized {@link SubmissionResult}, or null if there is none */
+		public byte[] getResult() { return result; }
+		/** @return the error message, or null if there is none */
+		public String getError() { return error; }
+	}
+	
+	private static class Record {
+		long seq;
+		byte[] data;
+	}
+	
+	/**
+	 * Body of a record being encoded.
+	 */
+	private static class RecordBody extends DataOutputStream {
+		public RecordBody(byte type, long id, long time) throws IOException {
+			super(new ByteArrayOutputStream());
+			writeByte(type);
+			writeLong(id);
+			writeLong(time);
+		}
+		
+		public byte[] toRecord() throws IOException {
+			flush();
+			return SubmissionJournal.toRecord(((ByteArrayOutputStream) out).toByteArray());
+		}
+	}
+	
+	private final File file;
+	private long retentionMillis;
+	private long compactBytes;
+	
+	private final Object lock;
+	private List<Record> pending;
+	private long nextSeq;
+	private long syncedSeq;
+	private long nextId;
+	private boolean shutdown;
+	private Map<Long, Entry> live;
+	
+	private FileOutputStream out;
+	private long fileSize;
+	private long compactedSize;
+	private Thread writerThread;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param file the journal file
+	 */
+	public SubmissionJournal(File file) {
+		this.file = file;
+		this.retentionMillis = DEFAULT_RETENTION_MILLIS;
+		this.compactBytes = DEFAULT_COMPACT_BYTES;
+		this.lock = new Object();
+		this.pending = new ArrayList<Record>();
+		this.nextSeq = 1L;
+		this.nextId = 1L;
+		this.live = new LinkedHashMap<Long, Entry>();
+	}
+	
+	/**
+	 * @param retentionMillis submissions queued longer ago than this are not recovered
+	 */
+	public void setRetentionMillis(long retentionMillis) {
+		this.retentionMillis = retentionMillis;
+	}
+	
+	/**
+	 * @return submissions queued longer ago than this are not recovered
+	 */
+	public long getRetentionMillis() {
+		return retentionMillis;
+	}
+	
+	/**
+	 * @param compactBytes journal size (in bytes) at which the journal is compacted
+	 */
+	public void setCompactBytes(long compactBytes) {
+		this.compactBytes = compactBytes;
+	}
+	
+	/**
+	 * Replay the journal, compact it, and start the writer thread.
+	 * Must be called before any events are recorded.
+	 * 
+	 * @return the submissions (within the retention window) whose results
+	 *         were not delivered, in the order they were queued
+	 * @throws IOException
+	 */
+	public List<Entry> recover() throws IOException {
+		if (file.exists()) {
+			replay();
+		}
+		
+		long cutoff = System.currentTimeMillis() - retentionMillis;
+		List<Entry> result = new ArrayList<Entry>();
+		for (Entry entry : live.values()) {
+			if (entry.enqueueTime >= cutoff) {
+				result.add(entry);
+			}
+		}
+		
+		compact();
+		
+		writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeRecords();
+			}
+		}, "SubmissionJournal writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+		
+		return result;
+	}
+	
+	/**
+	 * Record that a submission was queued.  Returns once the
+	 * record is durable.
+	 * 
+	 * @param problemId     the problem id
+	 * @param userId        the id of the user who made the submission
+	 * @param changeEventId the event id of the full-text change containing the program text
+	 * @param programText   the program text
+	 * @return the journal id of the submission
+	 */
+	public long enqueued(int problemId, int userId, int changeEventId, String programText) {
+		Entry entry = new Entry();
+		entry.enqueueTime = System.currentTimeMillis();
+		entry.problemId = problemId;
+		entry.userId = userId;
+		entry.changeEventId = changeEventId;
+		entry.programText = programText;
+		
+		long seq;
+		synchronized (lock) {
+			entry.id = nextId++;
+			try {
+				RecordBody body = new RecordBody(ENQUEUE, entry.id, entry.enqueueTime);
+				body.writeInt(problemId);
+				body.writeInt(userId);
+				body.writeInt(changeEventId);
+				writeBytes(body, programText.getBytes("UTF-8"));
+				entry.enqueueRecord = body.toRecord();
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not encode journal record", e);
+			}
+			live.put(entry.id, entry);
+			seq = append(entry.enqueueRecord);
+		}
+		waitForSync(seq);
+		return entry.id;
+	}
+	
+	/**
+	 * Record that a submission was sent to a Builder.
+	 * 
+	 * @param id the journal id of the submission
+	 */
+	public void dispatched(long id) {
+		synchronized (lock) {
+			try {
+				append(new RecordBody(DISPATCH, id, System.currentTimeMillis()).toRecord());
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not encode journal record", e);
+			}
+		}
+	}
+	
+	/**
+	 * Record that testing of a submission completed (successfully or not).
+	 * 
+	 * @param id     the journal id of the submission
+	 * @param result the {@link SubmissionResult}, or null if there is none
+	 * @param error  the error that prevented testing, or null if there was none
+	 */
+	public void completed(long id, SubmissionResult result, Exception error) {
+		byte[] resultData = null;
+		if (result != null) {
+			try {
+				resultData = SharedSubmissionQueue.serializeResult(result);
+			} catch (IOException e) {
+				logger.error("Could not serialize submission result for journal", e);
+				error = e;
+			}
+		}
+		String errorMessage = (error != null) ? String.valueOf(error.getMessage()) : null;
+		
+		synchronized (lock) {
+			try {
+				RecordBody body = new RecordBody(COMPLETE, id, System.currentTimeMillis());
+				writeBytes(body, resultData);
+				writeBytes(body, errorMessage != null ? errorMessage.getBytes("UTF-8") : null);
+				byte[] record = body.toRecord();
+				Entry entry = live.get(id);
+				if (entry != null) {
+					entry.complete = true;
+					entry.result = resultData;
+					entry.error = errorMessage;
+					entry.completeRecord = record;
+				}
+				append(record);
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not encode journal record", e);
+			}
+		}
+	}
+	
+	/**
+	 * Record that the result of a submission was delivered, meaning that
+	 * its receipt has been stored (so that the submission doesn't need
+	 * to be recovered).  Returns once the record is durable.
+	 * 
+	 * @param id the journal id of the submission
+	 */
+	public void delivered(long id) {
+		long seq;
+		synchronized (lock) {
+			live.remove(id);
+			try {
+				seq = append(new RecordBody(DELIVERED, id, System.currentTimeMillis()).toRecord());
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not encode journal record", e);
+			}
+		}
+		waitForSync(seq);
+	}
+	
+	/**
+	 * Write any pending records and close the journal.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void close() throws InterruptedException {
+		synchronized (lock) {
+			shutdown = true;
+			lock.notifyAll();
+		}
+		if (writerThread != null) {
+			writerThread.join();
+		}
+		closeFile();
+	}
+	
+	/**
+	 * Add a record to the pending records.  Caller must hold the lock.
+	 * 
+	 * @return the record's sequence number
+	 */
+	private long append(byte[] data) {
+		Record record = new Record();
+		record.seq = nextSeq++;
+		record.data = data;
+		pending.add(record);
+		lock.notifyAll();
+		return record.seq;
+	}
+	
+	/**
+	 * Wait until the record with given sequence number has been
+	 * written and fsynced (or the journal has been closed).
+	 */
+	private void waitForSync(long seq) {
+		boolean interrupted = false;
+		synchronized (lock) {
+			while (syncedSeq < seq && !shutdown) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Writer thread: write pending records in batches, with one
+	 * fsync per batch.
+	 */
+	private void writeRecords() {
+		while (true) {
+			List<Record> batch;
+			synchronized (lock) {
+				while (pending.isEmpty() && !shutdown) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						// keep going until shut down
+					}
+				}
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = pending;
+				pending = new ArrayList<Record>();
+			}
+			
+			try {
+				ByteArrayOutputStream buf = new ByteArrayOutputStream();
+				for (Record record : batch) {
+					buf.write(record.data);
+				}
+				buf.writeTo(out);
+				out.getChannel().force(false);
+				fileSize += buf.size();
+				
+				// Compact when the journal is large, but not so often
+				// that compaction is constantly rewriting the same records
+				if (fileSize >= Math.max(compactBytes, 2 * compactedSize)) {
+					compact();
+				}
+			} catch (IOException e) {
+				// Submissions are still tested, but they won't be
+				// recovered if the webapp restarts
+				logger.error("Error writing submission journal", e);
+			}
+			
+			synchronized (lock) {
+				syncedSeq = batch.get(batch.size() - 1).seq;
+				lock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Rewrite the journal with only the records of undelivered submissions
+	 * within the retention window.  Called by the writer thread (or before
+	 * it starts), so no records are written concurrently.  Records added
+	 * to the pending records while compaction is in progress are written
+	 * to the new journal afterwards: replay tolerates them being
+	 * duplicates of records written by compaction.
+	 */
+	private void compact() throws IOException {
+		List<Entry> entries;
+		long cutoff = System.currentTimeMillis() - retentionMillis;
+		synchronized (lock) {
+			entries = new ArrayList<Entry>();
+			for (Iterator<Entry> i = live.values().iterator(); i.hasNext(); ) {
+				Entry entry = i.next();
+				if (entry.enqueueTime < cutoff) {
+					i.remove();
+				} else {
+					entries.add(entry);
+				}
+			}
+		}
+		
+		File tmp = new File(file.getPath() + ".compact");
+		FileOutputStream tmpOut = new FileOutputStream(tmp);
+		long size = 0L;
+		try {
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			for (Entry entry : entries) {
+				buf.write(entry.enqueueRecord);
+				if (entry.completeRecord != null) {
+					buf.write(entry.completeRecord);
+				}
+			}
+			buf.writeTo(tmpOut);
+			tmpOut.getChannel().force(false);
+			size = buf.size();
+		} finally {
+			tmpOut.close();
+		}
+		
+		closeFile();
+		// Some platforms can't rename over an existing file
+		boolean replaced = tmp.renameTo(file) || (file.delete() && tmp.renameTo(file));
+		out = new FileOutputStream(file, true);
+		if (!replaced) {
+			compactedSize = fileSize;
+			throw new IOException("Could not replace " + file.getPath() + " with compacted journal");
+		}
+		fileSize = size;
+		compactedSize = size;
+		logger.info("Compacted submission journal: {} undelivered submission(s), {} bytes", entries.size(), size);
+	}
+	
+	private void closeFile() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				logger.warn("Error closing submission journal", e);
+			}
+			out = null;
+		}
+	}
+	
+	/**
+	 * Read the journal, reconstructing the undelivered submissions.
+	 */
+	private void replay() throws IOException {
+		Set<Long> delivered = new HashSet<Long>();
+		int numRecords = 0;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			while (true) {
+				byte[] body;
+				try {
+					int length = in.readInt();
+					if (length <= 0 || length > MAX_RECORD_LENGTH) {
+						logger.warn("Invalid record length in submission journal: ignoring rest of journal");
+						break;
+					}
+					body = new byte[length];
+					in.readFully(body);
+					int crc = in.readInt();
+					if (crc != crc(body)) {
+						logger.warn("Corrupt record in submission journal: ignoring rest of journal");
+						break;
+					}
+				} catch (EOFException e) {
+					// End of journal (possibly with a torn final record)
+					break;
+				}
+				numRecords++;
+				
+				DataInputStream r = new DataInputStream(new ByteArrayInputStream(body));
+				byte type = r.readByte();
+				long id = r.readLong();
+				long time = r.readLong();
+				nextId = Math.max(nextId, id + 1);
+				
+				switch (type) {
+				case ENQUEUE:
+					if (!live.containsKey(id) && !delivered.contains(id)) {
+						Entry entry = new Entry();
+						entry.id = id;
+						entry.enqueueTime = time;
+						entry.problemId = r.readInt();
+						entry.userId = r.readInt();
+						entry.changeEventId = r.readInt();
+						entry.programText = new String(readBytes(r), "UTF-8");
+						entry.enqueueRecord = toRecord(body);
+						live.put(id, entry);
+					}
+					break;
+				case COMPLETE:
+					Entry entry = live.get(id);
+					if (entry != null) {
+						entry.complete = true;
+						entry.result = readBytes(r);
+						byte[] error = readBytes(r);
+						entry.error = (error != null) ? new String(error, "UTF-8") : null;
+						entry.completeRecord = toRecord(body);
+					}
+					break;
+				case DELIVERED:
+					live.remove(id);
+					delivered.add(id);
+					break;
+				default:
+					// DISPATCH: a dispatched submission whose testing didn't
+					// complete is recovered the same way as a queued one
+					break;
+				}
+			}
+		} finally {
+			in.close();
+		}
+		logger.info("Replayed {} submission journal record(s): {} undelivered submission(s)", numRecords, live.size());
+	}
+	
+	private static byte[] toRecord(byte[] body) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(body.length + 8);
+		DataOutputStream out = new DataOutputStream(buf);
+		out.writeInt(body.length);
+		out.write(body);
+		out.writeInt(crc(body));
+		out.flush();
+		return buf.toByteArray();
+	}
+	
+	private static int crc(byte[] body) {
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		return (int) crc.getValue();
+	}
+	
+	private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+		if (data == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(data.length);
+			out.write(data);
+		}
+	}
+	
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] data = new byte[length];
+		in.readFully(data);
+		return data;
+	}
+}
@@ -0,0 +1,161 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.LinkedList;
+
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionType;
+
+/**
+ * Queue of {@link OOPBuildServiceSubmission}s waiting to be sent to
+ * a Builder.  There are two lanes: one for full submissions, and
+ * one for compile-only submissions.  Full submissions are always
+ * dispatched before compile-only submissions, so compile-only
+ * submissions never delay full submissions.  Compile-only submissions
+ * are shed (discarded) when they are cancelled, when they have waited
+ * too long to be useful, or when the compile-only lane is full.
+ * 
+ * @author David Hovemeyer
+ */
+public class SubmissionQueue {
+	/**
+	 * Maximum number of compile-only submissions that may be waiting.
+	 */
+	public static final int MAX_PENDING_COMPILE_ONLY = 64;
+	
+	/**
+	 * Maximum number of milliseconds a compile-only submission may
+	 * wait before being dispatched: after this, its result would
+	 * probably be stale.
+	 */
+	public static final long MAX_COMPILE_ONLY_WAIT_MILLIS = 10000L;
+	
+	private Object lock;
+	private LinkedList<OOPBuildServiceSubmission> fullLane;
+	private LinkedList<OOPBuildServiceSubmission> compileOnlyLane;
+	
+	/**
+	 * Constructor.
+	 */
+	public SubmissionQueue() {
+		this.lock = new Object();
+		this.fullLane = new LinkedList<OOPBuildServiceSubmission>();
+		this.compileOnlyLane = new LinkedList<OOPBuildServiceSubmission>();
+	}
+	
+	/**
+	 * Add a submission to the appropriate lane.
+	 * Full submissions are always accepted.
+	 * 
+	 * @param submission the submission to add
+	 * @return true if the submission was added, false if it was
+	 *         a compile-only submission and the compile-only lane is full
+	 */
+	public boolean offer(OOPBuildServiceSubmission submission) {
+		synchronized (lock) {
+			if (submission.getSubmissionType() == SubmissionType.COMPILE_ONLY) {
+				if (compileOnlyLane.size() >= MAX_PENDING_COMPILE_ONLY) {
+					return false;
+				}
+				compileOnlyLane.add(submission);
+			} else {
+				fullLane.add(submission);
+			}
+			lock.notifyAll();
+			return true;
+		}
+	}
+	
+	/**
+	 * Wait for a submission to be available, and remove it from the queue.
+	 * Full submissions are returned in preference to compile-only submissions.
+	 * 
+	 * @param timeoutMillis maximum number of milliseconds to wait
+	 * @return the submission, or null if no submission became available
+	 * @throws InterruptedException
+	 */
+	public OOPBuildServiceSubmission poll(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (lock) {
+			while (true) {
+				if (!fullLane.isEmpty()) {
+					return fullLane.removeFirst();
+				}
+				while (!compileOnlyLane.isEmpty()) {
+					OOPBuildServiceSubmission submission = compileOnlyLane.removeFirst();
+					if (!isShed(submission)) {
+						return submission;
+					}
+				}
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return null;
+				}
+				lock.wait(remaining);
+			}
+		}
+	}
+	
+	/**
+	 * @return number of full submissions waiting
+	 */
+	public int getNumFullPending() {
+		synchronized (lock) {
+			return fullLane.size();
+		}
+	}
+	
+	/**
+	 * @return number of milliseconds the oldest waiting full submission
+	 *         has been waiting, or 0 if no full submissions are waiting
+	 */
+	public long getOldestFullWaitMillis() {
+		synchronized (lock) {
+			if (fullLane.isEmpty()) {
+				return 0L;
+			}
+			return System.currentTimeMillis() - fullLane.getFirst().getEnqueueTime();
+		}
+	}
+	
+	/**
+	 * @return number of compile-only submissions waiting
+	 */
+	public int getNumCompileOnlyPending() {
+		synchronized (lock) {
+			return compileOnlyLane.size();
+		}
+	}
+	
+	/**
+	 * Check whether a compile-only submission should be shed rather than
+	 * dispatched.  If so, it is marked as ready with an error.
+	 */
+	private boolean isShed(OOPBuildServiceSubmission submission) {
+		boolean stale = System.currentTimeMillis() - submission.getEnqueueTime() > MAX_COMPILE_ONLY_WAIT_MILLIS;
+		if (!submission.isCancelled() && !stale) {
+			return false;
+		}
+		submission.setError(new SubmissionException(submission.isCancelled()
+				? "Compile-only submission was superseded"
+				: "Compile-only submission was shed due to load"));
+		submission.setReady();
+		return true;
+	}
+}
@@ -0,0 +1,221 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.ReadYourWrites;
+import org.cloudcoder.app.server.rpc.CourseStatusCache;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the {@link SubmissionReceipt}s (and test results) of
+ * completed submissions, as soon as testing completes, so that a
+ * submission is recorded even if the user never polls for its result
+ * (e.g., because the browser tab was closed or the session expired).
+ * Once the receipt is stored, the submission's result is published.
+ * 
+ * Receipts are stored by a small pool of threads, so a slow database
+ * doesn't hold up the {@link WorkerTask}s.  The queue of completed
+ * submissions waiting to be stored is bounded: if it is full, the
+ * receipt is stored in the calling thread, which slows down the
+ * dispatch of more submissions to the Builders rather than letting
+ * unrecorded results pile up in memory.
+ * 
+ * The receipt is stored on behalf of the session of the user who made
+ * the submission (see {@link OOPBuildServiceSubmission#getSessionKey()}),
+ * so the user's next reads see it even if there is a lagging replica.
+ * 
+ * @author David Hovemeyer
+ */
+public class SubmissionReceiptPersister {
+	private static final Logger logger = LoggerFactory.getLogger(SubmissionReceiptPersister.class);
+	
+	/**
+	 * Default number of threads storing receipts.
+	 */
+	public static final int DEFAULT_NUM_THREADS = 2;
+	
+	/**
+	 * Default maximum number of completed submissions waiting to be stored.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+	
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long RETRY_DELAY_MILLIS = 1000L;
+	private static final long SHUTDOWN_WAIT_MILLIS = 30L * 1000L;
+	
+	private final ThreadPoolExecutor executor;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param numThreads    number of threads storing receipts
+	 * @param queueCapacity maximum number of completed submissions waiting to be stored
+	 */
+	public SubmissionReceiptPersister(int numThreads, int queueCapacity) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(
+				numThreads, numThreads,
+				0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "SubmissionReceiptPersister-" + threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				},
+				new RejectedExecutionHandler() {
+					@Override
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+						// Queue is full (or the persister is shutting down):
+						// store the receipt in the calling thread
+						r.run();
+					}
+				});
+	}
+	
+	/**
+	 * Store the receipt of a completed submission, then publish its result.
+	 * 
+	 * @param submission the completed submission
+	 */
+	public void persist(final OOPBuildServiceSubmission submission) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (storeReceipt(submission)) {
+						// Nothing left to recover for this submission
+						submission.markDelivered();
+					}
+				} catch (RuntimeException e) {
+					logger.error("Error storing submission receipt", e);
+				} finally {
+					submission.publish();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * @return number of completed submissions waiting to be stored
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+	
+	/**
+	 * Shut down, after storing the receipts of submissions already
+	 * handed to the persister.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void shutdown() throws InterruptedException {
+		executor.shutdown();
+		if (!executor.awaitTermination(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+			logger.warn("Submission receipts still waiting to be stored at shutdown: {}", executor.getQueue().size());
+		}
+	}
+	
+	/**
+	 * Store a completed submission's receipt.
+	 * 
+	 * @param submission the completed submission
+	 * @return true if there is nothing left to store for the submission,
+	 *         false if its receipt could not be stored
+	 */
+	private boolean storeReceipt(OOPBuildServiceSubmission submission) {
+		SubmissionResult result = submission.getSubmissionResult();
+		if (submission.getError() != null || result == null) {
+			// Testing did not complete, so there is no receipt
+			return true;
+		}
+		
+		Problem problem = submission.getProblem();
+		if (problem == null) {
+			logger.warn("Problem for completed submission no longer exists");
+			return true;
+		}
+		User user = new User();
+		user.setId(submission.getUserId());
+		SubmissionReceipt receipt = SubmissionReceipt.create(user, problem, result.determineSubmissionStatus(),
+				submission.getChangeEventId(), result.getNumTestsAttempted(), result.getNumTestsPassed());
+		
+		// The receipt may be stored by a persister thread or by the thread
+		// that completed the submission: either way, record the write
+		// for the user's session (and restore the thread's own session
+		// key afterwards)
+		String origSessionKey = ReadYourWrites.getSessionKey();
+		ReadYourWrites.setSessionKey(submission.getSessionKey());
+		try {
+			return insertReceipt(submission, user, problem, result, receipt);
+		} finally {
+			ReadYourWrites.setSessionKey(origSessionKey);
+		}
+	}
+	
+	/**
+	 * Insert a completed submission's receipt, retrying if there is an error.
+	 * 
+	 * @return true if the receipt was stored, false if it could not be stored
+	 */
+	private boolean insertReceipt(OOPBuildServiceSubmission submission, User user, Problem problem,
+			SubmissionResult result, SubmissionReceipt receipt) {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				if (submission.isRecovered()) {
+					// The receipt may have been stored before the restart,
+					// but not yet marked as delivered in the journal
+					receipt = Database.getInstance().insertSubmissionReceiptIfAbsent(receipt, result.getTestResults());
+				} else {
+					Database.getInstance().insertSubmissionReceipt(receipt, result.getTestResults());
+				}
+				CourseStatusCache.getInstance().invalidate(user.getId());
+				submission.setReceipt(receipt);
+				return true;
+			} catch (RuntimeException e) {
+				if (attempt >= MAX_ATTEMPTS) {
+					logger.error("Could not store submission receipt for user " + user.getId() +
+							", problem " + problem.getProblemId(), e);
+					return false;
+				}
+				logger.warn("Error storing submission receipt, will retry", e);
+				try {
+					Thread.sleep(RETRY_DELAY_MILLIS);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,253 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionInfo;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionState;
+
+/**
+ * In-memory registry of full submissions, keyed by submission id
+ * (the event id of the submission's full-text change).  It tracks each
+ * submission's {@link SubmissionState} and timestamps, and once the
+ * submission's receipt has been stored, its result (or error), so
+ * checking on a submission is a cheap read which doesn't depend on
+ * the user's session.
+ * 
+ * The registry is bounded: the oldest submissions are forgotten if there
+ * are too many, and finished submissions are forgotten after the
+ * retention window.  Their receipts are in the database regardless.
+ * 
+ * @author David Hovemeyer
+ */
+public class SubmissionRegistry {
+	/**
+	 * Default maximum number of submissions in the registry.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	
+	/**
+	 * Default number of milliseconds a finished submission is kept.
+	 */
+	public static final long DEFAULT_RETENTION_MILLIS = 60L * 60L * 1000L;
+	
+	/**
+	 * A registered submission.
+	 */
+	public static class RegisteredSubmission {
+		private final int id;
+		private final int userId;
+		private final int problemId;
+		private final long enqueueTime;
+		private final IFutureSubmissionResult future;
+		private volatile SubmissionState state;
+		private long dispatchTime;
+		private long doneTime;
+		private SubmissionResult result;
+		private Exception error;
+		private SubmissionReceipt receipt;
+		
+		private RegisteredSubmission(int id, int userId, int problemId, long enqueueTime, IFutureSubmissionResult future) {
+			this.id = id;
+			this.userId = userId;
+			this.problemId = problemId;
+			this.enqueueTime = enqueueTime;
+			this.future = future;
+			this.state = SubmissionState.QUEUED;
+		}
+		
+		/** @return the submission id */
+		public int getId() { return id; }
+		/** @return the id of the user who made the submission */
+		public int getUserId() { return userId; }
+		/** @return the problem id */
+		public int getProblemId() { return problemId; }
+		/** @return the future to poll for the submission's result, or null if the result will be published */
+		public IFutureSubmissionResult getFuture() { return future; }
+		/** @return true if the submission's result (or error) has been published */
+		public boolean isDone() { return state == SubmissionState.DONE; }
+		/** @return the {@link SubmissionResult}, or null if there is none (yet) */
+		public SubmissionResult getResult() { return result; }
+		/** @return the error that prevented testing from completing, or null if there was none */
+		public Exception getError() { return error; }
+	}
+	
+	private final long retentionMillis;
+	private final LinkedHashMap<Integer, RegisteredSubmission> entryMap;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxEntries      maximum number of submissions in the registry
+	 * @param retentionMillis number of milliseconds a finished submission is kept
+	 */
+	public SubmissionRegistry(final int maxEntries, long retentionMillis) {
+		this.retentionMillis = retentionMillis;
+		this.entryMap = new LinkedHashMap<Integer, RegisteredSubmission>() {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, RegisteredSubmission> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+	
+	/**
+	 * Register a newly-queued submission.
+	 * 
+	 * @param id          the submission id
+	 * @param userId      the id of the user who made the submission
+	 * @param problemId   the problem id
+	 * @param enqueueTime the time (in milliseconds since the epoch) the submission was queued
+	 * @param future      the future to poll for the submission's result, or null
+	 *                    if the result will be published in this registry
+	 */
+	public void register(int id, int userId, int problemId, long enqueueTime, IFutureSubmissionResult future) {
+		synchronized (entryMap) {
+			entryMap.put(id, new RegisteredSubmission(id, userId, problemId, enqueueTime, future));
+		}
+	}
+	
+	/**
+	 * Update the {@link SubmissionState} of a registered submission
+	 * which isn't done yet.
+	 * 
+	 * @param id    the submission id
+	 * @param state the new {@link SubmissionState} (other than DONE)
+	 */
+	public void setState(int id, SubmissionState state) {
+		synchronized (entryMap) {
+			RegisteredSubmission entry = entryMap.get(id);
+			if (entry != null && !entry.isDone()) {
+				if (state == SubmissionState.DISPATCHED) {
+					entry.dispatchTime = System.currentTimeMillis();
+				}
+				entry.state = state;
+			}
+		}
+	}
+	
+	/**
+	 * Publish the result (or error) of a registered submission,
+	 * whose receipt (if any) has been stored.
+	 * 
+	 * @param id      the submission id
+	 * @param result  the {@link SubmissionResult}, or null if testing did not complete
+	 * @param error   the error that prevented testing from completing, or null if there was none
+	 * @param receipt the stored {@link SubmissionReceipt}, or null if there is none
+	 */
+	public void publish(int id, SubmissionResult result, Exception error, SubmissionReceipt receipt) {
+		long now = System.currentTimeMillis();
+		synchronized (entryMap) {
+			RegisteredSubmission entry = entryMap.get(id);
+			if (entry != null) {
+				entry.result = result;
+				entry.error = error;
+				entry.receipt = receipt;
+				entry.doneTime = now;
+				entry.state = SubmissionState.DONE;
+			}
+			
+			// Forget submissions finished before the retention window
+			// (oldest submissions first, stopping at one not done yet)
+			for (Iterator<RegisteredSubmission> i = entryMap.values().iterator(); i.hasNext(); ) {
+				RegisteredSubmission e = i.next();
+				if (!e.isDone() || e.doneTime >= now - retentionMillis) {
+					break;
+				}
+				i.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Get a registered submission.
+	 * 
+	 * @param id the submission id
+	 * @return the {@link RegisteredSubmission}, or null if the submission is not (or no longer) registered
+	 */
+	public RegisteredSubmission get(int id) {
+		synchronized (entryMap) {
+			return entryMap.get(id);
+		}
+	}
+	
+	/**
+	 * Get a {@link SubmissionInfo} describing a registered submission.
+	 * 
+	 * @param id     the submission id
+	 * @param userId the id of the user asking (only the user who made the
+	 *               submission may see it)
+	 * @return the {@link SubmissionInfo}, or null if the submission is not
+	 *         (or no longer) registered, or was made by a different user
+	 */
+	public SubmissionInfo getInfo(int id, int userId) {
+		synchronized (entryMap) {
+			RegisteredSubmission entry = entryMap.get(id);
+			if (entry == null || entry.userId != userId) {
+				return null;
+			}
+			
+			SubmissionInfo info = new SubmissionInfo();
+			info.setSubmissionId(id);
+			info.setProblemId(entry.problemId);
+			info.setState(entry.state);
+			info.setEnqueueTime(entry.enqueueTime);
+			info.setDispatchTime(entry.dispatchTime);
+			info.setDoneTime(entry.doneTime);
+			info.setResult(entry.result);
+			info.setError(entry.error != null ? entry.error.getMessage() : null);
+			info.setReceipt(entry.receipt);
+			if (entry.state == SubmissionState.QUEUED) {
+				if (entry.future != null) {
+					// Position in the shared queue is not known
+					info.setQueuePosition(-1);
+				} else {
+					// Submissions are queued (nearly) in the order they were registered
+					int ahead = 0;
+					for (RegisteredSubmission e : entryMap.values()) {
+						if (e == entry) {
+							break;
+						}
+						if (e.state == SubmissionState.QUEUED) {
+							ahead++;
+						}
+					}
+					info.setQueuePosition(ahead);
+				}
+			}
+			return info;
+		}
+	}
+	
+	/**
+	 * @return number of submissions in the registry
+	 */
+	public int size() {
+		synchronized (entryMap) {
+			return entryMap.size();
+		}
+	}
+}
@@ -22,8 +22,6 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
 import org.cloudcoder.app.shared.model.Problem;
@@ -50,13 +48,13 @@ public class WorkerTask implements Runnable {
 	
 	private volatile boolean shutdownRequested;
 	private Socket clientSocket;
-	private LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue;
+	private SubmissionQueue submissionQueue;
 	private WorkerTaskSet workerTaskSet;
 	
 	private ObjectOutputStream out;
 	private ObjectInputStream in;
 
-	public WorkerTask(Socket clientSocket, LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue, WorkerTaskSet workerTaskSet) throws IOException {
+	public WorkerTask(Socket clientSocket, SubmissionQueue submissionQueue, WorkerTaskSet workerTaskSet) throws IOException {
 		this.shutdownRequested = false;
 		this.clientSocket = clientSocket;
 		this.submissionQueue = submissionQueue;
@@ -90,7 +88,7 @@ public class WorkerTask implements Runnable {
 
 			// Try to get a submission to test
 			try {
-				submission = submissionQueue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				submission = submissionQueue.poll(POLL_INTERVAL_MILLIS);
 			} catch (InterruptedException e) {
 				if (!shutdownRequested) {
 					logger.error("Unexpected interruption", e);
@@ -130,6 +128,7 @@ public class WorkerTask implements Runnable {
 				
 				// Attempt to test the submission
 				try {
+					submission.dispatched();
 					sendSubmissionForTesting(submission);
 					// Submission successfully tested!
 					submission = null; // We're done with this Submission
@@ -148,11 +147,9 @@ public class WorkerTask implements Runnable {
 		// If the testing of a submission was not completed,
 		// place it back in the queue so it has an opportunity to be re-tested
 		if (submission != null) {
-			try {
-				submissionQueue.put(submission);
-			} catch (InterruptedException e) {
-				logger.error("Failed to put submission back in submission queue", e);
-				submission.setError(e);
+			submission.requeued();
+			if (!submissionQueue.offer(submission)) {
+				logger.warn("Compile-only submission could not be put back in submission queue");
 				submission.setReady();
 			}
 		}
@@ -189,9 +186,14 @@ public class WorkerTask implements Runnable {
 			out.flush();
 		}
 		
-		// Send the program text
+		// Send the submission type and program text.
+		// Note that Builders that predate compile-only submissions
+		// expect only the program text here, so the webapp and
+		// its Builders must be upgraded together.
+		out.writeObject(submission.getSubmissionType());
 		out.writeObject(programText);
 		out.flush();
+		submission.testing();
 		
 		// Read list of TestResults
 		SubmissionResult result= (SubmissionResult) in.readObject();
@@ -22,7 +22,6 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,7 +81,7 @@ public class WorkerTaskSet {
 	 * @param submissionQueue  queue of submissions requiring compilation and testing
 	 * @throws IOException
 	 */
-	public void createWorker(Socket clientSocket, LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue) throws IOException {
+	public void createWorker(Socket clientSocket, SubmissionQueue submissionQueue) throws IOException {
 		WorkerTask workerTask = new WorkerTask(clientSocket, submissionQueue, this);
 		Thread workerThread = new Thread(workerTask);
 		WorkerThreadAndTaskPair pair = new WorkerThreadAndTaskPair(workerThread, workerTask);
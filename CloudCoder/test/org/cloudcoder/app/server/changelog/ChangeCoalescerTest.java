@@ -0,0 +1,164 @@
+package org.cloudcoder.app.server.changelog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.cloudcoder.app.server.model.ApplyChangeToTextDocument;
+import org.cloudcoder.app.server.model.TextDocument;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeCoalescerTest {
+	private static final int USER_ID = 1;
+	private static final int PROBLEM_ID = 2;
+	private static final String INITIAL_TEXT = "int f() {\nreturn 0;\n}\n";
+
+	private ChangeCoalescer coalescer;
+
+	@Before
+	public void setUp() {
+		coalescer = new ChangeCoalescer(1000L, true);
+	}
+
+	private static Change insert(int row, int col, String text, long ts) {
+		return new Change(ChangeType.INSERT_TEXT, row, col, row, col + text.length(), ts, USER_ID, PROBLEM_ID, text);
+	}
+
+	private static Change remove(int row, int col, String text, long ts) {
+		return new Change(ChangeType.REMOVE_TEXT, row, col, row, col + text.length(), ts, USER_ID, PROBLEM_ID, text);
+	}
+
+	private static String replay(Change[] changeList) {
+		TextDocument doc = new TextDocument();
+		doc.setText(INITIAL_TEXT);
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		for (Change change : changeList) {
+			applicator.apply(change, doc);
+		}
+		return doc.getText();
+	}
+
+	private void checkSameText(Change[] orig, Change[] coalesced) {
+		assertEquals(replay(orig), replay(coalesced));
+	}
+
+	@Test
+	public void testTyping() {
+		Change[] orig = {
+				insert(1, 7, "1", 0L),
+				insert(1, 8, "2", 100L),
+				insert(1, 9, "3", 250L),
+		};
+		Change[] coalesced = coalescer.coalesce(orig);
+		assertEquals(1, coalesced.length);
+		assertEquals("123", coalesced[0].getText());
+		assertEquals(7, coalesced[0].getStartColumn());
+		assertEquals(10, coalesced[0].getEndColumn());
+		assertEquals("1@0,1@100,1@250", coalesced[0].getTiming());
+		checkSameText(orig, coalesced);
+
+		// The original changes are not modified
+		assertEquals("1", orig[0].getText());
+		assertEquals(8, orig[0].getEndColumn());
+	}
+
+	@Test
+	public void testBackspace() {
+		Change[] orig = {
+				remove(1, 7, "0", 0L),
+				remove(1, 6, " ", 100L),
+				remove(1, 5, "n", 200L),
+		};
+		Change[] coalesced = coalescer.coalesce(orig);
+		assertEquals(1, coalesced.length);
+		assertEquals("n 0", coalesced[0].getText());
+		assertEquals(5, coalesced[0].getStartColumn());
+		assertEquals(8, coalesced[0].getEndColumn());
+		checkSameText(orig, coalesced);
+	}
+
+	@Test
+	public void testForwardDelete() {
+		Change[] orig = {
+				remove(1, 0, "r", 0L),
+				remove(1, 0, "e", 100L),
+				remove(1, 0, "t", 200L),
+		};
+		Change[] coalesced = coalescer.coalesce(orig);
+		assertEquals(1, coalesced.length);
+		assertEquals("ret", coalesced[0].getText());
+		assertEquals(0, coalesced[0].getStartColumn());
+		assertEquals(3, coalesced[0].getEndColumn());
+		checkSameText(orig, coalesced);
+	}
+
+	@Test
+	public void testNotMerged() {
+		Change[] orig = {
+				insert(1, 7, "1", 0L),
+				// gap longer than the window
+				insert(1, 8, "2", 2000L),
+				// not contiguous
+				insert(1, 0, "x", 2100L),
+				// different row
+				insert(0, 0, "y", 2200L),
+				// contains a newline
+				new Change(ChangeType.INSERT_TEXT, 0, 1, 1, 0, 2300L, USER_ID, PROBLEM_ID, "\n"),
+		};
+		Change[] coalesced = coalescer.coalesce(orig);
+		assertSame(orig, coalesced);
+	}
+
+	@Test
+	public void testDifferentUser() {
+		Change[] orig = {
+				insert(1, 7, "1", 0L),
+				new Change(ChangeType.INSERT_TEXT, 1, 8, 1, 9, 100L, USER_ID + 1, PROBLEM_ID, "2"),
+		};
+		assertSame(orig, coalescer.coalesce(orig));
+	}
+
+	@Test
+	public void testMixed() {
+		Change[] orig = {
+				insert(1, 7, "1", 0L),
+				insert(1, 8, "2", 100L),
+				remove(1, 8, "2", 200L),
+				insert(1, 8, "3", 300L),
+				insert(1, 9, "4", 400L),
+				new Change(ChangeType.INSERT_TEXT, 1, 10, 2, 0, 500L, USER_ID, PROBLEM_ID, "\n"),
+				insert(2, 0, "  ", 600L),
+		};
+		Change[] coalesced = coalescer.coalesce(orig);
+		assertEquals(5, coalesced.length);
+		checkSameText(orig, coalesced);
+	}
+
+	@Test
+	public void testRepairLegacyEndColumns() {
+		// Changes stored before end_col was stored correctly
+		Change[] legacy = {
+				new Change(ChangeType.INSERT_TEXT, 1, 7, 1, 7, 0L, USER_ID, PROBLEM_ID, "1"),
+				new Change(ChangeType.INSERT_TEXT, 1, 8, 1, 8, 100L, USER_ID, PROBLEM_ID, "2"),
+				new Change(ChangeType.REMOVE_TEXT, 1, 8, 1, 8, 200L, USER_ID, PROBLEM_ID, "2"),
+		};
+		assertSame(legacy, coalescer.coalesce(legacy));
+
+		Change[] repaired = ChangeCoalescer.repairLegacyEndColumns(legacy);
+		assertEquals(8, repaired[0].getEndColumn());
+		assertEquals(9, repaired[1].getEndColumn());
+		assertEquals(9, repaired[2].getEndColumn());
+		assertEquals(7, legacy[0].getEndColumn());
+
+		Change[] coalesced = coalescer.coalesce(repaired);
+		assertEquals(2, coalesced.length);
+		assertEquals("12", coalesced[0].getText());
+		checkSameText(repaired, coalesced);
+
+		// Changes that are already correct are not copied
+		Change[] current = { insert(1, 7, "1", 0L) };
+		assertSame(current, ChangeCoalescer.repairLegacyEndColumns(current));
+	}
+}
@@ -0,0 +1,148 @@
+package org.cloudcoder.app.server.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TextDocumentTest {
+	private TextDocument doc;
+
+	@Before
+	public void setUp() {
+		doc = new TextDocument();
+	}
+
+	private void checkSameAs(List<String> expected) {
+		doc.checkIntegrity();
+		assertEquals(expected.size(), doc.getNumLines());
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), doc.getLine(i));
+			buf.append(expected.get(i));
+		}
+		assertEquals(buf.toString(), doc.getText());
+	}
+
+	@Test
+	public void testEmpty() {
+		assertEquals(0, doc.getNumLines());
+		assertEquals("", doc.getText());
+		doc.checkIntegrity();
+	}
+
+	@Test
+	public void testAppend() {
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			doc.append("line " + i + "\n");
+			expected.add("line " + i + "\n");
+		}
+		checkSameAs(expected);
+	}
+
+	@Test
+	public void testInsertAtFront() {
+		// Inserting at the front of a list-like structure is the worst
+		// case for an unbalanced tree: make sure it stays balanced.
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			doc.insertLine(0, "line " + i + "\n");
+			expected.add(0, "line " + i + "\n");
+		}
+		checkSameAs(expected);
+	}
+
+	@Test
+	public void testRandomEdits() {
+		// Compare against a List of lines after each random edit.
+		Random random = new Random(12345L);
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			int op = random.nextInt(4);
+			String line = "line " + i + "\n";
+			if (expected.isEmpty() || op == 0) {
+				int index = random.nextInt(expected.size() + 1);
+				doc.insertLine(index, line);
+				expected.add(index, line);
+			} else if (op == 1) {
+				int index = random.nextInt(expected.size());
+				doc.removeLine(index);
+				expected.remove(index);
+			} else if (op == 2) {
+				int index = random.nextInt(expected.size());
+				doc.setLine(index, line);
+				expected.set(index, line);
+			} else {
+				doc.append(line);
+				expected.add(line);
+			}
+			if (i % 500 == 0) {
+				checkSameAs(expected);
+			}
+		}
+		checkSameAs(expected);
+	}
+
+	@Test
+	public void testRemoveAll() {
+		for (int i = 0; i < 100; i++) {
+			doc.append("line " + i + "\n");
+		}
+		while (doc.getNumLines() > 0) {
+			doc.removeLine(doc.getNumLines() / 2);
+			doc.checkIntegrity();
+		}
+		assertEquals("", doc.getText());
+	}
+
+	@Test
+	public void testSetText() {
+		doc.setText("a\nb\nc");
+		assertEquals(3, doc.getNumLines());
+		assertEquals("c\n", doc.getLine(2));
+		assertEquals("a\nb\nc\n", doc.getText());
+		doc.checkIntegrity();
+	}
+
+	@Test
+	public void testRestoreText() {
+		// Unlike setText, restoreText preserves the text exactly
+		String[] texts = { "", "a", "a\n", "a\nb", "a\n\n\n", "\n" };
+		for (String text : texts) {
+			doc.restoreText(text);
+			doc.checkIntegrity();
+			assertEquals(text, doc.getText());
+		}
+	}
+
+	@Test
+	public void testIndexOutOfBounds() {
+		doc.append("a\n");
+		try {
+			doc.getLine(1);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			doc.removeLine(-1);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			doc.insertLine(2, "b\n");
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		doc.insertLine(1, "b\n");
+		assertEquals("a\nb\n", doc.getText());
+	}
+}
@@ -0,0 +1,134 @@
+package org.cloudcoder.app.server.persist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeArchive;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.EventType;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeArchiveCodecTest {
+	private static final int USER_ID = 7;
+	private static final int PROBLEM_ID = 9;
+
+	private List<Change> changeList;
+
+	@Before
+	public void setUp() {
+		changeList = new ArrayList<Change>();
+		long timestamp = 1350000000000L;
+		int eventId = 1000;
+		for (int i = 0; i < 2000; i++) {
+			ChangeType type;
+			String text;
+			if (i % 500 == 0) {
+				type = ChangeType.FULL_TEXT;
+				text = "public class X {\n}\n";
+			} else if (i % 3 == 0) {
+				type = ChangeType.REMOVE_TEXT;
+				text = "y";
+			} else {
+				type = ChangeType.INSERT_TEXT;
+				// include some non-ASCII text
+				text = (i % 7 == 0) ? "\u00e9\u4e2d" : "x";
+			}
+			timestamp += 150 + i % 7;
+			eventId += 1 + i % 3;
+			Change change = new Change(type, i / 40, i % 40, i / 40, i % 40 + text.length(),
+					timestamp, USER_ID, PROBLEM_ID, text);
+			change.setEventId(eventId);
+			change.getEvent().setId(eventId);
+			if (i % 10 == 0) {
+				change.setTiming("1@0,1@40,1@73");
+			}
+			changeList.add(change);
+		}
+	}
+
+	private static void checkSame(Change expected, Change actual) {
+		assertEquals(expected.getEventId(), actual.getEventId());
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getStartRow(), actual.getStartRow());
+		assertEquals(expected.getStartColumn(), actual.getStartColumn());
+		assertEquals(expected.getEndRow(), actual.getEndRow());
+		assertEquals(expected.getEndColumn(), actual.getEndColumn());
+		assertEquals(expected.getText(), actual.getText());
+		assertEquals(expected.getTiming(), actual.getTiming());
+		assertEquals(expected.getEventId(), actual.getEvent().getId());
+		assertEquals(expected.getEvent().getUserId(), actual.getEvent().getUserId());
+		assertEquals(expected.getEvent().getProblemId(), actual.getEvent().getProblemId());
+		assertEquals(EventType.CHANGE, actual.getEvent().getType());
+		assertEquals(expected.getEvent().getTimestamp(), actual.getEvent().getTimestamp());
+	}
+
+	@Test
+	public void testRoundTrip() {
+		ChangeArchive archive = ChangeArchiveCodec.encode(USER_ID, PROBLEM_ID, changeList);
+		List<Change> decoded = ChangeArchiveCodec.decode(archive);
+		assertEquals(changeList.size(), decoded.size());
+		for (int i = 0; i < changeList.size(); i++) {
+			checkSame(changeList.get(i), decoded.get(i));
+		}
+	}
+
+	@Test
+	public void testArchiveFields() {
+		ChangeArchive archive = ChangeArchiveCodec.encode(USER_ID, PROBLEM_ID, changeList);
+		Change first = changeList.get(0);
+		Change last = changeList.get(changeList.size() - 1);
+		assertEquals(USER_ID, archive.getUserId());
+		assertEquals(PROBLEM_ID, archive.getProblemId());
+		assertEquals(changeList.size(), archive.getNumChanges());
+		assertEquals(first.getEventId(), archive.getFirstEventId());
+		assertEquals(last.getEventId(), archive.getLastEventId());
+		assertEquals(first.getEvent().getTimestamp(), archive.getFirstTimestamp());
+		assertEquals(last.getEvent().getTimestamp(), archive.getLastTimestamp());
+		assertEquals(changeList.get(1500).getEventId(), archive.getLastFullTextEventId());
+	}
+
+	@Test
+	public void testSingleChange() {
+		List<Change> single = changeList.subList(0, 1);
+		List<Change> decoded = ChangeArchiveCodec.decode(ChangeArchiveCodec.encode(USER_ID, PROBLEM_ID, single));
+		assertEquals(1, decoded.size());
+		checkSame(single.get(0), decoded.get(0));
+	}
+
+	@Test
+	public void testNullText() {
+		Change change = new Change(ChangeType.INSERT_TEXT, 0, 0, 0, 0, 1350000000000L, USER_ID, PROBLEM_ID, (String) null);
+		change.setEventId(1);
+		change.getEvent().setId(1);
+		List<Change> decoded = ChangeArchiveCodec.decode(ChangeArchiveCodec.encode(USER_ID, PROBLEM_ID, Arrays.asList(change)));
+		checkSame(change, decoded.get(0));
+	}
+
+	@Test
+	public void testEmpty() {
+		try {
+			ChangeArchiveCodec.encode(USER_ID, PROBLEM_ID, new ArrayList<Change>());
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testNotInOrder() {
+		List<Change> reversed = new ArrayList<Change>(changeList.subList(0, 2));
+		reversed.add(reversed.remove(0));
+		try {
+			ChangeArchiveCodec.encode(USER_ID, PROBLEM_ID, reversed);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
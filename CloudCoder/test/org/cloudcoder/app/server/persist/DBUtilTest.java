@@ -0,0 +1,29 @@
+package org.cloudcoder.app.server.persist;
+
+import static org.junit.Assert.assertEquals;
+
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.RepoProblemTag;
+import org.junit.Test;
+
+public class DBUtilTest {
+	@Test
+	public void testColumnList() {
+		assertEquals("id, user_id, problem_id, type, timestamp", DBUtil.getColumnList(Event.SCHEMA));
+		assertEquals("e.id, e.user_id, e.problem_id, e.type, e.timestamp", DBUtil.getColumnList(Event.SCHEMA, "e"));
+		assertEquals("user_id, problem_id, type, timestamp", DBUtil.getColumnListNoId(Event.SCHEMA));
+	}
+
+	@Test
+	public void testInsertStatement() {
+		// The unique id is generated, so it is not inserted
+		assertEquals("insert into cc_events (user_id, problem_id, type, timestamp) values (?, ?, ?, ?)",
+				DBUtil.createInsertStatement(Event.SCHEMA));
+	}
+
+	@Test
+	public void testInsertStatementNoUniqueId() {
+		assertEquals("insert into cc_repo_problem_tags (user_id, repo_problem_id, name) values (?, ?, ?)",
+				DBUtil.createInsertStatement(RepoProblemTag.SCHEMA));
+	}
+}
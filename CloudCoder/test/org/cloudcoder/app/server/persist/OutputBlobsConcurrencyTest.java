@@ -0,0 +1,180 @@
+package org.cloudcoder.app.server.persist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CyclicBarrier;
+
+import org.cloudcoder.app.shared.model.OutputBlob;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Concurrent {@link OutputBlobs#storeBlobs(Connection, Map)} calls using two
+ * connections to a MySQL server.  The server is configured by the
+ * cloudcoder.properties file named by the <code>cloudcoder.test.config</code>
+ * system property (using the <code>cloudcoder.db</code> properties); the
+ * tests are skipped if it isn't set.  A scratch database is created and
+ * dropped.
+ */
+public class OutputBlobsConcurrencyTest {
+	private static final String DB_NAME = "cloudcoder_output_blobs_test";
+
+	private Connection conn1;
+	private Connection conn2;
+
+	@Before
+	public void setUp() throws Exception {
+		String configFile = System.getProperty("cloudcoder.test.config");
+		Assume.assumeTrue(configFile != null);
+
+		Properties config = new Properties();
+		FileReader reader = new FileReader(configFile);
+		try {
+			config.load(reader);
+		} finally {
+			reader.close();
+		}
+		config.setProperty("cloudcoder.db.databaseName", DB_NAME);
+
+		Class.forName("com.mysql.jdbc.Driver");
+		Connection serverConn = DBUtil.connectToDatabaseServer(config, "cloudcoder.db");
+		try {
+			DBUtil.execSql(serverConn, "drop database if exists " + DB_NAME);
+			DBUtil.createDatabase(serverConn, DB_NAME);
+		} finally {
+			DBUtil.closeQuietly(serverConn);
+		}
+
+		conn1 = connect(config);
+		conn2 = connect(config);
+		DBUtil.createTable(conn1, OutputBlob.SCHEMA);
+	}
+
+	private static Connection connect(Properties config) throws SQLException {
+		Connection conn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+		conn.setAutoCommit(false);
+		return conn;
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		if (conn1 != null) {
+			conn1.rollback();
+			DBUtil.execSql(conn1, "drop database if exists " + DB_NAME);
+		}
+		DBUtil.closeQuietly(conn2);
+		DBUtil.closeQuietly(conn1);
+	}
+
+	private static Map<String, OutputBlob> blobs(String... texts) {
+		Map<String, OutputBlob> blobs = new HashMap<String, OutputBlob>();
+		for (String text : texts) {
+			OutputBlob blob = OutputBlobs.createBlob(text);
+			blobs.put(blob.getHash(), blob);
+		}
+		return blobs;
+	}
+
+	private static String output(String name) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			buf.append("error: cannot find symbol ").append(name).append('\n');
+		}
+		return buf.toString();
+	}
+
+	private int countBlobs() throws SQLException {
+		PreparedStatement stmt = conn1.prepareStatement("select count(*) from " + OutputBlob.SCHEMA.getDbTableName());
+		try {
+			ResultSet resultSet = stmt.executeQuery();
+			resultSet.next();
+			return resultSet.getInt(1);
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	/**
+	 * Stores blobs and commits in a separate thread.
+	 */
+	private static class Store extends Thread {
+		private final Connection conn;
+		private final Map<String, OutputBlob> blobs;
+		private final CyclicBarrier barrier;
+		volatile Throwable error;
+
+		Store(Connection conn, Map<String, OutputBlob> blobs, CyclicBarrier barrier) {
+			this.conn = conn;
+			this.blobs = blobs;
+			this.barrier = barrier;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (barrier != null) {
+					barrier.await();
+				}
+				OutputBlobs.storeBlobs(conn, blobs);
+				conn.commit();
+			} catch (Throwable e) {
+				error = e;
+				try {
+					conn.rollback();
+				} catch (SQLException e2) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentStoreOfNewBlob() throws Exception {
+		// Two transactions store the same new outputs at the same moment:
+		// neither may be rolled back as a deadlock victim
+		int iterations = 100;
+		for (int i = 0; i < iterations; i++) {
+			Map<String, OutputBlob> blobs = blobs(output("x" + i), output("y" + i));
+			CyclicBarrier barrier = new CyclicBarrier(2);
+			Store store1 = new Store(conn1, blobs, barrier);
+			Store store2 = new Store(conn2, blobs, barrier);
+			store1.start();
+			store2.start();
+			store1.join();
+			store2.join();
+			assertNull(store1.error);
+			assertNull(store2.error);
+		}
+		assertEquals(2 * iterations, countBlobs());
+	}
+
+	@Test
+	public void testStoreWaitsForUncommittedBlob() throws Exception {
+		Map<String, OutputBlob> blobs = blobs(output("z"));
+		OutputBlobs.storeBlobs(conn1, blobs);
+
+		// The second transaction waits for the first to commit
+		Store store2 = new Store(conn2, blobs, null);
+		store2.start();
+		store2.join(500L);
+		assertTrue(store2.isAlive());
+
+		conn1.commit();
+		store2.join();
+		assertNull(store2.error);
+		assertEquals(1, countBlobs());
+	}
+}
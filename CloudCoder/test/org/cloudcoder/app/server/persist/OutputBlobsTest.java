@@ -0,0 +1,124 @@
+package org.cloudcoder.app.server.persist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cloudcoder.app.shared.model.OutputBlob;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutputBlobsTest {
+	private String longOutput;
+
+	@Before
+	public void setUp() {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			// include some non-ASCII text
+			buf.append("Expected: ").append(i).append(" h\u00e9llo \u4e2d\n");
+		}
+		longOutput = buf.toString();
+	}
+
+	@Test
+	public void testHash() throws Exception {
+		byte[] digest = MessageDigest.getInstance("SHA-1").digest(longOutput.getBytes("UTF-8"));
+		StringBuilder expected = new StringBuilder();
+		for (byte b : digest) {
+			expected.append(String.format("%02x", b & 0xFF));
+		}
+		assertEquals(expected.toString(), OutputBlobs.hash(longOutput));
+		assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709", OutputBlobs.hash(""));
+	}
+
+	@Test
+	public void testIsBlob() {
+		char[] chars = new char[OutputBlobs.MIN_BLOB_LENGTH];
+		Arrays.fill(chars, 'x');
+		String minLength = new String(chars);
+		assertFalse(OutputBlobs.isBlob(null));
+		assertFalse(OutputBlobs.isBlob(""));
+		assertFalse(OutputBlobs.isBlob(minLength.substring(1)));
+		assertTrue(OutputBlobs.isBlob(minLength));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		OutputBlob blob = OutputBlobs.createBlob(longOutput);
+		assertEquals(OutputBlobs.hash(longOutput), blob.getHash());
+		assertEquals(longOutput.getBytes("UTF-8").length, blob.getLength());
+		assertTrue(blob.getData().length < blob.getLength());
+		assertEquals(longOutput, OutputBlobs.getText(blob));
+	}
+
+	@Test
+	public void testTruncated() {
+		OutputBlob blob = OutputBlobs.createBlob(longOutput);
+		blob.setData(Arrays.copyOf(blob.getData(), blob.getData().length / 2));
+		try {
+			OutputBlobs.getText(blob);
+			fail();
+		} catch (PersistenceException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCorrupted() {
+		OutputBlob blob = OutputBlobs.createBlob(longOutput);
+		byte[] data = blob.getData();
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ~data[i];
+		}
+		try {
+			OutputBlobs.getText(blob);
+			fail();
+		} catch (PersistenceException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testToStoredForm() {
+		Map<String, OutputBlob> blobs = new HashMap<String, OutputBlob>();
+		TestResult t1 = new TestResult(TestOutcome.PASSED, "ok", longOutput, "short");
+		TestResult t2 = new TestResult(TestOutcome.FAILED_ASSERTION, "no", longOutput, null);
+		t1.setSubmissionReceiptEventId(42);
+
+		TestResult s1 = OutputBlobs.toStoredForm(t1, blobs);
+		TestResult s2 = OutputBlobs.toStoredForm(t2, blobs);
+
+		// The same output is stored once
+		assertEquals(1, blobs.size());
+		String hash = OutputBlobs.hash(longOutput);
+		assertTrue(blobs.containsKey(hash));
+
+		// Blob outputs are replaced by their hash, short ones are kept inline
+		assertEquals("", s1.getStdout());
+		assertEquals(hash, s1.getStdoutHash());
+		assertEquals("short", s1.getStderr());
+		assertNull(s1.getStderrHash());
+		assertEquals(hash, s2.getStdoutHash());
+		assertNull(s2.getStderr());
+		assertNull(s2.getStderrHash());
+
+		// Other fields are copied
+		assertEquals(TestOutcome.PASSED, s1.getOutcome());
+		assertEquals("ok", s1.getMessage());
+		assertEquals(42, s1.getSubmissionReceiptEventId());
+
+		// The original is not modified
+		assertEquals(longOutput, t1.getStdout());
+		assertNull(t1.getStdoutHash());
+	}
+}
@@ -0,0 +1,71 @@
+package org.cloudcoder.app.server.persist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PasswordVerifierTest {
+	private PasswordVerifier verifier;
+
+	@Before
+	public void setUp() {
+		verifier = new PasswordVerifier(1, 1, 1000L,
+				new LoginRateLimiter(10, 60000L, 100), new LoginRateLimiter(10, 60000L, 100));
+		verifier.setTrustedProxies(Arrays.asList("10.0.0.1", "10.0.0.2"));
+	}
+
+	@After
+	public void tearDown() {
+		verifier.shutdown();
+	}
+
+	private static HttpServletRequest request(final String remoteAddr, final String forwardedFor) {
+		return (HttpServletRequest) Proxy.newProxyInstance(
+				PasswordVerifierTest.class.getClassLoader(),
+				new Class<?>[]{HttpServletRequest.class},
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getRemoteAddr")) {
+							return remoteAddr;
+						}
+						if (method.getName().equals("getHeader") && "X-Forwarded-For".equalsIgnoreCase((String) args[0])) {
+							return forwardedFor;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	@Test
+	public void testDirect() {
+		assertEquals("192.168.1.5", verifier.getClientAddress(request("192.168.1.5", null)));
+		// The header is ignored unless the request is from a trusted proxy
+		assertEquals("192.168.1.5", verifier.getClientAddress(request("192.168.1.5", "1.2.3.4")));
+	}
+
+	@Test
+	public void testForwarded() {
+		assertEquals("1.2.3.4", verifier.getClientAddress(request("10.0.0.1", "1.2.3.4")));
+		// Chained trusted proxies are skipped
+		assertEquals("1.2.3.4", verifier.getClientAddress(request("10.0.0.1", "1.2.3.4, 10.0.0.2")));
+		// Addresses before the one added by the trusted proxy may be forged
+		assertEquals("1.2.3.4", verifier.getClientAddress(request("10.0.0.1", "6.6.6.6, 1.2.3.4")));
+	}
+
+	@Test
+	public void testForwardedUnknown() {
+		assertNull(verifier.getClientAddress(request("10.0.0.1", null)));
+		assertNull(verifier.getClientAddress(request("10.0.0.1", " , 10.0.0.2")));
+	}
+}
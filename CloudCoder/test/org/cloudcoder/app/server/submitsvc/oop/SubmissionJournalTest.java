@@ -0,0 +1,232 @@
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SubmissionJournalTest {
+	private File file;
+	private SubmissionJournal journal;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("journal", ".dat");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		if (journal != null) {
+			journal.close();
+		}
+		file.delete();
+		new File(file.getPath() + ".compact").delete();
+	}
+
+	private List<SubmissionJournal.Entry> reopen() throws Exception {
+		if (journal != null) {
+			journal.close();
+		}
+		journal = new SubmissionJournal(file);
+		return journal.recover();
+	}
+
+	private static String programText(int n) {
+		char[] text = new char[n];
+		Arrays.fill(text, 'x');
+		// include some non-ASCII text
+		return "// \u00e9\u4e2d\n" + new String(text);
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		assertTrue(reopen().isEmpty());
+		assertTrue(reopen().isEmpty());
+	}
+
+	@Test
+	public void testReplay() throws Exception {
+		reopen();
+		long id1 = journal.enqueued(1, 10, 100, programText(10));
+		long id2 = journal.enqueued(2, 20, 200, programText(20));
+		long id3 = journal.enqueued(3, 30, 300, programText(30));
+		journal.dispatched(id1);
+		journal.completed(id1, new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS)), null);
+		journal.dispatched(id2);
+		journal.completed(id2, null, new Exception("Builder failed"));
+		journal.delivered(id2);
+		journal.dispatched(id3);
+
+		List<SubmissionJournal.Entry> entries = reopen();
+		assertEquals(2, entries.size());
+
+		SubmissionJournal.Entry e1 = entries.get(0);
+		assertEquals(id1, e1.getId());
+		assertEquals(1, e1.getProblemId());
+		assertEquals(10, e1.getUserId());
+		assertEquals(100, e1.getChangeEventId());
+		assertEquals(programText(10), e1.getProgramText());
+		assertTrue(e1.isComplete());
+		assertNull(e1.getError());
+		SubmissionResult result = SharedSubmissionQueue.deserializeResult(e1.getResult());
+		assertEquals(CompilationOutcome.SUCCESS, result.getCompilationResult().getOutcome());
+
+		// Dispatched, but testing didn't complete
+		SubmissionJournal.Entry e3 = entries.get(1);
+		assertEquals(id3, e3.getId());
+		assertFalse(e3.isComplete());
+		assertNull(e3.getResult());
+
+		// Journal ids are not reused after a restart
+		long id4 = journal.enqueued(4, 40, 400, programText(40));
+		assertTrue(id4 > id3);
+	}
+
+	@Test
+	public void testCompletedWithError() throws Exception {
+		reopen();
+		long id = journal.enqueued(1, 10, 100, programText(10));
+		journal.completed(id, null, new Exception("Builder failed"));
+
+		List<SubmissionJournal.Entry> entries = reopen();
+		assertEquals(1, entries.size());
+		assertTrue(entries.get(0).isComplete());
+		assertNull(entries.get(0).getResult());
+		assertEquals("Builder failed", entries.get(0).getError());
+	}
+
+	@Test
+	public void testTornRecord() throws Exception {
+		reopen();
+		journal.enqueued(1, 10, 100, programText(10));
+		journal.enqueued(2, 20, 200, programText(20));
+		journal.enqueued(3, 30, 300, programText(30));
+		journal.close();
+		journal = null;
+
+		// A crash in the middle of writing the last record
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 5);
+		} finally {
+			raf.close();
+		}
+
+		List<SubmissionJournal.Entry> entries = reopen();
+		assertEquals(2, entries.size());
+		assertEquals(1, entries.get(0).getProblemId());
+		assertEquals(2, entries.get(1).getProblemId());
+
+		// The torn record is gone, so records written after it are replayed
+		journal.enqueued(4, 40, 400, programText(40));
+		entries = reopen();
+		assertEquals(3, entries.size());
+		assertEquals(4, entries.get(2).getProblemId());
+	}
+
+	@Test
+	public void testCorruptRecord() throws Exception {
+		reopen();
+		journal.enqueued(1, 10, 100, programText(10));
+		journal.enqueued(2, 20, 200, programText(20));
+		journal.enqueued(3, 30, 300, programText(30));
+		journal.close();
+		journal = null;
+
+		// Damage the body of the second record: it and the records
+		// following it are ignored
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			int firstLength = raf.readInt();
+			long pos = 4 + firstLength + 4 + 4 + 10;
+			raf.seek(pos);
+			int b = raf.read();
+			raf.seek(pos);
+			raf.write(b ^ 0xFF);
+		} finally {
+			raf.close();
+		}
+
+		List<SubmissionJournal.Entry> entries = reopen();
+		assertEquals(1, entries.size());
+		assertEquals(1, entries.get(0).getProblemId());
+	}
+
+	@Test
+	public void testCompactOnRecover() throws Exception {
+		reopen();
+		for (int i = 0; i < 50; i++) {
+			long id = journal.enqueued(i, i, i, programText(1000));
+			journal.delivered(id);
+		}
+		long keep = journal.enqueued(99, 99, 99, programText(1000));
+		journal.close();
+		journal = null;
+		long before = file.length();
+
+		List<SubmissionJournal.Entry> entries = reopen();
+		assertEquals(1, entries.size());
+		assertEquals(keep, entries.get(0).getId());
+		assertTrue(file.length() < before / 10);
+		assertFalse(new File(file.getPath() + ".compact").exists());
+	}
+
+	@Test
+	public void testCompactWhileRunning() throws Exception {
+		journal = new SubmissionJournal(file);
+		journal.setCompactBytes(8 * 1024);
+		journal.recover();
+
+		long keep = journal.enqueued(99, 99, 99, programText(1000));
+		journal.completed(keep, null, new Exception("Builder failed"));
+		for (int i = 0; i < 200; i++) {
+			long id = journal.enqueued(i, i, i, programText(1000));
+			journal.completed(id, null, null);
+			journal.delivered(id);
+		}
+
+		// Without compaction, the journal would be over 200K
+		assertTrue(file.length() < 32 * 1024);
+
+		List<SubmissionJournal.Entry> entries = reopen();
+		assertEquals(1, entries.size());
+		SubmissionJournal.Entry entry = entries.get(0);
+		assertEquals(keep, entry.getId());
+		assertEquals(programText(1000), entry.getProgramText());
+		// The completion record survives compaction
+		assertTrue(entry.isComplete());
+		assertNotNull(entry.getError());
+	}
+
+	@Test
+	public void testRetention() throws Exception {
+		reopen();
+		journal.enqueued(1, 10, 100, programText(10));
+		Thread.sleep(50L);
+		journal.close();
+
+		journal = new SubmissionJournal(file);
+		journal.setRetentionMillis(10L);
+		assertTrue(journal.recover().isEmpty());
+
+		// Expired submissions are dropped from the journal
+		journal.close();
+		journal = null;
+		assertTrue(reopen().isEmpty());
+	}
+}
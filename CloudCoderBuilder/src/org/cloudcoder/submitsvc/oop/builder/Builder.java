@@ -24,6 +24,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +35,7 @@ import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemType;
 import org.cloudcoder.app.shared.model.Submission;
 import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionType;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -135,12 +137,26 @@ public class Builder implements Runnable {
 						testCaseList = safeReadObject();
 					}
 
-					// read program text
+					// read submission type and program text
+					SubmissionType submissionType = safeReadObject();
 					String programText = safeReadObject();
-
-					// Send the submission details to Builder for testing,
-					// read response.
-					SubmissionResult result = sendSubmissionForTesting(problem, testCaseList, programText);
+					
+					SubmissionResult result;
+					if (submissionType == SubmissionType.COMPILE_ONLY
+							&& !SubmissionType.isCompileOnlySupported(problem.getProblemType().getLanguage())) {
+						// Testing with no test cases would just report success
+						logger.error("Compile-only submissions are not supported for {}", problem.getProblemType());
+						result = new SubmissionResult(new CompilationResult(CompilationOutcome.BUILDER_ERROR));
+					} else {
+						// For a compile-only submission, test with no test cases
+						if (submissionType == SubmissionType.COMPILE_ONLY) {
+							testCaseList = new ArrayList<TestCase>();
+						}
+						
+						// Send the submission details to Builder for testing,
+						// read response.
+						result = sendSubmissionForTesting(problem, testCaseList, programText);
+					}
 					
 					out.writeObject(result);
 					out.flush();
@@ -22,13 +22,13 @@ import java.io.File;
 import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
 import org.cloudcoder.builder2.model.BuilderSubmission;
-import org.cloudcoder.builder2.model.DeleteDirectoryCleanupAction;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.NativeExecutable;
 import org.cloudcoder.builder2.model.ProgramSource;
-import org.cloudcoder.builder2.util.FileUtil;
+import org.cloudcoder.builder2.model.ReleaseWorkspaceCleanupAction;
 import org.cloudcoder.builder2.util.SubmissionResultUtil;
+import org.cloudcoder.builder2.workspace.WorkspaceManager;
 
 /**
  * An {@link IBuildStep} that compiles a C/C++ program to produce a
@@ -54,14 +54,14 @@ public class CCompilerBuildStep implements IBuildStep {
 		
 		ProgramSource programSource = programSourceList[0];
 		
-		File tempDir = FileUtil.makeTempDir();
+		File tempDir = WorkspaceManager.getInstance().acquire();
 		if (tempDir == null) {
-			// Couldn't create temp dir
+			// Couldn't get a workspace
 			submission.addArtifact(SubmissionResultUtil.createSubmissionResultForUnexpectedBuildError(
 					"Could not create temp directory for compilation"));
 			return;
 		}
-		submission.addCleanupAction(new DeleteDirectoryCleanupAction(tempDir));
+		submission.addCleanupAction(new ReleaseWorkspaceCleanupAction(tempDir));
 		
 		Compiler compiler = new Compiler(programSource.getProgramText(), tempDir, DEFAULT_PROG_NAME);
 		compiler.setCompilerExe("g++"); // FIXME: should make this configurable
@@ -71,6 +71,10 @@ public class CCompilerBuildStep implements IBuildStep {
 					compiler,
 					programSource.getPrologueLength(),
 					programSource.getEpilogueLength()));
+		} else if (!WorkspaceManager.getInstance().isWithinQuota(tempDir)) {
+			// Compilation succeeded, but the output is too large
+			submission.addArtifact(SubmissionResultUtil.createSubmissionResultForUnexpectedBuildError(
+					"Compiled program exceeds workspace size quota"));
 		} else {
 			// Compilation succeeded
 			
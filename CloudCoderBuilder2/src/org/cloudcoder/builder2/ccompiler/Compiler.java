@@ -30,6 +30,7 @@ import java.util.List;
 import org.apache.commons.io.IOUtils;
 import org.cloudcoder.app.shared.model.CompilerDiagnostic;
 import org.cloudcoder.builder2.process.ProcessRunner;
+import org.cloudcoder.builder2.workspace.WorkspaceManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -143,6 +144,7 @@ public class Compiler {
 
     private boolean runCommand(File tempDir, String[] cmd) {
         ProcessRunner runner = new ProcessRunner();
+        runner.addResourceLimit(WorkspaceManager.getInstance().getFileSizeResourceLimit());
         if (!runner.runSynchronous(tempDir, cmd)) {
             statusMessage = runner.getStatusMessage();
             return false;
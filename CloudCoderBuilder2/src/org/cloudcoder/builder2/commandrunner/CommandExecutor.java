@@ -23,6 +23,7 @@ import org.cloudcoder.builder2.model.CommandResult;
 import org.cloudcoder.builder2.model.ProcessStatus;
 import org.cloudcoder.builder2.process.ProcessRunner;
 import org.cloudcoder.builder2.util.ArrayUtil;
+import org.cloudcoder.builder2.workspace.WorkspaceManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -83,6 +84,11 @@ public class CommandExecutor implements Runnable {
 		// FIXME: allow creation of LimitedProcessRunner
 		// FIXME: allow use of a SECCOMP sandbox
 		ProcessRunner processRunner = new ProcessRunner();
+		
+		// The command runs in a workspace: don't let it write a file
+		// larger than the workspace quota
+		WorkspaceManager workspaceManager = WorkspaceManager.getInstance();
+		processRunner.addResourceLimit(workspaceManager.getFileSizeResourceLimit());
 
 		processRunner.setStdin(commandInput.getInput());
 
@@ -90,6 +96,7 @@ public class CommandExecutor implements Runnable {
 		processRunner.runAsynchronous(command.getDir(), cmd);
 
 		int elapsed = 0;
+		boolean overQuota = false;
 		while (processRunner.isRunning() && elapsed < CommandExecutor.MAX_TIME_IN_SECONDS * 1000) {
 			try {
 				Thread.sleep(CommandExecutor.POLL_INTERVAL_IN_MILLIS);
@@ -98,9 +105,21 @@ public class CommandExecutor implements Runnable {
 			}
 
 			elapsed += CommandExecutor.POLL_INTERVAL_IN_MILLIS;
+			
+			// The file size limit applies to each file separately,
+			// so also check the total size of the workspace
+			if (!workspaceManager.isWithinQuota(command.getDir())) {
+				overQuota = true;
+				break;
+			}
 		}
 
-		if (processRunner.isRunning()) {
+		if (overQuota && processRunner.isRunning()) {
+			// Wrote too much data to the workspace
+			processRunner.killProcess();
+			logger.info("Command in {} exceeded the workspace size quota", command.getDir());
+			commandResult = new CommandResult(ProcessStatus.KILLED_BY_SIGNAL, "Program exceeded workspace size quota");
+		} else if (processRunner.isRunning()) {
 			// timed out!
 			processRunner.killProcess();
 			commandResult = new CommandResult(ProcessStatus.TIMED_OUT, processRunner.getStatusMessage());
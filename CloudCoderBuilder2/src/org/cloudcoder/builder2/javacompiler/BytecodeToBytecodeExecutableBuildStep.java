@@ -29,11 +29,11 @@ import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.Bytecode;
 import org.cloudcoder.builder2.model.BytecodeExecutable;
-import org.cloudcoder.builder2.model.DeleteDirectoryCleanupAction;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
-import org.cloudcoder.builder2.util.FileUtil;
+import org.cloudcoder.builder2.model.ReleaseWorkspaceCleanupAction;
 import org.cloudcoder.builder2.util.SubmissionResultUtil;
+import org.cloudcoder.builder2.workspace.WorkspaceManager;
 
 /**
  * Convert array of {@link Bytecode} objects into a {@link BytecodeExecutable}
@@ -60,14 +60,14 @@ public class BytecodeToBytecodeExecutableBuildStep implements IBuildStep {
 		}
 		
 		// Create temporary directory
-		File tempDir = FileUtil.makeTempDir();
+		File tempDir = WorkspaceManager.getInstance().acquire();
 		if (tempDir == null) {
-			// Couldn't create temp dir
+			// Couldn't get a workspace
 			submission.addArtifact(SubmissionResultUtil.createSubmissionResultForUnexpectedBuildError(
 					"Could not create temp directory for compilation"));
 			return;
 		}
-		submission.addCleanupAction(new DeleteDirectoryCleanupAction(tempDir));
+		submission.addCleanupAction(new ReleaseWorkspaceCleanupAction(tempDir));
 
 		// Write class files into temporary directory
 		List<String> fileNameList = new ArrayList<String>();
@@ -94,6 +94,12 @@ public class BytecodeToBytecodeExecutableBuildStep implements IBuildStep {
 			}
 		}
 		
+		if (!WorkspaceManager.getInstance().isWithinQuota(tempDir)) {
+			submission.addArtifact(SubmissionResultUtil.createSubmissionResultForUnexpectedBuildError(
+					"Java class files exceed workspace size quota"));
+			return;
+		}
+		
 		// Create BytecodeExecutable artifact
 		BytecodeExecutable bytecodeExe = new BytecodeExecutable(tempDir, fileNameList);
 		bytecodeExe.setMainClass(packageAndClassNamesList[0].getFullyQualifiedClassName());
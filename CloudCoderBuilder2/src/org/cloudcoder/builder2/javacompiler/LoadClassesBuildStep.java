@@ -17,7 +17,10 @@
 
 package org.cloudcoder.builder2.javacompiler;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.cloudcoder.app.shared.model.SubmissionResult;
@@ -26,13 +29,16 @@ import org.cloudcoder.builder2.model.Bytecode;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.LoadedClasses;
+import org.cloudcoder.builder2.model.PrecompiledClasses;
+import org.cloudcoder.builder2.util.ArrayUtil;
 import org.cloudcoder.builder2.util.SubmissionResultUtil;
 
 import sun.org.mozilla.classfile.ByteCode;
 
 /**
  * Use a class loader to load all of the {@link ByteCode}
- * objects produced by an earlier {@link JavaCompilerBuildStep}.
+ * objects produced by an earlier {@link JavaCompilerBuildStep},
+ * along with any {@link PrecompiledClasses} added by an earlier build step.
  * Produces a {@link LoadedClasses} object as a result artifact.
  * 
  * @author David Hovemeyer
@@ -47,6 +53,16 @@ public class LoadClassesBuildStep implements IBuildStep {
 			throw new InternalBuilderException(this.getClass(), "No Bytecode list");
 		}
 
+		// If there are precompiled classes, they are defined along with
+		// the freshly-compiled classes
+		PrecompiledClasses precompiledClasses = submission.getArtifact(PrecompiledClasses.class);
+		if (precompiledClasses != null) {
+			List<Bytecode> allBytecodeList = new ArrayList<Bytecode>();
+			allBytecodeList.addAll(Arrays.asList(precompiledClasses.getBytecodeList()));
+			allBytecodeList.addAll(Arrays.asList(bytecodeList));
+			bytecodeList = ArrayUtil.toArray(allBytecodeList, Bytecode.class);
+		}
+
 		Map<String, byte[]> classes = new HashMap<String, byte[]>();
 		for (Bytecode bytecode : bytecodeList) {
 			classes.put(bytecode.getClassName(), bytecode.getCode());
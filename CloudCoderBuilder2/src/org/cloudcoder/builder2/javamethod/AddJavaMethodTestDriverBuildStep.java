@@ -26,6 +26,7 @@ import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
+import org.cloudcoder.builder2.model.PrecompiledClasses;
 import org.cloudcoder.builder2.model.ProgramSource;
 import org.cloudcoder.builder2.util.ArrayUtil;
 
@@ -33,6 +34,11 @@ import org.cloudcoder.builder2.util.ArrayUtil;
  * Add a test driver class to execute all {@link TestCase}s against
  * a scaffolded JAVA_METHOD submission.  This step should be
  * executed <em>after</em> {@link AddJavaMethodScaffoldingBuildStep}.
+ * If a compiled version of the test driver is available in the
+ * {@link JavaMethodTestDriverCache}, it is added as a
+ * {@link PrecompiledClasses} artifact rather than being compiled again.
+ * In either case, a {@link JavaMethodTestDriver} artifact is added
+ * to be checked by {@link CheckJavaMethodTestDriverBuildStep}.
  * 
  * @author David Hovemeyer
  *
@@ -65,6 +71,14 @@ public class AddJavaMethodTestDriverBuildStep implements IBuildStep {
         tester.append("}");
         String testerCode = tester.toString();
 
+        // If the test driver has already been compiled, use the cached bytecode
+        JavaMethodTestDriverCache.CachedDriver cachedEntry = JavaMethodTestDriverCache.getInstance().get(testerCode);
+        submission.addArtifact(new JavaMethodTestDriver(testerCode, cachedEntry));
+        if (cachedEntry != null) {
+        	submission.addArtifact(new PrecompiledClasses(cachedEntry.getBytecodeList()));
+        	return;
+        }
+
         // Create ProgramSource for test driver
         ProgramSource testerProgramSource = new ProgramSource(testerCode);
 
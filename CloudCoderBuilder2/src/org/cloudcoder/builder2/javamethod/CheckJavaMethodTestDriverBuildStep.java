@@ -0,0 +1,186 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javamethod;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.builder2.javacompiler.JavaCompilerBuildStep;
+import org.cloudcoder.builder2.javacompiler.LoadClassesBuildStep;
+import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.Bytecode;
+import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.model.InternalBuilderException;
+import org.cloudcoder.builder2.model.LoadedClasses;
+import org.cloudcoder.builder2.model.PrecompiledClasses;
+import org.cloudcoder.builder2.model.ProgramSource;
+import org.cloudcoder.builder2.util.ArrayUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Check the {@link JavaMethodTestDriver} of a JAVA_METHOD submission
+ * after its classes have been loaded.  This step must execute
+ * <em>after</em> {@link LoadClassesBuildStep}.
+ * <ul>
+ * <li>If the test driver was compiled along with the submission, it
+ *     is added to the {@link JavaMethodTestDriverCache} so that later
+ *     submissions can reuse it.</li>
+ * <li>If the test driver came from the cache, the signature of the
+ *     submitted method (including its throws clause) is checked against the
+ *     signature the cached driver was compiled against, and the Test class
+ *     is checked for a constructor the driver can call.  On a mismatch,
+ *     the driver is compiled from source along with the submission, so that
+ *     an incompatible method produces the same compiler diagnostics it
+ *     would have without the cache.</li>
+ * </ul>
+ * 
+ * @author David Hovemeyer
+ */
+public class CheckJavaMethodTestDriverBuildStep implements IBuildStep {
+	private static final Logger logger = LoggerFactory.getLogger(CheckJavaMethodTestDriverBuildStep.class);
+
+	private static final String TESTER_CLASS_NAME = "Tester";
+	private static final String TEST_CLASS_NAME = "Test";
+
+	@Override
+	public void execute(BuilderSubmission submission) {
+		JavaMethodTestDriver testDriver = submission.getArtifact(JavaMethodTestDriver.class);
+		if (testDriver == null) {
+			throw new InternalBuilderException(this.getClass(), "No JavaMethodTestDriver");
+		}
+		
+		Problem problem = submission.getArtifact(Problem.class);
+		if (problem == null) {
+			throw new InternalBuilderException(this.getClass(), "No Problem");
+		}
+		
+		LoadedClasses loadedClasses = submission.getArtifact(LoadedClasses.class);
+		if (loadedClasses == null) {
+			throw new InternalBuilderException(this.getClass(), "No LoadedClasses");
+		}
+		
+		String methodSignature = findMethodSignature(loadedClasses, problem.getTestname());
+		
+		if (!testDriver.isCached()) {
+			// The test driver was compiled along with the submission:
+			// if the tested method is unambiguous, cache the compiled driver
+			if (methodSignature != null) {
+				Bytecode testerBytecode = findTesterBytecode(submission);
+				if (testerBytecode != null) {
+					JavaMethodTestDriverCache.getInstance().put(testDriver.getDriverSource(),
+							new JavaMethodTestDriverCache.CachedDriver(new Bytecode[]{testerBytecode}, methodSignature));
+				}
+			}
+			return;
+		}
+		
+		if (methodSignature != null && methodSignature.equals(testDriver.getCachedEntry().getMethodSignature())) {
+			// The cached driver can be linked against the submitted method
+			return;
+		}
+
+		// Signature mismatch: compile the test driver along with the submission
+		logger.debug("Method signature {} does not match cached test driver, compiling test driver", methodSignature);
+		recompileWithTestDriver(submission, testDriver);
+	}
+
+	private String findMethodSignature(LoadedClasses loadedClasses, String methodName) {
+		Class<?> testCls;
+		try {
+			testCls = loadedClasses.getClassLoader().loadClass(TEST_CLASS_NAME);
+		} catch (ClassNotFoundException e) {
+			throw new InternalBuilderException(this.getClass(), "Unexpectedly failed to load Test class", e);
+		}
+		
+		// The test driver instantiates Test using its no-arg constructor:
+		// if it can't do that without a compile error, don't use a cached driver
+		if (!hasUsableConstructor(testCls)) {
+			return null;
+		}
+		
+		// If the method is missing or overloaded, we can't tell which
+		// method the test driver was compiled against
+		Method testedMethod = null;
+		for (Method method : testCls.getDeclaredMethods()) {
+			if (method.getName().equals(methodName)) {
+				if (testedMethod != null) {
+					return null;
+				}
+				testedMethod = method;
+			}
+		}
+		return testedMethod != null ? JavaMethodTestDriverCache.getMethodSignature(testedMethod) : null;
+	}
+
+	private boolean hasUsableConstructor(Class<?> testCls) {
+		if (testCls.isInterface() || Modifier.isAbstract(testCls.getModifiers())) {
+			return false;
+		}
+		Constructor<?> ctor;
+		try {
+			ctor = testCls.getDeclaredConstructor();
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+		// The driver is in the same package as Test, so any non-private
+		// constructor is accessible; declared exceptions might be checked
+		// exceptions the driver doesn't handle
+		return !Modifier.isPrivate(ctor.getModifiers()) && ctor.getExceptionTypes().length == 0;
+	}
+
+	private Bytecode findTesterBytecode(BuilderSubmission submission) {
+		Bytecode[] bytecodeList = submission.getArtifact(Bytecode[].class);
+		if (bytecodeList == null) {
+			throw new InternalBuilderException(this.getClass(), "No Bytecode list");
+		}
+		for (Bytecode bytecode : bytecodeList) {
+			if (bytecode.getClassName().equals(TESTER_CLASS_NAME)) {
+				return bytecode;
+			}
+		}
+		return null;
+	}
+
+	private void recompileWithTestDriver(BuilderSubmission submission, JavaMethodTestDriver testDriver) {
+		ProgramSource[] programSourceList = submission.getArtifact(ProgramSource[].class);
+		if (programSourceList == null) {
+			throw new InternalBuilderException(this.getClass(), "No ProgramSource list");
+		}
+		
+		// Replace the cached driver with its source
+		List<ProgramSource> allProgramSourceList = new ArrayList<ProgramSource>();
+		allProgramSourceList.add(new ProgramSource(testDriver.getDriverSource()));
+		allProgramSourceList.addAll(Arrays.asList(programSourceList));
+		submission.addArtifact(ArrayUtil.toArray(allProgramSourceList, ProgramSource.class));
+		submission.addArtifact(new PrecompiledClasses(new Bytecode[0]));
+		submission.addArtifact(new JavaMethodTestDriver(testDriver.getDriverSource(), null));
+		
+		// Compile and load: a compilation failure completes the submission
+		// with the compiler diagnostics
+		new JavaCompilerBuildStep().execute(submission);
+		if (!submission.isComplete()) {
+			new LoadClassesBuildStep().execute(submission);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javamethod;
+
+import org.cloudcoder.builder2.model.BuilderSubmission;
+
+/**
+ * Submission artifact describing the test driver (<code>Tester</code> class)
+ * for a JAVA_METHOD submission.  Records the generated source of the
+ * test driver, and (if the driver was found in the
+ * {@link JavaMethodTestDriverCache}) the cached compiled driver.
+ * 
+ * @author David Hovemeyer
+ */
+public class JavaMethodTestDriver {
+	private String driverSource;
+	private JavaMethodTestDriverCache.CachedDriver cachedEntry;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param driverSource the generated source code of the test driver
+	 * @param cachedEntry  the cached compiled test driver, or null if the
+	 *                     test driver must be compiled along with the
+	 *                     {@link BuilderSubmission}
+	 */
+	public JavaMethodTestDriver(String driverSource, JavaMethodTestDriverCache.CachedDriver cachedEntry) {
+		this.driverSource = driverSource;
+		this.cachedEntry = cachedEntry;
+	}
+	
+	/**
+	 * @return the generated source code of the test driver
+	 */
+	public String getDriverSource() {
+		return driverSource;
+	}
+	
+	/**
+	 * @return the cached compiled test driver, or null if the test driver
+	 *         was not found in the cache
+	 */
+	public JavaMethodTestDriverCache.CachedDriver getCachedEntry() {
+		return cachedEntry;
+	}
+	
+	/**
+	 * @return true if the test driver was found in the cache
+	 */
+	public boolean isCached() {
+		return cachedEntry != null;
+	}
+}
@@ -0,0 +1,174 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javamethod;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.cloudcoder.builder2.model.Bytecode;
+
+/**
+ * Cache of compiled JAVA_METHOD test drivers.
+ * The generated test driver source depends only on the problem's
+ * test method name and on its test cases, so the driver source itself
+ * identifies a (problem, test case set) version and is used as the key.
+ * Each entry records the signature of the tested method the driver was
+ * compiled against, so that a submission whose method signature differs
+ * can fall back to compiling the driver from source (producing the usual
+ * compiler diagnostics).  The cache is bounded: the least recently used
+ * entries are evicted.
+ * 
+ * @author David Hovemeyer
+ */
+public class JavaMethodTestDriverCache {
+	/** Maximum number of compiled test drivers to keep. */
+	public static final int MAX_ENTRIES = 256;
+	
+	/**
+	 * A cached compiled test driver.
+	 */
+	public static class CachedDriver {
+		private Bytecode[] bytecodeList;
+		private String methodSignature;
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param bytecodeList     the compiled test driver class(es)
+		 * @param methodSignature  signature of the tested method the driver was compiled against
+		 *                         (see {@link JavaMethodTestDriverCache#getMethodSignature(Method)})
+		 */
+		public CachedDriver(Bytecode[] bytecodeList, String methodSignature) {
+			this.bytecodeList = bytecodeList;
+			this.methodSignature = methodSignature;
+		}
+		
+		/**
+		 * @return the compiled test driver class(es)
+		 */
+		public Bytecode[] getBytecodeList() {
+			return bytecodeList;
+		}
+		
+		/**
+		 * @return signature of the tested method the driver was compiled against
+		 */
+		public String getMethodSignature() {
+			return methodSignature;
+		}
+	}
+	
+	private static final JavaMethodTestDriverCache instance = new JavaMethodTestDriverCache();
+	
+	/**
+	 * @return the singleton instance
+	 */
+	public static JavaMethodTestDriverCache getInstance() {
+		return instance;
+	}
+	
+	private Map<String, CachedDriver> driverSourceToEntryMap;
+	
+	private JavaMethodTestDriverCache() {
+		driverSourceToEntryMap = new LinkedHashMap<String, CachedDriver>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedDriver> eldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+	}
+	
+	/**
+	 * Find a compiled test driver.
+	 * 
+	 * @param driverSource the generated test driver source
+	 * @return the {@link CachedDriver}, or null if there is no such entry
+	 */
+	public synchronized CachedDriver get(String driverSource) {
+		return driverSourceToEntryMap.get(driverSource);
+	}
+	
+	/**
+	 * Add a compiled test driver.
+	 * 
+	 * @param driverSource the generated test driver source
+	 * @param entry        the compiled test driver
+	 */
+	public synchronized void put(String driverSource, CachedDriver entry) {
+		driverSourceToEntryMap.put(driverSource, entry);
+	}
+	
+	/**
+	 * Get a string describing the signature (modifiers, type parameters,
+	 * return type, name, parameter types, and declared exceptions) of a method.
+	 * Generic types are described with their type arguments, since methods
+	 * with the same erased types can differ in whether a test driver
+	 * compiles against them (e.g., <code>int f(List&lt;String&gt;)</code> and
+	 * <code>int f(List&lt;Integer&gt;)</code>).  Two methods with the same
+	 * signature string have the same JVM method descriptor and are invoked
+	 * the same way, and a test driver that compiles against one compiles
+	 * against the other, so the driver compiled against one can be linked
+	 * against the other.
+	 * 
+	 * @param method the method
+	 * @return the method's signature
+	 */
+	public static String getMethodSignature(Method method) {
+		StringBuilder buf = new StringBuilder();
+		buf.append(Modifier.toString(method.getModifiers()));
+		buf.append(' ');
+		TypeVariable<Method>[] typeParams = method.getTypeParameters();
+		if (typeParams.length > 0) {
+			buf.append('<');
+			for (int i = 0; i < typeParams.length; i++) {
+				if (i > 0) {
+					buf.append(',');
+				}
+				buf.append(typeParams[i].getName());
+				appendTypeList(buf, " extends ", "&", typeParams[i].getBounds());
+			}
+			buf.append("> ");
+		}
+		buf.append(getTypeName(method.getGenericReturnType()));
+		buf.append(' ');
+		buf.append(method.getName());
+		buf.append('(');
+		appendTypeList(buf, "", ",", method.getGenericParameterTypes());
+		buf.append(')');
+		appendTypeList(buf, " throws ", ",", method.getGenericExceptionTypes());
+		return buf.toString();
+	}
+
+	private static void appendTypeList(StringBuilder buf, String prefix, String sep, Type[] types) {
+		for (int i = 0; i < types.length; i++) {
+			buf.append(i == 0 ? prefix : sep);
+			buf.append(getTypeName(types[i]));
+		}
+	}
+
+	private static String getTypeName(Type type) {
+		// Class.toString() includes "class" or "interface"
+		return (type instanceof Class) ? ((Class<?>) type).getName() : type.toString();
+	}
+}
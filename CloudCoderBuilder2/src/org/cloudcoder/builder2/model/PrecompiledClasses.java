@@ -0,0 +1,46 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.model;
+
+/**
+ * A submission artifact containing {@link Bytecode} for classes that
+ * were compiled ahead of time (for example, a cached test driver),
+ * and which should be loaded along with the classes compiled from
+ * the submission's {@link ProgramSource}s.
+ * 
+ * @author David Hovemeyer
+ */
+public class PrecompiledClasses {
+	private Bytecode[] bytecodeList;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param bytecodeList the precompiled {@link Bytecode} objects
+	 */
+	public PrecompiledClasses(Bytecode[] bytecodeList) {
+		this.bytecodeList = bytecodeList;
+	}
+	
+	/**
+	 * @return the precompiled {@link Bytecode} objects
+	 */
+	public Bytecode[] getBytecodeList() {
+		return bytecodeList;
+	}
+}
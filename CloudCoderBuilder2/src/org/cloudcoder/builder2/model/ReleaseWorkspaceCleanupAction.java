@@ -0,0 +1,48 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.model;
+
+import java.io.File;
+
+import org.cloudcoder.builder2.workspace.WorkspaceManager;
+
+/**
+ * Implementation of {@link ICleanupAction} for returning a workspace
+ * directory to the {@link WorkspaceManager}.
+ * 
+ * @author David Hovemeyer
+ */
+public class ReleaseWorkspaceCleanupAction implements ICleanupAction {
+
+	private File dir;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param dir the workspace directory to release
+	 */
+	public ReleaseWorkspaceCleanupAction(File dir) {
+		this.dir = dir;
+	}
+
+	@Override
+	public void execute() {
+		WorkspaceManager.getInstance().release(dir);
+	}
+
+}
@@ -20,9 +20,18 @@ package org.cloudcoder.builder2.model;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionType;
+import org.cloudcoder.app.shared.model.TestResult;
+
 /**
  * A Tester executes a series of {@link IBuildStep}s on a
- * {@link BuilderSubmission}.
+ * {@link BuilderSubmission}.  The build steps preceding an
+ * {@link EndOfCompileStepsBuildStep} are the compile steps: for a
+ * {@link SubmissionType#COMPILE_ONLY} submission, only the compile
+ * steps are executed.
  * 
  * @author David Hovemeyer
  */
@@ -45,19 +54,56 @@ public class Tester {
 		buildStepList.add(buildStep);
 	}
 	
+	/**
+	 * @return true if this Tester can handle {@link SubmissionType#COMPILE_ONLY}
+	 *         submissions: i.e., if it has an {@link EndOfCompileStepsBuildStep}
+	 */
+	public boolean isCompileOnlySupported() {
+		for (IBuildStep buildStep : buildStepList) {
+			if (buildStep instanceof EndOfCompileStepsBuildStep) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Execute the Tester on a {@link BuilderSubmission}.
+	 * If the submission has a {@link SubmissionType#COMPILE_ONLY}
+	 * artifact, execution stops after the compile steps.
 	 * 
 	 * @param submission the {@link BuilderSubmission} to build/test
+	 * @throws InternalBuilderException if the submission is compile-only,
+	 *         but this Tester has no compile steps
 	 */
 	public void execute(BuilderSubmission submission) {
+		boolean compileOnly = submission.getArtifact(SubmissionType.class) == SubmissionType.COMPILE_ONLY;
+		if (compileOnly && !isCompileOnlySupported()) {
+			throw new InternalBuilderException("Compile-only submissions are not supported for this problem type");
+		}
+		
 		for (IBuildStep buildStep : buildStepList) {
+			if (compileOnly && buildStep instanceof EndOfCompileStepsBuildStep) {
+				break;
+			}
 			buildStep.execute(submission);
 			if (submission.isComplete()) {
 				break;
 			}
 		}
 		
+		if (compileOnly && !submission.isComplete()) {
+			// Compilation succeeded: report the CompilationResult
+			// (which may include warnings), if any
+			CompilationResult compilationResult = submission.getArtifact(CompilationResult.class);
+			if (compilationResult == null) {
+				compilationResult = new CompilationResult(CompilationOutcome.SUCCESS);
+			}
+			SubmissionResult result = new SubmissionResult(compilationResult);
+			result.setTestResults(new TestResult[0]);
+			submission.addArtifact(result);
+		}
+		
 		if (!submission.isComplete()) {
 			throw new InternalBuilderException("Executed all build steps but submission is not complete");
 		}
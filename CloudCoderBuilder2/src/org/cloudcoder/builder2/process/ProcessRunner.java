@@ -117,6 +117,19 @@ public class ProcessRunner {
 	    return envp;
 	}
 	
+	/**
+	 * Add a resource limit to set (using the bash <code>ulimit</code> builtin)
+	 * before the process is executed: for example, <code>"-f1024"</code>
+	 * limits the size of any file the process writes to 1024 blocks of
+	 * 1024 bytes.  The option and its value must not be separated by spaces.
+	 * 
+	 * @param limit the <code>ulimit</code> option and value
+	 */
+	public void addResourceLimit(String limit) {
+		String limits = env.get("CC_PROCESS_RESOURCE_LIMITS");
+		env.put("CC_PROCESS_RESOURCE_LIMITS", (limits == null || limits.trim().equals("")) ? limit : limits + " " + limit);
+	}
+	
 	public void addDirToPath(String dir) {
 	    String path=env.get("PATH");
 	    path+=File.separatorChar+dir;
@@ -32,6 +32,7 @@ import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionType;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.InternalBuilderException;
@@ -113,11 +114,12 @@ public class Builder2 implements Runnable {
 						testCaseList = safeReadObject();
 					}
 
-					// read program text
+					// read submission type and program text
+					SubmissionType submissionType = safeReadObject();
 					String programText = safeReadObject();
 
 					// Test the submission!
-					SubmissionResult result = testSubmission(problem, testCaseList, programText);
+					SubmissionResult result = testSubmission(problem, testCaseList, submissionType, programText);
 
 					// Send the SubmissionResult back to the webapp
 					out.writeObject(result);
@@ -135,7 +137,7 @@ public class Builder2 implements Runnable {
 			}
 	}
 
-	private SubmissionResult testSubmission(Problem problem,List<TestCase> testCaseList, String programText) {
+	private SubmissionResult testSubmission(Problem problem,List<TestCase> testCaseList, SubmissionType submissionType, String programText) {
 		SubmissionResult result;
 		try {
 			// Based on the ProblemType, find a Tester
@@ -148,6 +150,7 @@ public class Builder2 implements Runnable {
 			BuilderSubmission submission = new BuilderSubmission();
 			submission.addArtifact(problem);
 			submission.addArtifact(ArrayUtil.toArray(testCaseList, TestCase.class));
+			submission.addArtifact(submissionType);
 			submission.addArtifact(new ProgramSource[]{new ProgramSource(programText)});
 
 			try {
@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Properties;
 
 import org.cloudcoder.builder2.javasandbox.KillableTaskManager;
+import org.cloudcoder.builder2.workspace.WorkspaceManager;
 import org.cloudcoder.daemon.IDaemon;
 import org.cloudcoder.daemon.Util;
 import org.slf4j.Logger;
@@ -75,6 +76,20 @@ public class Builder2Daemon implements IDaemon {
 		public String getKeystorePassword() {
 			return config.getProperty("cloudcoder.submitsvc.ssl.keystore.password", "changeit");
 		}
+		
+		public String getWorkspaceRoot() {
+			return config.getProperty("cloudcoder.builder.workspace.root", WorkspaceManager.DEFAULT_ROOT);
+		}
+		
+		public int getWorkspacePoolSize() {
+			return Integer.parseInt(config.getProperty("cloudcoder.builder.workspace.poolSize",
+					String.valueOf(WorkspaceManager.DEFAULT_POOL_SIZE)));
+		}
+		
+		public long getWorkspaceQuotaBytes() {
+			return Long.parseLong(config.getProperty("cloudcoder.builder.workspace.quotaBytes",
+					String.valueOf(WorkspaceManager.DEFAULT_QUOTA_BYTES)));
+		}
 	}
 
 	/* (non-Javadoc)
@@ -109,6 +124,12 @@ public class Builder2Daemon implements IDaemon {
 			throw new IllegalStateException("Could not create WebappSocketFactory", e);
 		}
 		
+		// Create the pool of workspace directories used by build steps
+		WorkspaceManager.configure(
+				options.getWorkspaceRoot(),
+				options.getWorkspacePoolSize(),
+				options.getWorkspaceQuotaBytes());
+		
 		// Install KillableTaskManager's security manager
 		KillableTaskManager.installSecurityManager();
 		
@@ -116,6 +137,7 @@ public class Builder2Daemon implements IDaemon {
 		logger.info("appHost={}", options.getAppHost());
 		logger.info("appPort={}", options.getAppPort());
 		logger.info("numThreads={}", options.getNumThreads());
+		logger.info("workspaceRoot={}", options.getWorkspaceRoot());
 
 		// Start Builder threads
 		this.builderAndThreadList = new ArrayList<BuilderAndThread>();
@@ -154,6 +176,9 @@ public class Builder2Daemon implements IDaemon {
 				e.printStackTrace();
 			}
 		}
+		
+		// Delete workspace directories
+		WorkspaceManager.getInstance().shutdown();
 	}
 
 }
@@ -35,8 +35,10 @@ import org.cloudcoder.builder2.javacompiler.JavaCompilerBuildStep;
 import org.cloudcoder.builder2.javacompiler.LoadClassesBuildStep;
 import org.cloudcoder.builder2.javamethod.AddJavaMethodScaffoldingBuildStep;
 import org.cloudcoder.builder2.javamethod.AddJavaMethodTestDriverBuildStep;
+import org.cloudcoder.builder2.javamethod.CheckJavaMethodTestDriverBuildStep;
 import org.cloudcoder.builder2.javamethod.ExecuteJavaMethodTestsBuildStep;
 import org.cloudcoder.builder2.javaprogram.JavaProgramToCommandForEachCommandInputBuildStep;
+import org.cloudcoder.builder2.model.EndOfCompileStepsBuildStep;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.Tester;
 import org.cloudcoder.builder2.pythonfunction.TestPythonFunctionBuildStep;
@@ -66,6 +68,7 @@ public abstract class TesterFactory {
 	 */
 	private static final IBuildStep[] C_PROGRAM_TESTER_STEPS = {
 		new CCompilerBuildStep(),
+		new EndOfCompileStepsBuildStep(),
 		new CreateCommandInputsForEachTestCaseBuildStep(),
 		new NativeExecutableToCommandForEachCommandInputBuildStep(),
 		new ExecuteCommandForEachCommandInputBuildStep(),
@@ -80,6 +83,7 @@ public abstract class TesterFactory {
 	private static final IBuildStep[] C_FUNCTION_TESTER_STEPS = {
 		new AddCFunctionScaffoldingBuildStep(),
 		new CCompilerBuildStep(),
+		new EndOfCompileStepsBuildStep(),
 		new CreateSecretSuccessAndFailureCodesBuildStep(),
 		new CreateCFunctionTestCommandsBuildStep(),
 		new ExecuteCommandForEachCommandInputBuildStep(),
@@ -93,6 +97,7 @@ public abstract class TesterFactory {
 	 */
 	private static final IBuildStep[] JAVA_PROGRAM_TESTER_STEPS = {
 		new JavaCompilerBuildStep(),
+		new EndOfCompileStepsBuildStep(),
 		new BytecodeToBytecodeExecutableBuildStep(),
 		new CreateCommandInputsForEachTestCaseBuildStep(),
 		new JavaProgramToCommandForEachCommandInputBuildStep(),
@@ -110,6 +115,8 @@ public abstract class TesterFactory {
 		new AddJavaMethodTestDriverBuildStep(),
 		new JavaCompilerBuildStep(),
 		new LoadClassesBuildStep(),
+		new CheckJavaMethodTestDriverBuildStep(),
+		new EndOfCompileStepsBuildStep(),
 		new ExecuteJavaMethodTestsBuildStep(),
 	};
 	
@@ -133,6 +140,9 @@ public abstract class TesterFactory {
 	
 	/**
 	 * Create a {@link Tester} with the given list of {@link IBuildStep}s.
+	 * Compile steps are followed by an {@link EndOfCompileStepsBuildStep}
+	 * (testers for languages without a compile step have none, and
+	 * don't handle compile-only submissions).
 	 * 
 	 * @param stepList list of {@link IBuildStep}s
 	 * @return the {@link Tester}
@@ -0,0 +1,328 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.workspace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.util.DeleteDirectoryRecursively;
+import org.cloudcoder.builder2.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out scratch directories ("workspaces") to {@link IBuildStep}s that
+ * need to use the file system.  Workspaces are created ahead of time
+ * under a configurable root directory (ideally on a tmpfs or other
+ * RAM-backed file system, such as <code>/dev/shm</code>), and are
+ * cleaned and recycled asynchronously after they are released, so
+ * that creating and recursively deleting a directory is not on the
+ * critical path of building and testing a submission.
+ * Because compiled programs are executed in their workspaces, the root
+ * must allow files to be executed: RAM-backed file systems are often
+ * mounted <code>noexec</code>, so the root is probed at startup, and
+ * <code>java.io.tmpdir</code> is used if executing a file there fails.
+ * Each workspace is subject to a size quota: see {@link #isWithinQuota(File)}
+ * and {@link #getFileSizeResourceLimit()}.  Workspaces exceeding the quota
+ * when released are deleted rather than recycled.
+ * 
+ * @author David Hovemeyer
+ */
+public class WorkspaceManager {
+	private static final Logger logger = LoggerFactory.getLogger(WorkspaceManager.class);
+	
+	/** Default root directory for workspaces (RAM-backed on Linux). */
+	public static final String DEFAULT_ROOT = "/dev/shm";
+	
+	/** Default number of clean workspaces to keep ready. */
+	public static final int DEFAULT_POOL_SIZE = 8;
+	
+	/** Default per-workspace size quota in bytes. */
+	public static final long DEFAULT_QUOTA_BYTES = 64L * 1024L * 1024L;
+	
+	private static WorkspaceManager instance;
+	
+	/**
+	 * Configure the singleton instance.  Should be called once, before
+	 * any builder threads are started.  If there is already an instance,
+	 * it is shut down.
+	 * 
+	 * @param root        root directory in which workspaces should be created
+	 * @param poolSize    number of clean workspaces to keep ready
+	 * @param quotaBytes  per-workspace size quota in bytes
+	 */
+	public static synchronized void configure(String root, int poolSize, long quotaBytes) {
+		if (instance != null) {
+			instance.shutdown();
+		}
+		instance = new WorkspaceManager(root, poolSize, quotaBytes);
+	}
+	
+	/**
+	 * Get the singleton instance.  If {@link #configure(String, int, long)} has
+	 * not been called, an instance with the default configuration is created.
+	 * 
+	 * @return the singleton instance
+	 */
+	public static synchronized WorkspaceManager getInstance() {
+		if (instance == null) {
+			instance = new WorkspaceManager(DEFAULT_ROOT, DEFAULT_POOL_SIZE, DEFAULT_QUOTA_BYTES);
+		}
+		return instance;
+	}
+	
+	private final File rootDir;
+	private final int poolSize;
+	private final long quotaBytes;
+	private final ConcurrentLinkedQueue<File> pool;
+	private final AtomicInteger poolCount;
+	private final AtomicInteger nextWorkspaceNum;
+	private final ExecutorService cleaner;
+	
+	private WorkspaceManager(String root, int poolSize, long quotaBytes) {
+		this.poolSize = poolSize;
+		this.quotaBytes = quotaBytes;
+		this.pool = new ConcurrentLinkedQueue<File>();
+		this.poolCount = new AtomicInteger(0);
+		this.nextWorkspaceNum = new AtomicInteger(0);
+		this.cleaner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "WorkspaceCleaner");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		// Each builder process gets its own directory under the root
+		String tmpdir = System.getProperty("java.io.tmpdir");
+		File root_ = new File(root);
+		if (!root_.isDirectory() || !root_.canWrite()) {
+			logger.warn("Workspace root {} is not a writable directory, using {}", root, tmpdir);
+			root_ = new File(tmpdir);
+		}
+		File rootDir_ = FileUtil.makeTempDir(root_.getAbsolutePath());
+		if (rootDir_ != null && !canExecuteFilesIn(rootDir_) && !root_.equals(new File(tmpdir))) {
+			logger.warn("Files in workspace root {} can't be executed (mounted noexec?), using {}", root, tmpdir);
+			new DeleteDirectoryRecursively(rootDir_).delete();
+			rootDir_ = FileUtil.makeTempDir(tmpdir);
+		}
+		this.rootDir = rootDir_;
+		if (rootDir == null) {
+			logger.error("Could not create workspace root directory in {}", root_.getAbsolutePath());
+			return;
+		}
+		logger.info("Workspace root is {}", rootDir.getAbsolutePath());
+		
+		// Create the initial pool of workspaces
+		for (int i = 0; i < poolSize; i++) {
+			File dir = createWorkspace();
+			if (dir != null) {
+				pool.add(dir);
+				poolCount.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * Get an empty workspace directory.
+	 * The directory must be returned using {@link #release(File)}
+	 * when it is no longer needed.
+	 * 
+	 * @return the workspace directory, or null if a workspace could not be created
+	 */
+	public File acquire() {
+		File dir = pool.poll();
+		if (dir != null) {
+			poolCount.decrementAndGet();
+			return dir;
+		}
+		
+		// Pool is empty: create a new workspace
+		return createWorkspace();
+	}
+	
+	/**
+	 * Release a workspace directory previously returned by {@link #acquire()}.
+	 * The directory is cleaned asynchronously and (if the pool isn't full)
+	 * made available for reuse.
+	 * 
+	 * @param dir the workspace directory
+	 */
+	public void release(final File dir) {
+		Runnable recycle = new Runnable() {
+			@Override
+			public void run() {
+				recycle(dir);
+			}
+		};
+		try {
+			cleaner.execute(recycle);
+		} catch (RuntimeException e) {
+			// Cleaner has been shut down
+			new DeleteDirectoryRecursively(dir).delete();
+		}
+	}
+	
+	/**
+	 * Check whether the total size of the files in a workspace
+	 * is within the per-workspace quota.
+	 * 
+	 * @param dir the workspace directory
+	 * @return true if the workspace is within its quota, false if it exceeds the quota
+	 */
+	public boolean isWithinQuota(File dir) {
+		return computeSize(dir, quotaBytes) <= quotaBytes;
+	}
+	
+	/**
+	 * Get the <code>ulimit</code> option limiting the size of any one file
+	 * written by a program executed in a workspace to the workspace quota
+	 * (see {@link org.cloudcoder.builder2.process.ProcessRunner#addResourceLimit(String)}).
+	 * Since a program could write several files, this should be combined with
+	 * periodic checks using {@link #isWithinQuota(File)} while the program runs.
+	 * 
+	 * @return the <code>ulimit</code> option
+	 */
+	public String getFileSizeResourceLimit() {
+		// ulimit -f counts 1024-byte blocks
+		return "-f" + Math.max(1L, (quotaBytes + 1023L) / 1024L);
+	}
+	
+	/**
+	 * @return the per-workspace size quota in bytes
+	 */
+	public long getQuotaBytes() {
+		return quotaBytes;
+	}
+	
+	/**
+	 * Shut down: stop the cleaner thread and delete the workspace root directory.
+	 */
+	public void shutdown() {
+		cleaner.shutdown();
+		try {
+			cleaner.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted waiting for workspace cleaner to finish");
+		}
+		pool.clear();
+		poolCount.set(0);
+		if (rootDir != null) {
+			new DeleteDirectoryRecursively(rootDir).delete();
+		}
+	}
+	
+	private File createWorkspace() {
+		if (rootDir == null) {
+			return FileUtil.makeTempDir();
+		}
+		File dir = new File(rootDir, "ws" + nextWorkspaceNum.getAndIncrement());
+		if (!dir.mkdir()) {
+			logger.error("Could not create workspace {}", dir.getAbsolutePath());
+			return null;
+		}
+		return dir;
+	}
+	
+	/*
+	 * Check whether a small shell script written to given directory
+	 * can be executed.
+	 */
+	private static boolean canExecuteFilesIn(File dir) {
+		if (File.separatorChar != '/') {
+			// Not a Unix-like system: noexec mounts aren't a concern
+			return true;
+		}
+		File probe = new File(dir, "execprobe.sh");
+		try {
+			OutputStream out = new FileOutputStream(probe);
+			try {
+				out.write("#! /bin/sh\nexit 0\n".getBytes("UTF-8"));
+			} finally {
+				out.close();
+			}
+			if (!probe.setExecutable(true)) {
+				return false;
+			}
+			Process process = new ProcessBuilder(probe.getAbsolutePath()).start();
+			return process.waitFor() == 0;
+		} catch (IOException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			probe.delete();
+		}
+	}
+	
+	private void recycle(File dir) {
+		boolean reusable = isWithinQuota(dir) && deleteContents(dir);
+		if (reusable && poolCount.get() < poolSize) {
+			pool.add(dir);
+			poolCount.incrementAndGet();
+		} else {
+			new DeleteDirectoryRecursively(dir).delete();
+		}
+	}
+	
+	private static boolean deleteContents(File dir) {
+		File[] items = dir.listFiles();
+		if (items == null) {
+			return false;
+		}
+		boolean success = true;
+		for (File item : items) {
+			if (!new DeleteDirectoryRecursively(item).delete()) {
+				success = false;
+			}
+		}
+		return success;
+	}
+	
+	/*
+	 * Compute total size of files in given directory tree,
+	 * stopping as soon as the size exceeds given limit.
+	 */
+	private static long computeSize(File f, long limit) {
+		if (!f.isDirectory()) {
+			return f.length();
+		}
+		long total = 0L;
+		File[] items = f.listFiles();
+		if (items != null) {
+			for (File item : items) {
+				total += computeSize(item, limit - total);
+				if (total > limit) {
+					break;
+				}
+			}
+		}
+		return total;
+	}
+}
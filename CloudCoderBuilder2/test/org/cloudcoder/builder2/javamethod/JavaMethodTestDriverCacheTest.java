@@ -0,0 +1,96 @@
+package org.cloudcoder.builder2.javamethod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.javacompiler.JavaCompilerBuildStep;
+import org.cloudcoder.builder2.javacompiler.LoadClassesBuildStep;
+import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.model.LoadedClasses;
+import org.cloudcoder.builder2.model.ProgramSource;
+import org.junit.Test;
+
+public class JavaMethodTestDriverCacheTest {
+	private static final IBuildStep[] COMPILE_STEPS = {
+		new AddJavaMethodScaffoldingBuildStep(),
+		new AddJavaMethodTestDriverBuildStep(),
+		new JavaCompilerBuildStep(),
+		new LoadClassesBuildStep(),
+		new CheckJavaMethodTestDriverBuildStep(),
+	};
+
+	// The cache is shared, so each test uses its own method name
+	// (and thus its own test driver)
+	private static BuilderSubmission compile(String testname, String programText) {
+		Problem problem = new Problem();
+		problem.setProblemType(ProblemType.JAVA_METHOD);
+		problem.setTestname(testname);
+
+		TestCase testCase = new TestCase();
+		testCase.setTestCaseName("test0");
+		testCase.setInput("java.util.Arrays.asList(1, 2, 3)");
+		testCase.setOutput("3");
+
+		BuilderSubmission submission = new BuilderSubmission();
+		submission.addArtifact(problem);
+		submission.addArtifact(new TestCase[]{testCase});
+		submission.addArtifact(new ProgramSource[]{new ProgramSource(programText)});
+		for (IBuildStep step : COMPILE_STEPS) {
+			step.execute(submission);
+			if (submission.isComplete()) {
+				break;
+			}
+		}
+		return submission;
+	}
+
+	private static void assertCompiled(BuilderSubmission submission) throws Exception {
+		assertFalse(submission.isComplete());
+		// The test driver is loaded along with the submission
+		LoadedClasses loadedClasses = submission.getArtifact(LoadedClasses.class);
+		assertNotNull(loadedClasses.getClassLoader().loadClass("Tester"));
+	}
+
+	@Test
+	public void testCacheHit() throws Exception {
+		BuilderSubmission first = compile("countHit", "public int countHit(java.util.List<Integer> list) { return list.size(); }");
+		assertCompiled(first);
+		assertFalse(first.getArtifact(JavaMethodTestDriver.class).isCached());
+
+		BuilderSubmission second = compile("countHit", "public int countHit(java.util.List<Integer> a) { return a.size() + 1; }");
+		assertCompiled(second);
+		assertTrue(second.getArtifact(JavaMethodTestDriver.class).isCached());
+	}
+
+	@Test
+	public void testCacheMissRecompiles() throws Exception {
+		BuilderSubmission first = compile("countMiss", "public int countMiss(java.util.List<Integer> list) { return list.size(); }");
+		assertCompiled(first);
+
+		// A different return type still compiles against the driver source,
+		// but not against the cached driver
+		BuilderSubmission second = compile("countMiss", "public long countMiss(java.util.List<Integer> list) { return list.size(); }");
+		assertCompiled(second);
+		assertFalse(second.getArtifact(JavaMethodTestDriver.class).isCached());
+	}
+
+	@Test
+	public void testGenericMismatch() throws Exception {
+		BuilderSubmission first = compile("countGeneric", "public int countGeneric(java.util.List<Integer> list) { return list.size(); }");
+		assertCompiled(first);
+
+		// Same erased signature, but the driver doesn't compile against it
+		BuilderSubmission second = compile("countGeneric", "public int countGeneric(java.util.List<String> list) { return list.size(); }");
+		assertTrue(second.isComplete());
+		assertEquals(CompilationOutcome.FAILURE,
+				second.getArtifact(SubmissionResult.class).getCompilationResult().getOutcome());
+	}
+}
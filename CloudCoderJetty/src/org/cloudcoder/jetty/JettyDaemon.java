@@ -202,7 +202,10 @@ public abstract class JettyDaemon implements IDaemon {
 		// Add it to the server
 		server.setHandler(handler);
 
-		// Other misc. options
+		// Other misc. options.  Note that logins waiting for the
+		// PasswordVerifier hold request threads: the webapp's
+		// cloudcoder.login.numThreads + cloudcoder.login.queueCapacity
+		// must stay well below the size of this pool.
 		server.setThreadPool(new QueuedThreadPool(20));
 
 		// And start it up
@@ -35,7 +35,6 @@ public class Change implements Serializable, IContainsEvent, IModelObject<Change
 	 */
 	public static final int MAX_TEXT_LEN_IN_ROW = 40;
 	
-	public static final int NUM_FIELDS = 7;
 
 	private int eventId;
 	private int type;
@@ -44,6 +43,7 @@ public class Change implements Serializable, IContainsEvent, IModelObject<Change
 	private int endRow;
 	private int endColumn;
 	private String text;
+	private String timing;
 	
 	/** {@link ModelObjectField} for unique id. */
 	public static final ModelObjectField<Change, Integer> EVENT_ID =
@@ -79,7 +79,7 @@ public class Change implements Serializable, IContainsEvent, IModelObject<Change
 	public static final ModelObjectField<Change, Integer> END_COL =
 			new ModelObjectField<Change, Integer>("end_col", Integer.class, 0) {
 		public void set(Change obj, Integer value) { obj.setEndColumn(value); }
-		public Integer get(Change obj) { return obj.getStartColumn(); }
+		public Integer get(Change obj) { return obj.getEndColumn(); }
 	};
 	/** {@link ModelObjectField} for short change text. */
 	public static final ModelObjectField<Change, String> TEXT_SHORT =
@@ -93,11 +93,17 @@ public class Change implements Serializable, IContainsEvent, IModelObject<Change
 		public void set(Change obj, String value) { obj.setText(value); }
 		public String get(Change obj) { return obj.getText(); }
 	};
+	/** {@link ModelObjectField} for keystroke timing of a coalesced change. */
+	public static final ModelObjectField<Change, String> TIMING =
+			new ModelObjectField<Change, String>("timing", String.class, Integer.MAX_VALUE, ModelObjectIndexType.NONE, ModelObjectField.ALLOW_NULL) {
+		public void set(Change obj, String value) { obj.setTiming(value); }
+		public String get(Change obj) { return obj.getTiming(); }
+	};
 	
 	/**
-	 * Description of fields.
+	 * Description of fields (schema version 0).
 	 */
-	public static final ModelObjectSchema<Change> SCHEMA = new ModelObjectSchema<Change>("change")
+	public static final ModelObjectSchema<Change> SCHEMA_V0 = new ModelObjectSchema<Change>("change")
 		.add(EVENT_ID)
 		.add(TYPE)
 		.add(START_ROW)
@@ -107,6 +113,23 @@ public class Change implements Serializable, IContainsEvent, IModelObject<Change
 		.add(TEXT_SHORT)
 		.add(TEXT);
 	
+	/**
+	 * Description of fields (schema version 1).
+	 */
+	public static final ModelObjectSchema<Change> SCHEMA_V1 = ModelObjectSchema.basedOn(SCHEMA_V0)
+		.addAfter(TEXT, TIMING)
+		.finishDelta();
+	
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<Change> SCHEMA = SCHEMA_V1;
+	
+	/**
+	 * Number of database fields.
+	 */
+	public static final int NUM_FIELDS = SCHEMA.getNumFields();
+	
 	// Transient link to the Event object associated with this Change.
 	private Event event;
 
@@ -294,6 +317,29 @@ public class Change implements Serializable, IContainsEvent, IModelObject<Change
 	public void setText(String text){
 		this.text = text;
 	}
+	
+	/**
+	 * Set the keystroke timing of a change that was coalesced from
+	 * several consecutive changes.  The timing is a comma-separated
+	 * list with one entry per original change, in the form
+	 * <code>numChars@offset</code>, where numChars is the number of
+	 * characters inserted or removed by the original change, and
+	 * offset is the number of milliseconds between the timestamp of
+	 * this change's event and the original change.
+	 * 
+	 * @param timing the timing to set, or null if this change was not coalesced
+	 */
+	public void setTiming(String timing) {
+		this.timing = timing;
+	}
+	
+	/**
+	 * @return the keystroke timing (see {@link #setTiming(String)}),
+	 *         or null if this change was not coalesced
+	 */
+	public String getTiming() {
+		return timing;
+	}
 
 	@Override
 	public String toString() {
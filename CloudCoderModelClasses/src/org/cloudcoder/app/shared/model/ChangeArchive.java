@@ -0,0 +1,279 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * A compressed archive of a contiguous part of a user's stream of
+ * {@link Change}s for a problem.  Old changes are moved out of the
+ * changes and events tables into archives to keep those tables small.
+ * The archived changes (including their event ids and timestamps)
+ * can be recovered exactly from the archive data, and every archived
+ * change has a smaller event id than every change for the same
+ * user and problem which has not been archived.
+ * 
+ * @author David Hovemeyer
+ */
+public class ChangeArchive implements Serializable, IModelObject<ChangeArchive> {
+	private static final long serialVersionUID = 1L;
+
+	private int id;
+	private int userId;
+	private int problemId;
+	private int firstEventId;
+	private int lastEventId;
+	private int lastFullTextEventId;
+	private int numChanges;
+	private long firstTimestamp;
+	private long lastTimestamp;
+	private byte[] data;
+
+	/** {@link ModelObjectField} for unique id. */
+	public static final ModelObjectField<ChangeArchive, Integer> ID = new ModelObjectField<ChangeArchive, Integer>("id", Integer.class, 0, ModelObjectIndexType.IDENTITY) {
+		public void set(ChangeArchive obj, Integer value) { obj.setId(value); }
+		public Integer get(ChangeArchive obj) { return obj.getId(); }
+	};
+	/** {@link ModelObjectField} for user id. */
+	public static final ModelObjectField<ChangeArchive, Integer> USER_ID = new ModelObjectField<ChangeArchive, Integer>("user_id", Integer.class, 0) {
+		public void set(ChangeArchive obj, Integer value) { obj.setUserId(value); }
+		public Integer get(ChangeArchive obj) { return obj.getUserId(); }
+	};
+	/** {@link ModelObjectField} for problem id. */
+	public static final ModelObjectField<ChangeArchive, Integer> PROBLEM_ID = new ModelObjectField<ChangeArchive, Integer>("problem_id", Integer.class, 0) {
+		public void set(ChangeArchive obj, Integer value) { obj.setProblemId(value); }
+		public Integer get(ChangeArchive obj) { return obj.getProblemId(); }
+	};
+	/** {@link ModelObjectField} for event id of the first archived change. */
+	public static final ModelObjectField<ChangeArchive, Integer> FIRST_EVENT_ID = new ModelObjectField<ChangeArchive, Integer>("first_event_id", Integer.class, 0) {
+		public void set(ChangeArchive obj, Integer value) { obj.setFirstEventId(value); }
+		public Integer get(ChangeArchive obj) { return obj.getFirstEventId(); }
+	};
+	/** {@link ModelObjectField} for event id of the last archived change. */
+	public static final ModelObjectField<ChangeArchive, Integer> LAST_EVENT_ID = new ModelObjectField<ChangeArchive, Integer>("last_event_id", Integer.class, 0, ModelObjectIndexType.NON_UNIQUE) {
+		public void set(ChangeArchive obj, Integer value) { obj.setLastEventId(value); }
+		public Integer get(ChangeArchive obj) { return obj.getLastEventId(); }
+	};
+	/** {@link ModelObjectField} for event id of the last archived full-text change (0 if none). */
+	public static final ModelObjectField<ChangeArchive, Integer> LAST_FULL_TEXT_EVENT_ID = new ModelObjectField<ChangeArchive, Integer>("last_full_text_event_id", Integer.class, 0) {
+		public void set(ChangeArchive obj, Integer value) { obj.setLastFullTextEventId(value); }
+		public Integer get(ChangeArchive obj) { return obj.getLastFullTextEventId(); }
+	};
+	/** {@link ModelObjectField} for number of archived changes. */
+	public static final ModelObjectField<ChangeArchive, Integer> NUM_CHANGES = new ModelObjectField<ChangeArchive, Integer>("num_changes", Integer.class, 0) {
+		public void set(ChangeArchive obj, Integer value) { obj.setNumChanges(value); }
+		public Integer get(ChangeArchive obj) { return obj.getNumChanges(); }
+	};
+	/** {@link ModelObjectField} for timestamp of the first archived change. */
+	public static final ModelObjectField<ChangeArchive, Long> FIRST_TIMESTAMP = new ModelObjectField<ChangeArchive, Long>("first_timestamp", Long.class, 0) {
+		public void set(ChangeArchive obj, Long value) { obj.setFirstTimestamp(value); }
+		public Long get(ChangeArchive obj) { return obj.getFirstTimestamp(); }
+	};
+	/** {@link ModelObjectField} for timestamp of the last archived change. */
+	public static final ModelObjectField<ChangeArchive, Long> LAST_TIMESTAMP = new ModelObjectField<ChangeArchive, Long>("last_timestamp", Long.class, 0) {
+		public void set(ChangeArchive obj, Long value) { obj.setLastTimestamp(value); }
+		public Long get(ChangeArchive obj) { return obj.getLastTimestamp(); }
+	};
+	/** {@link ModelObjectField} for the compressed changes. */
+	public static final ModelObjectField<ChangeArchive, byte[]> DATA = new ModelObjectField<ChangeArchive, byte[]>("data", byte[].class, Integer.MAX_VALUE) {
+		public void set(ChangeArchive obj, byte[] value) { obj.setData(value); }
+		public byte[] get(ChangeArchive obj) { return obj.getData(); }
+	};
+
+	/**
+	 * Description of fields (schema version 0).
+	 */
+	public static final ModelObjectSchema<ChangeArchive> SCHEMA_V0 = new ModelObjectSchema<ChangeArchive>("change_archive")
+			.add(ID)
+			.add(USER_ID)
+			.add(PROBLEM_ID)
+			.add(FIRST_EVENT_ID)
+			.add(LAST_EVENT_ID)
+			.add(LAST_FULL_TEXT_EVENT_ID)
+			.add(NUM_CHANGES)
+			.add(FIRST_TIMESTAMP)
+			.add(LAST_TIMESTAMP)
+			.add(DATA)
+			// Archives are found by user/problem, in event id order
+			.addIndex(new ModelObjectIndex<ChangeArchive>(ModelObjectIndexType.NON_UNIQUE)
+					.addField(USER_ID)
+					.addField(PROBLEM_ID)
+					.addField(FIRST_EVENT_ID)
+					);
+
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<ChangeArchive> SCHEMA = SCHEMA_V0;
+
+	/**
+	 * Number of database fields.
+	 */
+	public static final int NUM_FIELDS = SCHEMA.getNumFields();
+
+	/**
+	 * Constructor.
+	 */
+	public ChangeArchive() {
+	}
+
+	@Override
+	public ModelObjectSchema<ChangeArchive> getSchema() {
+		return SCHEMA;
+	}
+
+	/**
+	 * @param id the unique id to set
+	 */
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return the unique id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @param userId the user id to set
+	 */
+	public void setUserId(int userId) {
+		this.userId = userId;
+	}
+
+	/**
+	 * @return the user id
+	 */
+	public int getUserId() {
+		return userId;
+	}
+
+	/**
+	 * @param problemId the problem id to set
+	 */
+	public void setProblemId(int problemId) {
+		this.problemId = problemId;
+	}
+
+	/**
+	 * @return the problem id
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+
+	/**
+	 * @param firstEventId the event id of the first archived change
+	 */
+	public void setFirstEventId(int firstEventId) {
+		this.firstEventId = firstEventId;
+	}
+
+	/**
+	 * @return the event id of the first archived change
+	 */
+	public int getFirstEventId() {
+		return firstEventId;
+	}
+
+	/**
+	 * @param lastEventId the event id of the last archived change
+	 */
+	public void setLastEventId(int lastEventId) {
+		this.lastEventId = lastEventId;
+	}
+
+	/**
+	 * @return the event id of the last archived change
+	 */
+	public int getLastEventId() {
+		return lastEventId;
+	}
+
+	/**
+	 * @param lastFullTextEventId the event id of the last archived full-text change (0 if none)
+	 */
+	public void setLastFullTextEventId(int lastFullTextEventId) {
+		this.lastFullTextEventId = lastFullTextEventId;
+	}
+
+	/**
+	 * @return the event id of the last archived full-text change (0 if none)
+	 */
+	public int getLastFullTextEventId() {
+		return lastFullTextEventId;
+	}
+
+	/**
+	 * @param numChanges the number of archived changes
+	 */
+	public void setNumChanges(int numChanges) {
+		this.numChanges = numChanges;
+	}
+
+	/**
+	 * @return the number of archived changes
+	 */
+	public int getNumChanges() {
+		return numChanges;
+	}
+
+	/**
+	 * @param firstTimestamp the timestamp of the first archived change
+	 */
+	public void setFirstTimestamp(long firstTimestamp) {
+		this.firstTimestamp = firstTimestamp;
+	}
+
+	/**
+	 * @return the timestamp of the first archived change
+	 */
+	public long getFirstTimestamp() {
+		return firstTimestamp;
+	}
+
+	/**
+	 * @param lastTimestamp the timestamp of the last archived change
+	 */
+	public void setLastTimestamp(long lastTimestamp) {
+		this.lastTimestamp = lastTimestamp;
+	}
+
+	/**
+	 * @return the timestamp of the last archived change
+	 */
+	public long getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	/**
+	 * @param data the compressed changes
+	 */
+	public void setData(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * @return the compressed changes
+	 */
+	public byte[] getData() {
+		return data;
+	}
+}
@@ -0,0 +1,59 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+/**
+ * Exception indicating that a login attempt was refused without
+ * checking the password, either because there have been too many
+ * recent failed attempts for the username or client address, or
+ * because the server is too busy checking other passwords.
+ * The client should wait {@link #getRetryAfterSeconds()} seconds
+ * before trying again.
+ * 
+ * @author David Hovemeyer
+ */
+public class LoginThrottledException extends Exception {
+	private static final long serialVersionUID = 1L;
+	
+	private int retryAfterSeconds;
+	
+	/**
+	 * Constructor.
+	 */
+	public LoginThrottledException() {
+		
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param msg                message describing why the login was refused
+	 * @param retryAfterSeconds  how many seconds the client should wait before trying again
+	 */
+	public LoginThrottledException(String msg, int retryAfterSeconds) {
+		super(msg);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+	
+	/**
+	 * @return how many seconds the client should wait before trying again
+	 */
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
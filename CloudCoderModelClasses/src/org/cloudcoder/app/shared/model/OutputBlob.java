@@ -0,0 +1,124 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * A compressed test output (stdout or stderr), stored once no matter
+ * how many {@link TestResult}s have the same output.  Output blobs are
+ * identified by a hash of the (uncompressed) output text.  Blobs which
+ * are no longer referenced by any {@link TestResult} are removed
+ * periodically.
+ * 
+ * @author David Hovemeyer
+ */
+public class OutputBlob implements Serializable, IModelObject<OutputBlob> {
+	private static final long serialVersionUID = 1L;
+
+	private String hash;
+	private int length;
+	private byte[] data;
+
+	/** {@link ModelObjectField} for hash of the output text. */
+	public static final ModelObjectField<OutputBlob, String> HASH = new ModelObjectField<OutputBlob, String>("hash", String.class, 40, ModelObjectIndexType.UNIQUE) {
+		public void set(OutputBlob obj, String value) { obj.setHash(value); }
+		public String get(OutputBlob obj) { return obj.getHash(); }
+	};
+	/** {@link ModelObjectField} for length (in bytes) of the uncompressed output text. */
+	public static final ModelObjectField<OutputBlob, Integer> LENGTH = new ModelObjectField<OutputBlob, Integer>("length", Integer.class, 0) {
+		public void set(OutputBlob obj, Integer value) { obj.setLength(value); }
+		public Integer get(OutputBlob obj) { return obj.getLength(); }
+	};
+	/** {@link ModelObjectField} for the compressed output text. */
+	public static final ModelObjectField<OutputBlob, byte[]> DATA = new ModelObjectField<OutputBlob, byte[]>("data", byte[].class, Integer.MAX_VALUE) {
+		public void set(OutputBlob obj, byte[] value) { obj.setData(value); }
+		public byte[] get(OutputBlob obj) { return obj.getData(); }
+	};
+
+	/**
+	 * Description of fields (schema version 0).
+	 */
+	public static final ModelObjectSchema<OutputBlob> SCHEMA_V0 = new ModelObjectSchema<OutputBlob>("output_blob")
+			.add(HASH)
+			.add(LENGTH)
+			.add(DATA);
+
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<OutputBlob> SCHEMA = SCHEMA_V0;
+
+	/**
+	 * Number of database fields.
+	 */
+	public static final int NUM_FIELDS = SCHEMA.getNumFields();
+
+	/**
+	 * Constructor.
+	 */
+	public OutputBlob() {
+	}
+
+	@Override
+	public ModelObjectSchema<OutputBlob> getSchema() {
+		return SCHEMA;
+	}
+
+	/**
+	 * @param hash the hash of the output text
+	 */
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+	/**
+	 * @return the hash of the output text
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * @param length the length (in bytes) of the uncompressed output text
+	 */
+	public void setLength(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * @return the length (in bytes) of the uncompressed output text
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @param data the compressed output text
+	 */
+	public void setData(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * @return the compressed output text
+	 */
+	public byte[] getData() {
+		return data;
+	}
+}
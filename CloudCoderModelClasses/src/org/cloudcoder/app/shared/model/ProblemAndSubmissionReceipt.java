@@ -22,7 +22,9 @@ import java.io.Serializable;
 /**
  * Problem and (optional) SubmissionReceipt.
  * This object is used to convey information about a problem and a
- * summary of the user's work on the problem.
+ * summary of the user's work on the problem.  The receipt is the user's
+ * most recent submission receipt; the best receipt (if set) is
+ * the earliest one passing the most tests.
  * 
  * @author David Hovemeyer
  */
@@ -31,6 +33,7 @@ public class ProblemAndSubmissionReceipt implements Serializable {
 
 	private Problem problem;
 	private SubmissionReceipt receipt;
+	private SubmissionReceipt bestReceipt;
 	
 	public ProblemAndSubmissionReceipt() {
 		
@@ -68,4 +71,18 @@ public class ProblemAndSubmissionReceipt implements Serializable {
 	public SubmissionReceipt getReceipt() {
 		return receipt;
 	}
+	
+	/**
+	 * @param bestReceipt the best receipt to set
+	 */
+	public void setBestReceipt(SubmissionReceipt bestReceipt) {
+		this.bestReceipt = bestReceipt;
+	}
+	
+	/**
+	 * @return the best receipt
+	 */
+	public SubmissionReceipt getBestReceipt() {
+		return bestReceipt;
+	}
 }
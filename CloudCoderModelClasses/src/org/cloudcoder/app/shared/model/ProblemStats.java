@@ -0,0 +1,147 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * Aggregate statistics about student work on a {@link Problem}:
+ * how many users have started the problem, passed at least one test,
+ * and completed the problem.  These are maintained incrementally
+ * (along with the per-user {@link UserProblemStats}) whenever a
+ * {@link SubmissionReceipt} is added or updated, so that a
+ * {@link ProblemSummary} can be created without scanning all of the
+ * problem's submission receipts.
+ * 
+ * @author David Hovemeyer
+ */
+public class ProblemStats implements Serializable, IModelObject<ProblemStats> {
+	private static final long serialVersionUID = 1L;
+
+	private int problemId;
+	private int numStarted;
+	private int numPassedAtLeastOneTest;
+	private int numCompleted;
+
+	/** {@link ModelObjectField} for problem id. */
+	public static final ModelObjectField<ProblemStats, Integer> PROBLEM_ID = new ModelObjectField<ProblemStats, Integer>("problem_id", Integer.class, 0, ModelObjectIndexType.UNIQUE) {
+		public void set(ProblemStats obj, Integer value) { obj.setProblemId(value); }
+		public Integer get(ProblemStats obj) { return obj.getProblemId(); }
+	};
+	/** {@link ModelObjectField} for number of users who started the problem. */
+	public static final ModelObjectField<ProblemStats, Integer> NUM_STARTED = new ModelObjectField<ProblemStats, Integer>("num_started", Integer.class, 0) {
+		public void set(ProblemStats obj, Integer value) { obj.setNumStarted(value); }
+		public Integer get(ProblemStats obj) { return obj.getNumStarted(); }
+	};
+	/** {@link ModelObjectField} for number of users who passed at least one test. */
+	public static final ModelObjectField<ProblemStats, Integer> NUM_PASSED_AT_LEAST_ONE_TEST = new ModelObjectField<ProblemStats, Integer>("num_passed_at_least_one_test", Integer.class, 0) {
+		public void set(ProblemStats obj, Integer value) { obj.setNumPassedAtLeastOneTest(value); }
+		public Integer get(ProblemStats obj) { return obj.getNumPassedAtLeastOneTest(); }
+	};
+	/** {@link ModelObjectField} for number of users who completed the problem. */
+	public static final ModelObjectField<ProblemStats, Integer> NUM_COMPLETED = new ModelObjectField<ProblemStats, Integer>("num_completed", Integer.class, 0) {
+		public void set(ProblemStats obj, Integer value) { obj.setNumCompleted(value); }
+		public Integer get(ProblemStats obj) { return obj.getNumCompleted(); }
+	};
+
+	/**
+	 * Description of fields (schema version 0).
+	 */
+	public static final ModelObjectSchema<ProblemStats> SCHEMA_V0 = new ModelObjectSchema<ProblemStats>("problem_stat")
+			.add(PROBLEM_ID)
+			.add(NUM_STARTED)
+			.add(NUM_PASSED_AT_LEAST_ONE_TEST)
+			.add(NUM_COMPLETED);
+
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<ProblemStats> SCHEMA = SCHEMA_V0;
+
+	/**
+	 * Number of database fields.
+	 */
+	public static final int NUM_FIELDS = SCHEMA.getNumFields();
+
+	/**
+	 * Constructor.
+	 */
+	public ProblemStats() {
+	}
+
+	@Override
+	public ModelObjectSchema<ProblemStats> getSchema() {
+		return SCHEMA;
+	}
+
+	/**
+	 * @param problemId the problem id to set
+	 */
+	public void setProblemId(int problemId) {
+		this.problemId = problemId;
+	}
+
+	/**
+	 * @return the problem id
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+
+	/**
+	 * @param numStarted the number of users who started the problem
+	 */
+	public void setNumStarted(int numStarted) {
+		this.numStarted = numStarted;
+	}
+
+	/**
+	 * @return the number of users who started the problem
+	 */
+	public int getNumStarted() {
+		return numStarted;
+	}
+
+	/**
+	 * @param numPassedAtLeastOneTest the number of users who passed at least one test
+	 */
+	public void setNumPassedAtLeastOneTest(int numPassedAtLeastOneTest) {
+		this.numPassedAtLeastOneTest = numPassedAtLeastOneTest;
+	}
+
+	/**
+	 * @return the number of users who passed at least one test
+	 */
+	public int getNumPassedAtLeastOneTest() {
+		return numPassedAtLeastOneTest;
+	}
+
+	/**
+	 * @param numCompleted the number of users who completed the problem
+	 */
+	public void setNumCompleted(int numCompleted) {
+		this.numCompleted = numCompleted;
+	}
+
+	/**
+	 * @return the number of users who completed the problem
+	 */
+	public int getNumCompleted() {
+		return numCompleted;
+	}
+}
@@ -0,0 +1,380 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * A submission in the shared submission queue.  When several webapp
+ * nodes share one database, submissions are queued in the database
+ * rather than in memory, so that a Builder connected to any node can
+ * test a submission made on any node.  The submission result is stored
+ * (as a serialized {@link SubmissionResult}) in the same row, keyed by
+ * the queued submission's id, so that it can be retrieved on any node.
+ * 
+ * @author David Hovemeyer
+ */
+public class QueuedSubmission implements Serializable, IModelObject<QueuedSubmission> {
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Maximum length of an error message.
+	 */
+	public static final int MAX_ERROR_LENGTH = 200;
+
+	private int id;
+	private int problemId;
+	private int userId;
+	private int changeEventId;
+	private SubmissionType submissionType;
+	private QueuedSubmissionStatus status;
+	private String node;
+	private String claimedBy;
+	private long enqueueTime;
+	private long claimTime;
+	private int numAttempts;
+	private String programText;
+	private byte[] result;
+	private String error;
+
+	/** {@link ModelObjectField} for unique id. */
+	public static final ModelObjectField<QueuedSubmission, Integer> ID = new ModelObjectField<QueuedSubmission, Integer>("id", Integer.class, 0, ModelObjectIndexType.IDENTITY) {
+		public void set(QueuedSubmission obj, Integer value) { obj.setId(value); }
+		public Integer get(QueuedSubmission obj) { return obj.getId(); }
+	};
+	/** {@link ModelObjectField} for problem id. */
+	public static final ModelObjectField<QueuedSubmission, Integer> PROBLEM_ID = new ModelObjectField<QueuedSubmission, Integer>("problem_id", Integer.class, 0) {
+		public void set(QueuedSubmission obj, Integer value) { obj.setProblemId(value); }
+		public Integer get(QueuedSubmission obj) { return obj.getProblemId(); }
+	};
+	/** {@link ModelObjectField} for the id of the user who made the submission. */
+	public static final ModelObjectField<QueuedSubmission, Integer> USER_ID = new ModelObjectField<QueuedSubmission, Integer>("user_id", Integer.class, 0) {
+		public void set(QueuedSubmission obj, Integer value) { obj.setUserId(value); }
+		public Integer get(QueuedSubmission obj) { return obj.getUserId(); }
+	};
+	/** {@link ModelObjectField} for the event id of the submission's full-text change. */
+	public static final ModelObjectField<QueuedSubmission, Integer> CHANGE_EVENT_ID = new ModelObjectField<QueuedSubmission, Integer>("change_event_id", Integer.class, 0) {
+		public void set(QueuedSubmission obj, Integer value) { obj.setChangeEventId(value); }
+		public Integer get(QueuedSubmission obj) { return obj.getChangeEventId(); }
+	};
+	/** {@link ModelObjectField} for submission type. */
+	public static final ModelObjectField<QueuedSubmission, SubmissionType> SUBMISSION_TYPE = new ModelObjectField<QueuedSubmission, SubmissionType>("submission_type", SubmissionType.class, 0) {
+		public void set(QueuedSubmission obj, SubmissionType value) { obj.setSubmissionType(value); }
+		public SubmissionType get(QueuedSubmission obj) { return obj.getSubmissionType(); }
+	};
+	/** {@link ModelObjectField} for status. */
+	public static final ModelObjectField<QueuedSubmission, QueuedSubmissionStatus> STATUS = new ModelObjectField<QueuedSubmission, QueuedSubmissionStatus>("status", QueuedSubmissionStatus.class, 0) {
+		public void set(QueuedSubmission obj, QueuedSubmissionStatus value) { obj.setStatus(value); }
+		public QueuedSubmissionStatus get(QueuedSubmission obj) { return obj.getStatus(); }
+	};
+	/** {@link ModelObjectField} for the node that queued the submission. */
+	public static final ModelObjectField<QueuedSubmission, String> NODE = new ModelObjectField<QueuedSubmission, String>("node", String.class, 100) {
+		public void set(QueuedSubmission obj, String value) { obj.setNode(value); }
+		public String get(QueuedSubmission obj) { return obj.getNode(); }
+	};
+	/** {@link ModelObjectField} for the node (and worker) that claimed the submission. */
+	public static final ModelObjectField<QueuedSubmission, String> CLAIMED_BY = new ModelObjectField<QueuedSubmission, String>("claimed_by", String.class, 120) {
+		public void set(QueuedSubmission obj, String value) { obj.setClaimedBy(value); }
+		public String get(QueuedSubmission obj) { return obj.getClaimedBy(); }
+	};
+	/** {@link ModelObjectField} for the time the submission was queued. */
+	public static final ModelObjectField<QueuedSubmission, Long> ENQUEUE_TIME = new ModelObjectField<QueuedSubmission, Long>("enqueue_time", Long.class, 0) {
+		public void set(QueuedSubmission obj, Long value) { obj.setEnqueueTime(value); }
+		public Long get(QueuedSubmission obj) { return obj.getEnqueueTime(); }
+	};
+	/** {@link ModelObjectField} for the time the submission was claimed. */
+	public static final ModelObjectField<QueuedSubmission, Long> CLAIM_TIME = new ModelObjectField<QueuedSubmission, Long>("claim_time", Long.class, 0) {
+		public void set(QueuedSubmission obj, Long value) { obj.setClaimTime(value); }
+		public Long get(QueuedSubmission obj) { return obj.getClaimTime(); }
+	};
+	/** {@link ModelObjectField} for the number of times the submission has been claimed. */
+	public static final ModelObjectField<QueuedSubmission, Integer> NUM_ATTEMPTS = new ModelObjectField<QueuedSubmission, Integer>("num_attempts", Integer.class, 0) {
+		public void set(QueuedSubmission obj, Integer value) { obj.setNumAttempts(value); }
+		public Integer get(QueuedSubmission obj) { return obj.getNumAttempts(); }
+	};
+	/** {@link ModelObjectField} for the program text. */
+	public static final ModelObjectField<QueuedSubmission, String> PROGRAM_TEXT = new ModelObjectField<QueuedSubmission, String>("program_text", String.class, Integer.MAX_VALUE) {
+		public void set(QueuedSubmission obj, String value) { obj.setProgramText(value); }
+		public String get(QueuedSubmission obj) { return obj.getProgramText(); }
+	};
+	/** {@link ModelObjectField} for the serialized submission result. */
+	public static final ModelObjectField<QueuedSubmission, byte[]> RESULT = new ModelObjectField<QueuedSubmission, byte[]>("result", byte[].class, Integer.MAX_VALUE, ModelObjectIndexType.NONE, ModelObjectField.ALLOW_NULL) {
+		public void set(QueuedSubmission obj, byte[] value) { obj.setResult(value); }
+		public byte[] get(QueuedSubmission obj) { return obj.getResult(); }
+	};
+	/** {@link ModelObjectField} for the error message. */
+	public static final ModelObjectField<QueuedSubmission, String> ERROR = new ModelObjectField<QueuedSubmission, String>("error", String.class, MAX_ERROR_LENGTH, ModelObjectIndexType.NONE, ModelObjectField.ALLOW_NULL) {
+		public void set(QueuedSubmission obj, String value) { obj.setError(value); }
+		public String get(QueuedSubmission obj) { return obj.getError(); }
+	};
+
+	/**
+	 * Description of fields (schema version 0).
+	 */
+	public static final ModelObjectSchema<QueuedSubmission> SCHEMA_V0 = new ModelObjectSchema<QueuedSubmission>("queued_submission")
+			.add(ID)
+			.add(PROBLEM_ID)
+			.add(USER_ID)
+			.add(CHANGE_EVENT_ID)
+			.add(SUBMISSION_TYPE)
+			.add(STATUS)
+			.add(NODE)
+			.add(CLAIMED_BY)
+			.add(ENQUEUE_TIME)
+			.add(CLAIM_TIME)
+			.add(NUM_ATTEMPTS)
+			.add(PROGRAM_TEXT)
+			.add(RESULT)
+			.add(ERROR)
+			// Submissions are claimed by status, full before compile-only, in id order
+			.addIndex(new ModelObjectIndex<QueuedSubmission>(ModelObjectIndexType.NON_UNIQUE)
+					.addField(STATUS)
+					.addField(SUBMISSION_TYPE)
+					.addField(ID)
+					)
+			// Claimed submissions are found by claimant
+			.addIndex(new ModelObjectIndex<QueuedSubmission>(ModelObjectIndexType.NON_UNIQUE)
+					.addField(CLAIMED_BY)
+					);
+
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<QueuedSubmission> SCHEMA = SCHEMA_V0;
+
+	/**
+	 * Number of database fields.
+	 */
+	public static final int NUM_FIELDS = SCHEMA.getNumFields();
+
+	/**
+	 * Constructor.
+	 */
+	public QueuedSubmission() {
+		this.status = QueuedSubmissionStatus.PENDING;
+		this.node = "";
+		this.claimedBy = "";
+	}
+
+	@Override
+	public ModelObjectSchema<QueuedSubmission> getSchema() {
+		return SCHEMA;
+	}
+
+	/**
+	 * @param id the unique id to set
+	 */
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return the unique id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @param problemId the problem id to set
+	 */
+	public void setProblemId(int problemId) {
+		this.problemId = problemId;
+	}
+
+	/**
+	 * @return the problem id
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+
+	/**
+	 * @param userId the id of the user who made the submission
+	 */
+	public void setUserId(int userId) {
+		this.userId = userId;
+	}
+
+	/**
+	 * @return the id of the user who made the submission
+	 */
+	public int getUserId() {
+		return userId;
+	}
+
+	/**
+	 * @param changeEventId the event id of the submission's full-text change
+	 *                      (0 for a compile-only submission)
+	 */
+	public void setChangeEventId(int changeEventId) {
+		this.changeEventId = changeEventId;
+	}
+
+	/**
+	 * @return the event id of the submission's full-text change
+	 *         (0 for a compile-only submission)
+	 */
+	public int getChangeEventId() {
+		return changeEventId;
+	}
+
+	/**
+	 * @param submissionType the {@link SubmissionType} to set
+	 */
+	public void setSubmissionType(SubmissionType submissionType) {
+		this.submissionType = submissionType;
+	}
+
+	/**
+	 * @return the {@link SubmissionType}
+	 */
+	public SubmissionType getSubmissionType() {
+		return submissionType;
+	}
+
+	/**
+	 * @param status the {@link QueuedSubmissionStatus} to set
+	 */
+	public void setStatus(QueuedSubmissionStatus status) {
+		this.status = status;
+	}
+
+	/**
+	 * @return the {@link QueuedSubmissionStatus}
+	 */
+	public QueuedSubmissionStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * @param node the name of the node that queued the submission
+	 */
+	public void setNode(String node) {
+		this.node = node;
+	}
+
+	/**
+	 * @return the name of the node that queued the submission
+	 */
+	public String getNode() {
+		return node;
+	}
+
+	/**
+	 * @param claimedBy the name of the node (and worker) that claimed the submission
+	 */
+	public void setClaimedBy(String claimedBy) {
+		this.claimedBy = claimedBy;
+	}
+
+	/**
+	 * @return the name of the node (and worker) that claimed the submission,
+	 *         or the empty string if the submission has not been claimed
+	 */
+	public String getClaimedBy() {
+		return claimedBy;
+	}
+
+	/**
+	 * @param enqueueTime the time (in milliseconds since the epoch) the submission was queued
+	 */
+	public void setEnqueueTime(long enqueueTime) {
+		this.enqueueTime = enqueueTime;
+	}
+
+	/**
+	 * @return the time (in milliseconds since the epoch) the submission was queued
+	 */
+	public long getEnqueueTime() {
+		return enqueueTime;
+	}
+
+	/**
+	 * @param claimTime the time (in milliseconds since the epoch) the submission was claimed
+	 */
+	public void setClaimTime(long claimTime) {
+		this.claimTime = claimTime;
+	}
+
+	/**
+	 * @return the time (in milliseconds since the epoch) the submission was claimed
+	 */
+	public long getClaimTime() {
+		return claimTime;
+	}
+
+	/**
+	 * @param numAttempts the number of times the submission has been claimed
+	 */
+	public void setNumAttempts(int numAttempts) {
+		this.numAttempts = numAttempts;
+	}
+
+	/**
+	 * @return the number of times the submission has been claimed
+	 */
+	public int getNumAttempts() {
+		return numAttempts;
+	}
+
+	/**
+	 * @param programText the program text to set
+	 */
+	public void setProgramText(String programText) {
+		this.programText = programText;
+	}
+
+	/**
+	 * @return the program text
+	 */
+	public String getProgramText() {
+		return programText;
+	}
+
+	/**
+	 * @param result the serialized {@link SubmissionResult} to set
+	 */
+	public void setResult(byte[] result) {
+		this.result = result;
+	}
+
+	/**
+	 * @return the serialized {@link SubmissionResult}, or null if there is no result
+	 */
+	public byte[] getResult() {
+		return result;
+	}
+
+	/**
+	 * @param error the error message to set
+	 */
+	public void setError(String error) {
+		if (error != null && error.length() > MAX_ERROR_LENGTH) {
+			error = error.substring(0, MAX_ERROR_LENGTH);
+		}
+		this.error = error;
+	}
+
+	/**
+	 * @return the error message, or null if there is no error
+	 */
+	public String getError() {
+		return error;
+	}
+}
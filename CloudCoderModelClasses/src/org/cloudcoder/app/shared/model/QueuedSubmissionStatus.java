@@ -0,0 +1,60 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+/**
+ * Status of a {@link QueuedSubmission} in the shared submission queue.
+ * 
+ * @author David Hovemeyer
+ */
+public enum QueuedSubmissionStatus {
+	/**
+	 * Waiting for a Builder.
+	 */
+	PENDING,
+	
+	/**
+	 * Claimed by a webapp node, and being tested by one of
+	 * the Builders connected to that node.
+	 */
+	CLAIMED,
+	
+	/**
+	 * Testing completed: the submission result is available.
+	 */
+	COMPLETE,
+	
+	/**
+	 * Testing could not be completed (or the submission was shed):
+	 * the error message describes why.
+	 */
+	FAILED,
+	
+	/**
+	 * The submission was cancelled before it was claimed.
+	 */
+	CANCELLED,
+	;
+	
+	/**
+	 * @return true if this status is final (the submission will not be tested)
+	 */
+	public boolean isDone() {
+		return this == COMPLETE || this == FAILED || this == CANCELLED;
+	}
+}
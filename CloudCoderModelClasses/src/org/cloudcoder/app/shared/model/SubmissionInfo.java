@@ -0,0 +1,195 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * Information about a submission: its {@link SubmissionState},
+ * position in the queue, timestamps, and (once it is done) its
+ * {@link SubmissionResult} or error and its {@link SubmissionReceipt}.
+ * A submission is identified by the event id of the full-text
+ * {@link Change} containing the submitted program text.
+ * 
+ * @author David Hovemeyer
+ */
+public class SubmissionInfo implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	private int submissionId;
+	private int problemId;
+	private SubmissionState state;
+	private int queuePosition;
+	private long enqueueTime;
+	private long dispatchTime;
+	private long doneTime;
+	private SubmissionResult result;
+	private String error;
+	private SubmissionReceipt receipt;
+	
+	public SubmissionInfo() {
+		
+	}
+	
+	/**
+	 * @param submissionId the submission id to set
+	 */
+	public void setSubmissionId(int submissionId) {
+		this.submissionId = submissionId;
+	}
+	
+	/**
+	 * @return the submission id (the event id of the submission's full-text change)
+	 */
+	public int getSubmissionId() {
+		return submissionId;
+	}
+	
+	/**
+	 * @param problemId the problem id to set
+	 */
+	public void setProblemId(int problemId) {
+		this.problemId = problemId;
+	}
+	
+	/**
+	 * @return the problem id
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+	
+	/**
+	 * @param state the {@link SubmissionState} to set
+	 */
+	public void setState(SubmissionState state) {
+		this.state = state;
+	}
+	
+	/**
+	 * @return the {@link SubmissionState}
+	 */
+	public SubmissionState getState() {
+		return state;
+	}
+	
+	/**
+	 * @param queuePosition the number of submissions ahead of this one in the queue
+	 */
+	public void setQueuePosition(int queuePosition) {
+		this.queuePosition = queuePosition;
+	}
+	
+	/**
+	 * @return the number of submissions ahead of this one in the queue
+	 *         (0 if the submission is not queued, -1 if it is unknown)
+	 */
+	public int getQueuePosition() {
+		return queuePosition;
+	}
+	
+	/**
+	 * @param enqueueTime the time the submission was queued
+	 */
+	public void setEnqueueTime(long enqueueTime) {
+		this.enqueueTime = enqueueTime;
+	}
+	
+	/**
+	 * @return the time (in milliseconds since the epoch) the submission was queued,
+	 *         or 0 if it is unknown
+	 */
+	public long getEnqueueTime() {
+		return enqueueTime;
+	}
+	
+	/**
+	 * @param dispatchTime the time the submission was (last) sent to a Builder
+	 */
+	public void setDispatchTime(long dispatchTime) {
+		this.dispatchTime = dispatchTime;
+	}
+	
+	/**
+	 * @return the time (in milliseconds since the epoch) the submission was (last)
+	 *         sent to a Builder, or 0 if it hasn't been, or it is unknown
+	 */
+	public long getDispatchTime() {
+		return dispatchTime;
+	}
+	
+	/**
+	 * @param doneTime the time the submission was done
+	 */
+	public void setDoneTime(long doneTime) {
+		this.doneTime = doneTime;
+	}
+	
+	/**
+	 * @return the time (in milliseconds since the epoch) the submission was done,
+	 *         or 0 if it isn't done yet
+	 */
+	public long getDoneTime() {
+		return doneTime;
+	}
+	
+	/**
+	 * @param result the {@link SubmissionResult} to set
+	 */
+	public void setResult(SubmissionResult result) {
+		this.result = result;
+	}
+	
+	/**
+	 * @return the {@link SubmissionResult}, or null if the submission isn't done
+	 *         or testing could not be completed
+	 */
+	public SubmissionResult getResult() {
+		return result;
+	}
+	
+	/**
+	 * @param error the error message to set
+	 */
+	public void setError(String error) {
+		this.error = error;
+	}
+	
+	/**
+	 * @return the error message describing why testing could not be
+	 *         completed, or null if there was no error
+	 */
+	public String getError() {
+		return error;
+	}
+	
+	/**
+	 * @param receipt the {@link SubmissionReceipt} to set
+	 */
+	public void setReceipt(SubmissionReceipt receipt) {
+		this.receipt = receipt;
+	}
+	
+	/**
+	 * @return the {@link SubmissionReceipt}, or null if the submission isn't done
+	 *         or testing could not be completed
+	 */
+	public SubmissionReceipt getReceipt() {
+		return receipt;
+	}
+}
@@ -0,0 +1,51 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+/**
+ * Enumeration of kinds of submissions that can be sent to a Builder.
+ * 
+ * @author David Hovemeyer
+ */
+public enum SubmissionType {
+	/**
+	 * A normal submission: compile the program and run all test cases.
+	 */
+	FULL,
+	
+	/**
+	 * A compile-only submission: compile the program and report
+	 * compiler diagnostics, but do not run any test cases.
+	 * These are used to provide background feedback while the student
+	 * is editing, and are handled at a lower priority than full submissions.
+	 */
+	COMPILE_ONLY,
+	;
+	
+	/**
+	 * Determine whether compile-only submissions are useful for
+	 * problems in the given {@link Language}: i.e., whether the language
+	 * has a compilation step that can produce diagnostics.
+	 * 
+	 * @param language the {@link Language}
+	 * @return true if compile-only submissions are supported for the language
+	 */
+	public static boolean isCompileOnlySupported(Language language) {
+		return language == Language.C || language == Language.CPLUSPLUS || language == Language.JAVA;
+	}
+}
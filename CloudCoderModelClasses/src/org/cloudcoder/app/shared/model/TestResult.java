@@ -33,35 +33,74 @@ public class TestResult implements Serializable, IModelObject<TestResult>
     private String message;
     private String stdout;
     private String stderr;
+    private String stdoutHash;
+    private String stderrHash;
     
+	/** {@link ModelObjectField} for unique id. */
+	public static final ModelObjectField<TestResult, Integer> ID = new ModelObjectField<TestResult, Integer>("id", Integer.class, 0, ModelObjectIndexType.IDENTITY) {
+		public void set(TestResult obj, Integer value) { obj.setId(value); }
+		public Integer get(TestResult obj) { return obj.getId(); }
+	};
+	/** {@link ModelObjectField} for submission receipt event id. */
+	public static final ModelObjectField<TestResult, Integer> SUBMISSION_RECEIPT_EVENT_ID = new ModelObjectField<TestResult, Integer>("submission_receipt_event_id", Integer.class, 0, ModelObjectIndexType.NON_UNIQUE) {
+		public void set(TestResult obj, Integer value) { obj.setSubmissionReceiptEventId(value); }
+		public Integer get(TestResult obj) { return obj.getSubmissionReceiptEventId(); }
+	};
+	/** {@link ModelObjectField} for test outcome. */
+	public static final ModelObjectField<TestResult, TestOutcome> TEST_OUTCOME = new ModelObjectField<TestResult, TestOutcome>("test_outcome", TestOutcome.class, 0) {
+		public void set(TestResult obj, TestOutcome value) { obj.setOutcome(value); }
+		public TestOutcome get(TestResult obj) { return obj.getOutcome(); }
+	};
+	/** {@link ModelObjectField} for message. */
+	public static final ModelObjectField<TestResult, String> MESSAGE = new ModelObjectField<TestResult, String>("message", String.class, 100) {
+		public void set(TestResult obj, String value) { obj.setMessage(value); }
+		public String get(TestResult obj) { return obj.getMessage(); }
+	};
+	/** {@link ModelObjectField} for stdout (empty if stored as an output blob). */
+	public static final ModelObjectField<TestResult, String> STDOUT = new ModelObjectField<TestResult, String>("stdout", String.class, Integer.MAX_VALUE) {
+		public void set(TestResult obj, String value) { obj.setStdout(value); }
+		public String get(TestResult obj) { return obj.getStdout(); }
+	};
+	/** {@link ModelObjectField} for stderr (empty if stored as an output blob). */
+	public static final ModelObjectField<TestResult, String> STDERR = new ModelObjectField<TestResult, String>("stderr", String.class, Integer.MAX_VALUE) {
+		public void set(TestResult obj, String value) { obj.setStderr(value); }
+		public String get(TestResult obj) { return obj.getStderr(); }
+	};
+	/** {@link ModelObjectField} for hash of the output blob containing stdout (null if stored inline). */
+	public static final ModelObjectField<TestResult, String> STDOUT_HASH = new ModelObjectField<TestResult, String>("stdout_hash", String.class, 40, ModelObjectIndexType.NON_UNIQUE, ModelObjectField.ALLOW_NULL) {
+		public void set(TestResult obj, String value) { obj.setStdoutHash(value); }
+		public String get(TestResult obj) { return obj.getStdoutHash(); }
+	};
+	/** {@link ModelObjectField} for hash of the output blob containing stderr (null if stored inline). */
+	public static final ModelObjectField<TestResult, String> STDERR_HASH = new ModelObjectField<TestResult, String>("stderr_hash", String.class, 40, ModelObjectIndexType.NON_UNIQUE, ModelObjectField.ALLOW_NULL) {
+		public void set(TestResult obj, String value) { obj.setStderrHash(value); }
+		public String get(TestResult obj) { return obj.getStderrHash(); }
+	};
+    
+	/**
+	 * Description of fields (schema version 0).
+	 */
+	public static final ModelObjectSchema<TestResult> SCHEMA_V0 = new ModelObjectSchema<TestResult>("test_result")
+		.add(ID)
+		.add(SUBMISSION_RECEIPT_EVENT_ID)
+		.add(TEST_OUTCOME)
+		.add(MESSAGE)
+		.add(STDOUT)
+		.add(STDERR);
+	
+	/**
+	 * Description of fields (schema version 1): stdout and stderr
+	 * may be stored in deduplicated output blobs, referenced by hash.
+	 */
+	public static final ModelObjectSchema<TestResult> SCHEMA_V1 = ModelObjectSchema.basedOn(SCHEMA_V0)
+		.addAfter(STDERR, STDOUT_HASH)
+		.addAfter(STDOUT_HASH, STDERR_HASH)
+		.finishDelta();
+	
 	/**
-	 * Description of fields.
+	 * Description of fields (current schema version).
 	 */
-	public static final ModelObjectSchema<TestResult> SCHEMA = new ModelObjectSchema<TestResult>("test_result")
-		.add(new ModelObjectField<TestResult, Integer>("id", Integer.class, 0, ModelObjectIndexType.IDENTITY) {
-			public void set(TestResult obj, Integer value) { obj.setId(value); }
-			public Integer get(TestResult obj) { return obj.getId(); }
-		})
-		.add(new ModelObjectField<TestResult, Integer>("submission_receipt_event_id", Integer.class, 0, ModelObjectIndexType.NON_UNIQUE) {
-			public void set(TestResult obj, Integer value) { obj.setSubmissionReceiptEventId(value); }
-			public Integer get(TestResult obj) { return obj.getSubmissionReceiptEventId(); }
-		})
-		.add(new ModelObjectField<TestResult, TestOutcome>("test_outcome", TestOutcome.class, 0) {
-			public void set(TestResult obj, TestOutcome value) { obj.setOutcome(value); }
-			public TestOutcome get(TestResult obj) { return obj.getOutcome(); }
-		})
-		.add(new ModelObjectField<TestResult, String>("message", String.class, 100) {
-			public void set(TestResult obj, String value) { obj.setMessage(value); }
-			public String get(TestResult obj) { return obj.getMessage(); }
-		})
-		.add(new ModelObjectField<TestResult, String>("stdout", String.class, Integer.MAX_VALUE) {
-			public void set(TestResult obj, String value) { obj.setStdout(value); }
-			public String get(TestResult obj) { return obj.getStdout(); }
-		})
-		.add(new ModelObjectField<TestResult, String>("stderr", String.class, Integer.MAX_VALUE) {
-			public void set(TestResult obj, String value) { obj.setStderr(value); }
-			public String get(TestResult obj) { return obj.getStderr(); }
-		});
+	public static final ModelObjectSchema<TestResult> SCHEMA = SCHEMA_V1;
     
     public TestResult() {
     	
@@ -180,4 +219,32 @@ public class TestResult implements Serializable, IModelObject<TestResult>
     public void setStderr(String stderr) {
         this.stderr = stderr;
     }
+
+	/**
+	 * @param stdoutHash the hash of the output blob containing stdout (null if stored inline)
+	 */
+	public void setStdoutHash(String stdoutHash) {
+		this.stdoutHash = stdoutHash;
+	}
+
+	/**
+	 * @return the hash of the output blob containing stdout (null if stored inline)
+	 */
+	public String getStdoutHash() {
+		return stdoutHash;
+	}
+
+	/**
+	 * @param stderrHash the hash of the output blob containing stderr (null if stored inline)
+	 */
+	public void setStderrHash(String stderrHash) {
+		this.stderrHash = stderrHash;
+	}
+
+	/**
+	 * @return the hash of the output blob containing stderr (null if stored inline)
+	 */
+	public String getStderrHash() {
+		return stderrHash;
+	}
 }
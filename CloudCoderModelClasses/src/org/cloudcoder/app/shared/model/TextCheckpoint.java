@@ -0,0 +1,167 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * A checkpoint of the full text of a user's work on a problem,
+ * as of a particular {@link Change} event.  Reconstructing the
+ * current text can start from the checkpoint and apply only the
+ * changes whose event ids are greater than the checkpoint's
+ * event id, rather than replaying the entire chain of deltas
+ * since the last full-text change.  Checkpoints are derived
+ * data: they can be deleted at any time without losing information.
+ * 
+ * @author David Hovemeyer
+ */
+public class TextCheckpoint implements Serializable, IModelObject<TextCheckpoint> {
+	private static final long serialVersionUID = 1L;
+
+	private int userId;
+	private int problemId;
+	private int eventId;
+	private String text;
+
+	/** {@link ModelObjectField} for user id. */
+	public static final ModelObjectField<TextCheckpoint, Integer> USER_ID = new ModelObjectField<TextCheckpoint, Integer>("user_id", Integer.class, 0) {
+		public void set(TextCheckpoint obj, Integer value) { obj.setUserId(value); }
+		public Integer get(TextCheckpoint obj) { return obj.getUserId(); }
+	};
+	/** {@link ModelObjectField} for problem id. */
+	public static final ModelObjectField<TextCheckpoint, Integer> PROBLEM_ID = new ModelObjectField<TextCheckpoint, Integer>("problem_id", Integer.class, 0) {
+		public void set(TextCheckpoint obj, Integer value) { obj.setProblemId(value); }
+		public Integer get(TextCheckpoint obj) { return obj.getProblemId(); }
+	};
+	/** {@link ModelObjectField} for event id of the last change reflected in the text. */
+	public static final ModelObjectField<TextCheckpoint, Integer> EVENT_ID = new ModelObjectField<TextCheckpoint, Integer>("event_id", Integer.class, 0) {
+		public void set(TextCheckpoint obj, Integer value) { obj.setEventId(value); }
+		public Integer get(TextCheckpoint obj) { return obj.getEventId(); }
+	};
+	/** {@link ModelObjectField} for the checkpointed text. */
+	public static final ModelObjectField<TextCheckpoint, String> TEXT = new ModelObjectField<TextCheckpoint, String>("text", String.class, Integer.MAX_VALUE) {
+		public void set(TextCheckpoint obj, String value) { obj.setText(value); }
+		public String get(TextCheckpoint obj) { return obj.getText(); }
+	};
+
+	/**
+	 * Description of fields (schema version 0).
+	 */
+	public static final ModelObjectSchema<TextCheckpoint> SCHEMA_V0 = new ModelObjectSchema<TextCheckpoint>("text_checkpoint")
+			.add(USER_ID)
+			.add(PROBLEM_ID)
+			.add(EVENT_ID)
+			.add(TEXT)
+			// There is at most one checkpoint per user/problem
+			.addIndex(new ModelObjectIndex<TextCheckpoint>(ModelObjectIndexType.UNIQUE)
+					.addField(USER_ID)
+					.addField(PROBLEM_ID)
+					);
+
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<TextCheckpoint> SCHEMA = SCHEMA_V0;
+
+	/**
+	 * Number of database fields.
+	 */
+	public static final int NUM_FIELDS = SCHEMA.getNumFields();
+
+	/**
+	 * Constructor.
+	 */
+	public TextCheckpoint() {
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param userId    the user id
+	 * @param problemId the problem id
+	 * @param eventId   the event id of the last change reflected in the text
+	 * @param text      the text
+	 */
+	public TextCheckpoint(int userId, int problemId, int eventId, String text) {
+		this.userId = userId;
+		this.problemId = problemId;
+		this.eventId = eventId;
+		this.text = text;
+	}
+
+	@Override
+	public ModelObjectSchema<TextCheckpoint> getSchema() {
+		return SCHEMA;
+	}
+
+	/**
+	 * @param userId the user id to set
+	 */
+	public void setUserId(int userId) {
+		this.userId = userId;
+	}
+
+	/**
+	 * @return the user id
+	 */
+	public int getUserId() {
+		return userId;
+	}
+
+	/**
+	 * @param problemId the problem id to set
+	 */
+	public void setProblemId(int problemId) {
+		this.problemId = problemId;
+	}
+
+	/**
+	 * @return the problem id
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+
+	/**
+	 * @param eventId the event id of the last change reflected in the text
+	 */
+	public void setEventId(int eventId) {
+		this.eventId = eventId;
+	}
+
+	/**
+	 * @return the event id of the last change reflected in the text
+	 */
+	public int getEventId() {
+		return eventId;
+	}
+
+	/**
+	 * @param text the checkpointed text to set
+	 */
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * @return the checkpointed text
+	 */
+	public String getText() {
+		return text;
+	}
+}
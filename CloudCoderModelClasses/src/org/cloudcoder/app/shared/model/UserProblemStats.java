@@ -0,0 +1,235 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * Per-user status on a {@link Problem}, derived from the user's
+ * {@link SubmissionReceipt}s for the problem: the maximum number of tests
+ * passed by any submission, whether any submission passed all tests,
+ * the user's best submission (the earliest one passing the maximum number
+ * of tests), and the user's most recent submission and its time.
+ * The existence of a UserProblemStats object means that the user has
+ * started the problem.  The {@link ProblemStats} for the problem
+ * aggregate these.
+ * 
+ * @author David Hovemeyer
+ */
+public class UserProblemStats implements Serializable, IModelObject<UserProblemStats> {
+	private static final long serialVersionUID = 1L;
+
+	private int userId;
+	private int problemId;
+	private int maxTestsPassed;
+	private boolean completed;
+	private int bestSubmissionReceiptEventId;
+	private long lastSubmissionTimestamp;
+	private int latestSubmissionReceiptEventId;
+
+	/** {@link ModelObjectField} for user id. */
+	public static final ModelObjectField<UserProblemStats, Integer> USER_ID = new ModelObjectField<UserProblemStats, Integer>("user_id", Integer.class, 0) {
+		public void set(UserProblemStats obj, Integer value) { obj.setUserId(value); }
+		public Integer get(UserProblemStats obj) { return obj.getUserId(); }
+	};
+	/** {@link ModelObjectField} for problem id. */
+	public static final ModelObjectField<UserProblemStats, Integer> PROBLEM_ID = new ModelObjectField<UserProblemStats, Integer>("problem_id", Integer.class, 0, ModelObjectIndexType.NON_UNIQUE) {
+		public void set(UserProblemStats obj, Integer value) { obj.setProblemId(value); }
+		public Integer get(UserProblemStats obj) { return obj.getProblemId(); }
+	};
+	/** {@link ModelObjectField} for maximum number of tests passed. */
+	public static final ModelObjectField<UserProblemStats, Integer> MAX_TESTS_PASSED = new ModelObjectField<UserProblemStats, Integer>("max_tests_passed", Integer.class, 0) {
+		public void set(UserProblemStats obj, Integer value) { obj.setMaxTestsPassed(value); }
+		public Integer get(UserProblemStats obj) { return obj.getMaxTestsPassed(); }
+	};
+	/** {@link ModelObjectField} for whether the problem was completed. */
+	public static final ModelObjectField<UserProblemStats, Boolean> COMPLETED = new ModelObjectField<UserProblemStats, Boolean>("completed", Boolean.class, 0) {
+		public void set(UserProblemStats obj, Boolean value) { obj.setCompleted(value); }
+		public Boolean get(UserProblemStats obj) { return obj.isCompleted(); }
+	};
+	/** {@link ModelObjectField} for the event id of the best submission receipt. */
+	public static final ModelObjectField<UserProblemStats, Integer> BEST_SUBMISSION_RECEIPT_EVENT_ID = new ModelObjectField<UserProblemStats, Integer>("best_submission_receipt_event_id", Integer.class, 0) {
+		public void set(UserProblemStats obj, Integer value) { obj.setBestSubmissionReceiptEventId(value); }
+		public Integer get(UserProblemStats obj) { return obj.getBestSubmissionReceiptEventId(); }
+	};
+	/** {@link ModelObjectField} for the timestamp of the most recent submission. */
+	public static final ModelObjectField<UserProblemStats, Long> LAST_SUBMISSION_TIMESTAMP = new ModelObjectField<UserProblemStats, Long>("last_submission_timestamp", Long.class, 0) {
+		public void set(UserProblemStats obj, Long value) { obj.setLastSubmissionTimestamp(value); }
+		public Long get(UserProblemStats obj) { return obj.getLastSubmissionTimestamp(); }
+	};
+	/** {@link ModelObjectField} for the event id of the most recent submission receipt. */
+	public static final ModelObjectField<UserProblemStats, Integer> LATEST_SUBMISSION_RECEIPT_EVENT_ID = new ModelObjectField<UserProblemStats, Integer>("latest_submission_receipt_event_id", Integer.class, 0) {
+		public void set(UserProblemStats obj, Integer value) { obj.setLatestSubmissionReceiptEventId(value); }
+		public Integer get(UserProblemStats obj) { return obj.getLatestSubmissionReceiptEventId(); }
+	};
+
+	/**
+	 * Description of fields (schema version 0).
+	 */
+	public static final ModelObjectSchema<UserProblemStats> SCHEMA_V0 = new ModelObjectSchema<UserProblemStats>("user_problem_stat")
+			.add(USER_ID)
+			.add(PROBLEM_ID)
+			.add(MAX_TESTS_PASSED)
+			.add(COMPLETED)
+			// There is at most one row per user/problem
+			.addIndex(new ModelObjectIndex<UserProblemStats>(ModelObjectIndexType.UNIQUE)
+					.addField(USER_ID)
+					.addField(PROBLEM_ID)
+					);
+
+	/**
+	 * Description of fields (schema version 1).
+	 */
+	public static final ModelObjectSchema<UserProblemStats> SCHEMA_V1 = ModelObjectSchema.basedOn(SCHEMA_V0)
+			.addAfter(COMPLETED, BEST_SUBMISSION_RECEIPT_EVENT_ID)
+			.addAfter(BEST_SUBMISSION_RECEIPT_EVENT_ID, LAST_SUBMISSION_TIMESTAMP)
+			.finishDelta();
+
+	/**
+	 * Description of fields (schema version 2).
+	 */
+	public static final ModelObjectSchema<UserProblemStats> SCHEMA_V2 = ModelObjectSchema.basedOn(SCHEMA_V1)
+			.addAfter(LAST_SUBMISSION_TIMESTAMP, LATEST_SUBMISSION_RECEIPT_EVENT_ID)
+			.finishDelta();
+
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<UserProblemStats> SCHEMA = SCHEMA_V2;
+
+	/**
+	 * Number of database fields.
+	 */
+	public static final int NUM_FIELDS = SCHEMA.getNumFields();
+
+	/**
+	 * Constructor.
+	 */
+	public UserProblemStats() {
+	}
+
+	@Override
+	public ModelObjectSchema<UserProblemStats> getSchema() {
+		return SCHEMA;
+	}
+
+	/**
+	 * @param userId the user id to set
+	 */
+	public void setUserId(int userId) {
+		this.userId = userId;
+	}
+
+	/**
+	 * @return the user id
+	 */
+	public int getUserId() {
+		return userId;
+	}
+
+	/**
+	 * @param problemId the problem id to set
+	 */
+	public void setProblemId(int problemId) {
+		this.problemId = problemId;
+	}
+
+	/**
+	 * @return the problem id
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+
+	/**
+	 * @param maxTestsPassed the maximum number of tests passed by any submission
+	 */
+	public void setMaxTestsPassed(int maxTestsPassed) {
+		this.maxTestsPassed = maxTestsPassed;
+	}
+
+	/**
+	 * @return the maximum number of tests passed by any submission
+	 */
+	public int getMaxTestsPassed() {
+		return maxTestsPassed;
+	}
+
+	/**
+	 * @param completed true if any submission passed all tests
+	 */
+	public void setCompleted(boolean completed) {
+		this.completed = completed;
+	}
+
+	/**
+	 * @return true if any submission passed all tests
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @param bestSubmissionReceiptEventId the event id of the best submission receipt
+	 */
+	public void setBestSubmissionReceiptEventId(int bestSubmissionReceiptEventId) {
+		this.bestSubmissionReceiptEventId = bestSubmissionReceiptEventId;
+	}
+
+	/**
+	 * @return the event id of the best submission receipt
+	 */
+	public int getBestSubmissionReceiptEventId() {
+		return bestSubmissionReceiptEventId;
+	}
+
+	/**
+	 * @param lastSubmissionTimestamp the timestamp of the most recent submission
+	 */
+	public void setLastSubmissionTimestamp(long lastSubmissionTimestamp) {
+		this.lastSubmissionTimestamp = lastSubmissionTimestamp;
+	}
+
+	/**
+	 * @return the timestamp of the most recent submission
+	 */
+	public long getLastSubmissionTimestamp() {
+		return lastSubmissionTimestamp;
+	}
+
+	/**
+	 * @param latestSubmissionReceiptEventId the event id of the most recent submission receipt
+	 */
+	public void setLatestSubmissionReceiptEventId(int latestSubmissionReceiptEventId) {
+		this.latestSubmissionReceiptEventId = latestSubmissionReceiptEventId;
+	}
+
+	/**
+	 * @return the event id of the most recent submission receipt
+	 */
+	public int getLatestSubmissionReceiptEventId() {
+		return latestSubmissionReceiptEventId;
+	}
+
+	/**
+	 * @return true if any submission passed at least one test
+	 */
+	public boolean isPassedAtLeastOneTest() {
+		return completed || maxTestsPassed > 0;
+	}
+}
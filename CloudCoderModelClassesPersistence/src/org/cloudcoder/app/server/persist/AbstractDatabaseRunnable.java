@@ -4,6 +4,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 /**
@@ -18,18 +21,36 @@ import java.util.Stack;
 public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E> {
 
 	private Stack<Object> cleanupStack = new Stack<Object>();
+	private StatementCache statementCache;
+	private List<PreparedStatement> cachedStatementList = new ArrayList<PreparedStatement>();
 
 	public AbstractDatabaseRunnable() {
 		super();
 	}
 
+	/**
+	 * Set the {@link StatementCache} of the connection the transaction
+	 * will run on.  Statements prepared on that connection are checked
+	 * out of the cache, and checked back in by {@link #cleanup()}.
+	 * 
+	 * @param statementCache the {@link StatementCache} (null if statements should not be cached)
+	 */
+	void setStatementCache(StatementCache statementCache) {
+		this.statementCache = statementCache;
+	}
+
 	protected PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
-		PreparedStatement stmt = conn.prepareStatement(sql);
-		cleanupStack.push(stmt);
-		return stmt;
+		return prepareStatement(conn, sql, Statement.NO_GENERATED_KEYS);
 	}
 
 	protected PreparedStatement prepareStatement(Connection conn, String sql, int options) throws SQLException {
+		if (statementCache != null && statementCache.getConnection() == conn) {
+			PreparedStatement stmt = statementCache.checkOut(sql, options);
+			if (stmt != null) {
+				cachedStatementList.add(stmt);
+				return stmt;
+			}
+		}
 		PreparedStatement stmt = conn.prepareStatement(sql, options);
 		cleanupStack.push(stmt);
 		return stmt;
@@ -57,6 +78,11 @@ public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E>
 				DBUtil.closeQuietly((ResultSet) o);
 			}
 		}
+		for (PreparedStatement stmt : cachedStatementList) {
+			statementCache.checkIn(stmt);
+		}
+		cachedStatementList.clear();
+		statementCache = null;
 	}
 
 }
\ No newline at end of file
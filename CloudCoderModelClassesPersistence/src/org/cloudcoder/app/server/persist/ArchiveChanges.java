@@ -0,0 +1,346 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeArchive;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.Problem;
+
+/**
+ * Move old {@link Change}s out of the changes and events tables and into
+ * compressed {@link ChangeArchive}s.  Changes are archived either when they
+ * are older than a given age, or (using <code>--course=<i>id</i></code>)
+ * for all of the problems in a course which has ended.  Each (user, problem)
+ * change stream is archived in chunks of at most <code>--batch</code> changes:
+ * each chunk is archived and deleted from the changes and events tables in
+ * a single transaction, with a pause between chunks so that archiving can
+ * run while CloudCoder is in use.  Archived changes are still returned by
+ * {@link IDatabase#getAllChangesNewerThan(org.cloudcoder.app.shared.model.User, int, int)}
+ * and the other methods for loading changes.
+ * 
+ * @author David Hovemeyer
+ */
+public class ArchiveChanges {
+	/** Default minimum age (in days) of archived changes. */
+	public static final int DEFAULT_AGE_DAYS = 180;
+	
+	/** Default maximum number of changes per archive (and per transaction). */
+	public static final int DEFAULT_BATCH_SIZE = 2000;
+	
+	/** Default pause (in milliseconds) between transactions. */
+	public static final long DEFAULT_PAUSE_MILLIS = 200L;
+	
+	private static final String SELECT_CHANGES_SQL =
+			"select " + DBUtil.getColumnList(Change.SCHEMA, "c") + ", " + DBUtil.getColumnList(Event.SCHEMA, "e") + " from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e" +
+			" where c.event_id = e.id" +
+			"   and e.user_id = ? and e.problem_id = ?" +
+			"   and e.id > ? and e.id <= ?" +
+			" order by e.id asc" +
+			" limit ?" +
+			" for update";
+	private static final String DELETE_CHANGES_SQL =
+			"delete c, e from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e" +
+			" where c.event_id = e.id" +
+			"   and e.user_id = ? and e.problem_id = ?" +
+			"   and e.id >= ? and e.id <= ?";
+	
+	/**
+	 * A (user, problem) change stream, and the event id of the last
+	 * change in the stream to be archived.
+	 */
+	private static class ChangeStream {
+		final int userId;
+		final int problemId;
+		final int maxEventId;
+		
+		ChangeStream(int userId, int problemId, int maxEventId) {
+			this.userId = userId;
+			this.problemId = problemId;
+			this.maxEventId = maxEventId;
+		}
+	}
+	
+	private Connection conn;
+	private int batchSize;
+	private long pauseMillis;
+	private int numArchives;
+	private int numChanges;
+	private long uncompressedBytes;
+	private long compressedBytes;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param conn        the connection to the webapp database
+	 * @param batchSize   maximum number of changes per archive (and per transaction)
+	 * @param pauseMillis pause (in milliseconds) between transactions
+	 */
+	public ArchiveChanges(Connection conn, int batchSize, long pauseMillis) {
+		this.conn = conn;
+		this.batchSize = batchSize;
+		this.pauseMillis = pauseMillis;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		ConfigurationUtil.configureLog4j();
+		
+		int ageDays = DEFAULT_AGE_DAYS;
+		int courseId = -1;
+		int batchSize = DEFAULT_BATCH_SIZE;
+		long pauseMillis = DEFAULT_PAUSE_MILLIS;
+		for (String arg : args) {
+			if (arg.startsWith("--age-days=")) {
+				ageDays = Integer.parseInt(arg.substring("--age-days=".length()));
+			} else if (arg.startsWith("--course=")) {
+				courseId = Integer.parseInt(arg.substring("--course=".length()));
+			} else if (arg.startsWith("--batch=")) {
+				batchSize = Integer.parseInt(arg.substring("--batch=".length()));
+			} else if (arg.startsWith("--pause=")) {
+				pauseMillis = Long.parseLong(arg.substring("--pause=".length()));
+			} else {
+				System.err.println("Usage: archivechanges [--age-days=<days> | --course=<course id>] [--batch=<changes>] [--pause=<millis>]");
+				System.exit(1);
+			}
+		}
+		
+		if (courseId >= 0) {
+			System.out.println("Archive all changes for the problems in course " + courseId);
+		} else {
+			System.out.println("Archive changes older than " + ageDays + " days");
+		}
+		
+		try {
+			archiveChanges(ageDays, courseId, batchSize, pauseMillis);
+		} catch (SQLException e) {
+			System.err.println("Database error: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Connect to the webapp database using the configuration properties
+	 * and archive changes.
+	 * 
+	 * @param ageDays     minimum age (in days) of archived changes (ignored if courseId is given)
+	 * @param courseId    the course whose changes should be archived, or -1 to archive by age
+	 * @param batchSize   maximum number of changes per archive (and per transaction)
+	 * @param pauseMillis pause (in milliseconds) between transactions
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 * @throws SQLException
+	 * @throws InterruptedException
+	 */
+	public static void archiveChanges(int ageDays, int courseId, int batchSize, long pauseMillis)
+			throws ClassNotFoundException, IOException, SQLException, InterruptedException {
+		Class.forName("com.mysql.jdbc.Driver");
+		Properties config = DBUtil.getConfigProperties();
+		Connection conn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		try {
+			ArchiveChanges archiver = new ArchiveChanges(conn, batchSize, pauseMillis);
+			List<ChangeStream> streams = (courseId >= 0)
+					? archiver.findStreamsInCourse(courseId)
+					: archiver.findStreamsOlderThan(System.currentTimeMillis() - ageDays * 24L * 60L * 60L * 1000L);
+			System.out.println(streams.size() + " change stream(s) to archive");
+			archiver.archive(streams);
+			archiver.printStats();
+		} finally {
+			DBUtil.closeQuietly(conn);
+		}
+	}
+	
+	/**
+	 * Find the change streams with changes older than the given time.
+	 * Only the changes up to the last one older than the given time
+	 * will be archived.
+	 * 
+	 * @param cutoffTimestamp the time
+	 * @return the change streams
+	 * @throws SQLException
+	 */
+	private List<ChangeStream> findStreamsOlderThan(long cutoffTimestamp) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(
+				"select e.user_id, e.problem_id, max(e.id)" +
+				"  from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e" +
+				" where c.event_id = e.id" +
+				"   and e.timestamp < ?" +
+				" group by e.user_id, e.problem_id");
+		try {
+			stmt.setLong(1, cutoffTimestamp);
+			return findStreams(stmt);
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
+	/**
+	 * Find the change streams for the problems in given course.
+	 * All of their changes will be archived.
+	 * 
+	 * @param courseId the course id
+	 * @return the change streams
+	 * @throws SQLException
+	 */
+	private List<ChangeStream> findStreamsInCourse(int courseId) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(
+				"select e.user_id, e.problem_id, max(e.id)" +
+				"  from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e" +
+				" where c.event_id = e.id" +
+				"   and e.problem_id in (select p.problem_id from " + Problem.SCHEMA.getDbTableName() + " as p where p.course_id = ?)" +
+				" group by e.user_id, e.problem_id");
+		try {
+			stmt.setInt(1, courseId);
+			return findStreams(stmt);
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private List<ChangeStream> findStreams(PreparedStatement stmt) throws SQLException {
+		List<ChangeStream> result = new ArrayList<ChangeStream>();
+		ResultSet resultSet = stmt.executeQuery();
+		try {
+			while (resultSet.next()) {
+				result.add(new ChangeStream(resultSet.getInt(1), resultSet.getInt(2), resultSet.getInt(3)));
+			}
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+		}
+		return result;
+	}
+	
+	/**
+	 * Archive the given change streams.
+	 * 
+	 * @param streams the change streams
+	 * @throws SQLException
+	 * @throws InterruptedException
+	 */
+	private void archive(List<ChangeStream> streams) throws SQLException, InterruptedException {
+		int count = 0;
+		for (ChangeStream stream : streams) {
+			archive(stream);
+			count++;
+			if (count % 100 == 0) {
+				System.out.println("Archived " + count + "/" + streams.size() + " change streams (" + numChanges + " changes)");
+			}
+		}
+	}
+
+	private void archive(ChangeStream stream) throws SQLException, InterruptedException {
+		int lastArchivedEventId = 0;
+		while (true) {
+			int last = archiveChunk(stream, lastArchivedEventId);
+			if (last < 0) {
+				break;
+			}
+			lastArchivedEventId = last;
+			Thread.sleep(pauseMillis);
+		}
+	}
+
+	/**
+	 * Archive the next chunk of a change stream in a single transaction.
+	 * 
+	 * @return the event id of the last change archived, or -1 if
+	 *         there were no changes left to archive
+	 */
+	private int archiveChunk(ChangeStream stream, int afterEventId) throws SQLException {
+		boolean origAutoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		boolean committed = false;
+		PreparedStatement select = null;
+		ResultSet resultSet = null;
+		PreparedStatement delete = null;
+		try {
+			select = conn.prepareStatement(SELECT_CHANGES_SQL);
+			select.setInt(1, stream.userId);
+			select.setInt(2, stream.problemId);
+			select.setInt(3, afterEventId);
+			select.setInt(4, stream.maxEventId);
+			select.setInt(5, batchSize);
+			resultSet = select.executeQuery();
+			List<Change> changeList = new ArrayList<Change>();
+			while (resultSet.next()) {
+				Change change = new Change();
+				int index = DBUtil.loadModelObjectFields(change, Change.SCHEMA, resultSet, 1);
+				Event event = new Event();
+				DBUtil.loadModelObjectFields(event, Event.SCHEMA, resultSet, index);
+				change.setEvent(event);
+				changeList.add(change);
+			}
+			if (changeList.isEmpty()) {
+				conn.commit();
+				committed = true;
+				return -1;
+			}
+			
+			ChangeArchive archive = ChangeArchiveCodec.encode(stream.userId, stream.problemId, changeList);
+			DBUtil.storeModelObject(conn, archive);
+			
+			delete = conn.prepareStatement(DELETE_CHANGES_SQL);
+			delete.setInt(1, stream.userId);
+			delete.setInt(2, stream.problemId);
+			delete.setInt(3, archive.getFirstEventId());
+			delete.setInt(4, archive.getLastEventId());
+			int numDeleted = delete.executeUpdate();
+			
+			// Each archived change is one row in each of the changes and events tables
+			if (numDeleted != 2 * changeList.size()) {
+				throw new SQLException("Expected to delete " + (2 * changeList.size()) + " rows, but deleted " + numDeleted);
+			}
+			
+			conn.commit();
+			committed = true;
+			
+			numArchives++;
+			numChanges += changeList.size();
+			for (Change change : changeList) {
+				uncompressedBytes += (change.getText() != null ? change.getText().length() : 0) + 24;
+			}
+			compressedBytes += archive.getData().length;
+			
+			return archive.getLastEventId();
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(select);
+			DBUtil.closeQuietly(delete);
+			if (!committed) {
+				conn.rollback();
+			}
+			conn.setAutoCommit(origAutoCommit);
+		}
+	}
+	
+	private void printStats() {
+		System.out.println("Archived " + numChanges + " changes in " + numArchives + " archive(s)");
+		if (compressedBytes > 0) {
+			System.out.printf("Archive data: %d bytes (about %.1fx smaller than the change text and positions)%n",
+					compressedBytes, (double) uncompressedBytes / compressedBytes);
+		}
+	}
+}
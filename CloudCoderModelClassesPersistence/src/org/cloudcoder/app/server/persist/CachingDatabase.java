@@ -0,0 +1,562 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
+import org.cloudcoder.app.shared.model.ConfigurationSetting;
+import org.cloudcoder.app.shared.model.ConfigurationSettingName;
+import org.cloudcoder.app.shared.model.Course;
+import org.cloudcoder.app.shared.model.CourseRegistration;
+import org.cloudcoder.app.shared.model.CourseRegistrationType;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.OperationResult;
+import org.cloudcoder.app.shared.model.Pair;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAndSubmissionReceipt;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.ProblemList;
+import org.cloudcoder.app.shared.model.ProblemSummary;
+import org.cloudcoder.app.shared.model.QueuedSubmission;
+import org.cloudcoder.app.shared.model.QueuedSubmissionStatus;
+import org.cloudcoder.app.shared.model.RepoProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.RepoProblemSearchCriteria;
+import org.cloudcoder.app.shared.model.RepoProblemSearchResult;
+import org.cloudcoder.app.shared.model.RepoProblemTag;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionType;
+import org.cloudcoder.app.shared.model.Term;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.TextCheckpoint;
+import org.cloudcoder.app.shared.model.User;
+import org.cloudcoder.app.shared.model.UserRegistrationRequest;
+
+/**
+ * Implementation of {@link IDatabase} which caches read-mostly data
+ * (problems, test cases, courses and course registrations, and
+ * configuration settings) in front of another IDatabase implementation.
+ * These change only when an instructor or admin edits something, so
+ * the write paths which change them invalidate the affected entries.
+ * All other operations are delegated directly.
+ * 
+ * Permission checks are not cached: they are evaluated on each call
+ * using the cached problem and course registration data, with the
+ * same rules used by {@link JDBCDatabase}.  Cached objects are copied
+ * before being returned, so callers may modify them.
+ * 
+ * The delegate must load the cached data from the primary database,
+ * never from a read replica: otherwise, a stale replica read (e.g., of
+ * a course registration that was just removed) would be cached, and
+ * used for permission checks, until the entry expires.
+ * 
+ * @author David Hovemeyer
+ */
+public class CachingDatabase implements IDatabase {
+	private final IDatabase delegate;
+	private final ReadThroughCache<ConfigurationSettingName, ConfigurationSetting> configurationSettingCache;
+	private final ReadThroughCache<Integer, Problem> problemCache;
+	private final ReadThroughCache<Integer, List<TestCase>> testCaseCache;
+	private final ReadThroughCache<Integer, List<? extends Object[]>> coursesForUserCache;
+	
+	private final ReadThroughCache.Loader<ConfigurationSettingName, ConfigurationSetting> configurationSettingLoader =
+			new ReadThroughCache.Loader<ConfigurationSettingName, ConfigurationSetting>() {
+		@Override
+		public ConfigurationSetting load(ConfigurationSettingName key) {
+			return delegate.getConfigurationSetting(key);
+		}
+	};
+	
+	private final ReadThroughCache.Loader<Integer, Problem> problemLoader = new ReadThroughCache.Loader<Integer, Problem>() {
+		@Override
+		public Problem load(Integer key) {
+			return delegate.getProblem(key);
+		}
+	};
+	
+	private final ReadThroughCache.Loader<Integer, List<TestCase>> testCaseLoader = new ReadThroughCache.Loader<Integer, List<TestCase>>() {
+		@Override
+		public List<TestCase> load(Integer key) {
+			List<TestCase> testCaseList = new ArrayList<TestCase>(delegate.getTestCasesForProblem(key));
+			Collections.sort(testCaseList, new Comparator<TestCase>() {
+				@Override
+				public int compare(TestCase o1, TestCase o2) {
+					return o1.getTestCaseId() - o2.getTestCaseId();
+				}
+			});
+			return testCaseList;
+		}
+	};
+	
+	private final ReadThroughCache.Loader<Integer, List<? extends Object[]>> coursesForUserLoader =
+			new ReadThroughCache.Loader<Integer, List<? extends Object[]>>() {
+		@Override
+		public List<? extends Object[]> load(Integer key) {
+			User user = new User();
+			user.setId(key);
+			return delegate.getCoursesForUser(user);
+		}
+	};
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param delegate      the IDatabase implementation to delegate to
+	 * @param maxEntries    maximum number of entries in each cache
+	 * @param maxAgeMillis  maximum age of a cached entry in milliseconds
+	 */
+	public CachingDatabase(IDatabase delegate, int maxEntries, long maxAgeMillis) {
+		this.delegate = delegate;
+		this.configurationSettingCache = new ReadThroughCache<ConfigurationSettingName, ConfigurationSetting>("configurationSettings", maxEntries, maxAgeMillis);
+		this.problemCache = new ReadThroughCache<Integer, Problem>("problems", maxEntries, maxAgeMillis);
+		this.testCaseCache = new ReadThroughCache<Integer, List<TestCase>>("testCases", maxEntries, maxAgeMillis);
+		this.coursesForUserCache = new ReadThroughCache<Integer, List<? extends Object[]>>("coursesForUser", maxEntries, maxAgeMillis);
+	}
+	
+	/**
+	 * @return the IDatabase implementation that this object delegates to
+	 */
+	public IDatabase getDelegate() {
+		return delegate;
+	}
+	
+	/**
+	 * @return the caches (for reporting statistics)
+	 */
+	public List<ReadThroughCache<?, ?>> getCaches() {
+		return Arrays.<ReadThroughCache<?, ?>>asList(configurationSettingCache, problemCache, testCaseCache, coursesForUserCache);
+	}
+	
+	/**
+	 * Invalidate all cached data.
+	 */
+	public void invalidateAll() {
+		for (ReadThroughCache<?, ?> cache : getCaches()) {
+			cache.invalidateAll();
+		}
+	}
+
+	@Override
+	public ConfigurationSetting getConfigurationSetting(ConfigurationSettingName name) {
+		ConfigurationSetting setting = configurationSettingCache.get(name, configurationSettingLoader);
+		return setting != null ? copy(setting, new ConfigurationSetting(), ConfigurationSetting.SCHEMA) : null;
+	}
+
+	@Override
+	public User authenticateUser(String userName, String password) {
+		return delegate.authenticateUser(userName, password);
+	}
+
+	@Override
+	public User getUserWithoutAuthentication(String userName) {
+		return delegate.getUserWithoutAuthentication(userName);
+	}
+
+	@Override
+	public Problem getProblem(User user, int problemId) {
+		Problem problem = problemCache.get(problemId, problemLoader);
+		if (problem == null) {
+			return null;
+		}
+		
+		// An instructor can see any problem in a course.
+		// A student can only see a problem if it is visible.
+		for (CourseRegistration reg : getRegistrations(user.getId(), problem.getCourseId())) {
+			if (reg.getRegistrationType().ordinal() >= CourseRegistrationType.INSTRUCTOR.ordinal() || problem.isVisible()) {
+				return copy(problem);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Problem getProblem(int problemId) {
+		Problem problem = problemCache.get(problemId, problemLoader);
+		return problem != null ? copy(problem) : null;
+	}
+
+	@Override
+	public Change getMostRecentChange(User user, int problemId) {
+		return delegate.getMostRecentChange(user, problemId);
+	}
+
+	@Override
+	public Change getMostRecentFullTextChange(User user, int problemId) {
+		return delegate.getMostRecentFullTextChange(user, problemId);
+	}
+
+	@Override
+	public List<Change> getAllChangesNewerThan(User user, int problemId, int baseRev) {
+		return delegate.getAllChangesNewerThan(user, problemId, baseRev);
+	}
+
+	@Override
+	public TextCheckpoint getTextCheckpoint(User user, int problemId) {
+		return delegate.getTextCheckpoint(user, problemId);
+	}
+
+	@Override
+	public void storeTextCheckpoint(TextCheckpoint checkpoint) {
+		delegate.storeTextCheckpoint(checkpoint);
+	}
+
+	@Override
+	public List<? extends Object[]> getCoursesForUser(User user) {
+		List<Object[]> result = new ArrayList<Object[]>();
+		for (Object[] triple : coursesForUserCache.get(user.getId(), coursesForUserLoader)) {
+			result.add(new Object[]{
+					copy((Course) triple[0], new Course(), Course.SCHEMA),
+					copy((Term) triple[1], new Term(), Term.SCHEMA),
+					copy((CourseRegistration) triple[2], new CourseRegistration(), CourseRegistration.SCHEMA)
+			});
+		}
+		return result;
+	}
+
+	@Override
+	public ProblemList getProblemsInCourse(User user, Course course) {
+		return delegate.getProblemsInCourse(user, course);
+	}
+
+	@Override
+	public List<ProblemAndSubmissionReceipt> getProblemAndSubscriptionReceiptsInCourse(User user, Course course) {
+		return delegate.getProblemAndSubscriptionReceiptsInCourse(user, course);
+	}
+
+	@Override
+	public void storeChanges(Change[] changeList) {
+		delegate.storeChanges(changeList);
+	}
+
+	@Override
+	public List<TestCase> getTestCasesForProblem(int problemId) {
+		return copy(testCaseCache.get(problemId, testCaseLoader));
+	}
+
+	@Override
+	public TestCase[] getTestCasesForProblem(User authenticatedUser, int problemId) {
+		// Only an instructor in the problem's course may see its test cases
+		Problem problem = problemCache.get(problemId, problemLoader);
+		if (problem != null) {
+			for (CourseRegistration reg : getRegistrations(authenticatedUser.getId(), problem.getCourseId())) {
+				if (reg.getRegistrationType().ordinal() >= CourseRegistrationType.INSTRUCTOR.ordinal()) {
+					List<TestCase> testCaseList = getTestCasesForProblem(problemId);
+					return testCaseList.toArray(new TestCase[testCaseList.size()]);
+				}
+			}
+		}
+		return new TestCase[0];
+	}
+
+	@Override
+	public void insertSubmissionReceipt(SubmissionReceipt receipt, TestResult[] testResultList) {
+		delegate.insertSubmissionReceipt(receipt, testResultList);
+	}
+
+	@Override
+	public SubmissionReceipt insertSubmissionReceiptIfAbsent(SubmissionReceipt receipt, TestResult[] testResultList) {
+		return delegate.insertSubmissionReceiptIfAbsent(receipt, testResultList);
+	}
+
+	@Override
+	public void getOrAddLatestSubmissionReceipt(User user, Problem problem) {
+		delegate.getOrAddLatestSubmissionReceipt(user, problem);
+	}
+
+	@Override
+	public void addProblem(Problem problem) {
+		delegate.addProblem(problem);
+		problemCache.invalidate(problem.getProblemId());
+	}
+
+	@Override
+	public void addTestCases(Problem problem, List<TestCase> testCaseList) {
+		delegate.addTestCases(problem, testCaseList);
+		testCaseCache.invalidate(problem.getProblemId());
+	}
+
+	@Override
+	public void insertUsersFromInputStream(InputStream in, Course course) {
+		delegate.insertUsersFromInputStream(in, course);
+		coursesForUserCache.invalidateAll();
+	}
+
+	@Override
+	public ProblemSummary createProblemSummary(Problem problem) {
+		return delegate.createProblemSummary(problem);
+	}
+
+	@Override
+	public SubmissionReceipt getSubmissionReceipt(int submissionReceiptId) {
+		return delegate.getSubmissionReceipt(submissionReceiptId);
+	}
+
+	@Override
+	public SubmissionReceipt getSubmissionReceiptForChange(int userId, int changeEventId) {
+		return delegate.getSubmissionReceiptForChange(userId, changeEventId);
+	}
+
+	@Override
+	public List<User> getUsersInCourse(int courseId) {
+		return delegate.getUsersInCourse(courseId);
+	}
+
+	@Override
+	public Change getChange(int changeEventId) {
+		return delegate.getChange(changeEventId);
+	}
+
+	@Override
+	public Change getChange(int changeEventId, int userId, int problemId) {
+		return delegate.getChange(changeEventId, userId, problemId);
+	}
+
+	@Override
+	public TestResult[] getTestResultsForSubmission(int submissionReceiptEventId) {
+		return delegate.getTestResultsForSubmission(submissionReceiptEventId);
+	}
+
+	@Override
+	public void replaceTestResults(TestResult[] testResults, int submissionReceiptId) {
+		delegate.replaceTestResults(testResults, submissionReceiptId);
+	}
+
+	@Override
+	public void updateSubmissionReceipt(SubmissionReceipt receipt) {
+		delegate.updateSubmissionReceipt(receipt);
+	}
+
+	@Override
+	public ProblemAndTestCaseList storeProblemAndTestCaseList(ProblemAndTestCaseList problemAndTestCaseList, Course course, User user)
+			throws CloudCoderAuthenticationException {
+		try {
+			return delegate.storeProblemAndTestCaseList(problemAndTestCaseList, course, user);
+		} finally {
+			// Note that the problem id is assigned when a new problem is stored
+			int problemId = problemAndTestCaseList.getProblem().getProblemId();
+			problemCache.invalidate(problemId);
+			testCaseCache.invalidate(problemId);
+		}
+	}
+
+	@Override
+	public RepoProblemAndTestCaseList getRepoProblemAndTestCaseList(String hash) {
+		return delegate.getRepoProblemAndTestCaseList(hash);
+	}
+
+	@Override
+	public void storeRepoProblemAndTestCaseList(RepoProblemAndTestCaseList exercise, User user) {
+		delegate.storeRepoProblemAndTestCaseList(exercise, user);
+	}
+
+	@Override
+	public List<RepoProblemSearchResult> searchRepositoryExercises(RepoProblemSearchCriteria searchCriteria) {
+		return delegate.searchRepositoryExercises(searchCriteria);
+	}
+
+	@Override
+	public CourseRegistration findCourseRegistration(User user, Course course) {
+		List<CourseRegistration> regList = getRegistrations(user.getId(), course.getId());
+		return regList.isEmpty() ? null : regList.get(0);
+	}
+
+	@Override
+	public void addUserToCourse(User user, int courseId, CourseRegistrationType type, int section) {
+		try {
+			delegate.addUserToCourse(user, courseId, type, section);
+		} finally {
+			coursesForUserCache.invalidate(user.getId());
+		}
+	}
+
+	@Override
+	public void editUser(int id, String username, String firstname, String lastname, String email, String passwd) {
+		delegate.editUser(id, username, firstname, lastname, email, passwd);
+	}
+
+	@Override
+	public void editUser(User user) {
+		delegate.editUser(user);
+	}
+
+	@Override
+	public void editRegistrationType(int userId, int courseId, CourseRegistrationType type) {
+		try {
+			delegate.editRegistrationType(userId, courseId, type);
+		} finally {
+			coursesForUserCache.invalidate(userId);
+		}
+	}
+
+	@Override
+	public List<Pair<User, SubmissionReceipt>> getBestSubmissionReceipts(Course course, int problemId) {
+		return delegate.getBestSubmissionReceipts(course, problemId);
+	}
+
+	@Override
+	public boolean deleteProblem(User user, Course course, Problem problem) throws CloudCoderAuthenticationException {
+		try {
+			return delegate.deleteProblem(user, course, problem);
+		} finally {
+			problemCache.invalidate(problem.getProblemId());
+		}
+	}
+
+	@Override
+	public <E> E databaseRun(AbstractDatabaseRunnableNoAuthException<E> databaseRunnable) {
+		return delegate.databaseRun(databaseRunnable);
+	}
+
+	@Override
+	public <E> E databaseRunReadOnly(AbstractDatabaseRunnableNoAuthException<E> databaseRunnable) {
+		return delegate.databaseRunReadOnly(databaseRunnable);
+	}
+
+	@Override
+	public <E> E databaseRunAuth(AbstractDatabaseRunnable<E> databaseRunnable) throws CloudCoderAuthenticationException {
+		return delegate.databaseRunAuth(databaseRunnable);
+	}
+
+	@Override
+	public OperationResult addUserRegistrationRequest(UserRegistrationRequest request) {
+		return delegate.addUserRegistrationRequest(request);
+	}
+
+	@Override
+	public UserRegistrationRequest findUserRegistrationRequest(String secret) {
+		return delegate.findUserRegistrationRequest(secret);
+	}
+
+	@Override
+	public OperationResult completeRegistration(UserRegistrationRequest request) {
+		return delegate.completeRegistration(request);
+	}
+
+	@Override
+	public User getUserGivenId(int userId) {
+		return delegate.getUserGivenId(userId);
+	}
+
+	@Override
+	public List<RepoProblemTag> getProblemTags(int repoProblemId) {
+		return delegate.getProblemTags(repoProblemId);
+	}
+
+	@Override
+	public boolean addRepoProblemTag(RepoProblemTag repoProblemTag) {
+		return delegate.addRepoProblemTag(repoProblemTag);
+	}
+
+	@Override
+	public List<String> suggestTagNames(String term) {
+		return delegate.suggestTagNames(term);
+	}
+
+	@Override
+	public List<SubmissionReceipt> getSubmissionReceiptsInTimeRange(long startTime, long endTime) {
+		return delegate.getSubmissionReceiptsInTimeRange(startTime, endTime);
+	}
+
+	@Override
+	public List<SubmissionReceipt> getSampledSubmissionReceiptsInTimeRange(long startTime, long endTime, double sampleFraction) {
+		return delegate.getSampledSubmissionReceiptsInTimeRange(startTime, endTime, sampleFraction);
+	}
+
+	@Override
+	public int exportData(ExportQuery query, ExportRowHandler handler) {
+		return delegate.exportData(query, handler);
+	}
+
+	@Override
+	public void enqueueSubmission(QueuedSubmission queuedSubmission) {
+		delegate.enqueueSubmission(queuedSubmission);
+	}
+
+	@Override
+	public QueuedSubmission claimQueuedSubmission(String claimant, long claimTime) {
+		return delegate.claimQueuedSubmission(claimant, claimTime);
+	}
+
+	@Override
+	public boolean updateQueuedSubmission(QueuedSubmission queuedSubmission,
+			QueuedSubmissionStatus expectedStatus, String expectedClaimant) {
+		return delegate.updateQueuedSubmission(queuedSubmission, expectedStatus, expectedClaimant);
+	}
+
+	@Override
+	public QueuedSubmission getQueuedSubmission(int queuedSubmissionId) {
+		return delegate.getQueuedSubmission(queuedSubmissionId);
+	}
+
+	@Override
+	public Pair<Integer, Long> getPendingQueuedSubmissionStats(SubmissionType submissionType) {
+		return delegate.getPendingQueuedSubmissionStats(submissionType);
+	}
+
+	@Override
+	public int cleanUpQueuedSubmissions(long staleClaimTime, long expireTime) {
+		return delegate.cleanUpQueuedSubmissions(staleClaimTime, expireTime);
+	}
+
+	/**
+	 * Get a user's (cached) registrations in a course.
+	 * 
+	 * @param userId    the user id
+	 * @param courseId  the course id
+	 * @return the user's registrations in the course (empty if the user is not registered)
+	 */
+	private List<CourseRegistration> getRegistrations(int userId, int courseId) {
+		List<CourseRegistration> result = new ArrayList<CourseRegistration>();
+		for (Object[] triple : coursesForUserCache.get(userId, coursesForUserLoader)) {
+			CourseRegistration reg = (CourseRegistration) triple[2];
+			if (reg.getCourseId() == courseId) {
+				result.add(copy(reg, new CourseRegistration(), CourseRegistration.SCHEMA));
+			}
+		}
+		return result;
+	}
+
+	private static Problem copy(Problem problem) {
+		Problem result = new Problem();
+		copy(problem, result, Problem.SCHEMA);
+		return result;
+	}
+
+	private static List<TestCase> copy(List<TestCase> testCaseList) {
+		List<TestCase> result = new ArrayList<TestCase>(testCaseList.size());
+		for (TestCase testCase : testCaseList) {
+			result.add(copy(testCase, new TestCase(), TestCase.SCHEMA));
+		}
+		return result;
+	}
+
+	private static<E, T extends E> T copy(T src, T dest, ModelObjectSchema<E> schema) {
+		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+			field.setUntyped(dest, field.get(src));
+		}
+		return dest;
+	}
+}
@@ -0,0 +1,175 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeArchive;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.EventType;
+
+/**
+ * Convert a list of {@link Change}s to and from the compressed
+ * data of a {@link ChangeArchive}.  Every field of each change and of
+ * its {@link Event} is kept, so the decoded changes are identical to
+ * the changes that were archived.  Event ids and timestamps are stored
+ * as differences from the previous change, which (along with the
+ * repetitive structure of keystroke-level changes) compresses well.
+ * 
+ * @author David Hovemeyer
+ */
+public class ChangeArchiveCodec {
+	private static final int FORMAT_VERSION = 1;
+	
+	/**
+	 * Create a {@link ChangeArchive} containing the given changes.
+	 * 
+	 * @param userId      the user id
+	 * @param problemId   the problem id
+	 * @param changeList  the changes, in event id order (each must have its {@link Event})
+	 * @return the {@link ChangeArchive}
+	 */
+	public static ChangeArchive encode(int userId, int problemId, List<Change> changeList) {
+		if (changeList.isEmpty()) {
+			throw new IllegalArgumentException("No changes to archive");
+		}
+		
+		ChangeArchive archive = new ChangeArchive();
+		archive.setUserId(userId);
+		archive.setProblemId(problemId);
+		archive.setFirstEventId(changeList.get(0).getEventId());
+		archive.setLastEventId(changeList.get(changeList.size() - 1).getEventId());
+		archive.setFirstTimestamp(changeList.get(0).getEvent().getTimestamp());
+		archive.setLastTimestamp(changeList.get(changeList.size() - 1).getEvent().getTimestamp());
+		archive.setNumChanges(changeList.size());
+		
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_COMPRESSION)));
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(changeList.size());
+			int prevEventId = 0;
+			long prevTimestamp = 0L;
+			for (Change change : changeList) {
+				if (change.getEventId() <= prevEventId) {
+					throw new IllegalArgumentException("Changes are not in event id order");
+				}
+				out.writeInt(change.getEventId() - prevEventId);
+				out.writeLong(change.getEvent().getTimestamp() - prevTimestamp);
+				out.writeByte(change.getType().ordinal());
+				out.writeInt(change.getStartRow());
+				out.writeInt(change.getStartColumn());
+				out.writeInt(change.getEndRow());
+				out.writeInt(change.getEndColumn());
+				writeString(out, change.getText());
+				writeString(out, change.getTiming());
+				
+				if (change.getType() == ChangeType.FULL_TEXT) {
+					archive.setLastFullTextEventId(change.getEventId());
+				}
+				prevEventId = change.getEventId();
+				prevTimestamp = change.getEvent().getTimestamp();
+			}
+			out.close();
+			archive.setData(bytes.toByteArray());
+		} catch (IOException e) {
+			// Can't happen: we're writing to memory
+			throw new IllegalStateException("Could not encode changes", e);
+		}
+		
+		return archive;
+	}
+	
+	/**
+	 * Decode the changes in a {@link ChangeArchive}.
+	 * 
+	 * @param archive the {@link ChangeArchive}
+	 * @return the archived changes, in event id order, each with its {@link Event}
+	 */
+	public static List<Change> decode(ChangeArchive archive) {
+		try {
+			DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(archive.getData())));
+			try {
+				int version = in.readInt();
+				if (version != FORMAT_VERSION) {
+					throw new PersistenceException("Unknown change archive format version " + version, null);
+				}
+				int numChanges = in.readInt();
+				List<Change> result = new ArrayList<Change>(numChanges);
+				int eventId = 0;
+				long timestamp = 0L;
+				for (int i = 0; i < numChanges; i++) {
+					eventId += in.readInt();
+					timestamp += in.readLong();
+					
+					Change change = new Change();
+					change.setEventId(eventId);
+					change.setType(ChangeType.values()[in.readByte()]);
+					change.setStartRow(in.readInt());
+					change.setStartColumn(in.readInt());
+					change.setEndRow(in.readInt());
+					change.setEndColumn(in.readInt());
+					change.setText(readString(in));
+					change.setTiming(readString(in));
+					
+					Event event = new Event(archive.getUserId(), archive.getProblemId(), EventType.CHANGE, timestamp);
+					event.setId(eventId);
+					change.setEvent(event);
+					
+					result.add(change);
+				}
+				return result;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new PersistenceException("Could not decode change archive " + archive.getId(), e);
+		}
+	}
+	
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] utf8 = s.getBytes("UTF-8");
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		}
+	}
+	
+	private static String readString(DataInputStream in) throws IOException {
+		int len = in.readInt();
+		if (len < 0) {
+			return null;
+		}
+		byte[] utf8 = new byte[len];
+		in.readFully(utf8);
+		return new String(utf8, "UTF-8");
+	}
+}
@@ -0,0 +1,213 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.IFactory;
+import org.cloudcoder.app.shared.model.ProblemStats;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionStatus;
+import org.cloudcoder.app.shared.model.UserProblemStats;
+
+/**
+ * Consistency checker for the incrementally-maintained
+ * {@link UserProblemStats} and {@link ProblemStats} tables.
+ * Recomputes the statistics from the raw submission receipts and
+ * reports any differences.  If run with the <code>--fix</code>
+ * option, the tables are rebuilt (using {@link RebuildProblemStats})
+ * when any differences are found.
+ * 
+ * @author David Hovemeyer
+ */
+public class CheckProblemStats {
+	/** Maximum number of inconsistencies to print. */
+	private static final int MAX_REPORTED = 50;
+	
+	public static void main(String[] args) throws Exception {
+		ConfigurationUtil.configureLog4j();
+		
+		boolean fix = args.length > 0 && args[0].equals("--fix");
+		
+		Class.forName("com.mysql.jdbc.Driver");
+		Properties config = DBUtil.getConfigProperties();
+		Connection conn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		
+		List<String> inconsistencies;
+		try {
+			inconsistencies = checkProblemStats(conn);
+			
+			for (int i = 0; i < inconsistencies.size() && i < MAX_REPORTED; i++) {
+				System.out.println(inconsistencies.get(i));
+			}
+			if (inconsistencies.size() > MAX_REPORTED) {
+				System.out.println("(" + (inconsistencies.size() - MAX_REPORTED) + " more)");
+			}
+			
+			if (inconsistencies.isEmpty()) {
+				System.out.println("Problem statistics are consistent with submission receipts");
+			} else {
+				System.out.println(inconsistencies.size() + " inconsistencies found");
+				if (fix) {
+					System.out.print("Rebuilding problem statistics...");
+					System.out.flush();
+					RebuildProblemStats.rebuildProblemStats(conn);
+					System.out.println("done");
+				}
+			}
+		} finally {
+			DBUtil.closeQuietly(conn);
+		}
+		
+		if (!inconsistencies.isEmpty() && !fix) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Compare the problem statistics tables against the statistics
+	 * computed from the submission receipts.
+	 * 
+	 * @param conn the Connection to the webapp database
+	 * @return list of descriptions of inconsistencies (empty if the tables are consistent)
+	 * @throws SQLException
+	 */
+	public static List<String> checkProblemStats(Connection conn) throws SQLException {
+		List<String> result = new ArrayList<String>();
+		
+		// Compute expected per-user statistics from the raw submission receipts
+		Map<String, UserProblemStats> expected = new HashMap<String, UserProblemStats>();
+		Map<Integer, ProblemStats> expectedProblemStats = new HashMap<Integer, ProblemStats>();
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		try {
+			stmt = conn.prepareStatement(
+					"select e.user_id, e.problem_id, max(sr.num_tests_passed), max(sr.status = ?), " +
+					"       (" + RebuildProblemStats.getBestSubmissionReceiptQuery("e") + "), max(e.timestamp), max(sr.event_id)" +
+					"  from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " +
+					"       " + Event.SCHEMA.getDbTableName() + " as e " +
+					" where sr.event_id = e.id " +
+					" group by e.user_id, e.problem_id");
+			stmt.setInt(1, SubmissionStatus.TESTS_PASSED.ordinal());
+			resultSet = stmt.executeQuery();
+			while (resultSet.next()) {
+				UserProblemStats stats = new UserProblemStats();
+				stats.setUserId(resultSet.getInt(1));
+				stats.setProblemId(resultSet.getInt(2));
+				stats.setMaxTestsPassed(resultSet.getInt(3));
+				stats.setCompleted(resultSet.getInt(4) != 0);
+				stats.setBestSubmissionReceiptEventId(resultSet.getInt(5));
+				stats.setLastSubmissionTimestamp(resultSet.getLong(6));
+				stats.setLatestSubmissionReceiptEventId(resultSet.getInt(7));
+				expected.put(key(stats), stats);
+				
+				ProblemStats problemStats = expectedProblemStats.get(stats.getProblemId());
+				if (problemStats == null) {
+					problemStats = new ProblemStats();
+					problemStats.setProblemId(stats.getProblemId());
+					expectedProblemStats.put(stats.getProblemId(), problemStats);
+				}
+				problemStats.setNumStarted(problemStats.getNumStarted() + 1);
+				if (stats.isPassedAtLeastOneTest()) {
+					problemStats.setNumPassedAtLeastOneTest(problemStats.getNumPassedAtLeastOneTest() + 1);
+				}
+				if (stats.isCompleted()) {
+					problemStats.setNumCompleted(problemStats.getNumCompleted() + 1);
+				}
+			}
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+		
+		// Compare against the per-user statistics table
+		List<UserProblemStats> actual = DBUtil.getAllModelObjects(conn, UserProblemStats.SCHEMA, new IFactory<UserProblemStats>() {
+			@Override
+			public UserProblemStats create() {
+				return new UserProblemStats();
+			}
+		});
+		for (UserProblemStats stats : actual) {
+			UserProblemStats exp = expected.remove(key(stats));
+			if (exp == null) {
+				result.add("user " + stats.getUserId() + ", problem " + stats.getProblemId() + ": statistics exist, but no submissions");
+			} else if (exp.getMaxTestsPassed() != stats.getMaxTestsPassed()
+					|| exp.isCompleted() != stats.isCompleted()
+					|| exp.getBestSubmissionReceiptEventId() != stats.getBestSubmissionReceiptEventId()
+					|| exp.getLastSubmissionTimestamp() != stats.getLastSubmissionTimestamp()
+					|| exp.getLatestSubmissionReceiptEventId() != stats.getLatestSubmissionReceiptEventId()) {
+				result.add("user " + stats.getUserId() + ", problem " + stats.getProblemId() + ": expected " + describe(exp) + ", found " + describe(stats));
+			}
+		}
+		for (UserProblemStats exp : expected.values()) {
+			result.add("user " + exp.getUserId() + ", problem " + exp.getProblemId() + ": no statistics, expected " + describe(exp));
+		}
+		
+		// Compare against the per-problem statistics table
+		List<ProblemStats> actualProblemStats = DBUtil.getAllModelObjects(conn, ProblemStats.SCHEMA, new IFactory<ProblemStats>() {
+			@Override
+			public ProblemStats create() {
+				return new ProblemStats();
+			}
+		});
+		for (ProblemStats stats : actualProblemStats) {
+			ProblemStats exp = expectedProblemStats.remove(stats.getProblemId());
+			if (exp == null) {
+				exp = new ProblemStats();
+				exp.setProblemId(stats.getProblemId());
+			}
+			if (exp.getNumStarted() != stats.getNumStarted()
+					|| exp.getNumPassedAtLeastOneTest() != stats.getNumPassedAtLeastOneTest()
+					|| exp.getNumCompleted() != stats.getNumCompleted()) {
+				result.add("problem " + stats.getProblemId() + ": expected " + describe(exp) + ", found " + describe(stats));
+			}
+		}
+		for (ProblemStats exp : expectedProblemStats.values()) {
+			result.add("problem " + exp.getProblemId() + ": no statistics, expected " + describe(exp));
+		}
+		
+		return result;
+	}
+
+	private static String key(UserProblemStats stats) {
+		return stats.getUserId() + "," + stats.getProblemId();
+	}
+
+	private static String describe(UserProblemStats stats) {
+		return "maxTestsPassed=" + stats.getMaxTestsPassed() +
+				", completed=" + stats.isCompleted() +
+				", best=" + stats.getBestSubmissionReceiptEventId() +
+				", last=" + stats.getLastSubmissionTimestamp() +
+				", latest=" + stats.getLatestSubmissionReceiptEventId();
+	}
+
+	private static String describe(ProblemStats stats) {
+		return "started=" + stats.getNumStarted() +
+				", passed=" + stats.getNumPassedAtLeastOneTest() +
+				", completed=" + stats.getNumCompleted();
+	}
+}
@@ -88,7 +88,7 @@ public abstract class CheckSchemaVersionsServletContextListener implements Servl
 			Integer dbSchemaVersion = schemaVersions.get(schema.getDbTableName());
 			if (dbSchemaVersion == null) {
 				report("No schema version found for table " + schema.getDbTableName() +
-						": cc_schema_version table is incomplete");
+						": cc_schema_version table is incomplete: run java -jar cloudcoderApp.jar migratedb");
 			} else if (dbSchemaVersion.intValue() != schema.getVersion()) {
 				report("Database table " +
 						schema.getDbTableName() +
@@ -77,7 +77,7 @@ public class ConfigurationUtil
         ResultSet resultSet = null;
 
         try {
-            stmt = conn.prepareStatement("select * from " + CourseRegistration.SCHEMA.getDbTableName() + " where user_id = ? and course_id = ?");
+            stmt = conn.prepareStatement("select " + DBUtil.getColumnList(CourseRegistration.SCHEMA) + " from " + CourseRegistration.SCHEMA.getDbTableName() + " where user_id = ? and course_id = ?");
             stmt.setInt(1, userId);
             stmt.setInt(2, courseId);
 
@@ -101,7 +101,7 @@ public class ConfigurationUtil
         ResultSet resultSet = null;
 
         try {
-            stmt = conn.prepareStatement("select * from " + User.SCHEMA.getDbTableName() + " where username = ?");
+            stmt = conn.prepareStatement("select " + DBUtil.getColumnList(User.SCHEMA) + " from " + User.SCHEMA.getDbTableName() + " where username = ?");
             stmt.setString(1, username);
 
             resultSet= stmt.executeQuery();
@@ -124,7 +124,7 @@ public class ConfigurationUtil
         ResultSet resultSet = null;
 
         try {
-            stmt = conn.prepareStatement("select * from " + User.SCHEMA.getDbTableName() + " where id = ?");
+            stmt = conn.prepareStatement("select " + DBUtil.getColumnList(User.SCHEMA) + " from " + User.SCHEMA.getDbTableName() + " where id = ?");
             stmt.setInt(1, userid);
 
             resultSet= stmt.executeQuery();
@@ -25,6 +25,7 @@ import java.util.Properties;
 import java.util.Scanner;
 
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeArchive;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
 import org.cloudcoder.app.shared.model.ConfigurationSettingName;
 import org.cloudcoder.app.shared.model.Course;
@@ -32,12 +33,17 @@ import org.cloudcoder.app.shared.model.CourseRegistration;
 import org.cloudcoder.app.shared.model.CourseRegistrationType;
 import org.cloudcoder.app.shared.model.Event;
 import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.OutputBlob;
 import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemStats;
+import org.cloudcoder.app.shared.model.QueuedSubmission;
 import org.cloudcoder.app.shared.model.SubmissionReceipt;
 import org.cloudcoder.app.shared.model.Term;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.TextCheckpoint;
 import org.cloudcoder.app.shared.model.User;
+import org.cloudcoder.app.shared.model.UserProblemStats;
 
 /**
  * Create the webapp database, using the metadata information
@@ -53,16 +59,22 @@ public class CreateWebappDatabase {
 	 */
 	public static final ModelObjectSchema<?>[] TABLES = {
 		Change.SCHEMA,
+		ChangeArchive.SCHEMA,
 		ConfigurationSetting.SCHEMA,
 		Course.SCHEMA,
 		CourseRegistration.SCHEMA,
 		Event.SCHEMA,
+		OutputBlob.SCHEMA,
 		Problem.SCHEMA,
+		ProblemStats.SCHEMA,
+		QueuedSubmission.SCHEMA,
 		SubmissionReceipt.SCHEMA,
 		Term.SCHEMA,
 		TestCase.SCHEMA,
 		TestResult.SCHEMA,
+		TextCheckpoint.SCHEMA,
 		User.SCHEMA,
+		UserProblemStats.SCHEMA,
 	};
 	
 	public static void main(String[] args) throws Exception {
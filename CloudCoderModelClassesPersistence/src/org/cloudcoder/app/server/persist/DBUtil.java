@@ -150,6 +150,90 @@ public class DBUtil {
 	
 	
 	
+	/**
+	 * Get a comma-separated list of the columns of a model object's table,
+	 * in the order of the schema's fields.  Queries whose results are loaded
+	 * using {@link #loadModelObjectFields(Object, ModelObjectSchema, ResultSet, int)}
+	 * should select these columns rather than using <code>*</code>,
+	 * since the values are loaded by position: this way, the values are
+	 * loaded correctly even if columns are added to the table
+	 * (e.g., by an {@link OnlineMigration} while an older version
+	 * of CloudCoder is running).
+	 * 
+	 * @param schema the schema of a model object
+	 * @return list of the table's columns
+	 */
+	public static String getColumnList(ModelObjectSchema<?> schema) {
+		return doGetColumnList(schema, null, true);
+	}
+
+	/**
+	 * Get a comma-separated list of the columns of a model object's table,
+	 * qualified by a table alias, in the order of the schema's fields.
+	 * 
+	 * @param schema     the schema of a model object
+	 * @param tableAlias the alias of the table in the query
+	 * @return list of the table's columns
+	 * @see #getColumnList(ModelObjectSchema)
+	 */
+	public static String getColumnList(ModelObjectSchema<?> schema, String tableAlias) {
+		return doGetColumnList(schema, tableAlias, true);
+	}
+
+	/**
+	 * Get a comma-separated list of the columns of a model object's table,
+	 * except for the unique id, in the order of the schema's fields.
+	 * This is useful for generating an insert statement where the unique
+	 * id is an autoincrement column.
+	 * 
+	 * @param schema the schema of a model object
+	 * @return list of the table's columns except for the unique id
+	 */
+	public static String getColumnListNoId(ModelObjectSchema<?> schema) {
+		return doGetColumnList(schema, null, false);
+	}
+
+	private static String doGetColumnList(ModelObjectSchema<?> schema, String tableAlias, boolean includeUniqueId) {
+		StringBuilder buf = new StringBuilder();
+		
+		for (ModelObjectField<?, ?> field : schema.getFieldList()) {
+			if (!field.isUniqueId() || includeUniqueId) {
+				if (buf.length() > 0) {
+					buf.append(", ");
+				}
+				if (tableAlias != null) {
+					buf.append(tableAlias);
+					buf.append(".");
+				}
+				buf.append(field.getName());
+			}
+		}
+		
+		return buf.toString();
+	}
+
+	/**
+	 * Get placeholders for an insert statement with the columns
+	 * returned by {@link #getColumnListNoId(ModelObjectSchema)}.
+	 * 
+	 * @param schema the schema of a model object
+	 * @return placeholders for all fields except the unique id
+	 */
+	public static String getPlaceholdersNoId(ModelObjectSchema<?> schema) {
+		StringBuilder buf = new StringBuilder();
+		
+		for (ModelObjectField<?, ?> field : schema.getFieldList()) {
+			if (!field.isUniqueId()) {
+				if (buf.length() > 0) {
+					buf.append(", ");
+				}
+				buf.append("?");
+			}
+		}
+		
+		return buf.toString();
+	}
+	
 	/**
 	 * Get placeholders for an update statement where all fields
 	 * will be updated.
@@ -322,6 +406,8 @@ public class DBUtil {
 			// Enumeration values are represented as integers (their ordinal values)
 			// in the database
 			return "int(11)";
+		} else if (field.getType() == byte[].class) {
+			return field.getSize() == Integer.MAX_VALUE ? "longblob" : "blob";
 		} else {
 			throw new IllegalArgumentException("Unknown field type: " + field.getType().getName());
 		}
@@ -593,20 +679,7 @@ public class DBUtil {
 	 */
 	public static <E> void bindModelObjectValuesForInsert(E bean, ModelObjectSchema<E> schema, PreparedStatement stmt)
 			throws SQLException {
-		// Now for the magic: iterate through the schema fields
-		// and bind the query parameters based on the bean properties.
-		int index = 1;
-		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
-			if (field.isUniqueId()) {
-				continue;
-			}
-			Object value = field.get(bean);
-			if (value instanceof Enum) {
-				// Enum values are converted to integers
-				value = Integer.valueOf(((Enum<?>)value).ordinal());
-			}
-			stmt.setObject(index++, value);
-		}
+		RowMappers.forSchema(schema).storeNoId(bean, stmt, 1, false);
 	}
 	
 	/**
@@ -624,27 +697,15 @@ public class DBUtil {
      */
     public static <E> int bindModelObjectValuesForUpdate(E bean, ModelObjectSchema<E> schema, PreparedStatement stmt)
             throws SQLException {
-        // Now for the magic: iterate through the schema fields
-        // and bind the query parameters based on the bean properties.
-        int index = 1;
-        for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
-            if (field.isUniqueId()) {
-                continue;
-            }
-            Object value = field.get(bean);
-            if (value instanceof Enum) {
-                // Enum values are converted to integers
-                value = Integer.valueOf(((Enum<?>)value).ordinal());
-            }
-            stmt.setObject(index++, value);
-        }
-        return index;
+        return RowMappers.forSchema(schema).storeNoId(bean, stmt, 1, false);
     }
 
 	/**
 	 * Create an SQL statement for inserting a model object.
 	 * The SQL statement will have placeholders for every model object
-	 * field except for the unique id (if any).
+	 * field except for the unique id (if any).  The columns are named
+	 * explicitly, so the statement still works if columns are added
+	 * to the table.
 	 *  
 	 * @param schema the model object schema
 	 * @return the SQL insert statement
@@ -653,8 +714,10 @@ public class DBUtil {
 		StringBuilder buf = new StringBuilder();
 		
 		buf.append("insert into " + schema.getDbTableName());
-		buf.append(" values (");
-		buf.append(getInsertPlaceholdersNoId(schema));
+		buf.append(" (");
+		buf.append(getColumnListNoId(schema));
+		buf.append(") values (");
+		buf.append(getPlaceholdersNoId(schema));
 		buf.append(")");
 		String insertSql = buf.toString();
 		return insertSql;
@@ -811,7 +874,7 @@ public class DBUtil {
 		ResultSet resultSet = null;
 		
 		try {
-			stmt = conn.prepareStatement("select * from " + schema.getDbTableName());
+			stmt = conn.prepareStatement("select " + getColumnList(schema) + " from " + schema.getDbTableName());
 			resultSet = stmt.executeQuery();
 			
 			while (resultSet.next()) {
@@ -858,11 +921,6 @@ public class DBUtil {
 	public static <E> int loadModelObjectFields(E obj,
 			ModelObjectSchema<E> schema, ResultSet resultSet, int index)
 			throws SQLException {
-		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
-			Object value = resultSet.getObject(index++);
-			value = convertValue(value, field.getType());
-			field.setUntyped(obj, value);
-		}
-		return index;
+		return RowMappers.forSchema(schema).load(obj, resultSet, index);
 	}
 }
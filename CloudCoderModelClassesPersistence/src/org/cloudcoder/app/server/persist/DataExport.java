@@ -0,0 +1,369 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.persist;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeArchive;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.OutputBlob;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stream the rows for an {@link ExportQuery} to an {@link ExportRowHandler}.
+ * Each query uses a forward-only, read-only result set with a fetch size of
+ * <code>Integer.MIN_VALUE</code>, which makes the MySQL driver stream rows
+ * from the server one at a time rather than reading the entire result
+ * into memory, so the memory used by an export does not depend on
+ * how much data is exported.  (A connection can only have one
+ * streaming result set open at a time, so the queries are run one
+ * after the other, and everything needed for a row is joined into the
+ * row's query.)  Archived changes are decoded one {@link ChangeArchive}
+ * at a time.
+ * 
+ * @author David Hovemeyer
+ */
+class DataExport {
+	private static final Logger logger = LoggerFactory.getLogger(DataExport.class);
+	
+	// Allow slow clients: the server must wait for the export to read
+	// each row of a streaming result set
+	private static final int NET_WRITE_TIMEOUT_SECONDS = 3600;
+	
+	private static final String EVENTS = Event.SCHEMA.getDbTableName();
+	private static final String RECEIPTS = SubmissionReceipt.SCHEMA.getDbTableName();
+	private static final String TEST_RESULTS = TestResult.SCHEMA.getDbTableName();
+	private static final String CHANGES = Change.SCHEMA.getDbTableName();
+	private static final String CHANGE_ARCHIVES = ChangeArchive.SCHEMA.getDbTableName();
+	private static final String OUTPUT_BLOBS = OutputBlob.SCHEMA.getDbTableName();
+	private static final String PROBLEMS = Problem.SCHEMA.getDbTableName();
+	
+	private final Connection conn;
+	private final ExportQuery query;
+	private final ExportRowHandler handler;
+	private int numRows;
+	private boolean stopped;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param conn     connection to the database
+	 * @param query    the {@link ExportQuery}
+	 * @param handler  the {@link ExportRowHandler} to send the rows to
+	 */
+	DataExport(Connection conn, ExportQuery query, ExportRowHandler handler) {
+		this.conn = conn;
+		this.query = query;
+		this.handler = handler;
+	}
+	
+	/**
+	 * Export the rows.
+	 * 
+	 * @return the number of rows exported
+	 * @throws SQLException
+	 */
+	int export() throws SQLException {
+		DBUtil.execSql(conn, "set session net_write_timeout = " + NET_WRITE_TIMEOUT_SECONDS);
+		try {
+			switch (query.getType()) {
+			case RECEIPTS:
+				exportReceipts();
+				break;
+			case TEST_RESULTS:
+				exportTestResults();
+				break;
+			case CHANGES:
+				exportArchivedChanges();
+				exportChanges();
+				break;
+			case SNAPSHOTS:
+				exportSnapshots();
+				exportArchivedSnapshots();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown export type " + query.getType());
+			}
+		} finally {
+			// The connection is pooled: don't leave the long timeout
+			// in effect for whatever uses it next
+			try {
+				DBUtil.execSql(conn, "set session net_write_timeout = @@global.net_write_timeout");
+			} catch (SQLException e) {
+				logger.warn("Could not restore net_write_timeout after export", e);
+			}
+		}
+		
+		return numRows;
+	}
+	
+	private void exportReceipts() throws SQLException {
+		String sql =
+				"select " + DBUtil.getColumnList(Event.SCHEMA, "e") + ", " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "r") + " from " + EVENTS + " as e" +
+				"  join " + RECEIPTS + " as r on r.event_id = e.id" +
+				getEventFilter() +
+				" order by e.id";
+		ResultSet resultSet = null;
+		PreparedStatement stmt = prepareStreaming(sql);
+		try {
+			resultSet = executeEventQuery(stmt);
+			while (!stopped && resultSet.next()) {
+				SubmissionReceipt receipt = new SubmissionReceipt();
+				int index = load(receipt.getEvent(), resultSet, 1, Event.SCHEMA);
+				load(receipt, resultSet, index, SubmissionReceipt.SCHEMA);
+				emit(receipt.getEvent(), receipt);
+			}
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
+	private void exportTestResults() throws SQLException {
+		String sql =
+				"select " + DBUtil.getColumnList(Event.SCHEMA, "e") + ", " + DBUtil.getColumnList(TestResult.SCHEMA, "t") + ", so.length, so.data, se.length, se.data from " + EVENTS + " as e" +
+				"  join " + TEST_RESULTS + " as t on t.submission_receipt_event_id = e.id" +
+				"  left join " + OUTPUT_BLOBS + " as so on so.hash = t.stdout_hash" +
+				"  left join " + OUTPUT_BLOBS + " as se on se.hash = t.stderr_hash" +
+				getEventFilter() +
+				" order by t.id";
+		ResultSet resultSet = null;
+		PreparedStatement stmt = prepareStreaming(sql);
+		try {
+			resultSet = executeEventQuery(stmt);
+			while (!stopped && resultSet.next()) {
+				Event event = new Event();
+				int index = load(event, resultSet, 1, Event.SCHEMA);
+				TestResult testResult = new TestResult();
+				index = load(testResult, resultSet, index, TestResult.SCHEMA);
+				if (testResult.getStdoutHash() != null) {
+					testResult.setStdout(getBlobText(testResult.getStdoutHash(), resultSet, index));
+				}
+				if (testResult.getStderrHash() != null) {
+					testResult.setStderr(getBlobText(testResult.getStderrHash(), resultSet, index + 2));
+				}
+				emit(event, testResult);
+			}
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
+	private void exportChanges() throws SQLException {
+		String sql =
+				"select " + DBUtil.getColumnList(Event.SCHEMA, "e") + ", " + DBUtil.getColumnList(Change.SCHEMA, "c") + " from " + EVENTS + " as e" +
+				"  join " + CHANGES + " as c on c.event_id = e.id" +
+				getEventFilter() +
+				" order by e.id";
+		ResultSet resultSet = null;
+		PreparedStatement stmt = prepareStreaming(sql);
+		try {
+			resultSet = executeEventQuery(stmt);
+			while (!stopped && resultSet.next()) {
+				Event event = new Event();
+				int index = load(event, resultSet, 1, Event.SCHEMA);
+				Change change = new Change();
+				load(change, resultSet, index, Change.SCHEMA);
+				change.setEvent(event);
+				emit(event, change);
+			}
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
+	private void exportArchivedChanges() throws SQLException {
+		StringBuilder sql = new StringBuilder();
+		sql.append("select " + DBUtil.getColumnList(ChangeArchive.SCHEMA, "a") + " from " + CHANGE_ARCHIVES + " as a");
+		sql.append("  join " + PROBLEMS + " as p on p.problem_id = a.problem_id");
+		sql.append(" where p.course_id = ?");
+		if (query.getProblemId() > 0) {
+			sql.append(" and a.problem_id = ?");
+		}
+		sql.append(" and a.last_timestamp >= ? and a.first_timestamp < ?");
+		sql.append(" order by a.id");
+		
+		ResultSet resultSet = null;
+		PreparedStatement stmt = prepareStreaming(sql.toString());
+		try {
+			int index = 1;
+			stmt.setInt(index++, query.getCourseId());
+			if (query.getProblemId() > 0) {
+				stmt.setInt(index++, query.getProblemId());
+			}
+			stmt.setLong(index++, query.getFromTimestamp());
+			stmt.setLong(index++, query.getToTimestamp());
+			resultSet = stmt.executeQuery();
+			while (!stopped && resultSet.next()) {
+				ChangeArchive archive = new ChangeArchive();
+				load(archive, resultSet, 1, ChangeArchive.SCHEMA);
+				for (Change change : ChangeArchiveCodec.decode(archive)) {
+					if (stopped) {
+						break;
+					}
+					if (isInTimeRange(change.getEvent())) {
+						emit(change.getEvent(), change);
+					}
+				}
+			}
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
+	private void exportSnapshots() throws SQLException {
+		String sql =
+				"select " + DBUtil.getColumnList(Event.SCHEMA, "e") + ", " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "r") + ", " + DBUtil.getColumnList(Change.SCHEMA, "c") + " from " + EVENTS + " as e" +
+				"  join " + RECEIPTS + " as r on r.event_id = e.id" +
+				"  join " + CHANGES + " as c on c.event_id = r.last_edit_event_id" +
+				getEventFilter() +
+				" order by e.id";
+		ResultSet resultSet = null;
+		PreparedStatement stmt = prepareStreaming(sql);
+		try {
+			resultSet = executeEventQuery(stmt);
+			while (!stopped && resultSet.next()) {
+				SubmissionReceipt receipt = new SubmissionReceipt();
+				int index = load(receipt.getEvent(), resultSet, 1, Event.SCHEMA);
+				index = load(receipt, resultSet, index, SubmissionReceipt.SCHEMA);
+				Change change = new Change();
+				load(change, resultSet, index, Change.SCHEMA);
+				emit(receipt.getEvent(), receipt, change);
+			}
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
+	private void exportArchivedSnapshots() throws SQLException {
+		// Snapshots whose change has been archived: ordering by archive
+		// means that each archive only needs to be decoded once
+		String sql =
+				"select " + DBUtil.getColumnList(Event.SCHEMA, "e") + ", " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "r") + ", " + DBUtil.getColumnList(ChangeArchive.SCHEMA, "a") + " from " + EVENTS + " as e" +
+				"  join " + RECEIPTS + " as r on r.event_id = e.id" +
+				"  join " + CHANGE_ARCHIVES + " as a" +
+				"    on a.user_id = e.user_id and a.problem_id = e.problem_id" +
+				"   and a.first_event_id <= r.last_edit_event_id and a.last_event_id >= r.last_edit_event_id" +
+				getEventFilter() +
+				" order by a.id, e.id";
+		ResultSet resultSet = null;
+		PreparedStatement stmt = prepareStreaming(sql);
+		try {
+			resultSet = executeEventQuery(stmt);
+			int archiveId = -1;
+			List<Change> archivedChanges = null;
+			while (!stopped && resultSet.next()) {
+				SubmissionReceipt receipt = new SubmissionReceipt();
+				int index = load(receipt.getEvent(), resultSet, 1, Event.SCHEMA);
+				index = load(receipt, resultSet, index, SubmissionReceipt.SCHEMA);
+				ChangeArchive archive = new ChangeArchive();
+				load(archive, resultSet, index, ChangeArchive.SCHEMA);
+				if (archive.getId() != archiveId) {
+					archiveId = archive.getId();
+					archivedChanges = ChangeArchiveCodec.decode(archive);
+				}
+				for (Change change : archivedChanges) {
+					if (change.getEventId() == receipt.getLastEditEventId()) {
+						emit(receipt.getEvent(), receipt, change);
+						break;
+					}
+				}
+			}
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
+	/**
+	 * Get the join with the problems table and where clause selecting
+	 * the events (aliased as <code>e</code>) matching the query.
+	 * The parameters are bound by {@link #executeEventQuery(PreparedStatement)}.
+	 */
+	private String getEventFilter() {
+		StringBuilder buf = new StringBuilder();
+		buf.append("  join " + PROBLEMS + " as p on p.problem_id = e.problem_id");
+		buf.append(" where p.course_id = ?");
+		if (query.getProblemId() > 0) {
+			buf.append(" and e.problem_id = ?");
+		}
+		buf.append(" and e.timestamp >= ? and e.timestamp < ?");
+		return buf.toString();
+	}
+	
+	private ResultSet executeEventQuery(PreparedStatement stmt) throws SQLException {
+		int index = 1;
+		stmt.setInt(index++, query.getCourseId());
+		if (query.getProblemId() > 0) {
+			stmt.setInt(index++, query.getProblemId());
+		}
+		stmt.setLong(index++, query.getFromTimestamp());
+		stmt.setLong(index++, query.getToTimestamp());
+		return stmt.executeQuery();
+	}
+	
+	private PreparedStatement prepareStreaming(String sql) throws SQLException {
+		// Not cached: streaming is a property of the statement
+		PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		stmt.setFetchSize(Integer.MIN_VALUE);
+		return stmt;
+	}
+	
+	private<E> int load(E modelObj, ResultSet resultSet, int index, ModelObjectSchema<E> schema) throws SQLException {
+		RowMappers.forSchema(schema).load(modelObj, resultSet, index);
+		return index + schema.getNumFields();
+	}
+	
+	private String getBlobText(String hash, ResultSet resultSet, int index) throws SQLException {
+		byte[] data = resultSet.getBytes(index + 1);
+		if (data == null) {
+			throw new SQLException("Missing output blob " + hash);
+		}
+		OutputBlob blob = new OutputBlob();
+		blob.setHash(hash);
+		blob.setLength(resultSet.getInt(index));
+		blob.setData(data);
+		return OutputBlobs.getText(blob);
+	}
+	
+	private boolean isInTimeRange(Event event) {
+		return event.getTimestamp() >= query.getFromTimestamp() && event.getTimestamp() < query.getToTimestamp();
+	}
+	
+	private void emit(Object... row) {
+		numRows++;
+		if (!handler.handleRow(row)) {
+			stopped = true;
+		}
+	}
+}
@@ -23,8 +23,8 @@ package org.cloudcoder.app.server.persist;
  * @author David Hovemeyer
  */
 public class Database {
-	//private static IDatabase instance = new HibernateDatabase();
-	private static IDatabase instance = new JDBCDatabase();
+	//private static volatile IDatabase instance = new HibernateDatabase();
+	private static volatile IDatabase instance = new JDBCDatabase();
 	
 	/**
 	 * Get the default implementation of IDatabase.
@@ -34,4 +34,14 @@ public class Database {
 	public static IDatabase getInstance() {
 		return instance;
 	}
+	
+	/**
+	 * Replace the default implementation of IDatabase: for example,
+	 * to install a {@link CachingDatabase} in front of it.
+	 * 
+	 * @param instance the IDatabase implementation to use
+	 */
+	public static void setInstance(IDatabase instance) {
+		Database.instance = instance;
+	}
 }
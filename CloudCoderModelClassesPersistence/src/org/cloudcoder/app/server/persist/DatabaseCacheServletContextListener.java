@@ -0,0 +1,78 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Servlet context listener to install a {@link CachingDatabase} in front
+ * of the default {@link IDatabase} implementation.  Configured using the
+ * <code>cloudcoder.cache.enabled</code>, <code>cloudcoder.cache.maxEntries</code>,
+ * and <code>cloudcoder.cache.maxAgeMillis</code> context parameters.
+ * 
+ * @author David Hovemeyer
+ */
+public class DatabaseCacheServletContextListener implements ServletContextListener {
+	private static final Logger logger = LoggerFactory.getLogger(DatabaseCacheServletContextListener.class);
+	
+	private static volatile CachingDatabase cachingDatabase;
+	
+	/**
+	 * @return the installed {@link CachingDatabase}, or null if caching is not enabled
+	 */
+	public static CachingDatabase getCachingDatabase() {
+		return cachingDatabase;
+	}
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext ctx = event.getServletContext();
+		if ("false".equals(ctx.getInitParameter("cloudcoder.cache.enabled"))) {
+			logger.info("Database cache is disabled");
+			return;
+		}
+		int maxEntries = (int) getParam(ctx, "cloudcoder.cache.maxEntries", 10000L);
+		long maxAgeMillis = getParam(ctx, "cloudcoder.cache.maxAgeMillis", 60000L);
+		
+		cachingDatabase = new CachingDatabase(Database.getInstance(), maxEntries, maxAgeMillis);
+		Database.setInstance(cachingDatabase);
+		logger.info("Database cache enabled: maxEntries={}, maxAgeMillis={}", maxEntries, maxAgeMillis);
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		CachingDatabase db = cachingDatabase;
+		if (db != null) {
+			for (ReadThroughCache<?, ?> cache : db.getCaches()) {
+				logger.info("Database cache statistics: {}", cache);
+			}
+			Database.setInstance(db.getDelegate());
+			cachingDatabase = null;
+		}
+	}
+
+	private static long getParam(ServletContext ctx, String name, long defaultValue) {
+		String value = ctx.getInitParameter(name);
+		return value != null ? Long.parseLong(value.trim()) : defaultValue;
+	}
+}
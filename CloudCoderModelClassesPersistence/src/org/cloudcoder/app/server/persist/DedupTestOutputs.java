@@ -0,0 +1,407 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.io.UnsupportedEncodingException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.OutputBlob;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Maintenance of the deduplicated test output store (see {@link OutputBlobs}).
+ * <ul>
+ * <li>With <code>--report</code>, reports how much space the test outputs
+ *     take as stored now, and how much they would take if all of them
+ *     were deduplicated and compressed.  Nothing is modified.</li>
+ * <li>Otherwise, moves the outputs of test results stored before the output
+ *     blob store existed into output blobs, and then deletes output blobs
+ *     which are no longer referenced by any test result (e.g., because
+ *     the test results were replaced by a retest).  With <code>--gc</code>,
+ *     only the unreferenced output blobs are deleted.</li>
+ * </ul>
+ * Work is done in transactions of at most <code>--batch</code> test results,
+ * with a pause between transactions, so this can run while CloudCoder is
+ * in use.
+ * 
+ * @author David Hovemeyer
+ */
+public class DedupTestOutputs {
+	/** Default number of test results (or output blobs) per transaction. */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	
+	/** Default pause (in milliseconds) between transactions. */
+	public static final long DEFAULT_PAUSE_MILLIS = 100L;
+	
+	private static final String TEST_RESULTS = TestResult.SCHEMA.getDbTableName();
+	private static final String OUTPUT_BLOBS = OutputBlob.SCHEMA.getDbTableName();
+	
+	private Connection conn;
+	private int batchSize;
+	private long pauseMillis;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param conn        the connection to the webapp database
+	 * @param batchSize   number of test results (or output blobs) per transaction
+	 * @param pauseMillis pause (in milliseconds) between transactions
+	 */
+	public DedupTestOutputs(Connection conn, int batchSize, long pauseMillis) {
+		this.conn = conn;
+		this.batchSize = batchSize;
+		this.pauseMillis = pauseMillis;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		ConfigurationUtil.configureLog4j();
+		
+		boolean report = false, gcOnly = false;
+		int batchSize = DEFAULT_BATCH_SIZE;
+		long pauseMillis = DEFAULT_PAUSE_MILLIS;
+		for (String arg : args) {
+			if (arg.equals("--report")) {
+				report = true;
+			} else if (arg.equals("--gc")) {
+				gcOnly = true;
+			} else if (arg.startsWith("--batch=")) {
+				batchSize = Integer.parseInt(arg.substring("--batch=".length()));
+			} else if (arg.startsWith("--pause=")) {
+				pauseMillis = Long.parseLong(arg.substring("--pause=".length()));
+			} else {
+				System.err.println("Usage: dedupoutputs [--report | --gc] [--batch=<count>] [--pause=<millis>]");
+				System.exit(1);
+			}
+		}
+		
+		Class.forName("com.mysql.jdbc.Driver");
+		Properties config = DBUtil.getConfigProperties();
+		Connection conn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		try {
+			DedupTestOutputs dedup = new DedupTestOutputs(conn, batchSize, pauseMillis);
+			if (report) {
+				dedup.report();
+			} else {
+				if (!gcOnly) {
+					System.out.println("Moving inline test outputs into output blobs...");
+					int count = dedup.convertInlineOutputs();
+					System.out.println("Moved the outputs of " + count + " test result(s)");
+				}
+				System.out.println("Deleting unreferenced output blobs...");
+				int count = dedup.collectGarbage();
+				System.out.println("Deleted " + count + " output blob(s)");
+			}
+		} catch (SQLException e) {
+			System.err.println("Database error: " + e.getMessage());
+			e.printStackTrace();
+		} finally {
+			DBUtil.closeQuietly(conn);
+		}
+	}
+	
+	/**
+	 * Report the space taken by test outputs as currently stored, and
+	 * the space they would take if they were all deduplicated and compressed.
+	 * 
+	 * @throws SQLException
+	 */
+	public void report() throws SQLException {
+		// Uncompressed and compressed size of each existing output blob
+		Map<String, int[]> existingBlobs = loadBlobSizes();
+		// Compressed size of each distinct output which is (or would be) an output blob
+		Map<String, Integer> distinct = new HashMap<String, Integer>();
+		
+		long numTestResults = 0L;
+		long inlineBytes = 0L;   // bytes of output stored inline now
+		long totalBytes = 0L;    // bytes of all outputs, if stored inline
+		long dedupBytes = 0L;    // bytes of all outputs, if deduplicated and compressed
+		
+		int lastId = 0;
+		while (true) {
+			List<String[]> rows = new ArrayList<String[]>();
+			PreparedStatement stmt = conn.prepareStatement(
+					"select id, stdout, stderr, stdout_hash, stderr_hash from " + TEST_RESULTS +
+					" where id > ? order by id asc limit ?");
+			try {
+				stmt.setInt(1, lastId);
+				stmt.setInt(2, batchSize);
+				ResultSet resultSet = stmt.executeQuery();
+				while (resultSet.next()) {
+					lastId = resultSet.getInt(1);
+					rows.add(new String[]{ resultSet.getString(2), resultSet.getString(3), resultSet.getString(4), resultSet.getString(5) });
+				}
+			} finally {
+				DBUtil.closeQuietly(stmt);
+			}
+			if (rows.isEmpty()) {
+				break;
+			}
+			
+			for (String[] row : rows) {
+				numTestResults++;
+				for (int i = 0; i < 2; i++) {
+					String text = row[i], hash = row[i + 2];
+					if (hash != null) {
+						// Stored as an output blob
+						int[] sizes = existingBlobs.get(hash);
+						totalBytes += (sizes != null) ? sizes[0] : 0;
+						dedupBytes += hash.length();
+						if (!distinct.containsKey(hash)) {
+							distinct.put(hash, (sizes != null) ? sizes[1] : 0);
+						}
+					} else if (text != null) {
+						// Stored inline
+						int length = utf8Length(text);
+						inlineBytes += length;
+						totalBytes += length;
+						if (OutputBlobs.isBlob(text)) {
+							hash = OutputBlobs.hash(text);
+							dedupBytes += hash.length();
+							if (!distinct.containsKey(hash)) {
+								distinct.put(hash, OutputBlobs.createBlob(text).getData().length);
+							}
+						} else {
+							dedupBytes += length;
+						}
+					}
+				}
+			}
+		}
+		
+		long blobBytes = 0L;
+		for (int[] sizes : existingBlobs.values()) {
+			blobBytes += sizes[1];
+		}
+		for (Integer size : distinct.values()) {
+			dedupBytes += size;
+		}
+		
+		System.out.println("Test results:                    " + numTestResults);
+		System.out.println("Distinct large outputs:          " + distinct.size());
+		System.out.println("All outputs, stored inline:      " + totalBytes + " bytes");
+		System.out.println("Stored now:                      " + (inlineBytes + blobBytes) + " bytes (" +
+				inlineBytes + " inline, " + blobBytes + " in " + existingBlobs.size() + " output blobs)");
+		System.out.println("Deduplicated and compressed:     " + dedupBytes + " bytes");
+		if (dedupBytes > 0) {
+			System.out.printf("Savings vs. inline storage:      %.1f%% (%.1fx smaller)%n",
+					100.0 * (totalBytes - dedupBytes) / Math.max(totalBytes, 1L), (double) totalBytes / dedupBytes);
+		}
+	}
+	
+	private Map<String, int[]> loadBlobSizes() throws SQLException {
+		Map<String, int[]> result = new HashMap<String, int[]>();
+		PreparedStatement stmt = conn.prepareStatement("select hash, length, length(data) from " + OUTPUT_BLOBS);
+		try {
+			ResultSet resultSet = stmt.executeQuery();
+			while (resultSet.next()) {
+				result.put(resultSet.getString(1), new int[]{ resultSet.getInt(2), resultSet.getInt(3) });
+			}
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+		return result;
+	}
+	
+	private static int utf8Length(String text) {
+		try {
+			return text.getBytes("UTF-8").length;
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not available", e);
+		}
+	}
+	
+	/**
+	 * Move the large outputs of test results stored inline into output blobs.
+	 * 
+	 * @return number of test results whose outputs were moved
+	 * @throws SQLException
+	 * @throws InterruptedException
+	 */
+	public int convertInlineOutputs() throws SQLException, InterruptedException {
+		int numConverted = 0;
+		int lastId = 0;
+		while (true) {
+			boolean origAutoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			boolean committed = false;
+			PreparedStatement select = null, update = null;
+			int numRows = 0;
+			try {
+				select = conn.prepareStatement(
+						"select " + DBUtil.getColumnList(TestResult.SCHEMA) + " from " + TEST_RESULTS +
+						" where id > ? and stdout_hash is null and stderr_hash is null" +
+						" order by id asc limit ? for update");
+				select.setInt(1, lastId);
+				select.setInt(2, batchSize);
+				ResultSet resultSet = select.executeQuery();
+				Map<String, OutputBlob> blobs = new HashMap<String, OutputBlob>();
+				List<TestResult> toUpdate = new ArrayList<TestResult>();
+				while (resultSet.next()) {
+					numRows++;
+					TestResult testResult = new TestResult();
+					DBUtil.loadModelObjectFields(testResult, TestResult.SCHEMA, resultSet);
+					lastId = testResult.getId();
+					TestResult stored = OutputBlobs.toStoredForm(testResult, blobs);
+					if (stored.getStdoutHash() != null || stored.getStderrHash() != null) {
+						toUpdate.add(stored);
+					}
+				}
+				
+				OutputBlobs.storeBlobs(conn, blobs);
+				
+				update = conn.prepareStatement(
+						"update " + TEST_RESULTS +
+						"   set stdout = ?, stderr = ?, stdout_hash = ?, stderr_hash = ?" +
+						" where id = ?");
+				for (TestResult stored : toUpdate) {
+					update.setString(1, stored.getStdout());
+					update.setString(2, stored.getStderr());
+					update.setString(3, stored.getStdoutHash());
+					update.setString(4, stored.getStderrHash());
+					update.setInt(5, stored.getId());
+					update.addBatch();
+				}
+				if (!toUpdate.isEmpty()) {
+					update.executeBatch();
+				}
+				
+				conn.commit();
+				committed = true;
+				numConverted += toUpdate.size();
+			} finally {
+				DBUtil.closeQuietly(select);
+				DBUtil.closeQuietly(update);
+				if (!committed) {
+					conn.rollback();
+				}
+				conn.setAutoCommit(origAutoCommit);
+			}
+			
+			if (numRows < batchSize) {
+				return numConverted;
+			}
+			Thread.sleep(pauseMillis);
+		}
+	}
+	
+	/**
+	 * Delete output blobs which aren't referenced by any test result.
+	 * Each candidate is rechecked (and deleted) while holding an exclusive
+	 * lock on it, so a blob referenced by a concurrent transaction storing
+	 * test results is never deleted.
+	 * 
+	 * @return number of output blobs deleted
+	 * @throws SQLException
+	 * @throws InterruptedException
+	 */
+	public int collectGarbage() throws SQLException, InterruptedException {
+		int numDeleted = 0;
+		String lastHash = "";
+		while (true) {
+			// Find candidates (without locking)
+			List<String> candidates = new ArrayList<String>();
+			int numScanned = 0;
+			PreparedStatement find = conn.prepareStatement(
+					"select b.hash," +
+					"       exists (select 1 from " + TEST_RESULTS + " as tr where tr.stdout_hash = b.hash)" +
+					"       or exists (select 1 from " + TEST_RESULTS + " as tr where tr.stderr_hash = b.hash)" +
+					"  from " + OUTPUT_BLOBS + " as b" +
+					" where b.hash > ?" +
+					" order by b.hash asc limit ?");
+			try {
+				find.setString(1, lastHash);
+				find.setInt(2, batchSize);
+				ResultSet resultSet = find.executeQuery();
+				while (resultSet.next()) {
+					numScanned++;
+					lastHash = resultSet.getString(1);
+					if (!resultSet.getBoolean(2)) {
+						candidates.add(lastHash);
+					}
+				}
+			} finally {
+				DBUtil.closeQuietly(find);
+			}
+			
+			for (String hash : candidates) {
+				if (deleteIfUnreferenced(hash)) {
+					numDeleted++;
+				}
+			}
+			
+			if (numScanned < batchSize) {
+				return numDeleted;
+			}
+			Thread.sleep(pauseMillis);
+		}
+	}
+
+	private boolean deleteIfUnreferenced(String hash) throws SQLException {
+		boolean origAutoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		boolean committed = false;
+		PreparedStatement lock = null, check = null, delete = null;
+		try {
+			// Lock the blob: this waits for transactions which are storing
+			// test results referencing it to commit
+			lock = conn.prepareStatement("select hash from " + OUTPUT_BLOBS + " where hash = ? for update");
+			lock.setString(1, hash);
+			if (!lock.executeQuery().next()) {
+				conn.commit();
+				committed = true;
+				return false;
+			}
+			
+			// Recheck references (locking reads see the latest committed data)
+			check = conn.prepareStatement(
+					"select count(*) from " + TEST_RESULTS +
+					" where stdout_hash = ? or stderr_hash = ? lock in share mode");
+			check.setString(1, hash);
+			check.setString(2, hash);
+			ResultSet resultSet = check.executeQuery();
+			resultSet.next();
+			boolean referenced = resultSet.getInt(1) > 0;
+			
+			if (!referenced) {
+				delete = conn.prepareStatement("delete from " + OUTPUT_BLOBS + " where hash = ?");
+				delete.setString(1, hash);
+				delete.executeUpdate();
+			}
+			
+			conn.commit();
+			committed = true;
+			return !referenced;
+		} finally {
+			DBUtil.closeQuietly(lock);
+			DBUtil.closeQuietly(check);
+			DBUtil.closeQuietly(delete);
+			if (!committed) {
+				conn.rollback();
+			}
+			conn.setAutoCommit(origAutoCommit);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+/**
+ * Which data to export using
+ * {@link IDatabase#exportData(ExportQuery, ExportRowHandler)}:
+ * the type of data, the course, and optionally a problem
+ * and a time range.
+ * 
+ * @author David Hovemeyer
+ */
+public class ExportQuery {
+	private final ExportType type;
+	private final int courseId;
+	private final int problemId;
+	private final long fromTimestamp;
+	private final long toTimestamp;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param type          the type of data to export
+	 * @param courseId      the course
+	 * @param problemId     the problem, or -1 for all problems in the course
+	 * @param fromTimestamp export data from events at or after this time
+	 * @param toTimestamp   export data from events before this time
+	 */
+	public ExportQuery(ExportType type, int courseId, int problemId, long fromTimestamp, long toTimestamp) {
+		this.type = type;
+		this.courseId = courseId;
+		this.problemId = problemId;
+		this.fromTimestamp = fromTimestamp;
+		this.toTimestamp = toTimestamp;
+	}
+	
+	/**
+	 * @return the type of data to export
+	 */
+	public ExportType getType() {
+		return type;
+	}
+	
+	/**
+	 * @return the course
+	 */
+	public int getCourseId() {
+		return courseId;
+	}
+	
+	/**
+	 * @return the problem, or -1 for all problems in the course
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+	
+	/**
+	 * @return export data from events at or after this time
+	 */
+	public long getFromTimestamp() {
+		return fromTimestamp;
+	}
+	
+	/**
+	 * @return export data from events before this time
+	 */
+	public long getToTimestamp() {
+		return toTimestamp;
+	}
+}
@@ -0,0 +1,37 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+/**
+ * Callback for rows exported by
+ * {@link IDatabase#exportData(ExportQuery, ExportRowHandler)}.
+ * 
+ * @author David Hovemeyer
+ */
+public interface ExportRowHandler {
+	/**
+	 * Handle an exported row.  The row is not retained by the
+	 * database, so it should be written out rather than collected.
+	 * 
+	 * @param row the model objects in the row, one for each of the
+	 *            export type's schemas (see {@link ExportType#getSchemaList()})
+	 * @return true if the export should continue, false if it should stop
+	 *         (e.g., because the client went away)
+	 */
+	public boolean handleRow(Object[] row);
+}
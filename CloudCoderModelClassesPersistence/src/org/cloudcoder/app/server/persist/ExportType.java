@@ -0,0 +1,104 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Types of data that can be exported using
+ * {@link IDatabase#exportData(ExportQuery, ExportRowHandler)}.
+ * Each exported row consists of one model object for each of the
+ * type's schemas.
+ * 
+ * @author David Hovemeyer
+ */
+public enum ExportType {
+	/** Submission receipts: rows are ({@link Event}, {@link SubmissionReceipt}). */
+	RECEIPTS("receipts", Event.SCHEMA, SubmissionReceipt.SCHEMA),
+	
+	/** Test results: rows are ({@link Event} of the submission, {@link TestResult}). */
+	TEST_RESULTS("testResults", Event.SCHEMA, TestResult.SCHEMA),
+	
+	/** Changes, including archived changes: rows are ({@link Event}, {@link Change}). */
+	CHANGES("changes", Event.SCHEMA, Change.SCHEMA),
+	
+	/**
+	 * Code snapshots (the full text of each submission):
+	 * rows are ({@link Event}, {@link SubmissionReceipt}, full-text {@link Change}).
+	 */
+	SNAPSHOTS("snapshots", Event.SCHEMA, SubmissionReceipt.SCHEMA, Change.SCHEMA);
+	
+	private final String name;
+	private final List<ModelObjectSchema<?>> schemaList;
+	
+	private ExportType(String name, ModelObjectSchema<?>... schemas) {
+		this.name = name;
+		this.schemaList = Arrays.asList(schemas);
+	}
+	
+	/**
+	 * @return the name of the export type (as used in export URLs)
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return the schemas of the model objects in each exported row
+	 */
+	public List<ModelObjectSchema<?>> getSchemaList() {
+		return schemaList;
+	}
+	
+	/**
+	 * Determine whether a field should be exported.  Fields that
+	 * only reflect how data is stored (the short text of a {@link Change},
+	 * and the output blob hashes of a {@link TestResult}) are not exported.
+	 * 
+	 * @param field the field
+	 * @return true if the field should be exported
+	 */
+	public static boolean isExported(ModelObjectField<?, ?> field) {
+		return field != Change.TEXT_SHORT
+				&& field != TestResult.STDOUT_HASH
+				&& field != TestResult.STDERR_HASH;
+	}
+	
+	/**
+	 * Find the export type with given name.
+	 * 
+	 * @param name the name
+	 * @return the export type, or null if there is no export type with the name
+	 */
+	public static ExportType forName(String name) {
+		for (ExportType type : values()) {
+			if (type.name.equals(name)) {
+				return type;
+			}
+		}
+		return null;
+	}
+}
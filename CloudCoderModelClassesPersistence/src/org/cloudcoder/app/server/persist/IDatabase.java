@@ -34,15 +34,20 @@ import org.cloudcoder.app.shared.model.ProblemAndSubmissionReceipt;
 import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.ProblemList;
 import org.cloudcoder.app.shared.model.ProblemSummary;
+import org.cloudcoder.app.shared.model.QueuedSubmission;
+import org.cloudcoder.app.shared.model.QueuedSubmissionStatus;
 import org.cloudcoder.app.shared.model.RepoProblem;
 import org.cloudcoder.app.shared.model.RepoProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.RepoProblemSearchCriteria;
 import org.cloudcoder.app.shared.model.RepoProblemSearchResult;
 import org.cloudcoder.app.shared.model.RepoProblemTag;
 import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionStatus;
+import org.cloudcoder.app.shared.model.SubmissionType;
 import org.cloudcoder.app.shared.model.Term;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.TextCheckpoint;
 import org.cloudcoder.app.shared.model.User;
 import org.cloudcoder.app.shared.model.UserRegistrationRequest;
 
@@ -61,7 +66,10 @@ public interface IDatabase {
 	public ConfigurationSetting getConfigurationSetting(ConfigurationSettingName name);
 	
 	/**
-	 * Authenticate a user.
+	 * Authenticate a user.  The password is checked on the calling thread:
+	 * code handling logins from clients should use {@link PasswordVerifier},
+	 * which limits how many passwords are checked at once and refuses
+	 * repeated failed attempts.
 	 * 
 	 * @param userName  the username
 	 * @param password  the password
@@ -91,6 +99,24 @@ public interface IDatabase {
 	public Change getMostRecentFullTextChange(User user, int problemId);
 	public List<Change> getAllChangesNewerThan(User user, int problemId, int baseRev);
 	
+	/**
+	 * Get the {@link TextCheckpoint} for given user and problem.
+	 * 
+	 * @param user       the User
+	 * @param problemId  the problem id
+	 * @return the TextCheckpoint, or null if there is no checkpoint
+	 */
+	public TextCheckpoint getTextCheckpoint(User user, int problemId);
+	
+	/**
+	 * Store a {@link TextCheckpoint}, replacing the existing checkpoint for
+	 * the same user and problem if (and only if) the new checkpoint
+	 * reflects a more recent change event.
+	 * 
+	 * @param checkpoint the TextCheckpoint to store
+	 */
+	public void storeTextCheckpoint(TextCheckpoint checkpoint);
+	
 	/**
 	 * Get all of the courses in which given user is registered.
 	 * Each returned item is a triple consisting of {@link Course},
@@ -170,6 +196,33 @@ public interface IDatabase {
 	 */
 	public SubmissionReceipt getSubmissionReceipt(int submissionReceiptId);
 
+	/**
+	 * Get the SubmissionReceipt for the submission of the program text
+	 * in a full-text Change.
+	 * 
+	 * @param userId        the id of the user who made the submission
+	 * @param changeEventId the event id of the full-text Change
+	 * @return the SubmissionReceipt, or null if the submission (by the given
+	 *         user) has no SubmissionReceipt
+	 */
+	public SubmissionReceipt getSubmissionReceiptForChange(int userId, int changeEventId);
+
+	/**
+	 * Store a SubmissionReceipt (and its test results), unless a
+	 * SubmissionReceipt for the same user and last edit event
+	 * (see {@link #getSubmissionReceiptForChange(int, int)}) has already
+	 * been stored.  The check and the insert are done in the same
+	 * transaction on the primary database.  This is useful when a
+	 * submission may be tested again after its receipt was stored
+	 * (e.g., when it is recovered after a restart).
+	 * 
+	 * @param receipt        the SubmissionReceipt to store
+	 * @param testResultList the test results
+	 * @return the stored SubmissionReceipt: either the given one,
+	 *         or the one that had already been stored
+	 */
+	public SubmissionReceipt insertSubmissionReceiptIfAbsent(SubmissionReceipt receipt, TestResult[] testResultList);
+
 	/**
 	 * Return a list of all users in the given course.
 	 * 
@@ -185,6 +238,28 @@ public interface IDatabase {
 	 * @return the Change with the given event id
 	 */
 	public Change getChange(int changeEventId);
+	
+	/**
+	 * Get the Change with given id, made by the given user on the given
+	 * problem.  If the change has been archived, this is much faster
+	 * than {@link #getChange(int)}, because the archive can be found
+	 * using the user and problem.
+	 * 
+	 * @param changeEventId the event id of the Change
+	 * @param userId        the id of the user who made the Change
+	 * @param problemId     the id of the problem the Change was made on
+	 * @return the Change with the given event id, or null if there is no such Change
+	 */
+	public Change getChange(int changeEventId, int userId, int problemId);
+
+	/**
+	 * Get the TestResults for a submission.  Outputs stored as
+	 * deduplicated output blobs are loaded (in a single query).
+	 * 
+	 * @param submissionReceiptEventId the event id of the submission's SubmissionReceipt
+	 * @return the TestResults, in the order in which they were stored
+	 */
+	public TestResult[] getTestResultsForSubmission(int submissionReceiptEventId);
 
 	/**
 	 * Insert TestResults.
@@ -326,6 +401,17 @@ public interface IDatabase {
 	 */
 	public<E> E databaseRun(AbstractDatabaseRunnableNoAuthException<E> databaseRunnable);
 	
+	/**
+	 * Run a database transaction that only reads from the database.
+	 * The transaction may run on a read replica (if one is configured),
+	 * so it must not modify the database.
+	 * 
+	 * @param databaseRunnable the database transaction to run
+	 * @return the result of the database transaction
+	 * @throws PersistenceException if an error occurs
+	 */
+	public<E> E databaseRunReadOnly(AbstractDatabaseRunnableNoAuthException<E> databaseRunnable);
+	
 	/**
 	 * Run a database transaction that can throw an authorization exception.
 	 * 
@@ -394,4 +480,109 @@ public interface IDatabase {
 	 */
 	public List<String> suggestTagNames(String term);
 
+	/**
+	 * Get all {@link SubmissionReceipt}s (with their {@link Event}s) whose
+	 * timestamps fall in the given time range, in increasing order of timestamp.
+	 * 
+	 * @param startTime start of range (inclusive), in milliseconds since the epoch
+	 * @param endTime   end of range (exclusive), in milliseconds since the epoch
+	 * @return list of {@link SubmissionReceipt}s in the time range
+	 */
+	public List<SubmissionReceipt> getSubmissionReceiptsInTimeRange(long startTime, long endTime);
+
+	/**
+	 * Get a deterministic random sample of the {@link SubmissionReceipt}s
+	 * (with their {@link Event}s) for actual submissions (i.e., not
+	 * {@link SubmissionStatus#STARTED} or {@link SubmissionStatus#NOT_STARTED})
+	 * whose timestamps fall in the given time range, in increasing order of timestamp.
+	 * The sampling is done by the database, so receipts that are not
+	 * part of the sample are never loaded.
+	 * 
+	 * @param startTime      start of range (inclusive), in milliseconds since the epoch
+	 * @param endTime        end of range (exclusive), in milliseconds since the epoch
+	 * @param sampleFraction fraction of submissions to sample (0.0 to 1.0)
+	 * @return list of sampled {@link SubmissionReceipt}s in the time range
+	 */
+	public List<SubmissionReceipt> getSampledSubmissionReceiptsInTimeRange(long startTime, long endTime, double sampleFraction);
+
+	/**
+	 * Export data for a course (submission receipts, test results, changes,
+	 * or code snapshots), passing each row to an {@link ExportRowHandler}
+	 * as it is read.  Rows are streamed from the database rather than
+	 * being loaded into memory, so any amount of data can be exported.
+	 * The export runs on the read replica, if there is one.
+	 * 
+	 * @param query   the {@link ExportQuery} specifying which data to export
+	 * @param handler the {@link ExportRowHandler} to receive the rows
+	 * @return the number of rows exported
+	 */
+	public int exportData(ExportQuery query, ExportRowHandler handler);
+
+	/**
+	 * Add a {@link QueuedSubmission} to the shared submission queue.
+	 * The queued submission's unique id is set.
+	 * 
+	 * @param queuedSubmission the {@link QueuedSubmission} to add
+	 */
+	public void enqueueSubmission(QueuedSubmission queuedSubmission);
+
+	/**
+	 * Claim the next pending {@link QueuedSubmission} in the shared
+	 * submission queue.  Full submissions are claimed before compile-only
+	 * submissions, and otherwise submissions are claimed in the order
+	 * they were queued.  A submission can only be claimed by one claimant,
+	 * no matter how many webapp nodes are claiming submissions
+	 * concurrently.
+	 * 
+	 * @param claimant  name identifying the claimant (unique across all nodes)
+	 * @param claimTime the claim time, in milliseconds since the epoch
+	 * @return the claimed {@link QueuedSubmission}, or null if no submissions are pending
+	 */
+	public QueuedSubmission claimQueuedSubmission(String claimant, long claimTime);
+
+	/**
+	 * Update the status, claimant, result, and error of a
+	 * {@link QueuedSubmission}, but only if the queued submission
+	 * still has the expected status and claimant.
+	 * 
+	 * @param queuedSubmission the {@link QueuedSubmission} to update
+	 * @param expectedStatus   the expected current status
+	 * @param expectedClaimant the expected current claimant (the empty string
+	 *                         if the queued submission is not claimed)
+	 * @return true if the queued submission was updated, false if its status
+	 *         or claimant had changed
+	 */
+	public boolean updateQueuedSubmission(QueuedSubmission queuedSubmission,
+			QueuedSubmissionStatus expectedStatus, String expectedClaimant);
+
+	/**
+	 * Get a {@link QueuedSubmission} from the shared submission queue.
+	 * 
+	 * @param queuedSubmissionId the queued submission's unique id
+	 * @return the {@link QueuedSubmission}, or null if there is no such queued submission
+	 */
+	public QueuedSubmission getQueuedSubmission(int queuedSubmissionId);
+
+	/**
+	 * Get the number of pending {@link QueuedSubmission}s of given
+	 * {@link SubmissionType}, and the enqueue time of the oldest one.
+	 * 
+	 * @param submissionType the {@link SubmissionType}
+	 * @return the number of pending submissions and the enqueue time of
+	 *         the oldest (0 if there are no pending submissions)
+	 */
+	public Pair<Integer, Long> getPendingQueuedSubmissionStats(SubmissionType submissionType);
+
+	/**
+	 * Clean up the shared submission queue: claimed submissions whose claims
+	 * are older than the given time (because the node that claimed them
+	 * has gone away) are returned to the pending state, and finished
+	 * submissions queued before the given time are deleted.
+	 * 
+	 * @param staleClaimTime claims made before this time are stale
+	 * @param expireTime     finished submissions queued before this time are deleted
+	 * @return the number of stale claims that were returned to the pending state
+	 */
+	public int cleanUpQueuedSubmissions(long staleClaimTime, long expireTime);
+
 }
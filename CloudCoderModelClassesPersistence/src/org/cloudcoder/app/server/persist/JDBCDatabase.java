@@ -25,13 +25,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeArchive;
 import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
@@ -45,13 +50,17 @@ import org.cloudcoder.app.shared.model.Language;
 import org.cloudcoder.app.shared.model.ModelObjectField;
 import org.cloudcoder.app.shared.model.ModelObjectSchema;
 import org.cloudcoder.app.shared.model.OperationResult;
+import org.cloudcoder.app.shared.model.OutputBlob;
 import org.cloudcoder.app.shared.model.Pair;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemAndSubmissionReceipt;
 import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.ProblemAuthorship;
 import org.cloudcoder.app.shared.model.ProblemList;
+import org.cloudcoder.app.shared.model.ProblemStats;
 import org.cloudcoder.app.shared.model.ProblemSummary;
+import org.cloudcoder.app.shared.model.QueuedSubmission;
+import org.cloudcoder.app.shared.model.QueuedSubmissionStatus;
 import org.cloudcoder.app.shared.model.RepoProblem;
 import org.cloudcoder.app.shared.model.RepoProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.RepoProblemSearchCriteria;
@@ -60,10 +69,13 @@ import org.cloudcoder.app.shared.model.RepoProblemTag;
 import org.cloudcoder.app.shared.model.RepoTestCase;
 import org.cloudcoder.app.shared.model.SubmissionReceipt;
 import org.cloudcoder.app.shared.model.SubmissionStatus;
+import org.cloudcoder.app.shared.model.SubmissionType;
 import org.cloudcoder.app.shared.model.Term;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.TextCheckpoint;
 import org.cloudcoder.app.shared.model.User;
+import org.cloudcoder.app.shared.model.UserProblemStats;
 import org.cloudcoder.app.shared.model.UserRegistrationRequest;
 import org.cloudcoder.app.shared.model.UserRegistrationRequestStatus;
 import org.slf4j.Logger;
@@ -79,11 +91,101 @@ public class JDBCDatabase implements IDatabase {
 
     //private static final String USERS = "cc_users";
 
-	private String jdbcUrl;
+	/**
+	 * Maximum number of idle connections kept for reuse.
+	 */
+	private static final int MAX_IDLE_CONNECTIONS = 8;
+	
+	/**
+	 * Idle connections which have not been used for this long are
+	 * checked before being reused (the server may have closed them).
+	 */
+	private static final long VALIDATE_IDLE_CONNECTION_MILLIS = 30000L;
+	
+	/**
+	 * Maximum number of prepared statements cached per connection.
+	 */
+	private static final int MAX_CACHED_STATEMENTS = 100;
+	
+	// SQL for frequently-executed statements, computed once from the model object schemas
+	private static final String INSERT_EVENT_SQL = DBUtil.createInsertStatement(Event.SCHEMA);
+	private static final String INSERT_CHANGE_SQL = DBUtil.createInsertStatement(Change.SCHEMA);
+	private static final String INSERT_SUBMISSION_RECEIPT_SQL = DBUtil.createInsertStatement(SubmissionReceipt.SCHEMA);
+	private static final String INSERT_TEST_RESULT_SQL = DBUtil.createInsertStatement(TestResult.SCHEMA);
+	private static final String INSERT_USER_PROBLEM_STATS_SQL =
+			"insert ignore into " + UserProblemStats.SCHEMA.getDbTableName() +
+			" (user_id, problem_id, max_tests_passed, completed, best_submission_receipt_event_id, last_submission_timestamp, latest_submission_receipt_event_id)" +
+			" values (?, ?, 0, 0, 0, 0, 0)";
+	private static final String SELECT_USER_PROBLEM_STATS_FOR_UPDATE_SQL =
+			"select " + DBUtil.getColumnList(UserProblemStats.SCHEMA) + " from " + UserProblemStats.SCHEMA.getDbTableName() +
+			" where user_id = ? and problem_id = ? for update";
+	private static final String UPDATE_USER_PROBLEM_STATS_SQL =
+			"update " + UserProblemStats.SCHEMA.getDbTableName() +
+			"   set max_tests_passed = ?, completed = ?, best_submission_receipt_event_id = ?," +
+			"       last_submission_timestamp = ?, latest_submission_receipt_event_id = ?" +
+			" where user_id = ? and problem_id = ?";
+	private static final String UPDATE_PROBLEM_STATS_SQL =
+			"insert into " + ProblemStats.SCHEMA.getDbTableName() +
+			" (problem_id, num_started, num_passed_at_least_one_test, num_completed) values (?, ?, ?, ?)" +
+			" on duplicate key update" +
+			"   num_started = num_started + values(num_started)," +
+			"   num_passed_at_least_one_test = num_passed_at_least_one_test + values(num_passed_at_least_one_test)," +
+			"   num_completed = num_completed + values(num_completed)";
+	private static final String SELECT_EVENT_TIMESTAMP_SQL =
+			"select timestamp from " + Event.SCHEMA.getDbTableName() + " where id = ?";
+	private static final String SELECT_CHANGE_ARCHIVES_NEWER_THAN_SQL =
+			"select " + DBUtil.getColumnList(ChangeArchive.SCHEMA) + " from " + ChangeArchive.SCHEMA.getDbTableName() +
+			" where user_id = ? and problem_id = ? and last_event_id > ?" +
+			" order by first_event_id asc";
+	private static final String SELECT_LATEST_CHANGE_ARCHIVE_SQL =
+			"select " + DBUtil.getColumnList(ChangeArchive.SCHEMA) + " from " + ChangeArchive.SCHEMA.getDbTableName() +
+			" where user_id = ? and problem_id = ?" +
+			" order by first_event_id desc limit 1";
+	private static final String SELECT_LATEST_FULL_TEXT_CHANGE_ARCHIVE_SQL =
+			"select " + DBUtil.getColumnList(ChangeArchive.SCHEMA) + " from " + ChangeArchive.SCHEMA.getDbTableName() +
+			" where user_id = ? and problem_id = ? and last_full_text_event_id > 0" +
+			" order by first_event_id desc limit 1";
+	private static final String SELECT_CHANGE_ARCHIVES_CONTAINING_SQL =
+			"select " + DBUtil.getColumnList(ChangeArchive.SCHEMA) + " from " + ChangeArchive.SCHEMA.getDbTableName() +
+			" where last_event_id >= ? and first_event_id <= ?";
+	private static final String SELECT_USER_PROBLEM_CHANGE_ARCHIVE_CONTAINING_SQL =
+			"select " + DBUtil.getColumnList(ChangeArchive.SCHEMA) + " from " + ChangeArchive.SCHEMA.getDbTableName() +
+			" where user_id = ? and problem_id = ? and first_event_id <= ?" +
+			" order by first_event_id desc limit 1";
+
+	private final boolean reuseConnections;
+	private final ConnectionSource primary;
+	private final ConnectionSource replica;
+	private final long readYourWritesMillis;
+	private final AtomicLong primaryReadOnlyCount = new AtomicLong();
+	private final AtomicLong replicaReadOnlyCount = new AtomicLong();
 	
 	public JDBCDatabase() {
-		JDBCDatabaseConfig.ConfigProperties config = JDBCDatabaseConfig.getInstance().getConfigProperties();
-		jdbcUrl = "jdbc:mysql://" +
+		this(true);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param reuseConnections true if connections (and their cached
+	 *                         prepared statements) should be reused by later
+	 *                         transactions, false if each transaction should
+	 *                         use a new connection
+	 */
+	public JDBCDatabase(boolean reuseConnections) {
+		this.reuseConnections = reuseConnections;
+		JDBCDatabaseConfig dbConfig = JDBCDatabaseConfig.getInstance();
+		primary = new ConnectionSource("primary", createJdbcUrl(dbConfig.getConfigProperties()));
+		JDBCDatabaseConfig.ConfigProperties replicaConfig = dbConfig.getReplicaConfigProperties();
+		replica = (replicaConfig != null) ? new ConnectionSource("replica", createJdbcUrl(replicaConfig)) : null;
+		readYourWritesMillis = dbConfig.getReadYourWritesMillis();
+		if (replica != null) {
+			logger.info("Read-only transactions use replica (read-your-writes window {} ms)", readYourWritesMillis);
+		}
+	}
+	
+	private static String createJdbcUrl(JDBCDatabaseConfig.ConfigProperties config) {
+		String jdbcUrl = "jdbc:mysql://" +
 				config.getHost() + config.getPortStr() +
 				"/" +
 				config.getDatabaseName() +
@@ -91,6 +193,28 @@ public class JDBCDatabase implements IDatabase {
 				config.getUser() +
 				"&password=" + config.getPasswd();
 		logger.info("Database URL: "+jdbcUrl);
+		return jdbcUrl;
+	}
+	
+	/**
+	 * @return true if a read replica is configured
+	 */
+	public boolean hasReplica() {
+		return replica != null;
+	}
+	
+	/**
+	 * @return number of read-only transactions run on the primary database
+	 */
+	public long getPrimaryReadOnlyCount() {
+		return primaryReadOnlyCount.get();
+	}
+	
+	/**
+	 * @return number of read-only transactions run on the replica
+	 */
+	public long getReplicaReadOnlyCount() {
+		return replicaReadOnlyCount.get();
 	}
 	
 	static {
@@ -101,48 +225,146 @@ public class JDBCDatabase implements IDatabase {
 		}
 	}
 
-	private static class InUseConnection {
+	/**
+	 * A connection, and the prepared statements cached for it.
+	 */
+	private static class PooledConnection {
 		Connection conn;
+		StatementCache statementCache;
+		long lastUsed;
+		boolean broken;
+		
+		void close() {
+			if (statementCache != null) {
+				statementCache.close();
+			}
+			DBUtil.closeQuietly(conn);
+		}
+	}
+
+	private static class InUseConnection {
+		PooledConnection pooled;
 		int refCount;
 	}
 	
 	/*
-	 * Need to consider how to do connection management better.
-	 * For now, just use something simple that works.
+	 * Each thread uses a single connection (per database server) for all
+	 * of its (possibly nested) transactions.  When the outermost transaction
+	 * finishes, the connection is returned to a small pool of idle connections,
+	 * so that its cached prepared statements can be reused by later transactions.
 	 */
-
-	private ThreadLocal<InUseConnection> threadLocalConnection = new ThreadLocal<InUseConnection>();
-	
-	private Connection getConnection() throws SQLException {
-		InUseConnection c = threadLocalConnection.get();
-		if (c == null) {
-			c = new InUseConnection();
-			c.conn = DriverManager.getConnection(jdbcUrl);
-			c.refCount = 0;
-			threadLocalConnection.set(c);
+	
+	/**
+	 * Connections to one database server: the primary database or the replica.
+	 */
+	private class ConnectionSource {
+		private final String name;
+		private final String jdbcUrl;
+		private final ThreadLocal<InUseConnection> threadLocalConnection = new ThreadLocal<InUseConnection>();
+		private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<PooledConnection>();
+		
+		ConnectionSource(String name, String jdbcUrl) {
+			this.name = name;
+			this.jdbcUrl = jdbcUrl;
+		}
+		
+		boolean isInUse() {
+			return threadLocalConnection.get() != null;
+		}
+		
+		PooledConnection getConnection() throws SQLException {
+			InUseConnection c = threadLocalConnection.get();
+			if (c == null) {
+				c = new InUseConnection();
+				c.pooled = getIdleConnection();
+				if (c.pooled == null) {
+					c.pooled = new PooledConnection();
+					c.pooled.conn = DriverManager.getConnection(jdbcUrl);
+					if (reuseConnections) {
+						c.pooled.statementCache = new StatementCache(c.pooled.conn, MAX_CACHED_STATEMENTS);
+					}
+				}
+				c.refCount = 0;
+				threadLocalConnection.set(c);
+			}
+			c.refCount++;
+			return c.pooled;
+		}
+		
+		private PooledConnection getIdleConnection() {
+			PooledConnection pooled;
+			while ((pooled = idleConnections.pollFirst()) != null) {
+				if (System.currentTimeMillis() - pooled.lastUsed < VALIDATE_IDLE_CONNECTION_MILLIS) {
+					return pooled;
+				}
+				try {
+					if (pooled.conn.isValid(2)) {
+						return pooled;
+					}
+				} catch (SQLException e) {
+					// Not valid
+				}
+				pooled.close();
+			}
+			return null;
+		}
+		
+		void releaseConnection(boolean reusable) {
+			InUseConnection c = threadLocalConnection.get();
+			if (!reusable) {
+				c.pooled.broken = true;
+			}
+			c.refCount--;
+			if (c.refCount == 0) {
+				threadLocalConnection.set(null);
+				c.pooled.lastUsed = System.currentTimeMillis();
+				if (!reuseConnections || c.pooled.broken || idleConnections.size() >= MAX_IDLE_CONNECTIONS || !idleConnections.offerFirst(c.pooled)) {
+					c.pooled.close();
+				}
+			}
 		}
-		c.refCount++;
-		return c.conn;
 	}
 	
-	private void releaseConnection() throws SQLException {
-		InUseConnection c = threadLocalConnection.get();
-		c.refCount--;
-		if (c.refCount == 0) {
-			c.conn.close();
-			threadLocalConnection.set(null);
+	/**
+	 * Choose the database server for a transaction.
+	 * Read-write transactions always use the primary database.
+	 * Read-only transactions use the replica, unless the thread is
+	 * already in a transaction on the primary database, or the current
+	 * session has written to the primary database recently (so that the
+	 * session sees its own writes even if the replica is lagging).
+	 */
+	/**
+	 * Kinds of transactions, which determine which database server
+	 * a transaction is run on.
+	 */
+	private enum TransactionKind {
+		/** May write: runs on the primary database. */
+		READ_WRITE,
+		/** Read-only, but must see the latest data: runs on the primary database. */
+		READ_ONLY_PRIMARY,
+		/** Read-only: may run on the replica. */
+		READ_ONLY,
+	}
+	
+	private ConnectionSource chooseConnectionSource(TransactionKind kind) {
+		if (kind != TransactionKind.READ_ONLY) {
+			return primary;
 		}
+		boolean useReplica = replica != null && !primary.isInUse() && !ReadYourWrites.wroteWithin(readYourWritesMillis);
+		(useReplica ? replicaReadOnlyCount : primaryReadOnlyCount).incrementAndGet();
+		return useReplica ? replica : primary;
 	}
 	
 	@Override
 	public ConfigurationSetting getConfigurationSetting(final ConfigurationSettingName name) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<ConfigurationSetting>() {
+		// CachingDatabase caches the result, so it must not come from a lagging replica
+		return databaseRunReadOnlyOnPrimary(new AbstractDatabaseRunnableNoAuthException<ConfigurationSetting>() {
 			@Override
 			public ConfigurationSetting run(Connection conn)
 					throws SQLException {
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select s.* from " + ConfigurationSetting.SCHEMA.getDbTableName() + " as s where s.name = ?");
+						"select " + DBUtil.getColumnList(ConfigurationSetting.SCHEMA, "s") + " from " + ConfigurationSetting.SCHEMA.getDbTableName() + " as s where s.name = ?");
 				stmt.setString(1, name.toString());
 				ResultSet resultSet = executeQuery(stmt);
 				if (!resultSet.next()) {
@@ -160,36 +382,46 @@ public class JDBCDatabase implements IDatabase {
 	}
 	
 	private User getUser(Connection conn, String userName) throws SQLException {
-	    PreparedStatement stmt = conn.prepareStatement("select * from "+User.SCHEMA.getDbTableName()+" where username = ?");
-        stmt.setString(1, userName);
-        
-        ResultSet resultSet = stmt.executeQuery();
-        if (!resultSet.next()) {
-            return null;
-        }
-        
-        User user = new User();
-        load(user, resultSet, 1);
-        return user;
+	    // Connections are reused, so the statement must be closed here
+	    PreparedStatement stmt = conn.prepareStatement("select " + DBUtil.getColumnList(User.SCHEMA) + " from " + User.SCHEMA.getDbTableName() +" where username = ?");
+	    try {
+	        stmt.setString(1, userName);
+	        
+	        ResultSet resultSet = stmt.executeQuery();
+	        if (!resultSet.next()) {
+	            return null;
+	        }
+	        
+	        User user = new User();
+	        load(user, resultSet, 1);
+	        return user;
+	    } finally {
+	        DBUtil.closeQuietly(stmt);
+	    }
 	}
 	
 	private User getUser(Connection conn, int userId) throws SQLException {
-	    PreparedStatement stmt = conn.prepareStatement("select * from "+User.SCHEMA.getDbTableName()+" where id = ?");
-        stmt.setInt(1, userId);
-        
-        ResultSet resultSet = stmt.executeQuery();
-        if (!resultSet.next()) {
-            return null;
-        }
-        
-        User user = new User();
-        load(user, resultSet, 1);
-        return user;
+	    // Connections are reused, so the statement must be closed here
+	    PreparedStatement stmt = conn.prepareStatement("select " + DBUtil.getColumnList(User.SCHEMA) + " from " + User.SCHEMA.getDbTableName() +" where id = ?");
+	    try {
+	        stmt.setInt(1, userId);
+	        
+	        ResultSet resultSet = stmt.executeQuery();
+	        if (!resultSet.next()) {
+	            return null;
+	        }
+	        
+	        User user = new User();
+	        load(user, resultSet, 1);
+	        return user;
+	    } finally {
+	        DBUtil.closeQuietly(stmt);
+	    }
 	}
 	
 	public User getUserGivenId(final int userId) {
 		
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<User>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<User>() {
 			/* (non-Javadoc)
 			 * @see org.cloudcoder.app.server.persist.DatabaseRunnable#run(java.sql.Connection)
 			 */
@@ -210,29 +442,31 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public User authenticateUser(final String userName, final String password) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<User>() {
+		User user = databaseRun(new AbstractDatabaseRunnableNoAuthException<User>() {
 			@Override
 			public User run(Connection conn) throws SQLException {
-				User user=getUser(conn, userName);
-				
-				if (user == null) {
-					// No such user
-					return null;
-				}
-				
-				if (BCrypt.checkpw(password, user.getPasswordHash())) {
-					// Plaintext password matches hash: authentication succeeded
-					return user;
-				} else {
-					// Plaintext password does not match hash: authentication failed
-					return null;
-				}
+				return getUser(conn, userName);
 			}
 			@Override
 			public String getDescription() {
 				return "retrieving user";
 			}
 		});
+		
+		if (user == null) {
+			// No such user
+			return null;
+		}
+		
+		// Check the password after the connection has been released:
+		// hashing is slow, and shouldn't tie up a database connection.
+		if (BCrypt.checkpw(password, user.getPasswordHash())) {
+			// Plaintext password matches hash: authentication succeeded
+			return user;
+		} else {
+			// Plaintext password does not match hash: authentication failed
+			return null;
+		}
 	};
 	
 	
@@ -240,12 +474,12 @@ public class JDBCDatabase implements IDatabase {
 	@Override
     public List<User> getUsersInCourse(final int courseId)
     {
-	    return databaseRun(new AbstractDatabaseRunnableNoAuthException<List<User>>() {
+	    return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<List<User>>() {
             @Override
             public List<User> run(Connection conn) throws SQLException
             {
                 PreparedStatement stmt=prepareStatement(conn, 
-                        "select u.* " +
+                        "select " + DBUtil.getColumnList(User.SCHEMA, "u") +
                                 " from " + User.SCHEMA.getDbTableName() + " as u, " +
                                 CourseRegistration.SCHEMA.getDbTableName()+" as reg " +
                                 " where u.id =  reg.user_id " +
@@ -296,12 +530,12 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public Problem getProblem(final User user, final int problemId) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<Problem>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<Problem>() {
 			@Override
 			public Problem run(Connection conn) throws SQLException {
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select p.* from " + Problem.SCHEMA.getDbTableName() + " as p, " + Course.SCHEMA.getDbTableName() + " as c, " + CourseRegistration.SCHEMA.getDbTableName() + " as r " +
+						"select " + DBUtil.getColumnList(Problem.SCHEMA, "p") + " from " + Problem.SCHEMA.getDbTableName() + " as p, " + Course.SCHEMA.getDbTableName() + " as c, " + CourseRegistration.SCHEMA.getDbTableName() + " as r " +
 						" where p.problem_id = ? " +
 						"   and c.id = p.course_id " +
 						"   and r.course_id = c.id " +
@@ -337,7 +571,8 @@ public class JDBCDatabase implements IDatabase {
 	 */
 	@Override
 	public Problem getProblem(final int problemId) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<Problem>() {
+		// CachingDatabase caches the result, so it must not come from a lagging replica
+		return databaseRunReadOnlyOnPrimary(new AbstractDatabaseRunnableNoAuthException<Problem>() {
 			/* (non-Javadoc)
 			 * @see org.cloudcoder.app.server.persist.DatabaseRunnable#run(java.sql.Connection)
 			 */
@@ -345,7 +580,7 @@ public class JDBCDatabase implements IDatabase {
 			public Problem run(Connection conn) throws SQLException {
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select * from " + Problem.SCHEMA.getDbTableName() + " where problem_id = ?");
+						"select " + DBUtil.getColumnList(Problem.SCHEMA) + " from " + Problem.SCHEMA.getDbTableName() + " where problem_id = ?");
 				stmt.setInt(1, problemId);
 				
 				ResultSet resultSet = executeQuery(stmt);
@@ -368,12 +603,12 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public Change getMostRecentChange(final User user, final int problemId) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<Change>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<Change>() {
 			@Override
 			public Change run(Connection conn) throws SQLException {
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select c.* from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
+						"select " + DBUtil.getColumnList(Change.SCHEMA, "c") + " from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
 						" where c.event_id = e.id " +
 						"   and e.id = (select max(ee.id) from " + Change.SCHEMA.getDbTableName() + " as cc, " + Event.SCHEMA.getDbTableName() + " as ee " +
 						"                where cc.event_id = ee.id " +
@@ -385,7 +620,9 @@ public class JDBCDatabase implements IDatabase {
 				
 				ResultSet resultSet = executeQuery(stmt);
 				if (!resultSet.next()) {
-					return null;
+					// All of the changes may have been archived
+					List<Change> archived = loadLatestArchivedChanges(conn, this, SELECT_LATEST_CHANGE_ARCHIVE_SQL, user, problemId);
+					return archived.isEmpty() ? null : archived.get(archived.size() - 1);
 				}
 				
 				Change change = new Change();
@@ -400,12 +637,12 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public Change getMostRecentFullTextChange(final User user, final int problemId) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<Change>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<Change>() {
 			@Override
 			public Change run(Connection conn) throws SQLException {
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select c.* from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
+						"select " + DBUtil.getColumnList(Change.SCHEMA, "c") + " from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
 						" where c.event_id = e.id " +
 						"   and e.id = (select max(ee.id) from " + Change.SCHEMA.getDbTableName() + " as cc, " + Event.SCHEMA.getDbTableName() + " as ee " +
 						"                where cc.event_id = ee.id " +
@@ -419,6 +656,13 @@ public class JDBCDatabase implements IDatabase {
 
 				ResultSet resultSet = executeQuery(stmt);
 				if (!resultSet.next()) {
+					// The most recent full-text change may have been archived
+					List<Change> archived = loadLatestArchivedChanges(conn, this, SELECT_LATEST_FULL_TEXT_CHANGE_ARCHIVE_SQL, user, problemId);
+					for (int i = archived.size() - 1; i >= 0; i--) {
+						if (archived.get(i).getType() == ChangeType.FULL_TEXT) {
+							return archived.get(i);
+						}
+					}
 					return null;
 				}
 				Change change = new Change();
@@ -437,26 +681,22 @@ public class JDBCDatabase implements IDatabase {
 	 */
 	@Override
 	public Change getChange(final int changeEventId) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<Change>(){
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<Change>(){
 			/* (non-Javadoc)
 			 * @see org.cloudcoder.app.server.persist.DatabaseRunnable#run(java.sql.Connection)
 			 */
 			@Override
 			public Change run(Connection conn) throws SQLException {
-				PreparedStatement stmt = prepareStatement(
-						conn,
-						"select ch.*, e.* " +
-						"  from " + Change.SCHEMA.getDbTableName() + " as ch, " + Event.SCHEMA.getDbTableName() + " as e " +
-						" where e.id = ? and ch.event_id = e.id");
-				stmt.setInt(1, changeEventId);
-				
-				ResultSet resultSet = executeQuery(stmt);
-				if (resultSet.next()) {
-					Change change = getChangeAndEvent(resultSet);
+				Change change = loadChange(conn, this, changeEventId);
+				if (change != null) {
 					return change;
 				}
 				
-				return null;
+				// The change may have been archived
+				PreparedStatement archiveStmt = prepareStatement(conn, SELECT_CHANGE_ARCHIVES_CONTAINING_SQL);
+				archiveStmt.setInt(1, changeEventId);
+				archiveStmt.setInt(2, changeEventId);
+				return findArchivedChange(executeQuery(archiveStmt), changeEventId);
 			}
 			/* (non-Javadoc)
 			 * @see org.cloudcoder.app.server.persist.DatabaseRunnable#getDescription()
@@ -468,16 +708,57 @@ public class JDBCDatabase implements IDatabase {
 		});
 	}
 	
+	@Override
+	public Change getChange(final int changeEventId, final int userId, final int problemId) {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<Change>(){
+			@Override
+			public Change run(Connection conn) throws SQLException {
+				Change change = loadChange(conn, this, changeEventId);
+				if (change != null) {
+					return change;
+				}
+				
+				// The change may have been archived: the archives for a user and
+				// problem don't overlap, so only the one with the greatest first
+				// event id not after the change's event id can contain it
+				PreparedStatement archiveStmt = prepareStatement(conn, SELECT_USER_PROBLEM_CHANGE_ARCHIVE_CONTAINING_SQL);
+				archiveStmt.setInt(1, userId);
+				archiveStmt.setInt(2, problemId);
+				archiveStmt.setInt(3, changeEventId);
+				return findArchivedChange(executeQuery(archiveStmt), changeEventId);
+			}
+			@Override
+			public String getDescription() {
+				return "get text change";
+			}
+		});
+	}
+	
 	@Override
 	public List<Change> getAllChangesNewerThan(final User user, final int problemId, final int baseRev) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<List<Change>>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<List<Change>>() {
 			@Override
 			public List<Change> run(Connection conn) throws SQLException {
 				List<Change> result = new ArrayList<Change>();
 				
+				// Archived changes (if any) precede all of the changes
+				// still in the changes table
+				PreparedStatement archiveStmt = prepareStatement(conn, SELECT_CHANGE_ARCHIVES_NEWER_THAN_SQL);
+				archiveStmt.setInt(1, user.getId());
+				archiveStmt.setInt(2, problemId);
+				archiveStmt.setInt(3, baseRev);
+				ResultSet archiveResultSet = executeQuery(archiveStmt);
+				while (archiveResultSet.next()) {
+					for (Change change : loadArchivedChanges(archiveResultSet)) {
+						if (change.getEventId() > baseRev) {
+							result.add(change);
+						}
+					}
+				}
+				
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select c.* from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
+						"select " + DBUtil.getColumnList(Change.SCHEMA, "c") + ", " + DBUtil.getColumnList(Event.SCHEMA, "e") + " from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
 						" where c.event_id = e.id " +
 						"   and e.id > ? " +
 						"   and e.user_id = ? " +
@@ -488,11 +769,22 @@ public class JDBCDatabase implements IDatabase {
 				stmt.setInt(2, user.getId());
 				stmt.setInt(3, problemId);
 				
+				int numArchived = result.size();
 				ResultSet resultSet = executeQuery(stmt);
 				while (resultSet.next()) {
-					Change change = new Change();
-					load(change, resultSet, 1);
-					result.add(change);
+					result.add(getChangeAndEvent(resultSet));
+				}
+				
+				if (numArchived > 0 && numArchived < result.size()
+						&& result.get(numArchived).getEventId() < result.get(numArchived - 1).getEventId()) {
+					// A change committed while its neighbors were being archived
+					// can be left behind in the changes table
+					Collections.sort(result, new Comparator<Change>() {
+						@Override
+						public int compare(Change o1, Change o2) {
+							return o1.getEventId() - o2.getEventId();
+						}
+					});
 				}
 				
 				return result;
@@ -504,9 +796,70 @@ public class JDBCDatabase implements IDatabase {
 		});
 	}
 	
+	@Override
+	public TextCheckpoint getTextCheckpoint(final User user, final int problemId) {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<TextCheckpoint>() {
+			@Override
+			public TextCheckpoint run(Connection conn) throws SQLException {
+				PreparedStatement stmt = prepareStatement(
+						conn,
+						"select " + DBUtil.getColumnList(TextCheckpoint.SCHEMA, "tc") + " from " + TextCheckpoint.SCHEMA.getDbTableName() + " as tc " +
+						" where tc.user_id = ? " +
+						"   and tc.problem_id = ?"
+				);
+				stmt.setInt(1, user.getId());
+				stmt.setInt(2, problemId);
+				
+				ResultSet resultSet = executeQuery(stmt);
+				if (!resultSet.next()) {
+					return null;
+				}
+				TextCheckpoint checkpoint = new TextCheckpoint();
+				loadGeneric(checkpoint, resultSet, 1, TextCheckpoint.SCHEMA);
+				return checkpoint;
+			}
+			@Override
+			public String getDescription() {
+				return " retrieving text checkpoint";
+			}
+		});
+	}
+	
+	@Override
+	public void storeTextCheckpoint(final TextCheckpoint checkpoint) {
+		databaseRun(new AbstractDatabaseRunnableNoAuthException<Boolean>() {
+			@Override
+			public Boolean run(Connection conn) throws SQLException {
+				// Note that the text must be updated before the event id,
+				// since the assignments are evaluated left to right
+				PreparedStatement stmt = prepareStatement(
+						conn,
+						"insert into " + TextCheckpoint.SCHEMA.getDbTableName() +
+						" (user_id, problem_id, event_id, text) values (?, ?, ?, ?) " +
+						" on duplicate key update " +
+						"   text = if(values(event_id) > event_id, values(text), text), " +
+						"   event_id = greatest(event_id, values(event_id))"
+				);
+				stmt.setInt(1, checkpoint.getUserId());
+				stmt.setInt(2, checkpoint.getProblemId());
+				stmt.setInt(3, checkpoint.getEventId());
+				stmt.setString(4, checkpoint.getText());
+				
+				stmt.executeUpdate();
+				
+				return true;
+			}
+			@Override
+			public String getDescription() {
+				return " storing text checkpoint";
+			}
+		});
+	}
+	
 	@Override
 	public List<? extends Object[]> getCoursesForUser(final User user) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<List<? extends Object[]>>() {
+		// CachingDatabase caches the result, so it must not come from a lagging replica
+		return databaseRunReadOnlyOnPrimary(new AbstractDatabaseRunnableNoAuthException<List<? extends Object[]>>() {
 			@Override
 			public List<? extends Object[]> run(Connection conn) throws SQLException {
 				return doGetCoursesForUser(user, conn, this);
@@ -520,7 +873,7 @@ public class JDBCDatabase implements IDatabase {
 
 	@Override
 	public ProblemList getProblemsInCourse(final User user, final Course course) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<ProblemList>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<ProblemList>() {
 			@Override
 			public ProblemList run(Connection conn) throws SQLException {
 				return new ProblemList(doGetProblemsInCourse(user, course, conn, this));
@@ -538,17 +891,16 @@ public class JDBCDatabase implements IDatabase {
 	@Override
 	public List<ProblemAndSubmissionReceipt> getProblemAndSubscriptionReceiptsInCourse(
 			final User user, final Course course) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<List<ProblemAndSubmissionReceipt>>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<List<ProblemAndSubmissionReceipt>>() {
 			/* (non-Javadoc)
 			 * @see org.cloudcoder.app.server.persist.DatabaseRunnable#run(java.sql.Connection)
 			 */
 			@Override
 			public List<ProblemAndSubmissionReceipt> run(Connection conn)
 					throws SQLException {
-				// Get all problems for this user/course
-				List<Problem> problemList = doGetProblemsInCourse(user, course, conn, this);
-				
-				// Get all submission receipts for this user/course.
+				// Get all problems for this user/course, along with the user's
+				// latest and best submission receipts (if any) for each problem,
+				// as recorded in the user's statistics for the problem.
 				// Note that we join on course_registrations in order to ensure 
 				// that user is authorized to get information about the course.
 				// We also check for each problem that the user is either an instructor
@@ -557,35 +909,40 @@ public class JDBCDatabase implements IDatabase {
 				// access to.
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select r.*, e.* from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as r, " + Problem.SCHEMA.getDbTableName() + " as p, " + Event.SCHEMA.getDbTableName() + " as e, " + CourseRegistration.SCHEMA.getDbTableName() + " as cr " +
+						"select " + DBUtil.getColumnList(Problem.SCHEMA, "p") + ", " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "lsr") + ", " + DBUtil.getColumnList(Event.SCHEMA, "le") + ", " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "bsr") + ", " + DBUtil.getColumnList(Event.SCHEMA, "be") +
+						"  from " + Problem.SCHEMA.getDbTableName() + " as p " +
+						"  join " + CourseRegistration.SCHEMA.getDbTableName() + " as cr " +
+						"    on cr.course_id = p.course_id " +
+						"  left join " + UserProblemStats.SCHEMA.getDbTableName() + " as ups " +
+						"    on ups.user_id = cr.user_id and ups.problem_id = p.problem_id " +
+						"  left join " + SubmissionReceipt.SCHEMA.getDbTableName() + " as lsr " +
+						"    on lsr.event_id = ups.latest_submission_receipt_event_id " +
+						"  left join " + Event.SCHEMA.getDbTableName() + " as le " +
+						"    on le.id = lsr.event_id " +
+						"  left join " + SubmissionReceipt.SCHEMA.getDbTableName() + " as bsr " +
+						"    on bsr.event_id = ups.best_submission_receipt_event_id " +
+						"  left join " + Event.SCHEMA.getDbTableName() + " as be " +
+						"    on be.id = bsr.event_id " +
 						" where cr.user_id = ?" +
 						"   and cr.course_id = ? " +
 						"   and (cr.registration_type >= " + CourseRegistrationType.INSTRUCTOR.ordinal() + " or p.visible <> 0)" +
-						"   and p.course_id = cr.course_id " +
-						"   and e.problem_id = p.problem_id " +
-						"   and p." + Problem.DELETED.getName() + " = 0 " +
-						"   and e.user_id = cr.user_id " +
-						"   and r.event_id = e.id "
+						"   and p." + Problem.DELETED.getName() + " = 0 "
 				);
 				stmt.setInt(1, user.getId());
 				stmt.setInt(2, course.getId());
 				
-				// Map of problem ids to most recent submission receipt for problem
-				Map<Integer, SubmissionReceipt> problemIdToMostRecentSubmissionReceiptMap = new HashMap<Integer, SubmissionReceipt>();
+				List<ProblemAndSubmissionReceipt> result = new ArrayList<ProblemAndSubmissionReceipt>();
 				ResultSet resultSet = executeQuery(stmt);
 				while (resultSet.next()) {
-					SubmissionReceipt submissionReceipt = loadSubmissionReceiptAndEvent(resultSet);
-					SubmissionReceipt current = problemIdToMostRecentSubmissionReceiptMap.get(submissionReceipt.getEvent().getProblemId());
-					if (current == null || submissionReceipt.getEventId() > current.getEventId()) {
-						problemIdToMostRecentSubmissionReceiptMap.put(submissionReceipt.getEvent().getProblemId(), submissionReceipt);
-					}
-				}
-				
-				// Match up problems and corresponding submission receipts.
-				List<ProblemAndSubmissionReceipt> result = new ArrayList<ProblemAndSubmissionReceipt>();
-				for (Problem problem : problemList) {
-					SubmissionReceipt receipt = problemIdToMostRecentSubmissionReceiptMap.get(problem.getProblemId());
-					ProblemAndSubmissionReceipt problemAndSubscriptionReceipt = new ProblemAndSubmissionReceipt(problem, receipt);
+					int index = 1;
+					Problem problem = new Problem();
+					index = loadGeneric(problem, resultSet, index, Problem.SCHEMA);
+					SubmissionReceipt latest = loadOptionalSubmissionReceiptAndEvent(resultSet, index);
+					index += SubmissionReceipt.SCHEMA.getNumFields() + Event.SCHEMA.getNumFields();
+					SubmissionReceipt best = loadOptionalSubmissionReceiptAndEvent(resultSet, index);
+					
+					ProblemAndSubmissionReceipt problemAndSubscriptionReceipt = new ProblemAndSubmissionReceipt(problem, latest);
+					problemAndSubscriptionReceipt.setBestReceipt(best);
 					result.add(problemAndSubscriptionReceipt);
 				}
 				
@@ -612,7 +969,7 @@ public class JDBCDatabase implements IDatabase {
 				// Store Changes
 				PreparedStatement insertChange = prepareStatement(
 						conn,
-						"insert into " + Change.SCHEMA.getDbTableName() + " values (?, ?, ?, ?, ?, ?, ?, ?)"
+						INSERT_CHANGE_SQL
 				);
 				for (Change change : changeList) {
 					store(change, insertChange, 1);
@@ -631,12 +988,13 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public List<TestCase> getTestCasesForProblem(final int problemId) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<List<TestCase>>() {
+		// CachingDatabase caches the result, so it must not come from a lagging replica
+		return databaseRunReadOnlyOnPrimary(new AbstractDatabaseRunnableNoAuthException<List<TestCase>>() {
 			@Override
 			public List<TestCase> run(Connection conn) throws SQLException {
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select * from " + TestCase.SCHEMA.getDbTableName() + " where problem_id = ?");
+						"select " + DBUtil.getColumnList(TestCase.SCHEMA) + " from " + TestCase.SCHEMA.getDbTableName() + " where problem_id = ?");
 				stmt.setInt(1, problemId);
 				
 				List<TestCase> result = new ArrayList<TestCase>();
@@ -658,12 +1016,12 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public TestCase[] getTestCasesForProblem(final User authenticatedUser, final int problemId) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<TestCase[]>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<TestCase[]>() {
 			@Override
 			public TestCase[] run(Connection conn) throws SQLException {
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select tc.* " +
+						"select " + DBUtil.getColumnList(TestCase.SCHEMA, "tc") +
 						"   from " + TestCase.SCHEMA.getDbTableName() + " as tc, " + Problem.SCHEMA.getDbTableName() + " as p, " + CourseRegistration.SCHEMA.getDbTableName() + " as cr " +
 						"  where tc.problem_id = p.problem_id " +
 						"    and p.problem_id = ? " +
@@ -753,17 +1111,21 @@ public class JDBCDatabase implements IDatabase {
 	    PreparedStatement stmt=conn.prepareStatement("insert into " +User.SCHEMA.getDbTableName()+
                 " (username, password_hash) values (?, ?)");
 	    
-	    while (scan.hasNextLine()) {
-	        String line=scan.nextLine();
-	        String[] tokens=line.split("\t");
-	        String username=tokens[2];
-	        String password=tokens[3];
-	        stmt.setString(1, username);
-	        stmt.setString(2, password);
-	        stmt.addBatch();
+	    try {
+	        while (scan.hasNextLine()) {
+	            String line=scan.nextLine();
+	            String[] tokens=line.split("\t");
+	            String username=tokens[2];
+	            String password=tokens[3];
+	            stmt.setString(1, username);
+	            stmt.setString(2, password);
+	            stmt.addBatch();
+	        }
+	        stmt.execute();
+	        conn.commit();
+	    } finally {
+	        DBUtil.closeQuietly(stmt);
 	    }
-	    stmt.execute();
-	    conn.commit();
     }
 
 	/* (non-Javadoc)
@@ -780,7 +1142,7 @@ public class JDBCDatabase implements IDatabase {
 				// Get most recent submission receipt for user/problem
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select r.*, e.* from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as r, " + Event.SCHEMA.getDbTableName() + " as e " +
+						"select " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "r") + ", " + DBUtil.getColumnList(Event.SCHEMA, "e") + " from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as r, " + Event.SCHEMA.getDbTableName() + " as e " +
 						" where r.event_id = e.id " +
 						"   and e.id = (select max(ee.id) from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as rr, " + Event.SCHEMA.getDbTableName() + " as ee " +
 						"                where rr.event_id = ee.id " +
@@ -946,7 +1308,7 @@ public class JDBCDatabase implements IDatabase {
 	 */
 	@Override
 	public ProblemSummary createProblemSummary(final Problem problem) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<ProblemSummary>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<ProblemSummary>() {
 			/* (non-Javadoc)
 			 * @see org.cloudcoder.app.server.persist.DatabaseRunnable#run(java.sql.Connection)
 			 */
@@ -955,57 +1317,27 @@ public class JDBCDatabase implements IDatabase {
 				// Determine how many students (non-instructor users) are in this course
 				int numStudentsInCourse = doCountStudentsInCourse(problem, conn, this);
 				
-				// Get all SubmissionReceipts
+				// Get the incrementally-maintained statistics for the problem
+				// (no row means that no user has submitted yet)
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select sr.*, e.* " +
-						"  from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " + Event.SCHEMA.getDbTableName() + " as e " +
-						" where sr.event_id = e.id " +
-						"   and e.problem_id = ?");
+						"select " + DBUtil.getColumnList(ProblemStats.SCHEMA) + " from " + ProblemStats.SCHEMA.getDbTableName() + " where problem_id = ?");
 				stmt.setInt(1, problem.getProblemId());
 				
-				// Keep track of "best" submissions from each student.
-				HashMap<Integer, SubmissionReceipt> bestSubmissions = new HashMap<Integer, SubmissionReceipt>();
-				
+				ProblemStats stats = new ProblemStats();
+				stats.setProblemId(problem.getProblemId());
 				ResultSet resultSet = executeQuery(stmt);
-				while (resultSet.next()) {
-					SubmissionReceipt receipt = loadSubmissionReceiptAndEvent(resultSet);
-					
-					SubmissionReceipt prevBest = bestSubmissions.get(receipt.getEvent().getUserId());
-					SubmissionStatus curStatus = receipt.getStatus();
-					//SubmissionStatus prevStatus = prevBest.getStatus();
-					if (prevBest == null
-							|| curStatus == SubmissionStatus.TESTS_PASSED && prevBest.getStatus() != SubmissionStatus.TESTS_PASSED
-							|| receipt.getNumTestsPassed() > prevBest.getNumTestsPassed()) {
-						// New receipt is better than the previous receipt
-						bestSubmissions.put(receipt.getEvent().getUserId(), receipt);
-					}
-				}
-				
-				// Aggregate the data
-				int started = 0;
-				int anyPassed = 0;
-				int allPassed = 0;
-				for (SubmissionReceipt r : bestSubmissions.values()) {
-					if (r.getStatus() == SubmissionStatus.TESTS_PASSED) {
-						started++;
-						allPassed++;
-						anyPassed++;
-					} else if (r.getNumTestsPassed() > 0) {
-						started++;
-						anyPassed++;
-					} else {
-						started++;
-					}
+				if (resultSet.next()) {
+					load(stats, resultSet, 1);
 				}
 				
 				// Create the ProblemSummary
 				ProblemSummary problemSummary = new ProblemSummary();
 				problemSummary.setProblem(problem);
 				problemSummary.setNumStudents(numStudentsInCourse);
-				problemSummary.setNumStarted(started);
-				problemSummary.setNumPassedAtLeastOneTest(anyPassed);
-				problemSummary.setNumCompleted(allPassed);
+				problemSummary.setNumStarted(stats.getNumStarted());
+				problemSummary.setNumPassedAtLeastOneTest(stats.getNumPassedAtLeastOneTest());
+				problemSummary.setNumCompleted(stats.getNumCompleted());
 				
 				return problemSummary;
 			}
@@ -1024,7 +1356,7 @@ public class JDBCDatabase implements IDatabase {
 	 */
 	@Override
 	public SubmissionReceipt getSubmissionReceipt(final int submissionReceiptId) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<SubmissionReceipt>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<SubmissionReceipt>() {
 			/* (non-Javadoc)
 			 * @see org.cloudcoder.app.server.persist.DatabaseRunnable#run(java.sql.Connection)
 			 */
@@ -1032,11 +1364,11 @@ public class JDBCDatabase implements IDatabase {
 			public SubmissionReceipt run(Connection conn) throws SQLException {
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select sr.*, e.* " +
+						"select " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "sr") + ", " + DBUtil.getColumnList(Event.SCHEMA, "e") +
 						"  from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " +
 						"       " + Event.SCHEMA.getDbTableName() + " as e " +
 						" where sr.event_id = e.id " +
-						"   and e.event_id = ?");
+						"   and sr.event_id = ?");
 				stmt.setInt(1, submissionReceiptId);
 				
 				ResultSet resultSet = executeQuery(stmt);
@@ -1057,6 +1389,103 @@ public class JDBCDatabase implements IDatabase {
 		});
 	}
 	
+	@Override
+	public SubmissionReceipt getSubmissionReceiptForChange(final int userId, final int changeEventId) {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<SubmissionReceipt>() {
+			@Override
+			public SubmissionReceipt run(Connection conn) throws SQLException {
+				return doGetSubmissionReceiptForChange(conn, this, userId, changeEventId);
+			}
+			@Override
+			public String getDescription() {
+				return " getting submission receipt for change";
+			}
+		});
+	}
+	
+	@Override
+	public SubmissionReceipt insertSubmissionReceiptIfAbsent(final SubmissionReceipt receipt, final TestResult[] testResultList) {
+		return databaseRun(new AbstractDatabaseRunnableNoAuthException<SubmissionReceipt>() {
+			@Override
+			public SubmissionReceipt run(Connection conn) throws SQLException {
+				SubmissionReceipt existing = doGetSubmissionReceiptForChange(
+						conn, this, receipt.getEvent().getUserId(), receipt.getLastEditEventId());
+				if (existing != null) {
+					return existing;
+				}
+				doInsertSubmissionReceipt(receipt, testResultList, conn, this);
+				return receipt;
+			}
+			@Override
+			public String getDescription() {
+				return " storing submission receipt if absent";
+			}
+		});
+	}
+	
+	private SubmissionReceipt doGetSubmissionReceiptForChange(
+			Connection conn,
+			AbstractDatabaseRunnableNoAuthException<?> dbRunnable,
+			int userId,
+			int changeEventId) throws SQLException {
+		// The receipt's event follows the change's event, for the
+		// same user and problem, so the user_id index narrows the search
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				"select " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "sr") + ", " + DBUtil.getColumnList(Event.SCHEMA, "e") +
+				"  from " + Event.SCHEMA.getDbTableName() + " as ce, " +
+				"       " + Event.SCHEMA.getDbTableName() + " as e, " +
+				"       " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr " +
+				" where ce.id = ? " +
+				"   and ce.user_id = ? " +
+				"   and e.user_id = ce.user_id " +
+				"   and e.problem_id = ce.problem_id " +
+				"   and e.id > ce.id " +
+				"   and sr.event_id = e.id " +
+				"   and sr.last_edit_event_id = ce.id " +
+				" order by e.id asc " +
+				" limit 1");
+		stmt.setInt(1, changeEventId);
+		stmt.setInt(2, userId);
+		
+		ResultSet resultSet = dbRunnable.executeQuery(stmt);
+		if (resultSet.next()) {
+			return loadSubmissionReceiptAndEvent(resultSet);
+		}
+		return null;
+	}
+	
+	@Override
+	public TestResult[] getTestResultsForSubmission(final int submissionReceiptEventId) {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<TestResult[]>() {
+			@Override
+			public TestResult[] run(Connection conn) throws SQLException {
+				PreparedStatement stmt = prepareStatement(
+						conn,
+						"select " + DBUtil.getColumnList(TestResult.SCHEMA) + " from " + TestResult.SCHEMA.getDbTableName() +
+						" where submission_receipt_event_id = ? order by id asc");
+				stmt.setInt(1, submissionReceiptEventId);
+				
+				List<TestResult> result = new ArrayList<TestResult>();
+				ResultSet resultSet = executeQuery(stmt);
+				while (resultSet.next()) {
+					TestResult testResult = new TestResult();
+					loadGeneric(testResult, resultSet, 1, TestResult.SCHEMA);
+					result.add(testResult);
+				}
+				
+				// Load outputs stored as output blobs
+				OutputBlobs.loadOutputs(conn, result);
+				
+				return result.toArray(new TestResult[result.size()]);
+			}
+			@Override
+			public String getDescription() {
+				return " getting test results for submission";
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.cloudcoder.app.server.persist.IDatabase#insertTestResults(org.cloudcoder.app.shared.model.TestResult[], int)
 	 */
@@ -1106,13 +1535,26 @@ public class JDBCDatabase implements IDatabase {
 				PreparedStatement stmt = prepareStatement(
 						conn,
 						"update " + SubmissionReceipt.SCHEMA.getDbTableName() + 
-						"  set status = ?, num_tests_attempted = ?, num_tests_passed = ?");
+						"  set status = ?, num_tests_attempted = ?, num_tests_passed = ?" +
+						" where event_id = ?");
 				stmt.setInt(1, receipt.getStatus().ordinal());
 				stmt.setInt(2, receipt.getNumTestsAttempted());
 				stmt.setInt(3, receipt.getNumTestsPassed());
+				stmt.setInt(4, receipt.getEventId());
 				
 				stmt.executeUpdate();
 				
+				// The receipt's status may have gotten better or worse,
+				// so recompute the user's statistics for the problem
+				PreparedStatement findEvent = prepareStatement(
+						conn,
+						"select user_id, problem_id from " + Event.SCHEMA.getDbTableName() + " where id = ?");
+				findEvent.setInt(1, receipt.getEventId());
+				ResultSet resultSet = executeQuery(findEvent);
+				if (resultSet.next()) {
+					doUpdateProblemStats(resultSet.getInt(1), resultSet.getInt(2), null, conn, this);
+				}
+				
 				return true;
 			}
 			/* (non-Javadoc)
@@ -1191,13 +1633,13 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public RepoProblemAndTestCaseList getRepoProblemAndTestCaseList(final String hash) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<RepoProblemAndTestCaseList>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<RepoProblemAndTestCaseList>() {
 			@Override
 			public RepoProblemAndTestCaseList run(Connection conn) throws SQLException {
 				// Query to find the RepoProblem
 				PreparedStatement findRepoProblem = prepareStatement(
 						conn,
-						"select * from " + RepoProblem.SCHEMA.getDbTableName() + " as rp " +
+						"select " + DBUtil.getColumnList(RepoProblem.SCHEMA) + " from " + RepoProblem.SCHEMA.getDbTableName() + " as rp " +
 						" where rp." + RepoProblem.HASH.getName() + " = ?");
 				findRepoProblem.setString(1, hash);
 				
@@ -1272,7 +1714,7 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public List<RepoProblemSearchResult> searchRepositoryExercises(final RepoProblemSearchCriteria searchCriteria) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<List<RepoProblemSearchResult>>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<List<RepoProblemSearchResult>>() {
 			@Override
 			public List<RepoProblemSearchResult> run(Connection conn) throws SQLException {
 				RepoProblemSearch search = new RepoProblemSearch();
@@ -1289,7 +1731,7 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public CourseRegistration findCourseRegistration(final User user, final Course course) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<CourseRegistration>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<CourseRegistration>() {
 			@Override
 			public CourseRegistration run(Connection conn) throws SQLException {
 				int userId = user.getId();
@@ -1306,45 +1748,26 @@ public class JDBCDatabase implements IDatabase {
 	@Override
 	public List<Pair<User, SubmissionReceipt>> getBestSubmissionReceipts(
 			final Course course, final int problemId) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<List<Pair<User, SubmissionReceipt>>>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<List<Pair<User, SubmissionReceipt>>>() {
 			@Override
 			public List<Pair<User, SubmissionReceipt>> run(Connection conn)
 					throws SQLException {
 
-				// Clearly, my SQL is either amazing or appalling.
-				// Probably the latter.
+				// Each user's best submission receipt is recorded in
+				// the user's statistics for the problem
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select u.*, e.*, sr.* " +
-						"  from cc_users as u, cc_events as e, cc_submission_receipts as sr," +
-						"  (select i_u.id as user_id, best.max_tests_passed as max_tests_passed, MIN(i_e.timestamp) as timestamp" +
-						"    from cc_users as i_u," +
-						"         cc_events as i_e," +
-						"         cc_submission_receipts as i_sr," +
-						"         (select ii_u.id as user_id, MAX(ii_sr.num_tests_passed) as max_tests_passed" +
-						"            from cc_users as ii_u, cc_events as ii_e, cc_submission_receipts as ii_sr " +
-						"           where ii_u.id = ii_e.user_id " +
-						"             and ii_e.id = ii_sr.event_id " +
-						"             and ii_e.problem_id = ?" +
-						"          group by ii_u.id) as best" +
-						"" +
-						"    where i_u.id = i_e.user_id" +
-						"      and i_e.id = i_sr.event_id" +
-						"      and i_e.problem_id = ?" +
-						"      and i_u.id = best.user_id" +
-						"      and i_sr.num_tests_passed = best.max_tests_passed" +
-						"      group by i_u.id, best.max_tests_passed) as earliest_and_best" +
-						"" +
-						" where u.id = e.user_id" +
-						"     and e.id = sr.event_id" +
-						"     and e.problem_id = ?" +
-						"     and u.id = earliest_and_best.user_id" +
-						"     and sr.num_tests_passed = earliest_and_best.max_tests_passed" +
-						"     and e.timestamp = earliest_and_best.timestamp"
+						"select " + DBUtil.getColumnList(User.SCHEMA, "u") + ", " + DBUtil.getColumnList(Event.SCHEMA, "e") + ", " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "sr") +
+						"  from " + UserProblemStats.SCHEMA.getDbTableName() + " as ups, " +
+						"       " + User.SCHEMA.getDbTableName() + " as u, " +
+						"       " + Event.SCHEMA.getDbTableName() + " as e, " +
+						"       " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr " +
+						" where ups.problem_id = ? " +
+						"   and u.id = ups.user_id " +
+						"   and sr.event_id = ups.best_submission_receipt_event_id " +
+						"   and e.id = sr.event_id"
 				);
 				stmt.setInt(1, problemId);
-				stmt.setInt(2, problemId);
-				stmt.setInt(3, problemId);
 				
 				ResultSet resultSet = executeQuery(stmt);
 				List<Pair<User, SubmissionReceipt>> result = new ArrayList<Pair<User,SubmissionReceipt>>();
@@ -1438,12 +1861,12 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public UserRegistrationRequest findUserRegistrationRequest(final String secret) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<UserRegistrationRequest>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<UserRegistrationRequest>() {
 			@Override
 			public UserRegistrationRequest run(Connection conn) throws SQLException {
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select * from " + UserRegistrationRequest.SCHEMA.getDbTableName() + " as urr " +
+						"select " + DBUtil.getColumnList(UserRegistrationRequest.SCHEMA) + " from " + UserRegistrationRequest.SCHEMA.getDbTableName() + " as urr " +
 						" where urr." + UserRegistrationRequest.SECRET.getName() + " = ?"
 				);
 				stmt.setString(1, secret);
@@ -1505,7 +1928,7 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public List<RepoProblemTag> getProblemTags(final int repoProblemId) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<List<RepoProblemTag>>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<List<RepoProblemTag>>() {
 			@Override
 			public List<RepoProblemTag> run(Connection conn) throws SQLException {
 				// Order the tags by decreasing order of popularity
@@ -1513,7 +1936,7 @@ public class JDBCDatabase implements IDatabase {
 				// Return at most 8 tags.
 				PreparedStatement stmt = prepareStatement(
 						conn,
-						"select rpt.*, count(rpt." + RepoProblemTag.NAME.getName() + ") as count " +
+						"select " + DBUtil.getColumnList(RepoProblemTag.SCHEMA, "rpt") + ", count(rpt." + RepoProblemTag.NAME.getName() + ") as count " +
 						"  from " + RepoProblemTag.SCHEMA.getDbTableName() + " as rpt " +
 						" where rpt." + RepoProblemTag.REPO_PROBLEM_ID.getName() + " = ? " +
 						" group by rpt." + RepoProblemTag.NAME.getName() + " " +
@@ -1566,7 +1989,7 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public List<String> suggestTagNames(final String term) {
-		return databaseRun(new AbstractDatabaseRunnableNoAuthException<List<String>>() {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<List<String>>() {
 			@Override
 			public List<String> run(Connection conn) throws SQLException {
 				PreparedStatement stmt = prepareStatement(
@@ -1592,6 +2015,274 @@ public class JDBCDatabase implements IDatabase {
 			}
 		});
 	}
+	
+	@Override
+	public List<SubmissionReceipt> getSubmissionReceiptsInTimeRange(final long startTime, final long endTime) {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<List<SubmissionReceipt>>() {
+			@Override
+			public List<SubmissionReceipt> run(Connection conn) throws SQLException {
+				PreparedStatement stmt = prepareStatement(
+						conn,
+						"select " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "sr") + ", " + DBUtil.getColumnList(Event.SCHEMA, "e") +
+						"  from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " +
+						"       " + Event.SCHEMA.getDbTableName() + " as e " +
+						" where sr.event_id = e.id " +
+						"   and e.timestamp >= ? " +
+						"   and e.timestamp < ? " +
+						" order by e.timestamp asc"
+				);
+				stmt.setLong(1, startTime);
+				stmt.setLong(2, endTime);
+				
+				List<SubmissionReceipt> result = new ArrayList<SubmissionReceipt>();
+				ResultSet resultSet = executeQuery(stmt);
+				while (resultSet.next()) {
+					result.add(loadSubmissionReceiptAndEvent(resultSet));
+				}
+				
+				return result;
+			}
+			@Override
+			public String getDescription() {
+				return " getting submission receipts in time range";
+			}
+		});
+	}
+	
+	@Override
+	public List<SubmissionReceipt> getSampledSubmissionReceiptsInTimeRange(final long startTime, final long endTime, final double sampleFraction) {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<List<SubmissionReceipt>>() {
+			@Override
+			public List<SubmissionReceipt> run(Connection conn) throws SQLException {
+				// Sample on a hash of the event id, so that the same range and
+				// fraction always select the same submissions
+				PreparedStatement stmt = prepareStatement(
+						conn,
+						"select " + DBUtil.getColumnList(SubmissionReceipt.SCHEMA, "sr") + ", " + DBUtil.getColumnList(Event.SCHEMA, "e") +
+						"  from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " +
+						"       " + Event.SCHEMA.getDbTableName() + " as e " +
+						" where sr.event_id = e.id " +
+						"   and e.timestamp >= ? " +
+						"   and e.timestamp < ? " +
+						"   and sr.status <> ? " +
+						"   and sr.status <> ? " +
+						"   and crc32(e.id) < ? " +
+						" order by e.timestamp asc"
+				);
+				stmt.setLong(1, startTime);
+				stmt.setLong(2, endTime);
+				stmt.setInt(3, SubmissionStatus.STARTED.ordinal());
+				stmt.setInt(4, SubmissionStatus.NOT_STARTED.ordinal());
+				stmt.setLong(5, (long) (Math.max(0.0, Math.min(1.0, sampleFraction)) * 0x100000000L));
+				
+				List<SubmissionReceipt> result = new ArrayList<SubmissionReceipt>();
+				ResultSet resultSet = executeQuery(stmt);
+				while (resultSet.next()) {
+					result.add(loadSubmissionReceiptAndEvent(resultSet));
+				}
+				
+				return result;
+			}
+			@Override
+			public String getDescription() {
+				return " getting sampled submission receipts in time range";
+			}
+		});
+	}
+	
+	@Override
+	public int exportData(final ExportQuery query, final ExportRowHandler handler) {
+		return databaseRunReadOnly(new AbstractDatabaseRunnableNoAuthException<Integer>() {
+			@Override
+			public Integer run(Connection conn) throws SQLException {
+				return new DataExport(conn, query, handler).export();
+			}
+			@Override
+			public String getDescription() {
+				return " exporting " + query.getType().getName();
+			}
+		});
+	}
+
+	@Override
+	public void enqueueSubmission(final QueuedSubmission queuedSubmission) {
+		databaseRun(new AbstractDatabaseRunnableNoAuthException<Boolean>() {
+			@Override
+			public Boolean run(Connection conn) throws SQLException {
+				DBUtil.storeModelObject(conn, queuedSubmission);
+				return true;
+			}
+			@Override
+			public String getDescription() {
+				return " queueing submission";
+			}
+		});
+	}
+	
+	@Override
+	public QueuedSubmission claimQueuedSubmission(final String claimant, final long claimTime) {
+		return databaseRun(new AbstractDatabaseRunnableNoAuthException<QueuedSubmission>() {
+			@Override
+			public QueuedSubmission run(Connection conn) throws SQLException {
+				// MySQL 5.x has no "skip locked", so rather than selecting
+				// a row for update, atomically mark the first pending row
+				// as claimed.  Concurrent claimants only wait for the
+				// (single row, very short) claim transaction, and never
+				// claim the same row.
+				PreparedStatement claim = prepareStatement(
+						conn,
+						"update " + QueuedSubmission.SCHEMA.getDbTableName() +
+						"   set status = ?, claimed_by = ?, claim_time = ?, num_attempts = num_attempts + 1" +
+						" where status = ?" +
+						" order by submission_type asc, id asc" +
+						" limit 1");
+				claim.setInt(1, QueuedSubmissionStatus.CLAIMED.ordinal());
+				claim.setString(2, claimant);
+				claim.setLong(3, claimTime);
+				claim.setInt(4, QueuedSubmissionStatus.PENDING.ordinal());
+				if (claim.executeUpdate() == 0) {
+					return null;
+				}
+				
+				PreparedStatement stmt = prepareStatement(
+						conn,
+						"select " + DBUtil.getColumnList(QueuedSubmission.SCHEMA) + " from " + QueuedSubmission.SCHEMA.getDbTableName() +
+						" where claimed_by = ? and status = ? and claim_time = ?");
+				stmt.setString(1, claimant);
+				stmt.setInt(2, QueuedSubmissionStatus.CLAIMED.ordinal());
+				stmt.setLong(3, claimTime);
+				ResultSet resultSet = executeQuery(stmt);
+				if (!resultSet.next()) {
+					throw new SQLException("Could not find claimed submission");
+				}
+				QueuedSubmission queuedSubmission = new QueuedSubmission();
+				loadGeneric(queuedSubmission, resultSet, 1, QueuedSubmission.SCHEMA);
+				return queuedSubmission;
+			}
+			@Override
+			public String getDescription() {
+				return " claiming queued submission";
+			}
+		});
+	}
+	
+	@Override
+	public boolean updateQueuedSubmission(final QueuedSubmission queuedSubmission,
+			final QueuedSubmissionStatus expectedStatus, final String expectedClaimant) {
+		return databaseRun(new AbstractDatabaseRunnableNoAuthException<Boolean>() {
+			@Override
+			public Boolean run(Connection conn) throws SQLException {
+				PreparedStatement stmt = prepareStatement(
+						conn,
+						"update " + QueuedSubmission.SCHEMA.getDbTableName() +
+						"   set status = ?, claimed_by = ?, claim_time = ?, result = ?, error = ?" +
+						" where id = ? and status = ? and claimed_by = ?");
+				stmt.setInt(1, queuedSubmission.getStatus().ordinal());
+				stmt.setString(2, queuedSubmission.getClaimedBy());
+				stmt.setLong(3, queuedSubmission.getClaimTime());
+				stmt.setBytes(4, queuedSubmission.getResult());
+				stmt.setString(5, queuedSubmission.getError());
+				stmt.setInt(6, queuedSubmission.getId());
+				stmt.setInt(7, expectedStatus.ordinal());
+				stmt.setString(8, expectedClaimant);
+				return stmt.executeUpdate() > 0;
+			}
+			@Override
+			public String getDescription() {
+				return " updating queued submission";
+			}
+		});
+	}
+	
+	@Override
+	public QueuedSubmission getQueuedSubmission(final int queuedSubmissionId) {
+		// The result is usually written by a different node, so it must
+		// not be read from a (lagging) replica
+		return databaseRunReadOnlyOnPrimary(new AbstractDatabaseRunnableNoAuthException<QueuedSubmission>() {
+			@Override
+			public QueuedSubmission run(Connection conn) throws SQLException {
+				PreparedStatement stmt = prepareStatement(
+						conn,
+						"select " + DBUtil.getColumnList(QueuedSubmission.SCHEMA) + " from " + QueuedSubmission.SCHEMA.getDbTableName() + " where id = ?");
+				stmt.setInt(1, queuedSubmissionId);
+				ResultSet resultSet = executeQuery(stmt);
+				if (!resultSet.next()) {
+					return null;
+				}
+				QueuedSubmission queuedSubmission = new QueuedSubmission();
+				loadGeneric(queuedSubmission, resultSet, 1, QueuedSubmission.SCHEMA);
+				return queuedSubmission;
+			}
+			@Override
+			public String getDescription() {
+				return " getting queued submission";
+			}
+		});
+	}
+	
+	@Override
+	public Pair<Integer, Long> getPendingQueuedSubmissionStats(final SubmissionType submissionType) {
+		// Pending submissions are enqueued by every node, so the
+		// statistics must not be read from a (lagging) replica
+		return databaseRunReadOnlyOnPrimary(new AbstractDatabaseRunnableNoAuthException<Pair<Integer, Long>>() {
+			@Override
+			public Pair<Integer, Long> run(Connection conn) throws SQLException {
+				PreparedStatement stmt = prepareStatement(
+						conn,
+						"select count(*), min(enqueue_time) from " + QueuedSubmission.SCHEMA.getDbTableName() +
+						" where status = ? and submission_type = ?");
+				stmt.setInt(1, QueuedSubmissionStatus.PENDING.ordinal());
+				stmt.setInt(2, submissionType.ordinal());
+				ResultSet resultSet = executeQuery(stmt);
+				Pair<Integer, Long> result = new Pair<Integer, Long>();
+				result.setLeft(0);
+				result.setRight(0L);
+				if (resultSet.next()) {
+					result.setLeft(resultSet.getInt(1));
+					result.setRight(resultSet.getLong(2)); // 0 if null
+				}
+				return result;
+			}
+			@Override
+			public String getDescription() {
+				return " getting submission queue statistics";
+			}
+		});
+	}
+	
+	@Override
+	public int cleanUpQueuedSubmissions(final long staleClaimTime, final long expireTime) {
+		return databaseRun(new AbstractDatabaseRunnableNoAuthException<Integer>() {
+			@Override
+			public Integer run(Connection conn) throws SQLException {
+				PreparedStatement requeue = prepareStatement(
+						conn,
+						"update " + QueuedSubmission.SCHEMA.getDbTableName() +
+						"   set status = ?, claimed_by = ''" +
+						" where status = ? and claim_time < ?");
+				requeue.setInt(1, QueuedSubmissionStatus.PENDING.ordinal());
+				requeue.setInt(2, QueuedSubmissionStatus.CLAIMED.ordinal());
+				requeue.setLong(3, staleClaimTime);
+				int numRequeued = requeue.executeUpdate();
+				
+				PreparedStatement delete = prepareStatement(
+						conn,
+						"delete from " + QueuedSubmission.SCHEMA.getDbTableName() +
+						" where status in (?, ?, ?) and enqueue_time < ?");
+				delete.setInt(1, QueuedSubmissionStatus.COMPLETE.ordinal());
+				delete.setInt(2, QueuedSubmissionStatus.FAILED.ordinal());
+				delete.setInt(3, QueuedSubmissionStatus.CANCELLED.ordinal());
+				delete.setLong(4, expireTime);
+				delete.executeUpdate();
+				
+				return numRequeued;
+			}
+			@Override
+			public String getDescription() {
+				return " cleaning up submission queue";
+			}
+		});
+	}
 
 	/**
 	 * Run a database transaction and return the result.
@@ -1602,8 +2293,38 @@ public class JDBCDatabase implements IDatabase {
 	 * @return the result
 	 */
 	public<E> E databaseRun(AbstractDatabaseRunnableNoAuthException<E> databaseRunnable) {
+		return doDatabaseRunNoAuthException(databaseRunnable, TransactionKind.READ_WRITE);
+	}
+	
+	/**
+	 * Run a read-only database transaction and return the result.
+	 * If a read replica is configured, the transaction may run on
+	 * the replica.
+	 * 
+	 * @param databaseRunnable the transaction to run
+	 * @return the result
+	 */
+	public<E> E databaseRunReadOnly(AbstractDatabaseRunnableNoAuthException<E> databaseRunnable) {
+		return doDatabaseRunNoAuthException(databaseRunnable, TransactionKind.READ_ONLY);
+	}
+	
+	/**
+	 * Run a read-only database transaction on the primary database
+	 * and return the result.  This is for reads whose results are cached
+	 * (e.g., by {@link CachingDatabase}), which must not see stale data
+	 * from a lagging replica.  Unlike {@link #databaseRun(AbstractDatabaseRunnableNoAuthException)},
+	 * the transaction doesn't count as a write by the current session.
+	 * 
+	 * @param databaseRunnable the transaction to run
+	 * @return the result
+	 */
+	public<E> E databaseRunReadOnlyOnPrimary(AbstractDatabaseRunnableNoAuthException<E> databaseRunnable) {
+		return doDatabaseRunNoAuthException(databaseRunnable, TransactionKind.READ_ONLY_PRIMARY);
+	}
+	
+	private<E> E doDatabaseRunNoAuthException(AbstractDatabaseRunnableNoAuthException<E> databaseRunnable, TransactionKind kind) {
 		try {
-			return doDatabaseRun(databaseRunnable);
+			return doDatabaseRun(databaseRunnable, kind);
 		} catch (CloudCoderAuthenticationException e) {
 			// The fact that the method takes an
 			// AbstractDatabaseRunnableNoAuthException guarantees that the transaction
@@ -1621,35 +2342,74 @@ public class JDBCDatabase implements IDatabase {
 	 * @return the result
 	 */
 	public<E> E databaseRunAuth(AbstractDatabaseRunnable<E> databaseRunnable) throws CloudCoderAuthenticationException {
-		return doDatabaseRun(databaseRunnable);
+		return doDatabaseRun(databaseRunnable, TransactionKind.READ_WRITE);
 	}
 
-	private<E> E doDatabaseRun(DatabaseRunnable<E> databaseRunnable) throws CloudCoderAuthenticationException {
+	private<E> E doDatabaseRun(DatabaseRunnable<E> databaseRunnable, TransactionKind kind) throws CloudCoderAuthenticationException {
+		ConnectionSource source = chooseConnectionSource(kind);
 		try {
-			Connection conn = null;
+			PooledConnection pooled = null;
 			boolean committed = false;
 			try {
-				conn = getConnection();
+				pooled = getConnection(source);
+				if (source != primary && pooled == null) {
+					// Replica is unavailable: fall back on the primary database
+					source = primary;
+					pooled = source.getConnection();
+					replicaReadOnlyCount.decrementAndGet();
+					primaryReadOnlyCount.incrementAndGet();
+				}
+				Connection conn = pooled.conn;
+				if (databaseRunnable instanceof AbstractDatabaseRunnable) {
+					((AbstractDatabaseRunnable<?>) databaseRunnable).setStatementCache(pooled.statementCache);
+				}
 				conn.setAutoCommit(false);
 				// FIXME: should retry if deadlock is detected
 				E result = databaseRunnable.run(conn);
 				conn.commit();
 				committed = true;
+				if (kind == TransactionKind.READ_WRITE) {
+					ReadYourWrites.recordWrite();
+				}
 				return result;
 			} finally {
-				if (conn != null) {
-					if (!committed) {
-						conn.rollback();
+				if (pooled != null) {
+					// The connection is only reused if it is returned to
+					// a clean state (no open transaction)
+					boolean reusable = false;
+					try {
+						if (!committed) {
+							pooled.conn.rollback();
+						}
+						pooled.conn.setAutoCommit(true);
+						reusable = true;
+					} finally {
+						databaseRunnable.cleanup();
+						source.releaseConnection(reusable);
 					}
-					databaseRunnable.cleanup();
-					conn.setAutoCommit(true);
-					releaseConnection();
 				}
 			}
 		} catch (SQLException e) {
 			throw new PersistenceException("SQLException", e);
 		}
 	}
+	
+	/**
+	 * Get a connection from given source.  If the source is the replica
+	 * and a connection can't be made, returns null (so that the caller
+	 * can use the primary database instead).
+	 */
+	private PooledConnection getConnection(ConnectionSource source) throws SQLException {
+		if (source == primary) {
+			return source.getConnection();
+		}
+		try {
+			return source.getConnection();
+		} catch (SQLException e) {
+			logger.warn("Could not connect to " + source.name + " database, using primary database", e);
+			return null;
+		}
+	}
 
 	/**
 	 * Store the Event objects embedded in the given IContainsEvent objects.
@@ -1663,7 +2423,7 @@ public class JDBCDatabase implements IDatabase {
 			throws SQLException {
 		PreparedStatement insertEvent = dbRunnable.prepareStatement(
 				conn,
-				"insert into " + Event.SCHEMA.getDbTableName() + " values (NULL, ?, ?, ?, ?)", 
+				INSERT_EVENT_SQL, 
 				Statement.RETURN_GENERATED_KEYS
 		);
 		for (IContainsEvent change : containsEventList) {
@@ -1704,7 +2464,7 @@ public class JDBCDatabase implements IDatabase {
 		// Insert the SubmissionReceipt
 		PreparedStatement stmt = dbRunnable.prepareStatement(
 				conn,
-				"insert into " + SubmissionReceipt.SCHEMA.getDbTableName() + " values (?, ?, ?, ?, ?)",
+				INSERT_SUBMISSION_RECEIPT_SQL,
 				PreparedStatement.RETURN_GENERATED_KEYS
 		);
 		store(receipt, stmt, 1);
@@ -1720,21 +2480,180 @@ public class JDBCDatabase implements IDatabase {
 		// Store the TestResults
 //		doInsertTestResults(testResultList, receipt.getId(), conn, dbRunnable);
 		doInsertTestResults(testResultList, receipt.getEventId(), conn, dbRunnable);
+		
+		// Update the user's (and problem's) statistics
+		doUpdateProblemStats(receipt.getEvent().getUserId(), receipt.getEvent().getProblemId(), receipt, conn, dbRunnable);
+	}
+
+	/**
+	 * Update the {@link UserProblemStats} for given user and problem,
+	 * and apply the resulting changes to the problem's {@link ProblemStats}.
+	 * Must be called in the same transaction that adds or updates
+	 * a submission receipt.
+	 * 
+	 * @param userId      the user id
+	 * @param problemId   the problem id
+	 * @param newReceipt  a newly-inserted submission receipt, or null if the
+	 *                    user's statistics should be recomputed from all of
+	 *                    the user's submission receipts for the problem
+	 * @param conn        the Connection
+	 * @param dbRunnable  the AbstractDatabaseRunnable
+	 * @throws SQLException
+	 */
+	private void doUpdateProblemStats(
+			int userId,
+			int problemId,
+			SubmissionReceipt newReceipt,
+			Connection conn,
+			AbstractDatabaseRunnableNoAuthException<?> dbRunnable) throws SQLException {
+		// Make sure there is a row for the user/problem: if one is added,
+		// then the user has just started the problem
+		PreparedStatement insertUserStats = dbRunnable.prepareStatement(
+				conn,
+				INSERT_USER_PROBLEM_STATS_SQL);
+		insertUserStats.setInt(1, userId);
+		insertUserStats.setInt(2, problemId);
+		int startedDelta = insertUserStats.executeUpdate() > 0 ? 1 : 0;
+		
+		// Lock the user/problem row and get its current values
+		PreparedStatement getUserStats = dbRunnable.prepareStatement(
+				conn,
+				SELECT_USER_PROBLEM_STATS_FOR_UPDATE_SQL);
+		getUserStats.setInt(1, userId);
+		getUserStats.setInt(2, problemId);
+		ResultSet resultSet = dbRunnable.executeQuery(getUserStats);
+		if (!resultSet.next()) {
+			throw new SQLException("Could not find statistics for user " + userId + ", problem " + problemId);
+		}
+		UserProblemStats oldStats = new UserProblemStats();
+		load(oldStats, resultSet, 1);
+		
+		UserProblemStats newStats = new UserProblemStats();
+		newStats.setUserId(userId);
+		newStats.setProblemId(problemId);
+		if (newReceipt != null) {
+			// A new receipt can only improve the user's statistics
+			newStats.setMaxTestsPassed(Math.max(oldStats.getMaxTestsPassed(), newReceipt.getNumTestsPassed()));
+			newStats.setCompleted(oldStats.isCompleted() || newReceipt.getStatus() == SubmissionStatus.TESTS_PASSED);
+			newStats.setLastSubmissionTimestamp(Math.max(oldStats.getLastSubmissionTimestamp(), newReceipt.getEvent().getTimestamp()));
+			newStats.setLatestSubmissionReceiptEventId(Math.max(oldStats.getLatestSubmissionReceiptEventId(), newReceipt.getEventId()));
+			
+			// The best submission is the earliest one passing the most tests
+			// (breaking ties by event id)
+			newStats.setBestSubmissionReceiptEventId(oldStats.getBestSubmissionReceiptEventId());
+			if (oldStats.getBestSubmissionReceiptEventId() == 0
+					|| newReceipt.getNumTestsPassed() > oldStats.getMaxTestsPassed()
+					|| (newReceipt.getNumTestsPassed() == oldStats.getMaxTestsPassed()
+							&& isEarlierThan(newReceipt.getEvent(), oldStats.getBestSubmissionReceiptEventId(), conn, dbRunnable))) {
+				newStats.setBestSubmissionReceiptEventId(newReceipt.getEventId());
+			}
+		} else {
+			PreparedStatement aggregate = dbRunnable.prepareStatement(
+					conn,
+					"select coalesce(max(sr.num_tests_passed), 0), coalesce(max(sr.status = ?), 0), coalesce(max(e.timestamp), 0), coalesce(max(sr.event_id), 0) " +
+					"  from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " +
+					"       " + Event.SCHEMA.getDbTableName() + " as e " +
+					" where sr.event_id = e.id " +
+					"   and e.user_id = ? " +
+					"   and e.problem_id = ?");
+			aggregate.setInt(1, SubmissionStatus.TESTS_PASSED.ordinal());
+			aggregate.setInt(2, userId);
+			aggregate.setInt(3, problemId);
+			ResultSet aggregateResultSet = dbRunnable.executeQuery(aggregate);
+			aggregateResultSet.next();
+			newStats.setMaxTestsPassed(aggregateResultSet.getInt(1));
+			newStats.setCompleted(aggregateResultSet.getInt(2) != 0);
+			newStats.setLastSubmissionTimestamp(aggregateResultSet.getLong(3));
+			newStats.setLatestSubmissionReceiptEventId(aggregateResultSet.getInt(4));
+			
+			PreparedStatement findBest = dbRunnable.prepareStatement(
+					conn,
+					"select sr.event_id " +
+					"  from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " +
+					"       " + Event.SCHEMA.getDbTableName() + " as e " +
+					" where sr.event_id = e.id " +
+					"   and e.user_id = ? " +
+					"   and e.problem_id = ? " +
+					" order by sr.num_tests_passed desc, e.timestamp asc, e.id asc " +
+					" limit 1");
+			findBest.setInt(1, userId);
+			findBest.setInt(2, problemId);
+			ResultSet bestResultSet = dbRunnable.executeQuery(findBest);
+			newStats.setBestSubmissionReceiptEventId(bestResultSet.next() ? bestResultSet.getInt(1) : 0);
+		}
+		
+		int passedDelta = (newStats.isPassedAtLeastOneTest() ? 1 : 0) - (oldStats.isPassedAtLeastOneTest() ? 1 : 0);
+		int completedDelta = (newStats.isCompleted() ? 1 : 0) - (oldStats.isCompleted() ? 1 : 0);
+		
+		PreparedStatement updateUserStats = dbRunnable.prepareStatement(
+				conn,
+				UPDATE_USER_PROBLEM_STATS_SQL);
+		updateUserStats.setInt(1, newStats.getMaxTestsPassed());
+		updateUserStats.setBoolean(2, newStats.isCompleted());
+		updateUserStats.setInt(3, newStats.getBestSubmissionReceiptEventId());
+		updateUserStats.setLong(4, newStats.getLastSubmissionTimestamp());
+		updateUserStats.setInt(5, newStats.getLatestSubmissionReceiptEventId());
+		updateUserStats.setInt(6, userId);
+		updateUserStats.setInt(7, problemId);
+		updateUserStats.executeUpdate();
+		
+		if (startedDelta != 0 || passedDelta != 0 || completedDelta != 0) {
+			PreparedStatement updateProblemStats = dbRunnable.prepareStatement(
+					conn,
+					UPDATE_PROBLEM_STATS_SQL);
+			updateProblemStats.setInt(1, problemId);
+			updateProblemStats.setInt(2, startedDelta);
+			updateProblemStats.setInt(3, passedDelta);
+			updateProblemStats.setInt(4, completedDelta);
+			updateProblemStats.executeUpdate();
+		}
+	}
+
+	/**
+	 * Determine whether given event is earlier than the event with
+	 * given event id, using the event id to break ties in timestamps.
+	 * 
+	 * @param event        the event
+	 * @param otherEventId the other event's id
+	 * @param conn         the Connection
+	 * @param dbRunnable   the AbstractDatabaseRunnable
+	 * @return true if the event is earlier than the other event
+	 * @throws SQLException
+	 */
+	private boolean isEarlierThan(Event event, int otherEventId, Connection conn,
+			AbstractDatabaseRunnableNoAuthException<?> dbRunnable) throws SQLException {
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				SELECT_EVENT_TIMESTAMP_SQL);
+		stmt.setInt(1, otherEventId);
+		ResultSet resultSet = dbRunnable.executeQuery(stmt);
+		if (!resultSet.next()) {
+			return true;
+		}
+		long otherTimestamp = resultSet.getLong(1);
+		return event.getTimestamp() < otherTimestamp
+				|| (event.getTimestamp() == otherTimestamp && event.getId() < otherEventId);
 	}
 
 	private void doInsertTestResults(TestResult[] testResultList,
 			int submissionReceiptId, Connection conn,
 			AbstractDatabaseRunnableNoAuthException<?> dbRunnable) throws SQLException {
-		for (TestResult testResult : testResultList) {
-			testResult.setSubmissionReceiptEventId(submissionReceiptId);
+		// Large outputs are stored (once) as output blobs
+		Map<String, OutputBlob> blobs = new HashMap<String, OutputBlob>();
+		TestResult[] storedList = new TestResult[testResultList.length];
+		for (int i = 0; i < testResultList.length; i++) {
+			testResultList[i].setSubmissionReceiptEventId(submissionReceiptId);
+			storedList[i] = OutputBlobs.toStoredForm(testResultList[i], blobs);
 		}
+		OutputBlobs.storeBlobs(conn, blobs);
+		
 		PreparedStatement insertTestResults = dbRunnable.prepareStatement(
 				conn,
-				"insert into " + TestResult.SCHEMA.getDbTableName() + " values (NULL, ?, ?, ?, ?, ?)",
+				INSERT_TEST_RESULT_SQL,
 				PreparedStatement.RETURN_GENERATED_KEYS
 		);
-		for (TestResult testResult : testResultList) {
-			storeNoId(testResult, insertTestResults, 1);
+		for (TestResult stored : storedList) {
+			storeNoId(stored, insertTestResults, 1);
 			insertTestResults.addBatch();
 		}
 		insertTestResults.executeBatch();
@@ -1774,7 +2693,7 @@ public class JDBCDatabase implements IDatabase {
 		//
 		PreparedStatement stmt = dbRunnable.prepareStatement(
 				conn,
-				"select p.* from " + Problem.SCHEMA.getDbTableName() + " as p, " + Course.SCHEMA.getDbTableName() + " as c, " + CourseRegistration.SCHEMA.getDbTableName() + " as r " +
+				"select " + DBUtil.getColumnList(Problem.SCHEMA, "p") + " from " + Problem.SCHEMA.getDbTableName() + " as p, " + Course.SCHEMA.getDbTableName() + " as c, " + CourseRegistration.SCHEMA.getDbTableName() + " as r " +
 				" where p.course_id = c.id " +
 				"   and p." + Problem.DELETED.getName() + " = 0 " +
 				"   and r.course_id = c.id " +
@@ -1847,7 +2766,7 @@ public class JDBCDatabase implements IDatabase {
 
 		PreparedStatement stmt = databaseRunnable.prepareStatement(
 				conn,
-				"select c.*, t.*, r.* from " + Course.SCHEMA.getDbTableName() + " as c, " + Term.SCHEMA.getDbTableName() + " as t, " + CourseRegistration.SCHEMA.getDbTableName() + " as r " +
+				"select " + DBUtil.getColumnList(Course.SCHEMA, "c") + ", " + DBUtil.getColumnList(Term.SCHEMA, "t") + ", " + DBUtil.getColumnList(CourseRegistration.SCHEMA, "r") + " from " + Course.SCHEMA.getDbTableName() + " as c, " + Term.SCHEMA.getDbTableName() + " as t, " + CourseRegistration.SCHEMA.getDbTableName() + " as r " +
 				" where c.id = r.course_id " + 
 				"   and c.term_id = t.id " +
 				"   and r.user_id = ? " +
@@ -1876,10 +2795,7 @@ public class JDBCDatabase implements IDatabase {
 			AbstractDatabaseRunnable<?> databaseRunnable) throws SQLException {
 		PreparedStatement stmt = databaseRunnable.prepareStatement(
 				conn,
-				"insert into " + Problem.SCHEMA.getDbTableName() +
-				" values (" +
-				DBUtil.getInsertPlaceholdersNoId(Problem.SCHEMA) +
-				")",
+				DBUtil.createInsertStatement(Problem.SCHEMA),
 				PreparedStatement.RETURN_GENERATED_KEYS
 		);
 		
@@ -1901,7 +2817,7 @@ public class JDBCDatabase implements IDatabase {
 			AbstractDatabaseRunnable<?> databaseRunnable) throws SQLException {
 		PreparedStatement stmt = databaseRunnable.prepareStatement(
 				conn,
-				"insert into " + TestCase.SCHEMA.getDbTableName() + " values (NULL, ?, ?, ?, ?, ?)",
+				DBUtil.createInsertStatement(TestCase.SCHEMA),
 				PreparedStatement.RETURN_GENERATED_KEYS
 		);
 		
@@ -1940,7 +2856,7 @@ public class JDBCDatabase implements IDatabase {
 		Problem orig = new Problem();
 		PreparedStatement fetchOrig = databaseRunnable.prepareStatement(
 				conn,
-				"select * from " + Problem.SCHEMA.getDbTableName() + " where " + Problem.PROBLEM_ID.getName() + " = ?");
+				"select " + DBUtil.getColumnList(Problem.SCHEMA) + " from " + Problem.SCHEMA.getDbTableName() + " where " + Problem.PROBLEM_ID.getName() + " = ?");
 		fetchOrig.setInt(1, problem.getProblemId());
 		ResultSet origRS = databaseRunnable.executeQuery(fetchOrig);
 		if (!origRS.next()) {
@@ -1994,7 +2910,7 @@ public class JDBCDatabase implements IDatabase {
 			throws SQLException {
 		PreparedStatement findRepoTestCases = dbRunnable.prepareStatement(
 				conn,
-				"select * from " + RepoTestCase.SCHEMA.getDbTableName() + " as rtc " +
+				"select " + DBUtil.getColumnList(RepoTestCase.SCHEMA) + " from " + RepoTestCase.SCHEMA.getDbTableName() + " as rtc " +
 				" where rtc." + RepoTestCase.REPO_PROBLEM_ID.getName() + " = ?");
 		findRepoTestCases.setInt(1, repoProblem.getId());
 		
@@ -2013,7 +2929,7 @@ public class JDBCDatabase implements IDatabase {
 			AbstractDatabaseRunnable<?> abstractDatabaseRunnable) throws SQLException {
 		PreparedStatement stmt = abstractDatabaseRunnable.prepareStatement(
 				conn,
-				"select cr.* from " + CourseRegistration.SCHEMA.getDbTableName() + " as cr " +
+				"select " + DBUtil.getColumnList(CourseRegistration.SCHEMA, "cr") + " from " + CourseRegistration.SCHEMA.getDbTableName() + " as cr " +
 				" where cr." + CourseRegistration.USER_ID.getName() + " = ? " +
 				"   and cr." + CourseRegistration.COURSE_ID.getName() + " = ?"
 		);
@@ -2047,8 +2963,7 @@ public class JDBCDatabase implements IDatabase {
 			AbstractDatabaseRunnableNoAuthException<?> databaseRunnable) throws SQLException {
 		PreparedStatement stmt = databaseRunnable.prepareStatement(
 				conn,
-				"insert into " + RepoProblemTag.SCHEMA.getDbTableName() +
-				" values (" + DBUtil.getInsertPlaceholders(RepoProblemTag.SCHEMA) + ")"
+				DBUtil.createInsertStatement(RepoProblemTag.SCHEMA)
 		);
 		
 		DBUtil.bindModelObjectValuesForInsert(repoProblemTag, RepoProblemTag.SCHEMA, stmt);
@@ -2082,26 +2997,8 @@ public class JDBCDatabase implements IDatabase {
 	}
 
 	protected void load(Change change, ResultSet resultSet, int index) throws SQLException {
-		// Change objects require special handling because the database
-		// has two columns for the change text (depending on how long the
-		// text is).  Whichever of the columns is not null should be used
-		// as the text value to store in the model object.
-		
-		String text = null;
-		
-		for (ModelObjectField<? super Change, ?> field : Change.SCHEMA.getFieldList()) {
-			Object value = resultSet.getObject(index++);
-			if (field != Change.TEXT_SHORT && field != Change.TEXT) {
-				field.setUntyped(change, DBUtil.convertValue(value, field.getType()));
-			} else {
-				// This is the value of either the text_short or text columns.
-				// Use whichever is not null.
-				if (value != null) {
-					text = (String) value;
-				}
-			}
-		}
-		change.setText(text);
+		// The Change row mapper uses whichever of the text_short and text columns is not null
+		loadGeneric(change, resultSet, index, Change.SCHEMA);
 	}
 
 	protected void load(Course course, ResultSet resultSet, int index) throws SQLException {
@@ -2135,6 +3032,14 @@ public class JDBCDatabase implements IDatabase {
 	protected void load(RepoTestCase repoTestCase, ResultSet resultSet, int index) throws SQLException {
 		loadGeneric(repoTestCase, resultSet, index, RepoTestCase.SCHEMA);
 	}
+	
+	protected void load(ProblemStats problemStats, ResultSet resultSet, int index) throws SQLException {
+		loadGeneric(problemStats, resultSet, index, ProblemStats.SCHEMA);
+	}
+	
+	protected void load(UserProblemStats userProblemStats, ResultSet resultSet, int index) throws SQLException {
+		loadGeneric(userProblemStats, resultSet, index, UserProblemStats.SCHEMA);
+	}
 
 	/**
 	 * Generic method to load model object data from the current row of
@@ -2148,14 +3053,7 @@ public class JDBCDatabase implements IDatabase {
 	 * @throws SQLException
 	 */
 	protected<E> int loadGeneric(E modelObj, ResultSet resultSet, int index, ModelObjectSchema<E> schema) throws SQLException {
-		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
-			// Note: this could return an object which does not exactly match the field type
-			Object value = resultSet.getObject(index++);
-			value = DBUtil.convertValue(value, field.getType());
-			
-			field.setUntyped(modelObj, value);
-		}
-		return index;
+		return RowMappers.forSchema(schema).load(modelObj, resultSet, index);
 	}
 
 	protected void storeNoId(Event event, PreparedStatement stmt, int index) throws SQLException {
@@ -2163,23 +3061,8 @@ public class JDBCDatabase implements IDatabase {
 	}
 
 	protected void store(Change change, PreparedStatement stmt, int index) throws SQLException {
-		// Change objects require special handling so that we use the correct
-		// database column to store the change text.
-		
-		String changeText = change.getText();
-		boolean isShort = changeText.length() <= Change.MAX_TEXT_LEN_IN_ROW;
-		String textShort = isShort ? changeText : null;
-		String textLong  = !isShort ? changeText : null;
-		
-		for (ModelObjectField<? super Change, ?> field : Change.SCHEMA.getFieldList()) {
-			if (field == Change.TEXT_SHORT) {
-				stmt.setString(index++, textShort);
-			} else if (field == Change.TEXT) {
-				stmt.setString(index++, textLong);
-			} else {
-				stmt.setObject(index++, DBUtil.convertValueToStore(field.get(change)));
-			}
-		}
+		// Note that Change has no unique id field, so all fields are stored
+		RowMappers.forSchema(Change.SCHEMA).storeNoId(change, stmt, index, true);
 	}
 
 	protected void store(SubmissionReceipt receipt, PreparedStatement stmt, int index) throws SQLException {
@@ -2210,25 +3093,72 @@ public class JDBCDatabase implements IDatabase {
 	 * @throws SQLException
 	 */
 	protected<E> int storeNoIdGeneric(E modelObj, PreparedStatement stmt, int index, ModelObjectSchema<E> schema) throws SQLException {
-		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
-			if (!field.isUniqueId()) {
-				Object value = field.get(modelObj);
-				value = DBUtil.convertValueToStore(value);
-				
-				if (value instanceof String) {
-					String s = (String) value;
-					// Somewhat hackish solution to avoiding "string too long" errors inserting into database
-					// FIXME: broken if string contains characters that don't have a 1-byte encoding in UTF8
-					if (s.length() > field.getSize()) {
-						s = s.substring(0, field.getSize());
-						value = s;
-					}
+		// Somewhat hackish solution to avoiding "string too long" errors inserting into database:
+		// truncate strings to their field's size
+		return RowMappers.forSchema(schema).storeNoId(modelObj, stmt, index, true);
+	}
+
+	/**
+	 * Load and decode the archived changes in the current row of a result set
+	 * of {@link ChangeArchive}s.
+	 */
+	private List<Change> loadArchivedChanges(ResultSet resultSet) throws SQLException {
+		ChangeArchive archive = new ChangeArchive();
+		loadGeneric(archive, resultSet, 1, ChangeArchive.SCHEMA);
+		return ChangeArchiveCodec.decode(archive);
+	}
+	
+	/**
+	 * Load the archived changes from the most recent {@link ChangeArchive}
+	 * for the given user and problem found by the given query.
+	 * 
+	 * @return the archived changes, or an empty list if there is no such archive
+	 */
+	private List<Change> loadLatestArchivedChanges(Connection conn, AbstractDatabaseRunnableNoAuthException<?> dbRunnable,
+			String sql, User user, int problemId) throws SQLException {
+		PreparedStatement stmt = dbRunnable.prepareStatement(conn, sql);
+		stmt.setInt(1, user.getId());
+		stmt.setInt(2, problemId);
+		ResultSet resultSet = dbRunnable.executeQuery(stmt);
+		if (!resultSet.next()) {
+			return new ArrayList<Change>();
+		}
+		return loadArchivedChanges(resultSet);
+	}
+
+	/**
+	 * Load the (unarchived) change with the given event id.
+	 * 
+	 * @return the change, or null if it isn't in the changes table
+	 */
+	private Change loadChange(Connection conn, AbstractDatabaseRunnableNoAuthException<?> dbRunnable,
+			int changeEventId) throws SQLException {
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				"select " + DBUtil.getColumnList(Change.SCHEMA, "ch") + ", " + DBUtil.getColumnList(Event.SCHEMA, "e") +
+				"  from " + Change.SCHEMA.getDbTableName() + " as ch, " + Event.SCHEMA.getDbTableName() + " as e " +
+				" where e.id = ? and ch.event_id = e.id");
+		stmt.setInt(1, changeEventId);
+		
+		ResultSet resultSet = dbRunnable.executeQuery(stmt);
+		return resultSet.next() ? getChangeAndEvent(resultSet) : null;
+	}
+	
+	/**
+	 * Find the archived change with the given event id in
+	 * the {@link ChangeArchive}s returned by a query.
+	 * 
+	 * @return the change, or null if none of the archives contain it
+	 */
+	private Change findArchivedChange(ResultSet archiveResultSet, int changeEventId) throws SQLException {
+		while (archiveResultSet.next()) {
+			for (Change change : loadArchivedChanges(archiveResultSet)) {
+				if (change.getEventId() == changeEventId) {
+					return change;
 				}
-				
-				stmt.setObject(index++, value);
 			}
 		}
-		return index;
+		return null;
 	}
 
 	protected Change getChangeAndEvent(ResultSet resultSet) throws SQLException {
@@ -2247,4 +3177,23 @@ public class JDBCDatabase implements IDatabase {
 		return submissionReceipt;
 	}
 	
+	/**
+	 * Load a SubmissionReceipt and its Event from the columns of an
+	 * outer join starting at given index.
+	 * 
+	 * @param resultSet  the ResultSet
+	 * @param index      the index of the first submission receipt column
+	 * @return the SubmissionReceipt, or null if the columns are null
+	 * @throws SQLException
+	 */
+	private SubmissionReceipt loadOptionalSubmissionReceiptAndEvent(ResultSet resultSet, int index) throws SQLException {
+		if (resultSet.getObject(index) == null) {
+			return null;
+		}
+		SubmissionReceipt submissionReceipt = new SubmissionReceipt();
+		index = loadGeneric(submissionReceipt, resultSet, index, SubmissionReceipt.SCHEMA);
+		loadGeneric(submissionReceipt.getEvent(), resultSet, index, Event.SCHEMA);
+		return submissionReceipt;
+	}
+	
 }
@@ -58,10 +58,21 @@ public class JDBCDatabaseConfig {
 	private static JDBCDatabaseConfig instance;
 	private static Object instanceLock = new Object();
 	
+	/**
+	 * Default time (in milliseconds) after a write during which a session's
+	 * read-only transactions are sent to the primary database rather than
+	 * to the replica.
+	 */
+	public static final long DEFAULT_READ_YOUR_WRITES_MILLIS = 5000L;
+	
 	private ConfigProperties configProperties;
+	private ConfigProperties replicaConfigProperties;
+	private long readYourWritesMillis;
 	
-	private JDBCDatabaseConfig(ConfigProperties configProperties) {
+	private JDBCDatabaseConfig(ConfigProperties configProperties, ConfigProperties replicaConfigProperties, long readYourWritesMillis) {
 		this.configProperties = configProperties;
+		this.replicaConfigProperties = replicaConfigProperties;
+		this.readYourWritesMillis = readYourWritesMillis;
 	}
 
 	/**
@@ -79,14 +90,70 @@ public class JDBCDatabaseConfig {
 	 * @param configProperties the configuration properties
 	 */
 	public static void create(ConfigProperties configProperties) {
+		create(configProperties, null, 0L);
+	}
+
+	/**
+	 * Create the singleton instance of JDBCDatabaseConfig, with an
+	 * optional read replica.  Read-only transactions are sent to the
+	 * replica, except for sessions which have written to the
+	 * primary database within the last <code>readYourWritesMillis</code>
+	 * milliseconds.
+	 * 
+	 * @param configProperties         the configuration properties of the primary database
+	 * @param replicaConfigProperties  the configuration properties of the replica,
+	 *                                 or null if there is no replica
+	 * @param readYourWritesMillis     how long after a write a session's reads
+	 *                                 stay on the primary database
+	 */
+	public static void create(ConfigProperties configProperties, ConfigProperties replicaConfigProperties, long readYourWritesMillis) {
 		synchronized (instanceLock) {
 			if (instance != null) {
 				throw new IllegalStateException("JDBCDatabaseConfig already exists");
 			}
-			instance = new JDBCDatabaseConfig(configProperties);
+			instance = new JDBCDatabaseConfig(configProperties, replicaConfigProperties, readYourWritesMillis);
 		}
 	}
 	
+	/**
+	 * Create configuration properties for a replica of the given primary
+	 * database.  The replica has the same database name and credentials
+	 * as the primary, but a different host and/or port.
+	 * 
+	 * @param primary  the configuration properties of the primary database
+	 * @param host     the replica's host
+	 * @param portStr  the replica's port string (e.g., ":3307")
+	 * @return configuration properties for the replica
+	 */
+	public static ConfigProperties replicaOf(final ConfigProperties primary, final String host, final String portStr) {
+		return new ConfigProperties() {
+			@Override
+			public String getUser() {
+				return primary.getUser();
+			}
+			
+			@Override
+			public String getPasswd() {
+				return primary.getPasswd();
+			}
+			
+			@Override
+			public String getDatabaseName() {
+				return primary.getDatabaseName();
+			}
+			
+			@Override
+			public String getHost() {
+				return host;
+			}
+			
+			@Override
+			public String getPortStr() {
+				return portStr != null ? portStr : "";
+			}
+		};
+	}
+	
 	/**
 	 * Destroy the singleton instance of JDBCDatabaseCOonfig.
 	 */
@@ -103,4 +170,20 @@ public class JDBCDatabaseConfig {
 	public ConfigProperties getConfigProperties() {
 		return configProperties;
 	}
+	
+	/**
+	 * Get the configuration properties of the read replica.
+	 * @return the configuration properties of the read replica, or null if there is no replica
+	 */
+	public ConfigProperties getReplicaConfigProperties() {
+		return replicaConfigProperties;
+	}
+	
+	/**
+	 * @return how long (in milliseconds) after a write a session's read-only
+	 *         transactions stay on the primary database
+	 */
+	public long getReadYourWritesMillis() {
+		return readYourWritesMillis;
+	}
 }
@@ -52,7 +52,7 @@ public abstract class JDBCDatabaseConfigServletContextListener implements Servle
 	public void contextInitialized(final ServletContextEvent e) {
 		// Initialize the JDBCDatabaseConfig singleton from the
 		// init params in the servlet context.
-		JDBCDatabaseConfig.create(new JDBCDatabaseConfig.ConfigProperties() {
+		JDBCDatabaseConfig.ConfigProperties primary = new JDBCDatabaseConfig.ConfigProperties() {
 			@Override
 			public String getUser() {
 				return getParam(e.getServletContext(), propertyPrefix + ".user", "root");
@@ -91,7 +91,23 @@ public abstract class JDBCDatabaseConfigServletContextListener implements Servle
 				}
 				return getParam(e.getServletContext(), propertyPrefix + ".portStr", "");
 			}
-		});
+		};
+		
+		// If a read replica is configured, read-only transactions are sent to it
+		JDBCDatabaseConfig.ConfigProperties replica = null;
+		String replicaHost = e.getServletContext().getInitParameter(propertyPrefix + ".replica.host");
+		if (replicaHost != null && !replicaHost.trim().equals("")) {
+			replica = JDBCDatabaseConfig.replicaOf(
+					primary,
+					replicaHost.trim(),
+					getParam(e.getServletContext(), propertyPrefix + ".replica.portStr", ""));
+		}
+		long readYourWritesMillis = Long.parseLong(getParam(
+				e.getServletContext(),
+				propertyPrefix + ".replica.readYourWritesMillis",
+				String.valueOf(JDBCDatabaseConfig.DEFAULT_READ_YOUR_WRITES_MILLIS)));
+		
+		JDBCDatabaseConfig.create(primary, replica, readYourWritesMillis);
 	}
 	
 	private String getParam(ServletContext ctx, String paramName, String defaultValue) {
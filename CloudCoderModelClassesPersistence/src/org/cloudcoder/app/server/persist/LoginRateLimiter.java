@@ -0,0 +1,178 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts failed login attempts per key (a username or a client address)
+ * over a sliding window.  Once a key has had <code>maxFailures</code>
+ * failures within the window, further attempts for that key are refused
+ * until the oldest failure leaves the window.  Checking a key is cheap,
+ * so refused attempts never reach the (deliberately slow) password hash.
+ * At most <code>maxKeys</code> keys are tracked: when the table is full,
+ * keys with no failures in the window are discarded, and if it is still
+ * full, failures for new keys are not recorded.
+ * 
+ * @author David Hovemeyer
+ */
+public class LoginRateLimiter {
+	private static class Window {
+		final ArrayDeque<Long> failureTimes = new ArrayDeque<Long>();
+	}
+	
+	private final int maxFailures;
+	private final long windowMillis;
+	private final int maxKeys;
+	private final ConcurrentHashMap<String, Window> windows;
+	private final AtomicLong refused;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxFailures  number of failures within the window after which attempts are refused
+	 * @param windowMillis length of the window in milliseconds
+	 * @param maxKeys      maximum number of keys to track
+	 */
+	public LoginRateLimiter(int maxFailures, long windowMillis, int maxKeys) {
+		this.maxFailures = maxFailures;
+		this.windowMillis = windowMillis;
+		this.maxKeys = maxKeys;
+		this.windows = new ConcurrentHashMap<String, Window>();
+		this.refused = new AtomicLong();
+	}
+	
+	/**
+	 * Check whether an attempt for given key is allowed.
+	 * 
+	 * @param key  the key (username or client address); null keys are always allowed
+	 * @param now  the current time in milliseconds
+	 * @return 0 if the attempt is allowed, otherwise the number of milliseconds
+	 *         until it would be allowed
+	 */
+	public long check(String key, long now) {
+		if (key == null || maxFailures <= 0) {
+			return 0L;
+		}
+		Window window = windows.get(key);
+		if (window == null) {
+			return 0L;
+		}
+		synchronized (window) {
+			expire(window, now);
+			if (window.failureTimes.size() < maxFailures) {
+				return 0L;
+			}
+			refused.incrementAndGet();
+			return Math.max(1L, window.failureTimes.peekFirst() + windowMillis - now);
+		}
+	}
+	
+	/**
+	 * Record a failed attempt for given key.
+	 * 
+	 * @param key  the key (username or client address); ignored if null
+	 * @param now  the current time in milliseconds
+	 */
+	public void recordFailure(String key, long now) {
+		if (key == null || maxFailures <= 0) {
+			return;
+		}
+		Window window = windows.get(key);
+		if (window == null) {
+			if (windows.size() >= maxKeys) {
+				purge(now);
+				if (windows.size() >= maxKeys) {
+					return;
+				}
+			}
+			window = new Window();
+			Window existing = windows.putIfAbsent(key, window);
+			if (existing != null) {
+				window = existing;
+			}
+		}
+		synchronized (window) {
+			expire(window, now);
+			window.failureTimes.addLast(now);
+			while (window.failureTimes.size() > maxFailures) {
+				window.failureTimes.removeFirst();
+			}
+		}
+	}
+	
+	/**
+	 * Forget the failures recorded for given key (e.g., after a successful login).
+	 * 
+	 * @param key the key; ignored if null
+	 */
+	public void reset(String key) {
+		if (key != null) {
+			windows.remove(key);
+		}
+	}
+	
+	/**
+	 * @return number of keys currently tracked
+	 */
+	public int size() {
+		return windows.size();
+	}
+	
+	/**
+	 * @return number of attempts refused so far
+	 */
+	public long getRefused() {
+		return refused.get();
+	}
+	
+	/**
+	 * @return the number of failures within the window after which attempts are refused
+	 */
+	public int getMaxFailures() {
+		return maxFailures;
+	}
+	
+	/**
+	 * @return the length of the window in milliseconds
+	 */
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	private void expire(Window window, long now) {
+		while (!window.failureTimes.isEmpty() && window.failureTimes.peekFirst() <= now - windowMillis) {
+			window.failureTimes.removeFirst();
+		}
+	}
+
+	private void purge(long now) {
+		for (Iterator<Window> i = windows.values().iterator(); i.hasNext(); ) {
+			Window window = i.next();
+			synchronized (window) {
+				expire(window, now);
+				if (window.failureTimes.isEmpty()) {
+					i.remove();
+				}
+			}
+		}
+	}
+}
@@ -3,6 +3,8 @@ package org.cloudcoder.app.server.persist;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 
@@ -10,11 +12,46 @@ import org.cloudcoder.app.shared.model.ModelObjectSchema;
 
 public class MigrateDatabase {
 
-	protected static void migrateDatabase(ModelObjectSchema<?>[] tables,
-			String appName, String dbConfigPrefix)
+	/**
+	 * Migrate a database to the latest schema, using the options given
+	 * on the command line.  By default, tables are altered directly, so
+	 * the application must not be running.  With <code>--online</code>, tables are migrated
+	 * using {@link OnlineMigration}, so the application can keep running
+	 * during the migration: <code>--chunk=<i>rows</i></code> and
+	 * <code>--pause=<i>millis</i></code> control how quickly rows are copied.
+	 * 
+	 * @param tables          the tables in the database
+	 * @param appName         the name of the application (for messages)
+	 * @param dbConfigPrefix  the configuration property prefix for the database
+	 * @param args            the command line arguments
+	 * @return list of the tables that were created or migrated
+	 */
+	protected static List<ModelObjectSchema<?>> migrateDatabase(ModelObjectSchema<?>[] tables,
+			String appName, String dbConfigPrefix, String[] args)
 			throws ClassNotFoundException, IOException, SQLException {
+		boolean online = false;
+		int chunkSize = OnlineMigration.DEFAULT_CHUNK_SIZE;
+		long pauseMillis = OnlineMigration.DEFAULT_PAUSE_MILLIS;
+		for (String arg : args) {
+			if (arg.equals("--online")) {
+				online = true;
+			} else if (arg.startsWith("--chunk=")) {
+				chunkSize = Integer.parseInt(arg.substring("--chunk=".length()));
+			} else if (arg.startsWith("--pause=")) {
+				pauseMillis = Long.parseLong(arg.substring("--pause=".length()));
+			} else {
+				System.err.println("Usage: migratedb [--online [--chunk=<rows>] [--pause=<millis>]]");
+				System.exit(1);
+			}
+		}
+		
 		System.out.println("Migrate the " + appName + " database to the latest schema.");
-		System.out.println("Important: make sure " + appName + " is not currently running!");
+		if (online) {
+			System.out.println("Online migration: " + appName + " can keep running, but don't start");
+			System.out.println("the new version of " + appName + " until the migration is complete.");
+		} else {
+			System.out.println("Important: make sure " + appName + " is not currently running!");
+		}
 		
 		Scanner keyboard = new Scanner(System.in);
 		
@@ -22,6 +59,8 @@ public class MigrateDatabase {
 		Properties config = DBUtil.getConfigProperties();
 		Connection conn = DBUtil.connectToDatabase(config, dbConfigPrefix);
 	
+		List<ModelObjectSchema<?>> changedTables = new ArrayList<ModelObjectSchema<?>>();
+		
 		boolean created = SchemaUtil.createSchemaVersionTableIfNeeded(conn, tables);
 		
 		if (created) {
@@ -30,18 +69,29 @@ public class MigrateDatabase {
 			System.out.print("Continue (unsafe unless you're really sure this is OK)? (yes/no) ");
 			String confirm = keyboard.nextLine();
 			if (!confirm.trim().toLowerCase().equals("yes")) {
-				return;
+				return changedTables;
 			}
 		}
 	
 		int numMigrated = 0;
 		for (ModelObjectSchema<?> table : tables) {
+			if (SchemaUtil.createTableIfNeeded(conn, table)) {
+				System.out.println("Created new table " + table.getDbTableName());
+				changedTables.add(table);
+				numMigrated++;
+				continue;
+			}
 			int dbSchemaVersion = SchemaUtil.getDbSchemaVersion(conn, table);
 			if (dbSchemaVersion != table.getVersion()) {
 				System.out.print("Migrating " + table.getDbTableName() + " to version " + table.getVersion() + "...");
 				System.out.flush();
-				SchemaUtil.migrateTable(conn, table);
+				if (online) {
+					new OnlineMigration(conn, chunkSize, pauseMillis).migrateTable(table);
+				} else {
+					SchemaUtil.migrateTable(conn, table);
+				}
 				System.out.println("done");
+				changedTables.add(table);
 				numMigrated++;
 			}
 		}
@@ -51,6 +101,8 @@ public class MigrateDatabase {
 		} else {
 			System.out.println("Successfully migrated " + numMigrated + " table(s)");
 		}
+		
+		return changedTables;
 	}
 
 }
@@ -8,7 +8,7 @@ public class MigrateRepositoryDatabase {
 		ConfigurationUtil.configureLog4j();
 		
 		try {
-			MigrateDatabase.migrateDatabase(CreateRepositoryDatabase.TABLES, "CloudCoder Repository", "cloudcoder.repoapp.db");
+			MigrateDatabase.migrateDatabase(CreateRepositoryDatabase.TABLES, "CloudCoder Repository", "cloudcoder.repoapp.db", args);
 		} catch (SQLException e) {
 			System.err.println("Database error: " + e.getMessage());
 			e.printStackTrace();
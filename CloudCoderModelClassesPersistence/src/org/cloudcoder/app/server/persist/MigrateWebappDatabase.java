@@ -2,13 +2,26 @@ package org.cloudcoder.app.server.persist;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.ProblemStats;
+import org.cloudcoder.app.shared.model.UserProblemStats;
 
 public class MigrateWebappDatabase {
 	public static void main(String[] args) throws IOException, ClassNotFoundException {
 		ConfigurationUtil.configureLog4j();
 		
 		try {
-			MigrateDatabase.migrateDatabase(CreateWebappDatabase.TABLES, "CloudCoder", "cloudcoder.db");
+			List<ModelObjectSchema<?>> changedTables =
+					MigrateDatabase.migrateDatabase(CreateWebappDatabase.TABLES, "CloudCoder", "cloudcoder.db", args);
+			
+			// The problem statistics tables are maintained incrementally,
+			// so if they were just created or migrated, they must be
+			// (re)populated from the existing submission receipts
+			if (changedTables.contains(UserProblemStats.SCHEMA) || changedTables.contains(ProblemStats.SCHEMA)) {
+				RebuildProblemStats.rebuildProblemStats();
+			}
 		} catch (SQLException e) {
 			System.err.println("Database error: " + e.getMessage());
 			e.printStackTrace();
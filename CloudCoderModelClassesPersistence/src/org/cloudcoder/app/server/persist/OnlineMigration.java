@@ -0,0 +1,589 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Migrate a table to the current schema version without locking it
+ * for the duration of the migration, so that CloudCoder can keep
+ * running while large tables (e.g., the changes and test results tables)
+ * are migrated.  The table is migrated as follows:
+ * <ol>
+ * <li>A shadow table (<code><i>table</i>_osc_new</code>) is created
+ *     with the same definition as the table, and the schema deltas
+ *     are applied to it (which is fast, because it is empty).</li>
+ * <li>Triggers on the table copy every insert, update, and delete
+ *     to the shadow table.</li>
+ * <li>Existing rows are copied to the shadow table in chunks of at most
+ *     <code>chunkSize</code> rows (in primary key order), with a pause
+ *     between chunks.  Each chunk only holds shared locks on the rows
+ *     it copies, and only for the duration of one short transaction.</li>
+ * <li>The table and the shadow table are swapped using a single
+ *     (atomic) <code>rename table</code>, the triggers are dropped,
+ *     the schema version is updated, and the original table is dropped.</li>
+ * </ol>
+ * <p>
+ * The progress of the migration (the target schema version and the
+ * primary key of the last copied row) is recorded in the
+ * cc_schema_version table, so an interrupted migration resumes where
+ * it left off when it is run again.
+ * </p>
+ * <p>
+ * Only tables with a single integer primary key column can be migrated
+ * this way: other tables are migrated using
+ * {@link SchemaUtil#migrateTable(Connection, ModelObjectSchema)}.
+ * Note that the database user needs the TRIGGER privilege (and, if binary
+ * logging is enabled, SUPER or <code>log_bin_trust_function_creators</code>).
+ * The version of CloudCoder that is running during the migration
+ * must be the old version: start the new version only after
+ * all tables have been migrated.  The old version keeps working
+ * with the migrated tables because it names the columns it inserts
+ * and loads (see {@link DBUtil#getColumnList(ModelObjectSchema)}),
+ * so it must itself be a version that does so.
+ * </p>
+ *
+ * @author David Hovemeyer
+ */
+public class OnlineMigration {
+	private static final Logger logger = LoggerFactory.getLogger(OnlineMigration.class);
+
+	/** Default maximum number of rows copied per transaction. */
+	public static final int DEFAULT_CHUNK_SIZE = 5000;
+
+	/** Default pause (in milliseconds) between transactions. */
+	public static final long DEFAULT_PAUSE_MILLIS = 100L;
+
+	// MySQL error codes for deadlocks and lock wait timeouts
+	private static final int ER_LOCK_DEADLOCK = 1213;
+	private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+
+	// Maximum number of attempts to copy a chunk
+	private static final int MAX_CHUNK_ATTEMPTS = 10;
+
+	private Connection conn;
+	private int chunkSize;
+	private long pauseMillis;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param conn        connection to the database
+	 * @param chunkSize   maximum number of rows copied per transaction
+	 * @param pauseMillis pause (in milliseconds) between transactions
+	 */
+	public OnlineMigration(Connection conn, int chunkSize, long pauseMillis) {
+		this.conn = conn;
+		this.chunkSize = chunkSize;
+		this.pauseMillis = pauseMillis;
+	}
+
+	/**
+	 * If necessary, migrate given table in database to the current schema version
+	 * (as specified by the model object metadata), or finish a previously
+	 * interrupted migration.
+	 *
+	 * @param table   current schema (model object metadata)
+	 * @return   true if the table was migrated to the latest schema version,
+	 *           false if the table was already at the latest schema version
+	 * @throws SQLException
+	 */
+	public<E> boolean migrateTable(ModelObjectSchema<E> table) throws SQLException {
+		String dbTableName = table.getDbTableName();
+		String shadowTableName = dbTableName + "_osc_new";
+		String oldTableName = dbTableName + "_osc_old";
+
+		addProgressColumnsIfNeeded();
+
+		int dbSchemaVersion = SchemaUtil.getDbSchemaVersion(conn, table);
+		Integer targetVersion = getProgressTargetVersion(dbTableName);
+
+		if (targetVersion != null && targetVersion.intValue() != table.getVersion()) {
+			// An interrupted migration to a different version: abandon it
+			logger.info("Abandoning interrupted migration of " + dbTableName + " to version " + targetVersion);
+			dropTriggers(dbTableName);
+			exec("drop table if exists " + shadowTableName);
+			clearProgress(dbTableName);
+			targetVersion = null;
+		}
+
+		if (targetVersion == null && dbSchemaVersion == table.getVersion()) {
+			logger.info("Table " + dbTableName + " is already at latest version (" + dbSchemaVersion + ")");
+			return false;
+		}
+
+		if (targetVersion != null && !tableExists(shadowTableName) && tableExists(oldTableName)) {
+			// The tables were swapped, but the migration was interrupted before it finished
+			logger.info("Finishing interrupted migration of " + dbTableName);
+			finish(table, oldTableName);
+			return true;
+		}
+
+		String primaryKey = getIntegerPrimaryKey(dbTableName);
+		if (primaryKey == null) {
+			logger.info("Table " + dbTableName + " has no integer primary key: migrating it offline");
+			return SchemaUtil.migrateTable(conn, table);
+		}
+
+		long copiedId;
+		if (targetVersion != null && tableExists(shadowTableName) && triggersExist(dbTableName)) {
+			copiedId = getProgressCopiedId(dbTableName);
+			logger.info("Resuming migration of " + dbTableName + " to version " + table.getVersion() +
+					" after row " + copiedId);
+		} else {
+			// Start (or restart) the migration
+			dropTriggers(dbTableName);
+			exec("drop table if exists " + shadowTableName);
+			exec("drop table if exists " + oldTableName);
+
+			logger.info("Creating " + shadowTableName + " at version " + table.getVersion());
+			exec("create table " + shadowTableName + " like " + dbTableName);
+			SchemaUtil.applyDeltas(conn, shadowTableName, table, dbSchemaVersion);
+			createTriggers(dbTableName, shadowTableName, primaryKey);
+
+			copiedId = Long.MIN_VALUE;
+			setProgress(dbTableName, table.getVersion(), copiedId);
+		}
+
+		copyRows(dbTableName, shadowTableName, primaryKey, copiedId);
+
+		// Swap the tables: the rename is atomic, so every write goes
+		// either to the original table (and through the triggers to the
+		// shadow table), or to the migrated table
+		logger.info("Swapping " + dbTableName + " and " + shadowTableName);
+		exec("rename table " + dbTableName + " to " + oldTableName + ", " + shadowTableName + " to " + dbTableName);
+		finish(table, oldTableName);
+
+		return true;
+	}
+
+	private void copyRows(String dbTableName, String shadowTableName, String primaryKey, long copiedId)
+			throws SQLException {
+		// Rows inserted after the triggers were created are copied by the triggers,
+		// so only the rows up to the current maximum primary key need to be copied
+		long maxId = queryLong("select max(" + primaryKey + ") from " + dbTableName, Long.MIN_VALUE);
+		if (maxId == Long.MIN_VALUE || copiedId >= maxId) {
+			return;
+		}
+		long minId = Math.max(copiedId, queryLong("select min(" + primaryKey + ") from " + dbTableName, maxId));
+
+		String columns = getColumnList(dbTableName);
+		String nextChunkSql =
+				"select max(" + primaryKey + ") from " +
+				"  (select " + primaryKey + " from " + dbTableName +
+				"    where " + primaryKey + " > ? and " + primaryKey + " <= ?" +
+				"    order by " + primaryKey + " asc limit ?) as chunk";
+		String copySql =
+				"insert ignore into " + shadowTableName + " (" + columns + ")" +
+				" select " + columns + " from " + dbTableName +
+				"  where " + primaryKey + " > ? and " + primaryKey + " <= ?" +
+				"  lock in share mode";
+
+		logger.info("Copying rows of " + dbTableName + " up to " + primaryKey + " " + maxId);
+		int lastPercent = 0;
+
+		while (copiedId < maxId) {
+			long chunkEnd;
+			PreparedStatement stmt = null;
+			ResultSet resultSet = null;
+			try {
+				stmt = conn.prepareStatement(nextChunkSql);
+				stmt.setLong(1, copiedId);
+				stmt.setLong(2, maxId);
+				stmt.setInt(3, chunkSize);
+				resultSet = stmt.executeQuery();
+				resultSet.next();
+				chunkEnd = resultSet.getLong(1);
+				if (resultSet.wasNull()) {
+					// No rows remain
+					break;
+				}
+			} finally {
+				DBUtil.closeQuietly(resultSet);
+				DBUtil.closeQuietly(stmt);
+			}
+
+			for (int attempt = 1; ; attempt++) {
+				try {
+					copyChunk(dbTableName, copySql, copiedId, chunkEnd);
+					break;
+				} catch (SQLException e) {
+					// A chunk can deadlock with a concurrent write (which is
+					// waiting for a row of the chunk while holding a lock that
+					// its trigger needs): just try the chunk again
+					if (!isRetryable(e) || attempt >= MAX_CHUNK_ATTEMPTS) {
+						throw e;
+					}
+					logger.info("Retrying chunk of " + dbTableName + " after " + primaryKey + " " + copiedId + ": " + e.getMessage());
+					pause();
+				}
+			}
+			copiedId = chunkEnd;
+
+			int percent = (int) (100.0 * (copiedId - minId) / Math.max(1L, maxId - minId));
+			if (percent >= lastPercent + 10) {
+				logger.info("Copied " + percent + "% of " + dbTableName);
+				lastPercent = percent;
+			}
+
+			pause();
+		}
+	}
+
+	private void copyChunk(String dbTableName, String copySql, long copiedId, long chunkEnd) throws SQLException {
+		boolean committed = false;
+		conn.setAutoCommit(false);
+		try {
+			PreparedStatement copy = null;
+			try {
+				copy = conn.prepareStatement(copySql);
+				copy.setLong(1, copiedId);
+				copy.setLong(2, chunkEnd);
+				copy.executeUpdate();
+			} finally {
+				DBUtil.closeQuietly(copy);
+			}
+			updateProgressCopiedId(dbTableName, chunkEnd);
+			conn.commit();
+			committed = true;
+		} finally {
+			if (!committed) {
+				conn.rollback();
+			}
+			conn.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * Determine whether a transaction which failed with given exception
+	 * can be retried: i.e., whether it was a deadlock or a lock wait timeout.
+	 *
+	 * @param e the exception
+	 * @return true if the transaction can be retried
+	 */
+	public static boolean isRetryable(SQLException e) {
+		return e.getErrorCode() == ER_LOCK_DEADLOCK || e.getErrorCode() == ER_LOCK_WAIT_TIMEOUT;
+	}
+
+	private<E> void finish(ModelObjectSchema<E> table, String oldTableName) throws SQLException {
+		String dbTableName = table.getDbTableName();
+		dropTriggers(dbTableName);
+
+		PreparedStatement stmt = null;
+		try {
+			stmt = conn.prepareStatement(
+					"update cc_schema_version" +
+					"   set schema_version = ?, online_target_version = null, online_copied_id = null" +
+					" where table_name = ?");
+			stmt.setInt(1, table.getVersion());
+			stmt.setString(2, dbTableName);
+			stmt.executeUpdate();
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+
+		exec("drop table if exists " + oldTableName);
+		logger.info("Migrated " + dbTableName + " to version " + table.getVersion());
+	}
+
+	private void createTriggers(String dbTableName, String shadowTableName, String primaryKey) throws SQLException {
+		List<String> columnNames = getColumnNames(dbTableName);
+		StringBuilder columns = new StringBuilder();
+		StringBuilder newValues = new StringBuilder();
+		for (String column : columnNames) {
+			if (columns.length() > 0) {
+				columns.append(", ");
+				newValues.append(", ");
+			}
+			columns.append(column);
+			newValues.append("NEW.").append(column);
+		}
+		String replaceSql =
+				"replace into " + shadowTableName + " (" + columns + ") values (" + newValues + ")";
+
+		exec("create trigger " + dbTableName + "_osc_ins after insert on " + dbTableName +
+				" for each row " + replaceSql);
+		exec("create trigger " + dbTableName + "_osc_upd after update on " + dbTableName +
+				" for each row begin" +
+				"  delete ignore from " + shadowTableName +
+				"   where " + primaryKey + " = OLD." + primaryKey + " and OLD." + primaryKey + " <> NEW." + primaryKey + ";" +
+				"  " + replaceSql + ";" +
+				" end");
+		exec("create trigger " + dbTableName + "_osc_del after delete on " + dbTableName +
+				" for each row delete ignore from " + shadowTableName +
+				"  where " + primaryKey + " = OLD." + primaryKey);
+	}
+
+	private void dropTriggers(String dbTableName) throws SQLException {
+		exec("drop trigger if exists " + dbTableName + "_osc_ins");
+		exec("drop trigger if exists " + dbTableName + "_osc_upd");
+		exec("drop trigger if exists " + dbTableName + "_osc_del");
+	}
+
+	private boolean triggersExist(String dbTableName) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		try {
+			stmt = conn.prepareStatement(
+					"select count(*) from information_schema.triggers" +
+					" where trigger_schema = DATABASE()" +
+					"   and trigger_name in (?, ?, ?)");
+			stmt.setString(1, dbTableName + "_osc_ins");
+			stmt.setString(2, dbTableName + "_osc_upd");
+			stmt.setString(3, dbTableName + "_osc_del");
+			resultSet = stmt.executeQuery();
+			resultSet.next();
+			return resultSet.getInt(1) == 3;
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private boolean tableExists(String dbTableName) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		try {
+			stmt = conn.prepareStatement(
+					"select count(*) from information_schema.tables" +
+					" where table_schema = DATABASE()" +
+					"   and table_name = ?");
+			stmt.setString(1, dbTableName);
+			resultSet = stmt.executeQuery();
+			resultSet.next();
+			return resultSet.getInt(1) > 0;
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	/**
+	 * Get the name of the table's primary key column, if the primary key
+	 * is a single integer column.
+	 *
+	 * @param dbTableName the table
+	 * @return the primary key column, or null if the table doesn't have
+	 *         a single-column integer primary key
+	 */
+	private String getIntegerPrimaryKey(String dbTableName) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		try {
+			stmt = conn.prepareStatement(
+					"select k.column_name, c.data_type" +
+					"  from information_schema.key_column_usage as k, information_schema.columns as c" +
+					" where k.table_schema = DATABASE()" +
+					"   and k.table_name = ?" +
+					"   and k.constraint_name = 'PRIMARY'" +
+					"   and c.table_schema = k.table_schema" +
+					"   and c.table_name = k.table_name" +
+					"   and c.column_name = k.column_name");
+			stmt.setString(1, dbTableName);
+			resultSet = stmt.executeQuery();
+			String primaryKey = null;
+			int count = 0;
+			while (resultSet.next()) {
+				String dataType = resultSet.getString(2).toLowerCase();
+				if (dataType.endsWith("int")) {
+					primaryKey = resultSet.getString(1);
+				}
+				count++;
+			}
+			return count == 1 ? primaryKey : null;
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private List<String> getColumnNames(String dbTableName) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		try {
+			stmt = conn.prepareStatement(
+					"select column_name from information_schema.columns" +
+					" where table_schema = DATABASE()" +
+					"   and table_name = ?" +
+					" order by ordinal_position");
+			stmt.setString(1, dbTableName);
+			resultSet = stmt.executeQuery();
+			List<String> result = new ArrayList<String>();
+			while (resultSet.next()) {
+				result.add(resultSet.getString(1));
+			}
+			return result;
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private String getColumnList(String dbTableName) throws SQLException {
+		StringBuilder buf = new StringBuilder();
+		for (String column : getColumnNames(dbTableName)) {
+			if (buf.length() > 0) {
+				buf.append(", ");
+			}
+			buf.append(column);
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Add the columns used to record the progress of online migrations
+	 * to the cc_schema_version table, if it doesn't have them yet.
+	 */
+	private void addProgressColumnsIfNeeded() throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		try {
+			stmt = conn.prepareStatement(
+					"select count(*) from information_schema.columns" +
+					" where table_schema = DATABASE()" +
+					"   and table_name = 'cc_schema_version'" +
+					"   and column_name = 'online_target_version'");
+			resultSet = stmt.executeQuery();
+			resultSet.next();
+			if (resultSet.getInt(1) > 0) {
+				return;
+			}
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+
+		exec("alter table cc_schema_version" +
+				" add column online_target_version MEDIUMINT," +
+				" add column online_copied_id BIGINT");
+	}
+
+	private Integer getProgressTargetVersion(String dbTableName) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		try {
+			stmt = conn.prepareStatement("select online_target_version from cc_schema_version where table_name = ?");
+			stmt.setString(1, dbTableName);
+			resultSet = stmt.executeQuery();
+			if (!resultSet.next()) {
+				throw new SQLException("No entry in cc_schema_version for table " + dbTableName);
+			}
+			int targetVersion = resultSet.getInt(1);
+			return resultSet.wasNull() ? null : targetVersion;
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private long getProgressCopiedId(String dbTableName) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		try {
+			stmt = conn.prepareStatement("select online_copied_id from cc_schema_version where table_name = ?");
+			stmt.setString(1, dbTableName);
+			resultSet = stmt.executeQuery();
+			if (!resultSet.next()) {
+				throw new SQLException("No entry in cc_schema_version for table " + dbTableName);
+			}
+			return resultSet.getLong(1);
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private void setProgress(String dbTableName, int targetVersion, long copiedId) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = conn.prepareStatement(
+					"update cc_schema_version set online_target_version = ?, online_copied_id = ? where table_name = ?");
+			stmt.setInt(1, targetVersion);
+			stmt.setLong(2, copiedId);
+			stmt.setString(3, dbTableName);
+			stmt.executeUpdate();
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private void clearProgress(String dbTableName) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = conn.prepareStatement(
+					"update cc_schema_version set online_target_version = null, online_copied_id = null where table_name = ?");
+			stmt.setString(1, dbTableName);
+			stmt.executeUpdate();
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private void updateProgressCopiedId(String dbTableName, long copiedId) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = conn.prepareStatement("update cc_schema_version set online_copied_id = ? where table_name = ?");
+			stmt.setLong(1, copiedId);
+			stmt.setString(2, dbTableName);
+			stmt.executeUpdate();
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private long queryLong(String sql, long defaultValue) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		try {
+			stmt = conn.prepareStatement(sql);
+			resultSet = stmt.executeQuery();
+			if (!resultSet.next()) {
+				return defaultValue;
+			}
+			long value = resultSet.getLong(1);
+			return resultSet.wasNull() ? defaultValue : value;
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private void exec(String sql) throws SQLException {
+		logger.debug("Migration: {}", sql);
+		DBUtil.execSql(conn, sql);
+	}
+
+	private void pause() {
+		if (pauseMillis > 0) {
+			try {
+				Thread.sleep(pauseMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
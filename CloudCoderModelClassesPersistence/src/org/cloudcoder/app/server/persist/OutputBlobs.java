@@ -0,0 +1,347 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.cloudcoder.app.shared.model.OutputBlob;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Deduplicated storage of test output (stdout and stderr) in
+ * {@link OutputBlob}s.  Outputs are identified by the SHA-1 hash of
+ * their UTF-8 encoding, and are stored once (compressed), no matter how
+ * many {@link TestResult}s have the same output.  Short outputs are
+ * stored inline in the test results table, since a hash would be no
+ * smaller.
+ * 
+ * Storing a {@link TestResult} takes a shared lock on each output blob
+ * it references (creating the blob if it doesn't exist), and
+ * {@link DedupTestOutputs} takes an exclusive lock on an unreferenced
+ * output blob before deleting it, so a blob can't be deleted while
+ * a transaction that references it is in progress.
+ * 
+ * @author David Hovemeyer
+ */
+public class OutputBlobs {
+	/**
+	 * Outputs shorter than this (in bytes) are stored inline.
+	 */
+	public static final int MIN_BLOB_LENGTH = 64;
+	
+	/**
+	 * Compute the hash identifying an output.
+	 * 
+	 * @param text the output text
+	 * @return the hash (40 hex digits)
+	 */
+	public static String hash(String text) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(text.getBytes("UTF-8"));
+			StringBuilder buf = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				buf.append(Character.forDigit((b >> 4) & 0xF, 16));
+				buf.append(Character.forDigit(b & 0xF, 16));
+			}
+			return buf.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not available", e);
+		}
+	}
+	
+	/**
+	 * Determine whether given output should be stored as an {@link OutputBlob}.
+	 * 
+	 * @param text the output text (may be null)
+	 * @return true if the output should be stored as an {@link OutputBlob},
+	 *         false if it should be stored inline
+	 */
+	public static boolean isBlob(String text) {
+		// Note that UTF-8 encoding is at least as long as the number of chars
+		return text != null && text.length() >= MIN_BLOB_LENGTH;
+	}
+	
+	/**
+	 * Create an {@link OutputBlob} for given output text.
+	 * 
+	 * @param text the output text
+	 * @return the {@link OutputBlob}
+	 */
+	public static OutputBlob createBlob(String text) {
+		try {
+			byte[] utf8 = text.getBytes("UTF-8");
+			Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			try {
+				deflater.setInput(utf8);
+				deflater.finish();
+				ByteArrayOutputStream out = new ByteArrayOutputStream(utf8.length / 4 + 16);
+				byte[] buf = new byte[4096];
+				while (!deflater.finished()) {
+					int n = deflater.deflate(buf);
+					out.write(buf, 0, n);
+				}
+				OutputBlob blob = new OutputBlob();
+				blob.setHash(hash(text));
+				blob.setLength(utf8.length);
+				blob.setData(out.toByteArray());
+				return blob;
+			} finally {
+				deflater.end();
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not available", e);
+		}
+	}
+	
+	/**
+	 * Get the output text stored in an {@link OutputBlob}.
+	 * 
+	 * @param blob the {@link OutputBlob}
+	 * @return the output text
+	 */
+	public static String getText(OutputBlob blob) {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(blob.getData());
+			byte[] utf8 = new byte[blob.getLength()];
+			int off = 0;
+			while (off < utf8.length) {
+				int n = inflater.inflate(utf8, off, utf8.length - off);
+				if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+					break;
+				}
+				off += n;
+			}
+			if (off != utf8.length) {
+				throw new PersistenceException("Truncated output blob " + blob.getHash(), null);
+			}
+			return new String(utf8, "UTF-8");
+		} catch (DataFormatException e) {
+			throw new PersistenceException("Corrupted output blob " + blob.getHash(), e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not available", e);
+		} finally {
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Get the form of a {@link TestResult} to be stored in the database:
+	 * a copy in which each output stored as an {@link OutputBlob} is
+	 * replaced by an empty string and the output's hash.  The original
+	 * {@link TestResult} is not modified.
+	 * 
+	 * @param testResult  the {@link TestResult}
+	 * @param blobs       map of hashes to {@link OutputBlob}s, to which the
+	 *                    test result's output blobs are added
+	 * @return the {@link TestResult} to store
+	 */
+	public static TestResult toStoredForm(TestResult testResult, Map<String, OutputBlob> blobs) {
+		TestResult stored = new TestResult(testResult.getOutcome(), testResult.getMessage(), testResult.getStdout(), testResult.getStderr());
+		stored.setId(testResult.getId());
+		stored.setSubmissionReceiptEventId(testResult.getSubmissionReceiptEventId());
+		if (isBlob(testResult.getStdout())) {
+			stored.setStdoutHash(addBlob(testResult.getStdout(), blobs));
+			stored.setStdout("");
+		}
+		if (isBlob(testResult.getStderr())) {
+			stored.setStderrHash(addBlob(testResult.getStderr(), blobs));
+			stored.setStderr("");
+		}
+		return stored;
+	}
+
+	private static String addBlob(String text, Map<String, OutputBlob> blobs) {
+		String hash = hash(text);
+		if (!blobs.containsKey(hash)) {
+			OutputBlob blob = createBlob(text);
+			blobs.put(hash, blob);
+		}
+		return hash;
+	}
+	
+	/**
+	 * Store output blobs which don't already exist, and take a shared lock
+	 * on the ones which do (so that they can't be deleted before the
+	 * current transaction commits).
+	 * 
+	 * The existing blobs are found using a non-locking read, and only
+	 * those rows are then locked in share mode.  Locking reads of hashes
+	 * that don't exist would take gap locks, and two transactions storing
+	 * the same new output would then deadlock on each other's gap lock
+	 * when inserting it.  The missing blobs are inserted with
+	 * <code>insert ignore</code>, which takes a shared lock on a
+	 * duplicate row if another transaction inserted the blob first.
+	 * 
+	 * @param conn   the connection, which must be in a transaction
+	 * @param blobs  map of hashes to {@link OutputBlob}s
+	 * @throws SQLException
+	 */
+	public static void storeBlobs(Connection conn, Map<String, OutputBlob> blobs) throws SQLException {
+		if (blobs.isEmpty()) {
+			return;
+		}
+		
+		// Lock and insert in hash order to avoid deadlocks
+		TreeMap<String, OutputBlob> sorted = new TreeMap<String, OutputBlob>(blobs);
+		
+		Set<String> existing = findHashes(conn, sorted.keySet(), false);
+		if (!existing.isEmpty()) {
+			// A blob deleted since it was read is stored again
+			existing = findHashes(conn, new TreeSet<String>(existing), true);
+		}
+		
+		if (existing.size() == sorted.size()) {
+			return;
+		}
+		
+		PreparedStatement insert = conn.prepareStatement(
+				"insert ignore into " + OutputBlob.SCHEMA.getDbTableName() +
+				" (hash, length, data) values (?, ?, ?)");
+		try {
+			for (OutputBlob blob : sorted.values()) {
+				if (!existing.contains(blob.getHash())) {
+					insert.setString(1, blob.getHash());
+					insert.setInt(2, blob.getLength());
+					insert.setBytes(3, blob.getData());
+					insert.addBatch();
+				}
+			}
+			insert.executeBatch();
+		} finally {
+			DBUtil.closeQuietly(insert);
+		}
+	}
+
+	private static Set<String> findHashes(Connection conn, Set<String> hashes, boolean lock) throws SQLException {
+		Set<String> found = new HashSet<String>();
+		PreparedStatement select = conn.prepareStatement(
+				"select hash from " + OutputBlob.SCHEMA.getDbTableName() +
+				" where hash in (" + placeholders(hashes.size()) + ")" +
+				(lock ? " order by hash lock in share mode" : ""));
+		try {
+			int index = 1;
+			for (String hash : hashes) {
+				select.setString(index++, hash);
+			}
+			ResultSet resultSet = select.executeQuery();
+			while (resultSet.next()) {
+				found.add(resultSet.getString(1));
+			}
+		} finally {
+			DBUtil.closeQuietly(select);
+		}
+		return found;
+	}
+	
+	/**
+	 * Load the outputs of {@link TestResult}s whose stdout and/or stderr
+	 * are stored as {@link OutputBlob}s, using a single query.
+	 * 
+	 * @param conn            the connection
+	 * @param testResultList  the {@link TestResult}s
+	 * @throws SQLException
+	 */
+	public static void loadOutputs(Connection conn, Collection<TestResult> testResultList) throws SQLException {
+		Set<String> hashes = new HashSet<String>();
+		for (TestResult testResult : testResultList) {
+			if (testResult.getStdoutHash() != null) {
+				hashes.add(testResult.getStdoutHash());
+			}
+			if (testResult.getStderrHash() != null) {
+				hashes.add(testResult.getStderrHash());
+			}
+		}
+		if (hashes.isEmpty()) {
+			return;
+		}
+		
+		Map<String, String> textMap = new HashMap<String, String>();
+		PreparedStatement stmt = conn.prepareStatement(
+				"select " + DBUtil.getColumnList(OutputBlob.SCHEMA) + " from " + OutputBlob.SCHEMA.getDbTableName() +
+				" where hash in (" + placeholders(hashes.size()) + ")");
+		try {
+			int index = 1;
+			for (String hash : hashes) {
+				stmt.setString(index++, hash);
+			}
+			ResultSet resultSet = stmt.executeQuery();
+			while (resultSet.next()) {
+				OutputBlob blob = new OutputBlob();
+				DBUtil.loadModelObjectFields(blob, OutputBlob.SCHEMA, resultSet);
+				textMap.put(blob.getHash(), getText(blob));
+			}
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+		
+		for (TestResult testResult : testResultList) {
+			if (testResult.getStdoutHash() != null) {
+				testResult.setStdout(getOutput(textMap, testResult.getStdoutHash()));
+			}
+			if (testResult.getStderrHash() != null) {
+				testResult.setStderr(getOutput(textMap, testResult.getStderrHash()));
+			}
+		}
+	}
+
+	private static String getOutput(Map<String, String> textMap, String hash) {
+		String text = textMap.get(hash);
+		if (text == null) {
+			throw new PersistenceException("Missing output blob " + hash, null);
+		}
+		return text;
+	}
+	
+	/**
+	 * Get a list of placeholders for an SQL <code>in</code> clause.
+	 * 
+	 * @param count number of placeholders
+	 * @return the placeholders
+	 */
+	static String placeholders(int count) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				buf.append(", ");
+			}
+			buf.append("?");
+		}
+		return buf.toString();
+	}
+}
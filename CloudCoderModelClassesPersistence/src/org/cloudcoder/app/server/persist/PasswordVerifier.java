@@ -0,0 +1,445 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.cloudcoder.app.shared.model.LoginThrottledException;
+import org.cloudcoder.app.shared.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Authenticates users by checking passwords against their BCrypt hashes
+ * on a small, dedicated pool of threads.  BCrypt is deliberately slow,
+ * so a burst of logins (e.g., at the start of a lab) would otherwise
+ * occupy every request thread hashing passwords.  Only
+ * <code>numThreads</code> hashes run at once, at most
+ * <code>queueCapacity</code> wait, and a login that can't be queued,
+ * or waits longer than <code>maxWaitMillis</code>, is refused
+ * immediately with a {@link LoginThrottledException} so that the client
+ * can try again shortly.  Logins for a username or client address with
+ * too many recent failures (see {@link LoginRateLimiter}) are refused
+ * before the user is looked up or any hashing is done.
+ * 
+ * Every login waiting for its password to be checked holds a request
+ * thread, so <code>numThreads + queueCapacity</code> must be well below
+ * the size of the servlet container's request thread pool: otherwise a
+ * burst of logins can still occupy every request thread.
+ * 
+ * When CloudCoder runs behind a load balancer or reverse proxy, every
+ * request comes from the proxy's address, so the client address is taken
+ * from the <code>X-Forwarded-For</code> header of requests from the
+ * trusted proxies (see {@link #setTrustedProxies(Collection)}).
+ * 
+ * @author David Hovemeyer
+ */
+public class PasswordVerifier {
+	private static final Logger logger = LoggerFactory.getLogger(PasswordVerifier.class);
+	
+	/** Default number of hashing threads. */
+	public static final int DEFAULT_NUM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	
+	/** Default number of logins that may wait for a hashing thread. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 8;
+	
+	/** Default maximum time in milliseconds a login waits for its password to be checked. */
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 5000L;
+	
+	/** Default number of failures per username within the window after which logins are refused. */
+	public static final int DEFAULT_MAX_USER_FAILURES = 10;
+	
+	/** Default number of failures per client address within the window after which logins are refused. */
+	public static final int DEFAULT_MAX_ADDRESS_FAILURES = 100;
+	
+	/** Default length of the failure window in milliseconds. */
+	public static final long DEFAULT_FAILURE_WINDOW_MILLIS = 10L * 60L * 1000L;
+	
+	/** Default maximum number of usernames and addresses whose failures are tracked. */
+	public static final int DEFAULT_MAX_TRACKED_KEYS = 100000;
+	
+	private static volatile PasswordVerifier instance;
+	
+	/**
+	 * Get the PasswordVerifier.  If none has been installed with
+	 * {@link #setInstance(PasswordVerifier)}, one with the default
+	 * configuration is created.
+	 * 
+	 * @return the PasswordVerifier
+	 */
+	public static PasswordVerifier getInstance() {
+		PasswordVerifier result = instance;
+		if (result == null) {
+			synchronized (PasswordVerifier.class) {
+				result = instance;
+				if (result == null) {
+					result = new PasswordVerifier(DEFAULT_NUM_THREADS, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_WAIT_MILLIS,
+							new LoginRateLimiter(DEFAULT_MAX_USER_FAILURES, DEFAULT_FAILURE_WINDOW_MILLIS, DEFAULT_MAX_TRACKED_KEYS),
+							new LoginRateLimiter(DEFAULT_MAX_ADDRESS_FAILURES, DEFAULT_FAILURE_WINDOW_MILLIS, DEFAULT_MAX_TRACKED_KEYS));
+					instance = result;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Install a PasswordVerifier, shutting down the previous one (if any).
+	 * 
+	 * @param verifier the PasswordVerifier to install, or null to remove the current one
+	 */
+	public static void setInstance(PasswordVerifier verifier) {
+		PasswordVerifier previous;
+		synchronized (PasswordVerifier.class) {
+			previous = instance;
+			instance = verifier;
+		}
+		if (previous != null && previous != verifier) {
+			previous.shutdown();
+		}
+	}
+	
+	private final ThreadPoolExecutor executor;
+	private final long maxWaitMillis;
+	private final LoginRateLimiter userLimiter;
+	private final LoginRateLimiter addressLimiter;
+	private volatile Set<String> trustedProxies;
+	
+	private final AtomicLong verified;
+	private final AtomicLong failed;
+	private final AtomicLong rejectedBusy;
+	private final AtomicLong timedOut;
+	private final AtomicLong hashed;
+	private final AtomicLong totalQueueWaitNanos;
+	private final AtomicLong maxQueueWaitNanos;
+	private final AtomicLong totalHashNanos;
+	private final AtomicLong maxHashNanos;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param numThreads      number of threads checking passwords
+	 * @param queueCapacity   maximum number of logins waiting for a thread
+	 * @param maxWaitMillis   maximum time a login waits for its password to be checked
+	 * @param userLimiter     failure rate limiter for usernames
+	 * @param addressLimiter  failure rate limiter for client addresses
+	 */
+	public PasswordVerifier(int numThreads, int queueCapacity, long maxWaitMillis,
+			LoginRateLimiter userLimiter, LoginRateLimiter addressLimiter) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "PasswordVerifier-" + threadCount.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+		this.maxWaitMillis = maxWaitMillis;
+		this.userLimiter = userLimiter;
+		this.addressLimiter = addressLimiter;
+		this.trustedProxies = Collections.emptySet();
+		this.verified = new AtomicLong();
+		this.failed = new AtomicLong();
+		this.rejectedBusy = new AtomicLong();
+		this.timedOut = new AtomicLong();
+		this.hashed = new AtomicLong();
+		this.totalQueueWaitNanos = new AtomicLong();
+		this.maxQueueWaitNanos = new AtomicLong();
+		this.totalHashNanos = new AtomicLong();
+		this.maxHashNanos = new AtomicLong();
+	}
+	
+	/**
+	 * Set the addresses of the trusted proxies (e.g., the load balancer),
+	 * whose <code>X-Forwarded-For</code> headers are used to find the
+	 * client address of a request.
+	 * 
+	 * @param trustedProxies the addresses of the trusted proxies
+	 */
+	public void setTrustedProxies(Collection<String> trustedProxies) {
+		this.trustedProxies = Collections.unmodifiableSet(new HashSet<String>(trustedProxies));
+	}
+	
+	/**
+	 * Get the client address of a request.  If the request came from a
+	 * trusted proxy, the client address is the last address in the
+	 * <code>X-Forwarded-For</code> header which is not a trusted proxy
+	 * (earlier addresses can be forged by the client).
+	 * 
+	 * @param req the request
+	 * @return the client address, or null if the request came from a
+	 *         trusted proxy but the client address is not known
+	 */
+	public String getClientAddress(HttpServletRequest req) {
+		String remoteAddress = req.getRemoteAddr();
+		Set<String> proxies = trustedProxies;
+		if (!proxies.contains(remoteAddress)) {
+			return remoteAddress;
+		}
+		String forwardedFor = req.getHeader("X-Forwarded-For");
+		if (forwardedFor == null) {
+			return null;
+		}
+		String[] addresses = forwardedFor.split(",");
+		for (int i = addresses.length - 1; i >= 0; i--) {
+			String address = addresses[i].trim();
+			if (!address.equals("") && !proxies.contains(address)) {
+				return address;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Authenticate a user logging in with given request.
+	 * 
+	 * @param userName the username
+	 * @param password the plaintext password
+	 * @param req      the request (used to find the client address)
+	 * @return the authenticated User, or null if the username/password
+	 *         combination is not found
+	 * @throws LoginThrottledException if the login was refused because of too
+	 *         many recent failures, or because the server is too busy
+	 * @see #getClientAddress(HttpServletRequest)
+	 */
+	public User authenticate(String userName, String password, HttpServletRequest req) throws LoginThrottledException {
+		return authenticate(userName, password, getClientAddress(req));
+	}
+	
+	/**
+	 * Authenticate a user.
+	 * 
+	 * @param userName      the username
+	 * @param password      the plaintext password
+	 * @param remoteAddress the client's address (null if not known)
+	 * @return the authenticated User, or null if the username/password
+	 *         combination is not found
+	 * @throws LoginThrottledException if the login was refused because of too
+	 *         many recent failures, or because the server is too busy
+	 */
+	public User authenticate(String userName, String password, String remoteAddress) throws LoginThrottledException {
+		long now = System.currentTimeMillis();
+		long waitMillis = Math.max(userLimiter.check(userName, now), addressLimiter.check(remoteAddress, now));
+		if (waitMillis > 0L) {
+			logger.info("Login refused for user {} from {}: too many failed attempts", userName, remoteAddress);
+			throw new LoginThrottledException("Too many failed login attempts", toSeconds(waitMillis));
+		}
+		
+		User user = Database.getInstance().getUserWithoutAuthentication(userName);
+		boolean success = user != null && checkPassword(password, user.getPasswordHash());
+		
+		now = System.currentTimeMillis();
+		if (success) {
+			userLimiter.reset(userName);
+			return user;
+		}
+		userLimiter.recordFailure(userName, now);
+		addressLimiter.recordFailure(remoteAddress, now);
+		return null;
+	}
+
+	/**
+	 * Check a plaintext password against a BCrypt hash using one of
+	 * the hashing threads.
+	 * 
+	 * @param password      the plaintext password
+	 * @param passwordHash  the BCrypt hash
+	 * @return true if the password matches the hash, false otherwise
+	 * @throws LoginThrottledException if the password could not be checked
+	 *         because too many other passwords are waiting to be checked
+	 */
+	public boolean checkPassword(final String password, final String passwordHash) throws LoginThrottledException {
+		final long enqueueTime = System.nanoTime();
+		Future<Boolean> future;
+		try {
+			future = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					long start = System.nanoTime();
+					record(totalQueueWaitNanos, maxQueueWaitNanos, start - enqueueTime);
+					try {
+						return BCrypt.checkpw(password, passwordHash);
+					} finally {
+						record(totalHashNanos, maxHashNanos, System.nanoTime() - start);
+						hashed.incrementAndGet();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejectedBusy.incrementAndGet();
+			logger.warn("Login refused: {} passwords already waiting to be checked", executor.getQueue().size());
+			throw new LoginThrottledException("Server is busy", 1);
+		}
+		
+		boolean match;
+		try {
+			match = future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(false);
+			timedOut.incrementAndGet();
+			logger.warn("Login refused: password not checked within {} ms", maxWaitMillis);
+			throw new LoginThrottledException("Server is busy", 1);
+		} catch (InterruptedException e) {
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new LoginThrottledException("Server is busy", 1);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error checking password", e.getCause());
+		}
+		
+		if (match) {
+			verified.incrementAndGet();
+		} else {
+			failed.incrementAndGet();
+		}
+		return match;
+	}
+	
+	/**
+	 * Stop the hashing threads.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * @return number of logins waiting for a hashing thread
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+	
+	/**
+	 * @return number of passwords checked that matched their hashes
+	 */
+	public long getVerified() {
+		return verified.get();
+	}
+	
+	/**
+	 * @return number of passwords checked that did not match their hashes
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+	
+	/**
+	 * @return number of logins refused because the queue was full
+	 */
+	public long getRejectedBusy() {
+		return rejectedBusy.get();
+	}
+	
+	/**
+	 * @return number of logins refused because the password wasn't checked in time
+	 */
+	public long getTimedOut() {
+		return timedOut.get();
+	}
+	
+	/**
+	 * @return the username failure rate limiter
+	 */
+	public LoginRateLimiter getUserLimiter() {
+		return userLimiter;
+	}
+	
+	/**
+	 * @return the client address failure rate limiter
+	 */
+	public LoginRateLimiter getAddressLimiter() {
+		return addressLimiter;
+	}
+	
+	/**
+	 * @return average time in milliseconds a password waited for a hashing thread
+	 */
+	public double getAverageQueueWaitMillis() {
+		return average(totalQueueWaitNanos);
+	}
+	
+	/**
+	 * @return longest time in milliseconds a password waited for a hashing thread
+	 */
+	public double getMaxQueueWaitMillis() {
+		return maxQueueWaitNanos.get() / 1000000.0;
+	}
+	
+	/**
+	 * @return average time in milliseconds to hash a password
+	 */
+	public double getAverageHashMillis() {
+		return average(totalHashNanos);
+	}
+	
+	/**
+	 * @return longest time in milliseconds to hash a password
+	 */
+	public double getMaxHashMillis() {
+		return maxHashNanos.get() / 1000000.0;
+	}
+	
+	@Override
+	public String toString() {
+		return "threads=" + executor.getMaximumPoolSize() + ", queued=" + getQueueDepth() +
+				", verified=" + getVerified() + ", failed=" + getFailed() +
+				", rejectedBusy=" + getRejectedBusy() + ", timedOut=" + getTimedOut() +
+				", refusedUser=" + userLimiter.getRefused() + ", refusedAddress=" + addressLimiter.getRefused() +
+				String.format(", queueWaitMillis=%.1f/%.1f, hashMillis=%.1f/%.1f",
+						getAverageQueueWaitMillis(), getMaxQueueWaitMillis(), getAverageHashMillis(), getMaxHashMillis());
+	}
+
+	private double average(AtomicLong totalNanos) {
+		long count = hashed.get();
+		return count > 0 ? totalNanos.get() / 1000000.0 / count : 0.0;
+	}
+
+	private static void record(AtomicLong total, AtomicLong max, long nanos) {
+		total.addAndGet(nanos);
+		long current;
+		while (nanos > (current = max.get())) {
+			if (max.compareAndSet(current, nanos)) {
+				break;
+			}
+		}
+	}
+
+	private static int toSeconds(long millis) {
+		return (int) Math.max(1L, (millis + 999L) / 1000L);
+	}
+}
@@ -0,0 +1,83 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Servlet context listener to install a {@link PasswordVerifier}
+ * configured using the <code>cloudcoder.login.numThreads</code>,
+ * <code>cloudcoder.login.queueCapacity</code>, <code>cloudcoder.login.maxWaitMillis</code>,
+ * <code>cloudcoder.login.maxUserFailures</code>, <code>cloudcoder.login.maxAddressFailures</code>,
+ * <code>cloudcoder.login.failureWindowMillis</code>, and <code>cloudcoder.login.trustedProxies</code>
+ * context parameters.
+ * 
+ * @author David Hovemeyer
+ */
+public class PasswordVerifierServletContextListener implements ServletContextListener {
+	private static final Logger logger = LoggerFactory.getLogger(PasswordVerifierServletContextListener.class);
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext ctx = event.getServletContext();
+		int numThreads = (int) getParam(ctx, "cloudcoder.login.numThreads", PasswordVerifier.DEFAULT_NUM_THREADS);
+		int queueCapacity = (int) getParam(ctx, "cloudcoder.login.queueCapacity", PasswordVerifier.DEFAULT_QUEUE_CAPACITY);
+		long maxWaitMillis = getParam(ctx, "cloudcoder.login.maxWaitMillis", PasswordVerifier.DEFAULT_MAX_WAIT_MILLIS);
+		int maxUserFailures = (int) getParam(ctx, "cloudcoder.login.maxUserFailures", PasswordVerifier.DEFAULT_MAX_USER_FAILURES);
+		int maxAddressFailures = (int) getParam(ctx, "cloudcoder.login.maxAddressFailures", PasswordVerifier.DEFAULT_MAX_ADDRESS_FAILURES);
+		long failureWindowMillis = getParam(ctx, "cloudcoder.login.failureWindowMillis", PasswordVerifier.DEFAULT_FAILURE_WINDOW_MILLIS);
+		
+		List<String> trustedProxies = new ArrayList<String>();
+		String trustedProxiesParam = ctx.getInitParameter("cloudcoder.login.trustedProxies");
+		if (trustedProxiesParam != null) {
+			for (String address : trustedProxiesParam.split(",")) {
+				if (!address.trim().equals("")) {
+					trustedProxies.add(address.trim());
+				}
+			}
+		}
+		
+		PasswordVerifier verifier = new PasswordVerifier(numThreads, queueCapacity, maxWaitMillis,
+				new LoginRateLimiter(maxUserFailures, failureWindowMillis, PasswordVerifier.DEFAULT_MAX_TRACKED_KEYS),
+				new LoginRateLimiter(maxAddressFailures, failureWindowMillis, PasswordVerifier.DEFAULT_MAX_TRACKED_KEYS));
+		verifier.setTrustedProxies(trustedProxies);
+		PasswordVerifier.setInstance(verifier);
+		logger.info("Password verifier: numThreads={}, queueCapacity={}, maxWaitMillis={}, maxUserFailures={}, maxAddressFailures={}, failureWindowMillis={}, trustedProxies={}",
+				new Object[]{numThreads, queueCapacity, maxWaitMillis, maxUserFailures, maxAddressFailures, failureWindowMillis, trustedProxies});
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		PasswordVerifier verifier = PasswordVerifier.getInstance();
+		logger.info("Password verifier statistics: {}", verifier);
+		PasswordVerifier.setInstance(null);
+	}
+
+	private static long getParam(ServletContext ctx, String name, long defaultValue) {
+		String value = ctx.getInitParameter(name);
+		return value != null ? Long.parseLong(value.trim()) : defaultValue;
+	}
+}
@@ -0,0 +1,206 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, versioned read-through cache.  Values are loaded on demand
+ * by a {@link Loader} and kept in LRU order, up to a maximum number of
+ * entries.  Entries expire after a maximum age, which bounds staleness
+ * due to changes made outside of this process (for example, by
+ * the command line admin tools).  Every invalidation increments the
+ * cache's version: a value loaded concurrently with an invalidation
+ * is returned to the caller, but not cached, since it might reflect
+ * the state of the database before the change that caused the invalidation.
+ * Null values are cached.
+ * 
+ * @author David Hovemeyer
+ */
+public class ReadThroughCache<K, V> {
+	/**
+	 * Callback to load a value that is not in the cache.
+	 */
+	public interface Loader<K, V> {
+		/**
+		 * Load the value for given key.
+		 * 
+		 * @param key the key
+		 * @return the value (may be null)
+		 */
+		public V load(K key);
+	}
+	
+	private static class CachedValue<V> {
+		final V value;
+		final long expiration;
+		
+		CachedValue(V value, long expiration) {
+			this.value = value;
+			this.expiration = expiration;
+		}
+	}
+	
+	private final String name;
+	private final int maxEntries;
+	private final long maxAgeMillis;
+	private final LinkedHashMap<K, CachedValue<V>> map;
+	private final AtomicLong version;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong invalidations;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param name          name of the cache (for statistics)
+	 * @param maxEntries    maximum number of cached entries
+	 * @param maxAgeMillis  maximum age of a cached entry in milliseconds
+	 */
+	public ReadThroughCache(String name, final int maxEntries, long maxAgeMillis) {
+		this.name = name;
+		this.maxEntries = maxEntries;
+		this.maxAgeMillis = maxAgeMillis;
+		this.map = new LinkedHashMap<K, CachedValue<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		this.version = new AtomicLong();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.invalidations = new AtomicLong();
+	}
+	
+	/**
+	 * Get the value for given key, loading it if it is not cached
+	 * (or if the cached entry has expired).
+	 * 
+	 * @param key     the key
+	 * @param loader  the {@link Loader} to use if the value is not cached
+	 * @return the value
+	 */
+	public V get(K key, Loader<K, V> loader) {
+		long now = System.currentTimeMillis();
+		synchronized (map) {
+			CachedValue<V> entry = map.get(key);
+			if (entry != null && now < entry.expiration) {
+				hits.incrementAndGet();
+				return entry.value;
+			}
+		}
+		
+		misses.incrementAndGet();
+		long loadVersion = version.get();
+		V value = loader.load(key);
+		
+		synchronized (map) {
+			if (version.get() == loadVersion) {
+				map.put(key, new CachedValue<V>(value, now + maxAgeMillis));
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * Invalidate the cached value for given key.
+	 * 
+	 * @param key the key
+	 */
+	public void invalidate(K key) {
+		synchronized (map) {
+			version.incrementAndGet();
+			invalidations.incrementAndGet();
+			map.remove(key);
+		}
+	}
+	
+	/**
+	 * Invalidate all cached values.
+	 */
+	public void invalidateAll() {
+		synchronized (map) {
+			version.incrementAndGet();
+			invalidations.incrementAndGet();
+			map.clear();
+		}
+	}
+	
+	/**
+	 * @return the name of the cache
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return the current number of cached entries
+	 */
+	public int size() {
+		synchronized (map) {
+			return map.size();
+		}
+	}
+	
+	/**
+	 * @return the maximum number of cached entries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+	
+	/**
+	 * @return number of lookups satisfied from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return number of lookups which required loading the value
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * @return number of invalidations
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+	
+	/**
+	 * @return fraction of lookups satisfied from the cache (0 if there have been no lookups)
+	 */
+	public double getHitRatio() {
+		long h = hits.get(), total = h + misses.get();
+		return total > 0 ? (double) h / total : 0.0;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s: size=%d/%d, hits=%d, misses=%d, hitRatio=%.3f, invalidations=%d",
+				name, size(), maxEntries, getHits(), getMisses(), getHitRatio(), getInvalidations());
+	}
+}
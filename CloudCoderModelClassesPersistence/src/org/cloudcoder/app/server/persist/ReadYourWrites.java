@@ -0,0 +1,117 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks when each session last wrote to the primary database, so that
+ * {@link JDBCDatabase} can send a session's read-only transactions to the
+ * primary database (rather than to a possibly-lagging replica) for a short
+ * time after the session writes.  This gives each session read-your-writes
+ * consistency.
+ * 
+ * The session is identified by a key (e.g., the HTTP session id)
+ * associated with the current thread using {@link #setSessionKey(String)}.
+ * Threads with no session key are not tracked, so their reads always
+ * go to the replica (if there is one).
+ * 
+ * @author David Hovemeyer
+ */
+public class ReadYourWrites {
+	/**
+	 * Write times older than this are pruned.
+	 */
+	private static final long MAX_TRACKED_MILLIS = 60000L;
+	
+	/**
+	 * Prune old write times every this many recorded writes.
+	 */
+	private static final int PRUNE_INTERVAL = 1000;
+	
+	private static final ThreadLocal<String> sessionKey = new ThreadLocal<String>();
+	private static final ConcurrentHashMap<String, Long> lastWriteMap = new ConcurrentHashMap<String, Long>();
+	private static int writeCount;
+	
+	/**
+	 * Set the session key for the current thread.
+	 * 
+	 * @param key the session key, or null if the thread is not acting for a session
+	 */
+	public static void setSessionKey(String key) {
+		sessionKey.set(key);
+	}
+	
+	/**
+	 * Clear the session key for the current thread.
+	 */
+	public static void clearSessionKey() {
+		sessionKey.remove();
+	}
+	
+	/**
+	 * @return the session key for the current thread, or null if there is none
+	 */
+	public static String getSessionKey() {
+		return sessionKey.get();
+	}
+	
+	/**
+	 * Record that the current thread's session has written to the
+	 * primary database.
+	 */
+	public static void recordWrite() {
+		String key = sessionKey.get();
+		if (key == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		lastWriteMap.put(key, now);
+		
+		boolean prune;
+		synchronized (lastWriteMap) {
+			prune = (++writeCount % PRUNE_INTERVAL) == 0;
+		}
+		if (prune) {
+			for (Iterator<Map.Entry<String, Long>> i = lastWriteMap.entrySet().iterator(); i.hasNext(); ) {
+				if (now - i.next().getValue() > MAX_TRACKED_MILLIS) {
+					i.remove();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Determine whether the current thread's session has written to the
+	 * primary database recently.
+	 * 
+	 * @param windowMillis how recent (in milliseconds) a write must be
+	 * @return true if the session wrote within the last <code>windowMillis</code>
+	 *         milliseconds, false otherwise
+	 */
+	public static boolean wroteWithin(long windowMillis) {
+		String key = sessionKey.get();
+		if (key == null) {
+			return false;
+		}
+		Long lastWrite = lastWriteMap.get(key);
+		return lastWrite != null && System.currentTimeMillis() - lastWrite < windowMillis;
+	}
+}
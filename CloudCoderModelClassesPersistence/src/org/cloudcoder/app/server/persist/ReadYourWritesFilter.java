@@ -0,0 +1,62 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Associate each request with its HTTP session for the purposes of
+ * {@link ReadYourWrites}, so that read-only transactions which follow
+ * a session's writes see those writes even if a read replica is lagging.
+ * 
+ * @author David Hovemeyer
+ */
+public class ReadYourWritesFilter implements Filter {
+
+	@Override
+	public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain)
+			throws IOException, ServletException {
+		HttpSession session = ((HttpServletRequest) req).getSession(false);
+		ReadYourWrites.setSessionKey(session != null ? session.getId() : null);
+		try {
+			chain.doFilter(req, resp);
+		} finally {
+			ReadYourWrites.clearSessionKey();
+		}
+	}
+
+	@Override
+	public void init(FilterConfig config) throws ServletException {
+		// nothing to do
+	}
+
+	@Override
+	public void destroy() {
+		// nothing to do
+	}
+
+}
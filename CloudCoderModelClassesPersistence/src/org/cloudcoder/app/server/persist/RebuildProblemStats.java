@@ -0,0 +1,145 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.ProblemStats;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionStatus;
+import org.cloudcoder.app.shared.model.UserProblemStats;
+
+/**
+ * Rebuild the {@link UserProblemStats} and {@link ProblemStats} tables
+ * from the submission receipts.  Normally these tables are maintained
+ * incrementally as submission receipts are added and updated,
+ * so this only needs to be done when the tables are first created,
+ * or if they are suspected of being inaccurate.
+ * 
+ * @author David Hovemeyer
+ */
+public class RebuildProblemStats {
+	public static void main(String[] args) throws Exception {
+		ConfigurationUtil.configureLog4j();
+		
+		System.out.println("Rebuild problem statistics from submission receipts");
+		
+		try {
+			rebuildProblemStats();
+		} catch (SQLException e) {
+			System.err.println("Database error: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Connect to the webapp database using the configuration properties
+	 * and rebuild the problem statistics tables.
+	 * 
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public static void rebuildProblemStats() throws ClassNotFoundException, IOException, SQLException {
+		Class.forName("com.mysql.jdbc.Driver");
+		Properties config = DBUtil.getConfigProperties();
+		Connection conn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		try {
+			System.out.print("Rebuilding problem statistics...");
+			System.out.flush();
+			rebuildProblemStats(conn);
+			System.out.println("done");
+		} finally {
+			DBUtil.closeQuietly(conn);
+		}
+	}
+
+	/**
+	 * Rebuild the problem statistics tables in a single transaction.
+	 * 
+	 * @param conn the Connection to the webapp database
+	 * @throws SQLException
+	 */
+	public static void rebuildProblemStats(Connection conn) throws SQLException {
+		boolean origAutoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		boolean committed = false;
+		PreparedStatement insertUserStats = null;
+		try {
+			DBUtil.execSql(conn, "delete from " + UserProblemStats.SCHEMA.getDbTableName());
+			DBUtil.execSql(conn, "delete from " + ProblemStats.SCHEMA.getDbTableName());
+			
+			insertUserStats = conn.prepareStatement(
+					"insert into " + UserProblemStats.SCHEMA.getDbTableName() +
+					" (user_id, problem_id, max_tests_passed, completed, best_submission_receipt_event_id, last_submission_timestamp, latest_submission_receipt_event_id)" +
+					" select e.user_id, e.problem_id, max(sr.num_tests_passed), max(sr.status = ?), 0, max(e.timestamp), max(sr.event_id)" +
+					"   from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " +
+					"        " + Event.SCHEMA.getDbTableName() + " as e " +
+					"  where sr.event_id = e.id " +
+					"  group by e.user_id, e.problem_id");
+			insertUserStats.setInt(1, SubmissionStatus.TESTS_PASSED.ordinal());
+			insertUserStats.executeUpdate();
+			
+			// The best submission is the earliest one passing the most tests
+			DBUtil.execSql(conn,
+					"update " + UserProblemStats.SCHEMA.getDbTableName() + " as ups" +
+					"   set ups.best_submission_receipt_event_id = (" + getBestSubmissionReceiptQuery("ups") + ")");
+			
+			DBUtil.execSql(conn,
+					"insert into " + ProblemStats.SCHEMA.getDbTableName() +
+					" (problem_id, num_started, num_passed_at_least_one_test, num_completed)" +
+					" select problem_id, count(*), sum(completed or max_tests_passed > 0), sum(completed)" +
+					"   from " + UserProblemStats.SCHEMA.getDbTableName() +
+					"  group by problem_id");
+			
+			conn.commit();
+			committed = true;
+		} finally {
+			DBUtil.closeQuietly(insertUserStats);
+			if (!committed) {
+				conn.rollback();
+			}
+			conn.setAutoCommit(origAutoCommit);
+		}
+	}
+
+	/**
+	 * Get a subquery which finds the event id of the best submission
+	 * receipt for the user and problem of a row with the given alias.
+	 * The best submission receipt is the earliest one passing the
+	 * maximum number of tests (using the event id to break ties).
+	 * 
+	 * @param alias the alias of a table with user_id and problem_id columns
+	 * @return the subquery
+	 */
+	static String getBestSubmissionReceiptQuery(String alias) {
+		return "select b_sr.event_id" +
+				"  from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as b_sr, " +
+				"       " + Event.SCHEMA.getDbTableName() + " as b_e " +
+				" where b_sr.event_id = b_e.id " +
+				"   and b_e.user_id = " + alias + ".user_id " +
+				"   and b_e.problem_id = " + alias + ".problem_id " +
+				" order by b_sr.num_tests_passed desc, b_e.timestamp asc, b_e.id asc " +
+				" limit 1";
+	}
+}
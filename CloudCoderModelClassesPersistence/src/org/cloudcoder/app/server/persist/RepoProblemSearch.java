@@ -73,7 +73,7 @@ public class RepoProblemSearch {
 
 		// Search by tags and (maybe) language
 		StringBuilder sql = new StringBuilder()
-		.append("select rp.*, rpt.* ")
+		.append("select " + DBUtil.getColumnList(RepoProblem.SCHEMA, "rp") + ", " + DBUtil.getColumnList(RepoProblemTag.SCHEMA, "rpt"))
 		.append("  from ")
 		.append(RepoProblem.SCHEMA.getDbTableName())
 		.append(" as rp, ")
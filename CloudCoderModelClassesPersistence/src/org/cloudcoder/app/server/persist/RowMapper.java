@@ -0,0 +1,113 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+
+/**
+ * Maps the fields of a model object to and from the columns of a
+ * database row.  A RowMapper is created once per {@link ModelObjectSchema}
+ * (see {@link RowMappers#forSchema(ModelObjectSchema)}), so that
+ * decisions about how to read and write each column are made
+ * when the mapper is created rather than for every row.
+ * 
+ * @author David Hovemeyer
+ *
+ * @param <E> the model object type
+ */
+public abstract class RowMapper<E> {
+	private final ModelObjectSchema<E> schema;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param schema the schema of the model objects this mapper loads and stores
+	 */
+	protected RowMapper(ModelObjectSchema<E> schema) {
+		this.schema = schema;
+	}
+	
+	/**
+	 * @return the schema of the model objects this mapper loads and stores
+	 */
+	public ModelObjectSchema<E> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * Load a model object's fields from the current row of a {@link ResultSet}.
+	 * 
+	 * @param obj        the model object
+	 * @param resultSet  the {@link ResultSet}
+	 * @param index      the index of the first column containing model object data
+	 * @return the index of the first column after the model object data
+	 * @throws SQLException
+	 */
+	public abstract int load(E obj, ResultSet resultSet, int index) throws SQLException;
+	
+	/**
+	 * Bind a model object's field values (except for its unique id, if any)
+	 * to the parameters of a {@link PreparedStatement}.
+	 * 
+	 * @param obj              the model object
+	 * @param stmt             the {@link PreparedStatement}
+	 * @param index            the index of the first parameter to bind
+	 * @param truncateStrings  if true, string values longer than their field's size are truncated
+	 * @return the index of the first parameter after the model object data
+	 * @throws SQLException
+	 */
+	public abstract int storeNoId(E obj, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException;
+	
+	/**
+	 * Truncate a string value to a field's size.
+	 * 
+	 * @param value  the string value (may be null)
+	 * @param size   the field size
+	 * @return the (possibly) truncated string value
+	 */
+	protected static String truncate(String value, int size) {
+		// FIXME: broken if string contains characters that don't have a 1-byte encoding in UTF8
+		return (value != null && value.length() > size) ? value.substring(0, size) : value;
+	}
+	
+	/**
+	 * Check that a schema's columns are the ones (in the order) that a
+	 * hand-written mapper expects.  This catches a schema change
+	 * which the mapper was not updated for.
+	 * 
+	 * @param schema       the schema
+	 * @param columnNames  the expected column names
+	 * @throws IllegalStateException if the schema's columns do not match
+	 */
+	protected static void checkColumns(ModelObjectSchema<?> schema, String... columnNames) {
+		List<? extends ModelObjectField<?, ?>> fieldList = schema.getFieldList();
+		boolean match = fieldList.size() == columnNames.length;
+		for (int i = 0; match && i < columnNames.length; i++) {
+			match = fieldList.get(i).getName().equals(columnNames[i]);
+		}
+		if (!match) {
+			throw new IllegalStateException("Row mapper for " + schema.getDbTableName() + " does not match schema version " + schema.getVersion());
+		}
+	}
+}
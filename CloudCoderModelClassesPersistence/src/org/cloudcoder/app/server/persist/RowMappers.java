@@ -0,0 +1,221 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Registry of {@link RowMapper}s.  The model objects which are loaded and
+ * stored in large numbers ({@link Change}, {@link Event}, {@link SubmissionReceipt},
+ * and {@link TestResult}) have hand-written mappers which call the typed
+ * {@link ResultSet}/{@link PreparedStatement} methods and the model objects'
+ * primitive getters and setters directly.  Every other schema gets a
+ * {@link SchemaRowMapper}, created the first time it is needed.
+ * 
+ * @author David Hovemeyer
+ */
+public class RowMappers {
+	private static final ConcurrentHashMap<ModelObjectSchema<?>, RowMapper<?>> mapperMap =
+			new ConcurrentHashMap<ModelObjectSchema<?>, RowMapper<?>>();
+	
+	static {
+		register(new ChangeRowMapper());
+		register(new EventRowMapper());
+		register(new SubmissionReceiptRowMapper());
+		register(new TestResultRowMapper());
+	}
+	
+	private static void register(RowMapper<?> mapper) {
+		mapperMap.put(mapper.getSchema(), mapper);
+	}
+	
+	/**
+	 * Get the {@link RowMapper} for given schema.
+	 * 
+	 * @param schema the schema
+	 * @return the {@link RowMapper} for the schema
+	 */
+	@SuppressWarnings("unchecked")
+	public static<E> RowMapper<E> forSchema(ModelObjectSchema<E> schema) {
+		RowMapper<E> mapper = (RowMapper<E>) mapperMap.get(schema);
+		if (mapper == null) {
+			mapper = new SchemaRowMapper<E>(schema);
+			RowMapper<E> existing = (RowMapper<E>) mapperMap.putIfAbsent(schema, mapper);
+			if (existing != null) {
+				mapper = existing;
+			}
+		}
+		return mapper;
+	}
+	
+	/**
+	 * Mapper for {@link Change}.  The database has two columns for the
+	 * change text: text_short is used if the text is no longer than
+	 * {@link Change#MAX_TEXT_LEN_IN_ROW}, and text (a blob) otherwise.
+	 */
+	private static class ChangeRowMapper extends RowMapper<Change> {
+		ChangeRowMapper() {
+			super(Change.SCHEMA);
+			checkColumns(Change.SCHEMA, "event_id", "type", "start_row", "end_row", "start_col", "end_col", "text_short", "text", "timing");
+		}
+
+		@Override
+		public int load(Change change, ResultSet resultSet, int index) throws SQLException {
+			change.setEventId(resultSet.getInt(index++));
+			change.setType(resultSet.getInt(index++));
+			change.setStartRow(resultSet.getInt(index++));
+			change.setEndRow(resultSet.getInt(index++));
+			change.setStartColumn(resultSet.getInt(index++));
+			change.setEndColumn(resultSet.getInt(index++));
+			String textShort = resultSet.getString(index++);
+			String text = resultSet.getString(index++);
+			change.setText(textShort != null ? textShort : text);
+			change.setTiming(resultSet.getString(index++));
+			return index;
+		}
+
+		@Override
+		public int storeNoId(Change change, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+			String text = change.getText();
+			boolean isShort = text.length() <= Change.MAX_TEXT_LEN_IN_ROW;
+			
+			stmt.setInt(index++, change.getEventId());
+			stmt.setInt(index++, change.getType().ordinal());
+			stmt.setInt(index++, change.getStartRow());
+			stmt.setInt(index++, change.getEndRow());
+			stmt.setInt(index++, change.getStartColumn());
+			stmt.setInt(index++, change.getEndColumn());
+			stmt.setString(index++, isShort ? text : null);
+			stmt.setString(index++, isShort ? null : text);
+			stmt.setString(index++, change.getTiming());
+			return index;
+		}
+	}
+	
+	/**
+	 * Mapper for {@link Event}.
+	 */
+	private static class EventRowMapper extends RowMapper<Event> {
+		EventRowMapper() {
+			super(Event.SCHEMA);
+			checkColumns(Event.SCHEMA, "id", "user_id", "problem_id", "type", "timestamp");
+		}
+
+		@Override
+		public int load(Event event, ResultSet resultSet, int index) throws SQLException {
+			event.setId(resultSet.getInt(index++));
+			event.setUserId(resultSet.getInt(index++));
+			event.setProblemId(resultSet.getInt(index++));
+			event.setType(resultSet.getInt(index++));
+			event.setTimestamp(resultSet.getLong(index++));
+			return index;
+		}
+
+		@Override
+		public int storeNoId(Event event, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+			stmt.setInt(index++, event.getUserId());
+			stmt.setInt(index++, event.getProblemId());
+			stmt.setInt(index++, event.getType().ordinal());
+			stmt.setLong(index++, event.getTimestamp());
+			return index;
+		}
+	}
+	
+	/**
+	 * Mapper for {@link SubmissionReceipt}.
+	 */
+	private static class SubmissionReceiptRowMapper extends RowMapper<SubmissionReceipt> {
+		SubmissionReceiptRowMapper() {
+			super(SubmissionReceipt.SCHEMA);
+			checkColumns(SubmissionReceipt.SCHEMA, "event_id", "last_edit_event_id", "status", "num_tests_attempted", "num_tests_passed");
+		}
+
+		@Override
+		public int load(SubmissionReceipt receipt, ResultSet resultSet, int index) throws SQLException {
+			receipt.setEventId(resultSet.getInt(index++));
+			receipt.setLastEditEventId(resultSet.getInt(index++));
+			receipt.setStatus(resultSet.getInt(index++));
+			receipt.setNumTestsAttempted(resultSet.getInt(index++));
+			receipt.setNumTestsPassed(resultSet.getInt(index++));
+			return index;
+		}
+
+		@Override
+		public int storeNoId(SubmissionReceipt receipt, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+			stmt.setInt(index++, receipt.getEventId());
+			stmt.setInt(index++, receipt.getLastEditEventId());
+			stmt.setInt(index++, receipt.getStatus().ordinal());
+			stmt.setInt(index++, receipt.getNumTestsAttempted());
+			stmt.setInt(index++, receipt.getNumTestsPassed());
+			return index;
+		}
+	}
+	
+	/**
+	 * Mapper for {@link TestResult}.
+	 */
+	private static class TestResultRowMapper extends RowMapper<TestResult> {
+		private final int messageSize;
+		
+		TestResultRowMapper() {
+			super(TestResult.SCHEMA);
+			checkColumns(TestResult.SCHEMA, "id", "submission_receipt_event_id", "test_outcome", "message", "stdout", "stderr", "stdout_hash", "stderr_hash");
+			messageSize = TestResult.SCHEMA.getFieldList().get(3).getSize();
+		}
+
+		@Override
+		public int load(TestResult testResult, ResultSet resultSet, int index) throws SQLException {
+			testResult.setId(resultSet.getInt(index++));
+			testResult.setSubmissionReceiptEventId(resultSet.getInt(index++));
+			testResult.setOutcome(resultSet.getInt(index++));
+			testResult.setMessage(resultSet.getString(index++));
+			testResult.setStdout(resultSet.getString(index++));
+			testResult.setStderr(resultSet.getString(index++));
+			testResult.setStdoutHash(resultSet.getString(index++));
+			testResult.setStderrHash(resultSet.getString(index++));
+			return index;
+		}
+
+		@Override
+		public int storeNoId(TestResult testResult, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+			String message = testResult.getMessage();
+			stmt.setInt(index++, testResult.getSubmissionReceiptEventId());
+			if (testResult.getOutcome() != null) {
+				stmt.setInt(index++, testResult.getOutcome().ordinal());
+			} else {
+				stmt.setNull(index++, Types.INTEGER);
+			}
+			stmt.setString(index++, truncateStrings ? truncate(message, messageSize) : message);
+			stmt.setString(index++, testResult.getStdout());
+			stmt.setString(index++, testResult.getStderr());
+			stmt.setString(index++, testResult.getStdoutHash());
+			stmt.setString(index++, testResult.getStderrHash());
+			return index;
+		}
+	}
+}
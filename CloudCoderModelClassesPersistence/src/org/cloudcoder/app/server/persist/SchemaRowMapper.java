@@ -0,0 +1,257 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+
+/**
+ * {@link RowMapper} for an arbitrary {@link ModelObjectSchema}.
+ * When the mapper is created, each field is assigned a column accessor
+ * for its type, which reads and writes the column using the typed
+ * {@link ResultSet} and {@link PreparedStatement} methods
+ * (<code>getInt</code>, <code>setString</code>, etc.)
+ * rather than converting the result of <code>getObject</code> for
+ * every column of every row.
+ * 
+ * @author David Hovemeyer
+ *
+ * @param <E> the model object type
+ */
+public class SchemaRowMapper<E> extends RowMapper<E> {
+	/**
+	 * Reads and writes the database column for one model object field.
+	 */
+	private static abstract class Column<E> {
+		final ModelObjectField<? super E, ?> field;
+		
+		Column(ModelObjectField<? super E, ?> field) {
+			this.field = field;
+		}
+		
+		abstract void load(E obj, ResultSet resultSet, int index) throws SQLException;
+		
+		abstract void store(E obj, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException;
+		
+		// The casts are safe because each Column subclass is only
+		// created for fields of the matching type (see createColumn)
+		@SuppressWarnings("unchecked")
+		<T> void set(E obj, T value) {
+			((ModelObjectField<? super E, T>) field).set(obj, value);
+		}
+		
+		@SuppressWarnings("unchecked")
+		<T> T get(E obj) {
+			return (T) field.get(obj);
+		}
+	}
+	
+	private static class IntegerColumn<E> extends Column<E> {
+		IntegerColumn(ModelObjectField<? super E, ?> field) {
+			super(field);
+		}
+		
+		@Override
+		void load(E obj, ResultSet resultSet, int index) throws SQLException {
+			int value = resultSet.getInt(index);
+			set(obj, resultSet.wasNull() ? null : Integer.valueOf(value));
+		}
+		
+		@Override
+		void store(E obj, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+			Integer value = get(obj);
+			if (value != null) {
+				stmt.setInt(index, value.intValue());
+			} else {
+				stmt.setNull(index, Types.INTEGER);
+			}
+		}
+	}
+	
+	private static class LongColumn<E> extends Column<E> {
+		LongColumn(ModelObjectField<? super E, ?> field) {
+			super(field);
+		}
+		
+		@Override
+		void load(E obj, ResultSet resultSet, int index) throws SQLException {
+			long value = resultSet.getLong(index);
+			set(obj, resultSet.wasNull() ? null : Long.valueOf(value));
+		}
+		
+		@Override
+		void store(E obj, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+			Long value = get(obj);
+			if (value != null) {
+				stmt.setLong(index, value.longValue());
+			} else {
+				stmt.setNull(index, Types.BIGINT);
+			}
+		}
+	}
+	
+	private static class BooleanColumn<E> extends Column<E> {
+		BooleanColumn(ModelObjectField<? super E, ?> field) {
+			super(field);
+		}
+		
+		@Override
+		void load(E obj, ResultSet resultSet, int index) throws SQLException {
+			boolean value = resultSet.getBoolean(index);
+			set(obj, resultSet.wasNull() ? null : Boolean.valueOf(value));
+		}
+		
+		@Override
+		void store(E obj, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+			Boolean value = get(obj);
+			if (value != null) {
+				stmt.setBoolean(index, value.booleanValue());
+			} else {
+				stmt.setNull(index, Types.BIT);
+			}
+		}
+	}
+	
+	private static class StringColumn<E> extends Column<E> {
+		StringColumn(ModelObjectField<? super E, ?> field) {
+			super(field);
+		}
+		
+		@Override
+		void load(E obj, ResultSet resultSet, int index) throws SQLException {
+			set(obj, resultSet.getString(index));
+		}
+		
+		@Override
+		void store(E obj, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+			String value = get(obj);
+			stmt.setString(index, truncateStrings ? truncate(value, field.getSize()) : value);
+		}
+	}
+	
+	/**
+	 * Enum values are stored as their ordinal integer values.
+	 */
+	private static class EnumColumn<E> extends Column<E> {
+		private final Object[] members;
+		
+		EnumColumn(ModelObjectField<? super E, ?> field) {
+			super(field);
+			this.members = field.getType().getEnumConstants();
+		}
+		
+		@Override
+		void load(E obj, ResultSet resultSet, int index) throws SQLException {
+			int ordinal = resultSet.getInt(index);
+			set(obj, resultSet.wasNull() ? null : members[ordinal]);
+		}
+		
+		@Override
+		void store(E obj, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+			Enum<?> value = get(obj);
+			if (value != null) {
+				stmt.setInt(index, value.ordinal());
+			} else {
+				stmt.setNull(index, Types.INTEGER);
+			}
+		}
+	}
+	
+	/**
+	 * Any other field type: use <code>getObject</code> and
+	 * {@link DBUtil#convertValue(Object, Class)}.
+	 */
+	private static class ObjectColumn<E> extends Column<E> {
+		ObjectColumn(ModelObjectField<? super E, ?> field) {
+			super(field);
+		}
+		
+		@Override
+		void load(E obj, ResultSet resultSet, int index) throws SQLException {
+			Object value = resultSet.getObject(index);
+			set(obj, value != null ? DBUtil.convertValue(value, field.getType()) : null);
+		}
+		
+		@Override
+		void store(E obj, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+			stmt.setObject(index, DBUtil.convertValueToStore(field.get(obj)));
+		}
+	}
+	
+	private final List<Column<E>> columnList;
+	private final List<Column<E>> columnListNoId;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param schema the schema of the model objects this mapper loads and stores
+	 */
+	public SchemaRowMapper(ModelObjectSchema<E> schema) {
+		super(schema);
+		this.columnList = new ArrayList<Column<E>>();
+		this.columnListNoId = new ArrayList<Column<E>>();
+		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+			Column<E> column = createColumn(field);
+			columnList.add(column);
+			if (!field.isUniqueId()) {
+				columnListNoId.add(column);
+			}
+		}
+	}
+	
+	private static<E> Column<E> createColumn(ModelObjectField<? super E, ?> field) {
+		Class<?> type = field.getType();
+		if (type == Integer.class) {
+			return new IntegerColumn<E>(field);
+		} else if (type == Long.class) {
+			return new LongColumn<E>(field);
+		} else if (type == Boolean.class) {
+			return new BooleanColumn<E>(field);
+		} else if (type == String.class) {
+			return new StringColumn<E>(field);
+		} else if (type.isEnum()) {
+			return new EnumColumn<E>(field);
+		} else {
+			return new ObjectColumn<E>(field);
+		}
+	}
+
+	@Override
+	public int load(E obj, ResultSet resultSet, int index) throws SQLException {
+		// Note: indexed loops, since this is called for every row of a result set
+		for (int i = 0; i < columnList.size(); i++) {
+			columnList.get(i).load(obj, resultSet, index++);
+		}
+		return index;
+	}
+
+	@Override
+	public int storeNoId(E obj, PreparedStatement stmt, int index, boolean truncateStrings) throws SQLException {
+		for (int i = 0; i < columnListNoId.size(); i++) {
+			columnListNoId.get(i).store(obj, stmt, index++, truncateStrings);
+		}
+		return index;
+	}
+}
@@ -85,7 +85,7 @@ public class SchemaUtil {
 					")"
 			);
 			
-			insert = conn.prepareStatement("insert into cc_schema_version values (?, ?)");
+			insert = conn.prepareStatement("insert into cc_schema_version (table_name, schema_version) values (?, ?)");
 			for (ModelObjectSchema<?> table : tables) {
 				insert.setString(1, table.getDbTableName());
 				insert.setInt(2, table.getVersion());
@@ -103,6 +103,50 @@ public class SchemaUtil {
 		}
 	}
 	
+	/**
+	 * Create given table if it is not yet recorded in the cc_schema_version
+	 * table.  This handles tables that were added to the webapp or repository
+	 * database after the database was originally created: the table is created
+	 * at its current schema version, so no migration is needed.
+	 * 
+	 * @param conn   connection to the database
+	 * @param table  current schema (model object metadata)
+	 * @return true if the table was created, false if it already existed
+	 * @throws SQLException
+	 */
+	public static<E> boolean createTableIfNeeded(Connection conn, ModelObjectSchema<E> table) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		PreparedStatement insert = null;
+		
+		try {
+			stmt = conn.prepareStatement("select count(*) from cc_schema_version where table_name = ?");
+			stmt.setString(1, table.getDbTableName());
+			resultSet = stmt.executeQuery();
+			if (!resultSet.next()) {
+				throw new SQLException("Couldn't retrieve information from cc_schema_version");
+			}
+			if (resultSet.getInt(1) > 0) {
+				// table is known
+				return false;
+			}
+			
+			logger.info("Creating table " + table.getDbTableName() + " at version " + table.getVersion());
+			DBUtil.createTable(conn, table);
+			
+			insert = conn.prepareStatement("insert into cc_schema_version (table_name, schema_version) values (?, ?)");
+			insert.setString(1, table.getDbTableName());
+			insert.setInt(2, table.getVersion());
+			insert.executeUpdate();
+			
+			return true;
+		} finally {
+			DBUtil.closeQuietly(insert);
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
 	/**
 	 * Get the schema version number for given table.
 	 * 
@@ -160,12 +204,7 @@ public class SchemaUtil {
 			
 			// Apply deltas from each schema version more recent than the
 			// database schema version
-			for (int version = dbSchemaVersion + 1; version <= table.getVersion(); version++) {
-				ModelObjectSchema<E> prevSchema = table.getSchemaWithVersion(version);
-				for (Delta<? super E> delta : prevSchema.getDeltaList()) {
-					applyDelta(conn, table.getDbTableName(), prevSchema, delta, version);
-				}
-			}
+			applyDeltas(conn, table.getDbTableName(), table, dbSchemaVersion);
 			
 			// Critically important: update the table's schema version in cc_schema_version
 			PreparedStatement stmt = null;
@@ -187,6 +226,27 @@ public class SchemaUtil {
 		}
 	}
 	
+	/**
+	 * Apply the deltas from each schema version more recent than
+	 * a given version to a database table.  The table need not be the
+	 * one named by the schema: {@link OnlineMigration} uses this to
+	 * bring a shadow copy of the table up to the current version.
+	 * 
+	 * @param conn          connection to the database
+	 * @param dbTableName   name of the table to alter
+	 * @param table         current schema (model object metadata)
+	 * @param fromVersion   the table's current schema version
+	 * @throws SQLException
+	 */
+	static<E> void applyDeltas(Connection conn, String dbTableName, ModelObjectSchema<E> table, int fromVersion) throws SQLException {
+		for (int version = fromVersion + 1; version <= table.getVersion(); version++) {
+			ModelObjectSchema<E> prevSchema = table.getSchemaWithVersion(version);
+			for (Delta<? super E> delta : prevSchema.getDeltaList()) {
+				applyDelta(conn, dbTableName, prevSchema, delta, version);
+			}
+		}
+	}
+	
 	private static<E> void applyDelta(Connection conn, String dbTableName, ModelObjectSchema<E> schema, Delta<? super E> delta, int version) throws SQLException {
 		if (delta.getType() == DeltaType.ADD_FIELD_AFTER) {
 			Statement stmt = null;
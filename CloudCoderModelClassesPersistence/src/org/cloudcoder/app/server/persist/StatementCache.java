@@ -0,0 +1,215 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of {@link PreparedStatement}s for a single database {@link Connection},
+ * keyed by SQL text (and statement options).  The cache lives as long as
+ * its connection, and is closed when the connection is closed.
+ * A statement is checked out by a database transaction
+ * (see {@link AbstractDatabaseRunnable#prepareStatement(Connection, String)})
+ * and checked back in when the transaction is cleaned up; if the transaction
+ * needs the same SQL twice, the second statement is prepared without
+ * caching, so a statement is never used for two purposes at once.
+ * 
+ * A connection (and thus its cache) is used by only one thread at a time,
+ * so the cache itself is not synchronized.  Hit and miss counts are
+ * totals for all caches.
+ * 
+ * @author David Hovemeyer
+ */
+public class StatementCache {
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	
+	private static class Entry {
+		final PreparedStatement stmt;
+		boolean checkedOut;
+		boolean evicted;
+		
+		Entry(PreparedStatement stmt) {
+			this.stmt = stmt;
+		}
+	}
+	
+	private final Connection conn;
+	private final int maxStatements;
+	private final LinkedHashMap<String, Entry> entryMap;
+	private final IdentityHashMap<PreparedStatement, Entry> checkedOutMap;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param conn           the connection
+	 * @param maxStatements  the maximum number of statements to cache
+	 */
+	public StatementCache(Connection conn, int maxStatements) {
+		this.conn = conn;
+		this.maxStatements = maxStatements;
+		this.entryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		this.checkedOutMap = new IdentityHashMap<PreparedStatement, Entry>();
+	}
+	
+	/**
+	 * @return the connection whose statements are cached
+	 */
+	public Connection getConnection() {
+		return conn;
+	}
+	
+	/**
+	 * Check out a cached {@link PreparedStatement}, preparing it if
+	 * it is not in the cache.
+	 * 
+	 * @param sql      the SQL text
+	 * @param options  the statement options (e.g., {@link PreparedStatement#RETURN_GENERATED_KEYS})
+	 * @return the statement, or null if the cached statement for the SQL text
+	 *         is already checked out
+	 * @throws SQLException
+	 */
+	public PreparedStatement checkOut(String sql, int options) throws SQLException {
+		String key = options + ":" + sql;
+		Entry entry = entryMap.get(key);
+		if (entry != null && !entry.checkedOut && entry.stmt.isClosed()) {
+			// Closed by the code that used it: prepare it again
+			entryMap.remove(key);
+			entry = null;
+		}
+		if (entry != null) {
+			if (entry.checkedOut) {
+				return null;
+			}
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			entry = new Entry(conn.prepareStatement(sql, options));
+			entryMap.put(key, entry);
+			evictIfNecessary();
+		}
+		entry.checkedOut = true;
+		checkedOutMap.put(entry.stmt, entry);
+		return entry.stmt;
+	}
+	
+	/**
+	 * Check in a statement returned by {@link #checkOut(String, int)},
+	 * clearing its parameters so that it can be reused.  Any open result
+	 * sets for the statement should be closed first.
+	 * 
+	 * @param stmt the statement
+	 */
+	public void checkIn(PreparedStatement stmt) {
+		Entry entry = checkedOutMap.remove(stmt);
+		if (entry == null) {
+			return;
+		}
+		entry.checkedOut = false;
+		boolean reusable = false;
+		if (!entry.evicted) {
+			try {
+				stmt.clearBatch();
+				stmt.clearParameters();
+				reusable = true;
+			} catch (SQLException e) {
+				// The statement (or connection) is no longer usable
+			}
+		}
+		if (!reusable) {
+			removeAndClose(entry);
+		}
+	}
+	
+	/**
+	 * Close all cached statements.
+	 */
+	public void close() {
+		for (Entry entry : entryMap.values()) {
+			DBUtil.closeQuietly(entry.stmt);
+		}
+		for (Entry entry : checkedOutMap.values()) {
+			// Statements evicted while checked out
+			DBUtil.closeQuietly(entry.stmt);
+		}
+		entryMap.clear();
+		checkedOutMap.clear();
+	}
+	
+	/**
+	 * @return number of statements currently cached
+	 */
+	public int size() {
+		return entryMap.size();
+	}
+	
+	/**
+	 * @return total number of statements found in a cache
+	 */
+	public static long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return total number of statements that had to be prepared and added to a cache
+	 */
+	public static long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * @return fraction of statements found in a cache
+	 */
+	public static double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total > 0 ? (double) h / total : 0.0;
+	}
+	
+	private void evictIfNecessary() {
+		// Evict least recently used statements, deferring the close
+		// of a statement that is checked out until it is checked in
+		Iterator<Entry> i = entryMap.values().iterator();
+		while (entryMap.size() > maxStatements && i.hasNext()) {
+			Entry entry = i.next();
+			i.remove();
+			if (entry.checkedOut) {
+				entry.evicted = true;
+			} else {
+				DBUtil.closeQuietly(entry.stmt);
+			}
+		}
+	}
+	
+	private void removeAndClose(Entry entry) {
+		Iterator<Entry> i = entryMap.values().iterator();
+		while (i.hasNext()) {
+			if (i.next() == entry) {
+				i.remove();
+				break;
+			}
+		}
+		DBUtil.closeQuietly(entry.stmt);
+	}
+}
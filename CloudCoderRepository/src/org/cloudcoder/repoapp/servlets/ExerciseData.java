@@ -24,6 +24,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.PasswordVerifier;
+import org.cloudcoder.app.shared.model.LoginThrottledException;
 import org.cloudcoder.app.shared.model.RepoProblem;
 import org.cloudcoder.app.shared.model.RepoProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.RepoTestCase;
@@ -68,7 +70,14 @@ public class ExerciseData extends LoadExerciseServlet {
 			return;
 		}
 		
-		User user = Database.getInstance().authenticateUser(credentials.getUsername(), credentials.getPassword());
+		User user;
+		try {
+			user = PasswordVerifier.getInstance().authenticate(
+					credentials.getUsername(), credentials.getPassword(), req);
+		} catch (LoginThrottledException e) {
+			ServletUtil.serviceUnavailable(resp, e.getMessage(), e.getRetryAfterSeconds());
+			return;
+		}
 		if (user == null) {
 			ServletUtil.authorizationRequired(resp, "Unknown username/password", AUTH_REALM);
 			return;
@@ -24,7 +24,8 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.PasswordVerifier;
+import org.cloudcoder.app.shared.model.LoginThrottledException;
 import org.cloudcoder.app.shared.model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,7 +65,16 @@ public class Login extends HttpServlet {
 		
 		if (username != null && password != null) {
 			// Attempt to log in
-			User user = Database.getInstance().authenticateUser(username, password);
+			User user;
+			try {
+				user = PasswordVerifier.getInstance().authenticate(username, password, req);
+			} catch (LoginThrottledException e) {
+				req.setAttribute("username", username);
+				req.setAttribute("redirectPath", req.getParameter("redirectPath"));
+				req.setAttribute("error", e.getMessage() + ": please try again in " + e.getRetryAfterSeconds() + " seconds");
+				req.getRequestDispatcher("/_view/login.jsp").forward(req, resp);
+				return;
+			}
 			if (user != null) {
 				ServletUtil.addModelObject(req.getSession(), user);
 				
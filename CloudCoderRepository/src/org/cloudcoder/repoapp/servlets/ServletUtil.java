@@ -164,6 +164,20 @@ public class ServletUtil {
 		sendResponse(resp, HttpServletResponse.SC_UNAUTHORIZED, msg);
 	}
 
+	/**
+	 * Send a SERVICE UNAVAILABLE (503) response, asking the client
+	 * to retry later.
+	 * 
+	 * @param resp              the HttpServletResponse
+	 * @param msg               a human-readable message to send as the body of the response
+	 * @param retryAfterSeconds number of seconds after which the client should retry
+	 * @throws IOException
+	 */
+	public static void serviceUnavailable(HttpServletResponse resp, String msg, int retryAfterSeconds) throws IOException {
+		resp.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+		sendResponse(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, msg);
+	}
+
 	/**
 	 * Send a response.
 	 * 
@@ -37,7 +37,8 @@ public class CloudCoderRepositoryWebServer extends WebServer {
 				"once!)");
 		addAdminCommand("migratedb", "org.cloudcoder.app.server.persist.MigrateRepositoryDatabase",
 				"Migrate database table schemas to match latest model\n" +
-				"object classes");
+				"object classes (--online migrates large tables while\n" +
+				"the repository webapp is running)");
 	}
 	
 	public static void main(String[] args) throws Exception {
@@ -0,0 +1,38 @@
+#! /usr/bin/perl -w
+
+# Script to report how much coalescing keystroke-level changes would
+# reduce the number of rows in the changes and events tables.
+
+use strict;
+use FileHandle;
+
+if (scalar(@ARGV) != 3) {
+	print STDERR "Usage: ./coalesceChangesReport.pl <start time> <end time> <coalescing window (ms)>\n";
+	print STDERR "Times are in the format \"dd MM yyyy HH:mm:ss Z\"\n";
+	exit 1;
+}
+
+if (! -r '../cloudcoder.properties') {
+	print STDERR "../cloudcoder.properties does not exist: do you run configure.pl?\n";
+	exit 1;
+}
+
+my @classpath = ();
+
+push @classpath, "./bin";
+addAllJarsInDir("./lib");
+push @classpath, "../CloudCoder/war/WEB-INF/classes";
+addAllJarsInDir('../CloudCoder/war/WEB-INF/lib');
+
+system("java", "-classpath", join(':', @classpath), 'org.cloudcoder.importer.CoalesceChangesReport', '../cloudcoder.properties', @ARGV)/256 == 0
+	|| die "Failed";
+
+sub addAllJarsInDir {
+	my ($dir) = @_;
+	my $find_fh = new FileHandle("(find '$dir' -name '*\\.jar' -print) |") || die;
+	while(<$find_fh>) {
+		chomp;
+		push @classpath, $_;
+	}
+	$find_fh->close();
+}
@@ -0,0 +1,37 @@
+#! /usr/bin/perl -w
+
+# Script to benchmark loading a student's course status (problems and
+# submission receipts), creating a synthetic course unless one is given.
+
+use strict;
+use FileHandle;
+
+if (scalar(@ARGV) > 4) {
+	print STDERR "Usage: ./courseStatusBenchmark.pl [<course id> [<iterations> [<students> [<problems>]]]]\n";
+	exit 1;
+}
+
+if (! -r '../cloudcoder.properties') {
+	print STDERR "../cloudcoder.properties does not exist: do you run configure.pl?\n";
+	exit 1;
+}
+
+my @classpath = ();
+
+push @classpath, "./bin";
+addAllJarsInDir("./lib");
+push @classpath, "../CloudCoder/war/WEB-INF/classes";
+addAllJarsInDir('../CloudCoder/war/WEB-INF/lib');
+
+system("java", "-classpath", join(':', @classpath), 'org.cloudcoder.importer.CourseStatusBenchmark', '../cloudcoder.properties', @ARGV)/256 == 0
+	|| die "Failed";
+
+sub addAllJarsInDir {
+	my ($dir) = @_;
+	my $find_fh = new FileHandle("(find '$dir' -name '*\\.jar' -print) |") || die;
+	while(<$find_fh>) {
+		chomp;
+		push @classpath, $_;
+	}
+	$find_fh->close();
+}
@@ -0,0 +1,38 @@
+#! /usr/bin/perl -w
+
+# Script to export a sample of historical submissions as a replay log
+# (see replay.pl).
+
+use strict;
+use FileHandle;
+
+if (scalar(@ARGV) != 4) {
+	print STDERR "Usage: ./exportReplay.pl <start time> <end time> <sample fraction> <output file>\n";
+	print STDERR "Times are in the format \"dd MM yyyy HH:mm:ss Z\"\n";
+	exit 1;
+}
+
+if (! -r '../cloudcoder.properties') {
+	print STDERR "../cloudcoder.properties does not exist: do you run configure.pl?\n";
+	exit 1;
+}
+
+my @classpath = ();
+
+push @classpath, "./bin";
+addAllJarsInDir("./lib");
+push @classpath, "../CloudCoder/war/WEB-INF/classes";
+addAllJarsInDir('../CloudCoder/war/WEB-INF/lib');
+
+system("java", "-classpath", join(':', @classpath), 'org.cloudcoder.importer.ExportReplay', '../cloudcoder.properties', @ARGV)/256 == 0
+	|| die "Failed";
+
+sub addAllJarsInDir {
+	my ($dir) = @_;
+	my $find_fh = new FileHandle("(find '$dir' -name '*\\.jar' -print) |") || die;
+	while(<$find_fh>) {
+		chomp;
+		push @classpath, $_;
+	}
+	$find_fh->close();
+}
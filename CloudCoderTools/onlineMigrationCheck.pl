@@ -0,0 +1,37 @@
+#! /usr/bin/perl -w
+
+# Script to check online schema migration against a scratch table of generated
+# rows, while another thread writes to the table.
+
+use strict;
+use FileHandle;
+
+if (scalar(@ARGV) > 3) {
+	print STDERR "Usage: ./onlineMigrationCheck.pl [<rows> [<chunk size> [<pause millis>]]]\n";
+	exit 1;
+}
+
+if (! -r '../cloudcoder.properties') {
+	print STDERR "../cloudcoder.properties does not exist: do you run configure.pl?\n";
+	exit 1;
+}
+
+my @classpath = ();
+
+push @classpath, "./bin";
+addAllJarsInDir("./lib");
+push @classpath, "../CloudCoder/war/WEB-INF/classes";
+addAllJarsInDir('../CloudCoder/war/WEB-INF/lib');
+
+system("java", "-classpath", join(':', @classpath), 'org.cloudcoder.importer.OnlineMigrationCheck', '../cloudcoder.properties', @ARGV)/256 == 0
+	|| die "Failed";
+
+sub addAllJarsInDir {
+	my ($dir) = @_;
+	my $find_fh = new FileHandle("(find '$dir' -name '*\\.jar' -print) |") || die;
+	while(<$find_fh>) {
+		chomp;
+		push @classpath, $_;
+	}
+	$find_fh->close();
+}
@@ -0,0 +1,35 @@
+#! /usr/bin/perl -w
+
+# Script to replay a replay log (see exportReplay.pl) against
+# builders, and report latency, throughput, and grading differences.
+# Start the builders separately: they should connect to this host.
+# Builders connect using TLS; if they don't use the default keystore,
+# pass the keystore resource name and password as extra arguments.
+
+use strict;
+use FileHandle;
+
+if (scalar(@ARGV) != 3 && scalar(@ARGV) != 5) {
+	print STDERR "Usage: ./replay.pl <replay log> <speedup (e.g., 1, 5, 20)> <number of builders> [<keystore> <keystore password>]\n";
+	exit 1;
+}
+
+my @classpath = ();
+
+push @classpath, "./bin";
+addAllJarsInDir("./lib");
+push @classpath, "../CloudCoder/war/WEB-INF/classes";
+addAllJarsInDir('../CloudCoder/war/WEB-INF/lib');
+
+system("java", "-classpath", join(':', @classpath), 'org.cloudcoder.importer.Replay', @ARGV)/256 == 0
+	|| die "Failed";
+
+sub addAllJarsInDir {
+	my ($dir) = @_;
+	my $find_fh = new FileHandle("(find '$dir' -name '*\\.jar' -print) |") || die;
+	while(<$find_fh>) {
+		chomp;
+		push @classpath, $_;
+	}
+	$find_fh->close();
+}
@@ -0,0 +1,37 @@
+#! /usr/bin/perl -w
+
+# Script to benchmark replaying a user's recorded changes for a problem,
+# which is how the webapp reconstructs the current text.
+
+use strict;
+use FileHandle;
+
+if (scalar(@ARGV) < 2 || scalar(@ARGV) > 4) {
+	print STDERR "Usage: ./replayChangesBenchmark.pl <user id> <problem id> [<max changes> [<iterations>]]\n";
+	exit 1;
+}
+
+if (! -r '../cloudcoder.properties') {
+	print STDERR "../cloudcoder.properties does not exist: do you run configure.pl?\n";
+	exit 1;
+}
+
+my @classpath = ();
+
+push @classpath, "./bin";
+addAllJarsInDir("./lib");
+push @classpath, "../CloudCoder/war/WEB-INF/classes";
+addAllJarsInDir('../CloudCoder/war/WEB-INF/lib');
+
+system("java", "-classpath", join(':', @classpath), 'org.cloudcoder.importer.ReplayChangesBenchmark', '../cloudcoder.properties', @ARGV)/256 == 0
+	|| die "Failed";
+
+sub addAllJarsInDir {
+	my ($dir) = @_;
+	my $find_fh = new FileHandle("(find '$dir' -name '*\\.jar' -print) |") || die;
+	while(<$find_fh>) {
+		chomp;
+		push @classpath, $_;
+	}
+	$find_fh->close();
+}
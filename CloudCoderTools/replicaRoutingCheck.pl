@@ -0,0 +1,38 @@
+#! /usr/bin/perl -w
+
+# Script to check that read-only transactions are sent to the read replica
+# configured by cloudcoder.db.replica.host and cloudcoder.db.replica.portStr,
+# except just after a write by the same session.
+
+use strict;
+use FileHandle;
+
+if (scalar(@ARGV) > 0) {
+	print STDERR "Usage: ./replicaRoutingCheck.pl\n";
+	exit 1;
+}
+
+if (! -r '../cloudcoder.properties') {
+	print STDERR "../cloudcoder.properties does not exist: do you run configure.pl?\n";
+	exit 1;
+}
+
+my @classpath = ();
+
+push @classpath, "./bin";
+addAllJarsInDir("./lib");
+push @classpath, "../CloudCoder/war/WEB-INF/classes";
+addAllJarsInDir('../CloudCoder/war/WEB-INF/lib');
+
+system("java", "-classpath", join(':', @classpath), 'org.cloudcoder.importer.ReplicaRoutingCheck', '../cloudcoder.properties', @ARGV)/256 == 0
+	|| die "Failed";
+
+sub addAllJarsInDir {
+	my ($dir) = @_;
+	my $find_fh = new FileHandle("(find '$dir' -name '*\\.jar' -print) |") || die;
+	while(<$find_fh>) {
+		chomp;
+		push @classpath, $_;
+	}
+	$find_fh->close();
+}
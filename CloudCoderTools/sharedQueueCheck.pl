@@ -0,0 +1,38 @@
+#! /usr/bin/perl -w
+
+# Script to check the shared submission queue used in multi-node mode:
+# two simulated webapp nodes make submissions, and simulated Builders on
+# both nodes must test each submission exactly once.
+
+use strict;
+use FileHandle;
+
+if (scalar(@ARGV) > 2) {
+	print STDERR "Usage: ./sharedQueueCheck.pl [<submissions per node> [<workers per node>]]\n";
+	exit 1;
+}
+
+if (! -r '../cloudcoder.properties') {
+	print STDERR "../cloudcoder.properties does not exist: do you run configure.pl?\n";
+	exit 1;
+}
+
+my @classpath = ();
+
+push @classpath, "./bin";
+addAllJarsInDir("./lib");
+push @classpath, "../CloudCoder/war/WEB-INF/classes";
+addAllJarsInDir('../CloudCoder/war/WEB-INF/lib');
+
+system("java", "-classpath", join(':', @classpath), 'org.cloudcoder.importer.SharedQueueCheck', '../cloudcoder.properties', @ARGV)/256 == 0
+	|| die "Failed";
+
+sub addAllJarsInDir {
+	my ($dir) = @_;
+	my $find_fh = new FileHandle("(find '$dir' -name '*\\.jar' -print) |") || die;
+	while(<$find_fh>) {
+		chomp;
+		push @classpath, $_;
+	}
+	$find_fh->close();
+}
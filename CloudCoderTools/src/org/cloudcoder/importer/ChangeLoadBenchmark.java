@@ -0,0 +1,214 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.server.persist.DBUtil;
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.RowMapper;
+import org.cloudcoder.app.server.persist.RowMappers;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+
+/**
+ * Benchmark for loading {@link Change}s (and their {@link Event}s)
+ * from the database, comparing the schema-driven field conversion
+ * formerly used for every model object (<code>getObject</code>,
+ * {@link DBUtil#convertValue(Object, Class)}, and
+ * {@link ModelObjectField#setUntyped(Object, Object)} for each column)
+ * with the {@link RowMapper}s, and with simply iterating the rows.
+ * The changes (by default 100,000) are stored for a nonexistent
+ * user and problem (id -1), and are deleted when the benchmark finishes.
+ * 
+ * @author David Hovemeyer
+ */
+public class ChangeLoadBenchmark extends UsesDatabase {
+	private static final int BENCHMARK_ID = -1;
+	private static final int BATCH_SIZE = 1000;
+	private static final int WARMUP_ITERATIONS = 2;
+	
+	private Properties config;
+	private int numRows;
+	private int iterations;
+
+	public ChangeLoadBenchmark(String configPropertiesFileName) throws IOException {
+		super(configPropertiesFileName);
+		config = new Properties();
+		FileReader fileReader = new FileReader(configPropertiesFileName);
+		try {
+			config.load(fileReader);
+		} finally {
+			fileReader.close();
+		}
+	}
+	
+	public void setNumRows(int numRows) {
+		this.numRows = numRows;
+	}
+	
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	@Override
+	public void run() throws Exception {
+		Class.forName("com.mysql.jdbc.Driver");
+		Connection conn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		try {
+			deleteChanges(conn);
+			populate();
+			
+			for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+				for (int approach = 0; approach < 3; approach++) {
+					load(conn, approach);
+				}
+			}
+			
+			report("iterate rows only", time(conn, 0));
+			report("field conversion", time(conn, 1));
+			report("row mappers", time(conn, 2));
+		} finally {
+			try {
+				deleteChanges(conn);
+			} finally {
+				DBUtil.closeQuietly(conn);
+			}
+		}
+	}
+
+	private void populate() {
+		System.out.println("Storing " + numRows + " changes");
+		long now = System.currentTimeMillis();
+		List<Change> batch = new ArrayList<Change>();
+		for (int i = 0; i < numRows; i++) {
+			// Mostly single keystrokes, with an occasional paste
+			// long enough to be stored in the text blob column
+			String text = (i % 20 == 0) ? "int main(void) {\n\treturn 0;\n}\n/* pasted code */\n" : "x";
+			batch.add(new Change(ChangeType.INSERT_TEXT, i / 80, i % 80, i / 80, i % 80 + 1, now + i, BENCHMARK_ID, BENCHMARK_ID, text));
+			if (batch.size() == BATCH_SIZE || i == numRows - 1) {
+				Database.getInstance().storeChanges(batch.toArray(new Change[batch.size()]));
+				batch.clear();
+			}
+		}
+	}
+
+	private long time(Connection conn, int approach) throws SQLException {
+		long begin = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			load(conn, approach);
+		}
+		return System.nanoTime() - begin;
+	}
+
+	private void report(String approach, long elapsed) {
+		double msPerLoad = (elapsed / 1000000.0) / iterations;
+		System.out.printf("%-20s %10.1f ms per %d rows%n", approach + ":", msPerLoad, numRows);
+	}
+
+	private int load(Connection conn, int approach) throws SQLException {
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+		try {
+			stmt = conn.prepareStatement(
+					"select " + DBUtil.getColumnList(Change.SCHEMA, "c") + ", " + DBUtil.getColumnList(Event.SCHEMA, "e") + " from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e" +
+					" where c.event_id = e.id and e.user_id = ? and e.problem_id = ?" +
+					" order by c.event_id");
+			stmt.setInt(1, BENCHMARK_ID);
+			stmt.setInt(2, BENCHMARK_ID);
+			resultSet = stmt.executeQuery();
+			
+			RowMapper<Change> changeMapper = RowMappers.forSchema(Change.SCHEMA);
+			RowMapper<Event> eventMapper = RowMappers.forSchema(Event.SCHEMA);
+			
+			int count = 0;
+			while (resultSet.next()) {
+				if (approach == 0) {
+					count++;
+					continue;
+				}
+				Change change = new Change();
+				Event event = new Event();
+				if (approach == 1) {
+					int index = convertFields(change, Change.SCHEMA, resultSet, 1);
+					convertFields(event, Event.SCHEMA, resultSet, index);
+				} else {
+					int index = changeMapper.load(change, resultSet, 1);
+					eventMapper.load(event, resultSet, index);
+				}
+				change.setEvent(event);
+				count++;
+			}
+			if (count != numRows) {
+				throw new IllegalStateException("Loaded " + count + " changes, expected " + numRows);
+			}
+			return count;
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
+	// The per-column conversion formerly done for every model object
+	private static<E> int convertFields(E obj, ModelObjectSchema<E> schema, ResultSet resultSet, int index) throws SQLException {
+		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+			Object value = resultSet.getObject(index++);
+			if (value != null) {
+				field.setUntyped(obj, DBUtil.convertValue(value, field.getType()));
+			}
+		}
+		return index;
+	}
+
+	private void deleteChanges(Connection conn) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(
+				"delete c, e from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e" +
+				" where c.event_id = e.id and e.user_id = ? and e.problem_id = ?");
+		try {
+			stmt.setInt(1, BENCHMARK_ID);
+			stmt.setInt(2, BENCHMARK_ID);
+			stmt.executeUpdate();
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1 || args.length > 3) {
+			System.err.println("Usage: " + ChangeLoadBenchmark.class.getName() +
+					" <config properties> [<rows (default 100000)> [<iterations (default 5)>]]");
+			System.exit(1);
+		}
+		
+		ChangeLoadBenchmark benchmark = new ChangeLoadBenchmark(args[0]);
+		benchmark.setNumRows(args.length >= 2 ? Integer.parseInt(args[1]) : 100000);
+		benchmark.setIterations(args.length >= 3 ? Integer.parseInt(args[2]) : 5);
+		benchmark.run();
+	}
+}
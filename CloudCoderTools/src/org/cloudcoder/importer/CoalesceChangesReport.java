@@ -0,0 +1,132 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudcoder.app.server.changelog.ChangeCoalescer;
+import org.cloudcoder.app.server.model.ApplyChangeToTextDocument;
+import org.cloudcoder.app.server.model.TextDocument;
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.User;
+
+/**
+ * Report how much {@link ChangeCoalescer} would reduce the number of
+ * rows in the changes and events tables, using the recorded editing
+ * sessions of users who made submissions in a given time range.
+ * Also checks that replaying the coalesced changes yields the same
+ * text as replaying the original changes.  Changes stored before the
+ * end column was stored correctly have their end columns repaired
+ * (see {@link ChangeCoalescer#repairLegacyEndColumns(Change[])}) first,
+ * so the report is meaningful for historical data.
+ * 
+ * @author David Hovemeyer
+ */
+public class CoalesceChangesReport extends UsesDatabase {
+	private long startTime;
+	private long endTime;
+	private long windowMillis;
+
+	public CoalesceChangesReport(String configPropertiesFileName) throws IOException {
+		super(configPropertiesFileName);
+	}
+	
+	public void setTimeRange(long startTime, long endTime) {
+		this.startTime = startTime;
+		this.endTime = endTime;
+	}
+	
+	public void setWindowMillis(long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	@Override
+	public void run() throws Exception {
+		// Find the (user, problem) sessions with submissions in the time range
+		Map<String, Event> sessions = new LinkedHashMap<String, Event>();
+		for (SubmissionReceipt receipt : Database.getInstance().getSubmissionReceiptsInTimeRange(startTime, endTime)) {
+			Event event = receipt.getEvent();
+			sessions.put(event.getUserId() + "," + event.getProblemId(), event);
+		}
+		System.out.println("Found " + sessions.size() + " sessions");
+		
+		ChangeCoalescer coalescer = new ChangeCoalescer(windowMillis, true);
+		long totalOrig = 0, totalCoalesced = 0;
+		int numMismatches = 0;
+		
+		for (Event session : sessions.values()) {
+			User user = new User();
+			user.setId(session.getUserId());
+			List<Change> changeList = Database.getInstance().getAllChangesNewerThan(user, session.getProblemId(), -1);
+			Change[] orig = ChangeCoalescer.repairLegacyEndColumns(changeList.toArray(new Change[changeList.size()]));
+			Change[] coalesced = coalescer.coalesce(orig);
+			
+			totalOrig += orig.length;
+			totalCoalesced += coalesced.length;
+			
+			String origText = replay(orig);
+			String coalescedText = replay(coalesced);
+			if (origText == null ? coalescedText != null : !origText.equals(coalescedText)) {
+				System.out.println("Replay mismatch for user " + session.getUserId() + ", problem " + session.getProblemId());
+				numMismatches++;
+			}
+		}
+		
+		System.out.println("Changes before coalescing: " + totalOrig);
+		System.out.println("Changes after coalescing:  " + totalCoalesced);
+		if (totalOrig > 0) {
+			System.out.printf("Row reduction: %.1f%% (for both the changes and events tables)%n",
+					100.0 * (totalOrig - totalCoalesced) / totalOrig);
+		}
+		System.out.println("Replay mismatches: " + numMismatches);
+	}
+
+	private static String replay(Change[] changeList) {
+		TextDocument doc = new TextDocument();
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		try {
+			for (Change change : changeList) {
+				applicator.apply(change, doc);
+			}
+			return doc.getText();
+		} catch (RuntimeException e) {
+			// Recorded session can't be replayed (with or without coalescing)
+			return null;
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length != 4) {
+			System.err.println("Usage: " + CoalesceChangesReport.class.getName() +
+					" <config properties> <start time> <end time> <coalescing window (ms)>");
+			System.err.println("Times are in the format \"" + DateTimeToMillis.FORMAT + "\"");
+			System.exit(1);
+		}
+		
+		CoalesceChangesReport report = new CoalesceChangesReport(args[0]);
+		report.setTimeRange(DateTimeToMillis.convert(args[1]), DateTimeToMillis.convert(args[2]));
+		report.setWindowMillis(Long.parseLong(args[3]));
+		report.run();
+	}
+}
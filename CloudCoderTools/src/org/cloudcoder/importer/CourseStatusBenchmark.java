@@ -0,0 +1,280 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.cloudcoder.app.server.persist.BCrypt;
+import org.cloudcoder.app.server.persist.DBUtil;
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.rpc.CourseStatusCache;
+import org.cloudcoder.app.shared.model.Course;
+import org.cloudcoder.app.shared.model.CourseRegistration;
+import org.cloudcoder.app.shared.model.CourseRegistrationType;
+import org.cloudcoder.app.shared.model.IFactory;
+import org.cloudcoder.app.shared.model.Pair;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAuthorship;
+import org.cloudcoder.app.shared.model.ProblemLicense;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionStatus;
+import org.cloudcoder.app.shared.model.Term;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.User;
+
+/**
+ * Benchmark for loading a student's course status (the problems in a course
+ * and the student's submission receipts), comparing the per-problem
+ * approach formerly used by GetCoursesAndProblemsServiceImpl
+ * (a best-receipts query for every problem, filtered to the student)
+ * with the single course status query, and with the course status cache.
+ * Unless an existing course id is given, a synthetic course
+ * (by default with 500 students and 80 problems) is created first,
+ * so this should be run against a scratch database.
+ * 
+ * @author David Hovemeyer
+ */
+public class CourseStatusBenchmark extends UsesDatabase {
+	private static final int NUM_SAMPLED_STUDENTS = 25;
+	private static final int WARMUP_ITERATIONS = 2;
+	private static final int NUM_TESTS = 5;
+	
+	private Properties config;
+	private int courseId;
+	private int numStudents;
+	private int numProblems;
+	private int iterations;
+
+	public CourseStatusBenchmark(String configPropertiesFileName) throws IOException {
+		super(configPropertiesFileName);
+		config = new Properties();
+		FileReader fileReader = new FileReader(configPropertiesFileName);
+		try {
+			config.load(fileReader);
+		} finally {
+			fileReader.close();
+		}
+	}
+	
+	public void setCourseId(int courseId) {
+		this.courseId = courseId;
+	}
+	
+	public void setCourseSize(int numStudents, int numProblems) {
+		this.numStudents = numStudents;
+		this.numProblems = numProblems;
+	}
+	
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	@Override
+	public void run() throws Exception {
+		if (courseId == 0) {
+			courseId = populate();
+		}
+		
+		Course course = new Course();
+		course.setId(courseId);
+		
+		// Sample students from the course
+		List<User> students = Database.getInstance().getUsersInCourse(courseId);
+		List<User> sample = new ArrayList<User>();
+		for (int i = 0; i < NUM_SAMPLED_STUDENTS && !students.isEmpty(); i++) {
+			sample.add(students.get((int) ((long) i * students.size() / NUM_SAMPLED_STUDENTS)));
+		}
+		System.out.println("Loading course status for " + sample.size() + " of " + students.size() + " users in course " + courseId);
+		
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			loadPerProblem(course, sample);
+			loadCourseStatus(course, sample);
+		}
+		
+		report("per-problem best receipts", time(course, sample, 0), sample.size());
+		report("single course status query", time(course, sample, 1), sample.size());
+		CourseStatusCache.getInstance().invalidateAll();
+		report("course status cache", time(course, sample, 2), sample.size());
+	}
+
+	private long time(Course course, List<User> sample, int approach) {
+		long begin = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			switch (approach) {
+			case 0: loadPerProblem(course, sample); break;
+			case 1: loadCourseStatus(course, sample); break;
+			default:
+				for (User user : sample) {
+					CourseStatusCache.getInstance().getCourseStatus(user, course);
+				}
+				break;
+			}
+		}
+		return System.nanoTime() - begin;
+	}
+
+	private void report(String approach, long elapsed, int numLoads) {
+		double msPerLoad = (elapsed / 1000000.0) / (iterations * numLoads);
+		System.out.printf("%-30s %10.3f ms per student page load%n", approach + ":", msPerLoad);
+	}
+
+	private void loadPerProblem(Course course, List<User> sample) {
+		for (User user : sample) {
+			for (Problem problem : Database.getInstance().getProblemsInCourse(user, course).getProblemList()) {
+				for (Pair<User, SubmissionReceipt> pair : Database.getInstance().getBestSubmissionReceipts(course, problem.getProblemId())) {
+					if (pair.getLeft().getId() == user.getId()) {
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private void loadCourseStatus(Course course, List<User> sample) {
+		for (User user : sample) {
+			Database.getInstance().getProblemAndSubscriptionReceiptsInCourse(user, course);
+		}
+	}
+
+	private int populate() throws Exception {
+		System.out.println("Creating a course with " + numStudents + " students and " + numProblems + " problems");
+		
+		Class.forName("com.mysql.jdbc.Driver");
+		Connection conn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		List<Problem> problems = new ArrayList<Problem>();
+		List<User> users = new ArrayList<User>();
+		try {
+			List<Term> terms = DBUtil.getAllModelObjects(conn, Term.SCHEMA, new IFactory<Term>() {
+				@Override
+				public Term create() {
+					return new Term();
+				}
+			});
+			if (terms.isEmpty()) {
+				throw new IllegalStateException("No terms in database");
+			}
+			
+			long now = System.currentTimeMillis();
+			
+			Course course = new Course();
+			course.setName("Bench" + (now % 100000));
+			course.setTitle("Course status benchmark");
+			course.setTermId(terms.get(0).getId());
+			course.setYear(2013);
+			course.setUrl("http://cloudcoder.org/");
+			DBUtil.storeModelObject(conn, course);
+			
+			for (int i = 0; i < numProblems; i++) {
+				Problem problem = new Problem();
+				problem.setCourseId(course.getId());
+				problem.setWhenAssigned(now);
+				problem.setWhenDue(now + 24L*60*60*1000);
+				problem.setVisible(true);
+				problem.setProblemAuthorship(ProblemAuthorship.ORIGINAL);
+				problem.setProblemType(ProblemType.C_PROGRAM);
+				problem.setTestname("bench" + i);
+				problem.setBriefDescription("Benchmark problem " + i);
+				problem.setDescription("<p>Benchmark problem</p>");
+				problem.setSkeleton("");
+				problem.setSchemaVersion(Problem.SCHEMA.getVersion());
+				problem.setAuthorName("");
+				problem.setAuthorEmail("");
+				problem.setAuthorWebsite("");
+				problem.setTimestampUtc(now);
+				problem.setLicense(ProblemLicense.CC_ATTRIB_SHAREALIKE_3_0);
+				problem.setParentHash("");
+				DBUtil.storeModelObject(conn, problem);
+				problems.add(problem);
+			}
+			
+			// All benchmark users share a single password hash, since
+			// hashing each one would dominate the setup time
+			String passwordHash = BCrypt.hashpw("bench", BCrypt.gensalt(4));
+			for (int i = 0; i < numStudents; i++) {
+				User user = new User();
+				user.setUsername("b" + (now % 100000) + "_" + i);
+				user.setFirstname("Bench");
+				user.setLastname("Student" + i);
+				user.setEmail(user.getUsername() + "@example.com");
+				user.setPasswordHash(passwordHash);
+				user.setWebsite("");
+				user.setConsent("");
+				DBUtil.storeModelObject(conn, user);
+				users.add(user);
+				
+				CourseRegistration reg = new CourseRegistration();
+				reg.setCourseId(course.getId());
+				reg.setUserId(user.getId());
+				reg.setRegistrationType(CourseRegistrationType.STUDENT);
+				reg.setSection(101);
+				DBUtil.storeModelObject(conn, reg);
+			}
+			
+			courseId = course.getId();
+		} finally {
+			DBUtil.closeQuietly(conn);
+		}
+		
+		// Each student works on about 3/4 of the problems, making
+		// one to three submissions on each
+		Random rand = new Random(courseId);
+		int numReceipts = 0;
+		for (User user : users) {
+			for (Problem problem : problems) {
+				if (rand.nextInt(4) == 0) {
+					continue;
+				}
+				int numSubmissions = 1 + rand.nextInt(3);
+				for (int i = 0; i < numSubmissions; i++) {
+					int numPassed = rand.nextInt(NUM_TESTS + 1);
+					SubmissionReceipt receipt = SubmissionReceipt.create(user, problem,
+							numPassed == NUM_TESTS ? SubmissionStatus.TESTS_PASSED : SubmissionStatus.TESTS_FAILED,
+							-1, NUM_TESTS, numPassed);
+					Database.getInstance().insertSubmissionReceipt(receipt, new TestResult[0]);
+					numReceipts++;
+				}
+			}
+		}
+		System.out.println("Created course " + courseId + " with " + numReceipts + " submission receipts");
+		
+		return courseId;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1 || args.length > 5) {
+			System.err.println("Usage: " + CourseStatusBenchmark.class.getName() +
+					" <config properties> [<course id (0 to create one)> [<iterations (default 5)> [<students (default 500)> [<problems (default 80)>]]]]");
+			System.exit(1);
+		}
+		
+		CourseStatusBenchmark benchmark = new CourseStatusBenchmark(args[0]);
+		benchmark.setCourseId(args.length >= 2 ? Integer.parseInt(args[1]) : 0);
+		benchmark.setIterations(args.length >= 3 ? Integer.parseInt(args[2]) : 5);
+		benchmark.setCourseSize(
+				args.length >= 4 ? Integer.parseInt(args[3]) : 500,
+				args.length >= 5 ? Integer.parseInt(args[4]) : 80);
+		benchmark.run();
+	}
+}
@@ -0,0 +1,132 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * Export a sample of historical submissions as a {@link ReplayLog},
+ * which can then be replayed against Builders using {@link Replay}
+ * to estimate how many Builders are needed for a given load.
+ * User ids are replaced by opaque numbers assigned in order of
+ * first appearance.
+ * 
+ * @author David Hovemeyer
+ */
+public class ExportReplay extends UsesDatabase {
+	private long startTime;
+	private long endTime;
+	private double sampleFraction;
+	private String outputFileName;
+
+	public ExportReplay(String configPropertiesFileName) throws IOException {
+		super(configPropertiesFileName);
+	}
+	
+	public void setTimeRange(long startTime, long endTime) {
+		this.startTime = startTime;
+		this.endTime = endTime;
+	}
+	
+	public void setSampleFraction(double sampleFraction) {
+		this.sampleFraction = sampleFraction;
+	}
+	
+	public void setOutputFileName(String outputFileName) {
+		this.outputFileName = outputFileName;
+	}
+
+	@Override
+	public void run() throws Exception {
+		// Only the sampled receipts are loaded: for a large time range,
+		// loading every receipt and sampling here would not fit in memory.
+		List<SubmissionReceipt> receiptList =
+				Database.getInstance().getSampledSubmissionReceiptsInTimeRange(startTime, endTime, sampleFraction);
+		System.out.println("Sampled " + receiptList.size() + " submissions in time range");
+		
+		ReplayLog replayLog = new ReplayLog();
+		Map<Integer, Integer> anonymousUserIdMap = new HashMap<Integer, Integer>();
+		int numSkipped = 0;
+		
+		for (SubmissionReceipt receipt : receiptList) {
+			// The submitted program text is in the full-text Change linked to the receipt
+			Change fullTextChange = Database.getInstance().getChange(
+					receipt.getLastEditEventId(), receipt.getEvent().getUserId(), receipt.getEvent().getProblemId());
+			if (fullTextChange == null || fullTextChange.getType() != ChangeType.FULL_TEXT) {
+				numSkipped++;
+				continue;
+			}
+			
+			int problemId = receipt.getEvent().getProblemId();
+			if (!replayLog.hasProblem(problemId)) {
+				Problem problem = Database.getInstance().getProblem(problemId);
+				if (problem == null) {
+					numSkipped++;
+					continue;
+				}
+				List<TestCase> testCaseList = Database.getInstance().getTestCasesForProblem(problemId);
+				replayLog.addProblem(problem, testCaseList);
+			}
+			
+			Integer anonymousUserId = anonymousUserIdMap.get(receipt.getEvent().getUserId());
+			if (anonymousUserId == null) {
+				anonymousUserId = anonymousUserIdMap.size() + 1;
+				anonymousUserIdMap.put(receipt.getEvent().getUserId(), anonymousUserId);
+			}
+			
+			replayLog.addEntry(new ReplayEntry(
+					anonymousUserId,
+					problemId,
+					receipt.getEvent().getTimestamp(),
+					fullTextChange.getText(),
+					receipt.getStatus(),
+					receipt.getNumTestsAttempted(),
+					receipt.getNumTestsPassed()));
+		}
+		
+		replayLog.write(outputFileName);
+		System.out.println("Exported " + replayLog.getEntryList().size() + " submissions (" +
+				anonymousUserIdMap.size() + " users) to " + outputFileName +
+				(numSkipped > 0 ? ", skipped " + numSkipped + " without program text" : ""));
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length != 5) {
+			System.err.println("Usage: " + ExportReplay.class.getName() +
+					" <config properties> <start time> <end time> <sample fraction> <output file>");
+			System.err.println("Times are in the format \"" + DateTimeToMillis.FORMAT + "\"");
+			System.exit(1);
+		}
+		
+		ExportReplay exportReplay = new ExportReplay(args[0]);
+		exportReplay.setTimeRange(DateTimeToMillis.convert(args[1]), DateTimeToMillis.convert(args[2]));
+		exportReplay.setSampleFraction(Double.parseDouble(args[3]));
+		exportReplay.setOutputFileName(args[4]);
+		exportReplay.run();
+	}
+}
@@ -0,0 +1,347 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.Random;
+
+import org.cloudcoder.app.server.persist.DBUtil;
+import org.cloudcoder.app.server.persist.OnlineMigration;
+import org.cloudcoder.app.server.persist.SchemaUtil;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectIndexType;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+
+/**
+ * Check {@link OnlineMigration} against generated data.
+ * A scratch table (cc_osc_check_rows) is filled with generated rows
+ * and migrated to a new schema version (which adds a column) while a writer
+ * thread continuously inserts, updates, and deletes rows.  The writer
+ * reads and writes rows through {@link DBUtil} using the pre-migration
+ * schema, the way the old version of CloudCoder does while the table
+ * is being migrated (the new column is added in the middle of the table,
+ * so this checks that the old version's statements still work after the
+ * tables are swapped).  The writer makes the same changes to a reference
+ * table in the same transaction, so when the migration finishes, the migrated table must contain exactly
+ * the rows of the reference table.  The check also reports the longest
+ * time a write had to wait during the migration.  The scratch tables are
+ * dropped when the check finishes.
+ *
+ * @author David Hovemeyer
+ */
+public class OnlineMigrationCheck extends UsesDatabase {
+	private static final String REFERENCE_TABLE = "cc_osc_check_reference";
+
+	/**
+	 * A row of the scratch table.
+	 */
+	public static class CheckRow {
+		private int id;
+		private int value;
+		private String text;
+		private Integer extra;
+
+		public void setId(int id) { this.id = id; }
+		public int getId() { return id; }
+		public void setValue(int value) { this.value = value; }
+		public int getValue() { return value; }
+		public void setText(String text) { this.text = text; }
+		public String getText() { return text; }
+		public void setExtra(Integer extra) { this.extra = extra; }
+		public Integer getExtra() { return extra; }
+	}
+
+	private static final ModelObjectField<CheckRow, Integer> ID = new ModelObjectField<CheckRow, Integer>("id", Integer.class, 0, ModelObjectIndexType.IDENTITY) {
+		public void set(CheckRow obj, Integer value) { obj.setId(value); }
+		public Integer get(CheckRow obj) { return obj.getId(); }
+	};
+	private static final ModelObjectField<CheckRow, Integer> VALUE = new ModelObjectField<CheckRow, Integer>("value", Integer.class, 0) {
+		public void set(CheckRow obj, Integer value) { obj.setValue(value); }
+		public Integer get(CheckRow obj) { return obj.getValue(); }
+	};
+	private static final ModelObjectField<CheckRow, String> TEXT = new ModelObjectField<CheckRow, String>("text", String.class, 40) {
+		public void set(CheckRow obj, String value) { obj.setText(value); }
+		public String get(CheckRow obj) { return obj.getText(); }
+	};
+	private static final ModelObjectField<CheckRow, Integer> EXTRA = new ModelObjectField<CheckRow, Integer>("extra", Integer.class, 0, ModelObjectIndexType.NON_UNIQUE, ModelObjectField.ALLOW_NULL) {
+		public void set(CheckRow obj, Integer value) { obj.setExtra(value); }
+		public Integer get(CheckRow obj) { return obj.getExtra(); }
+	};
+
+	private static final ModelObjectSchema<CheckRow> SCHEMA_V0 = new ModelObjectSchema<CheckRow>("osc_check_row")
+		.add(ID)
+		.add(VALUE)
+		.add(TEXT);
+
+	private static final ModelObjectSchema<CheckRow> SCHEMA_V1 = ModelObjectSchema.basedOn(SCHEMA_V0)
+		.addAfter(VALUE, EXTRA)
+		.finishDelta();
+
+	private static final String TABLE = SCHEMA_V0.getDbTableName();
+
+	/**
+	 * Thread which writes to the scratch table (and the reference table)
+	 * while the table is being migrated.
+	 */
+	private class Writer extends Thread {
+		private volatile boolean done;
+		private Connection conn;
+		private Random random = new Random(42L);
+		private long numWrites;
+		private long numRetries;
+		private long maxLatencyMillis;
+		private SQLException error;
+
+		public Writer(Connection conn) {
+			this.conn = conn;
+		}
+
+		@Override
+		public void run() {
+			try {
+				conn.setAutoCommit(false);
+				while (!done) {
+					long start = System.currentTimeMillis();
+					try {
+						write();
+						conn.commit();
+					} catch (SQLException e) {
+						// Deadlocks with the chunks being copied are possible: retry
+						conn.rollback();
+						if (!OnlineMigration.isRetryable(e)) {
+							throw e;
+						}
+						numRetries++;
+						continue;
+					}
+					maxLatencyMillis = Math.max(maxLatencyMillis, System.currentTimeMillis() - start);
+					numWrites++;
+				}
+			} catch (SQLException e) {
+				error = e;
+			}
+		}
+
+		private void write() throws SQLException {
+			int op = random.nextInt(3);
+			int id = 1 + random.nextInt(numRows);
+			if (op == 0) {
+				CheckRow row = new CheckRow();
+				row.setText("w" + random.nextInt());
+				DBUtil.storeModelObject(conn, row, SCHEMA_V0);
+				execUpdate("insert into " + REFERENCE_TABLE + " (id, value, text) values (?, 0, ?)", row.getId(), row.getText());
+			} else if (op == 1) {
+				CheckRow row = load(id);
+				if (row != null) {
+					row.setValue(row.getValue() + 1);
+					DBUtil.updateModelObject(conn, row, SCHEMA_V0);
+				}
+				execUpdate("update " + REFERENCE_TABLE + " set value = value + 1 where id = ?", id);
+			} else {
+				execUpdate("delete from " + TABLE + " where id = ?", id);
+				execUpdate("delete from " + REFERENCE_TABLE + " where id = ?", id);
+			}
+		}
+
+		private CheckRow load(int id) throws SQLException {
+			PreparedStatement stmt = conn.prepareStatement(
+					"select " + DBUtil.getColumnList(SCHEMA_V0) + " from " + TABLE + " where id = ? for update");
+			ResultSet resultSet = null;
+			try {
+				stmt.setInt(1, id);
+				resultSet = stmt.executeQuery();
+				if (!resultSet.next()) {
+					return null;
+				}
+				CheckRow row = new CheckRow();
+				DBUtil.loadModelObjectFields(row, SCHEMA_V0, resultSet);
+				return row;
+			} finally {
+				DBUtil.closeQuietly(resultSet);
+				DBUtil.closeQuietly(stmt);
+			}
+		}
+
+		private void execUpdate(String sql, Object... args) throws SQLException {
+			PreparedStatement stmt = conn.prepareStatement(sql);
+			try {
+				for (int i = 0; i < args.length; i++) {
+					stmt.setObject(i + 1, args[i]);
+				}
+				stmt.executeUpdate();
+			} finally {
+				DBUtil.closeQuietly(stmt);
+			}
+		}
+	}
+
+	private Properties config;
+	private int numRows;
+	private int chunkSize;
+	private long pauseMillis;
+
+	public OnlineMigrationCheck(String configPropertiesFileName) throws IOException {
+		super(configPropertiesFileName);
+		config = new Properties();
+		FileReader fileReader = new FileReader(configPropertiesFileName);
+		try {
+			config.load(fileReader);
+		} finally {
+			fileReader.close();
+		}
+	}
+
+	public void setNumRows(int numRows) {
+		this.numRows = numRows;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public void setPauseMillis(long pauseMillis) {
+		this.pauseMillis = pauseMillis;
+	}
+
+	@Override
+	public void run() throws Exception {
+		Class.forName("com.mysql.jdbc.Driver");
+		Connection conn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		Connection writerConn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		boolean ok;
+		try {
+			dropScratchTables(conn);
+
+			System.out.print("Generating " + numRows + " rows...");
+			System.out.flush();
+			SchemaUtil.createTableIfNeeded(conn, SCHEMA_V0);
+			generateRows(conn);
+			DBUtil.execSql(conn, "create table " + REFERENCE_TABLE + " like " + TABLE);
+			DBUtil.execSql(conn, "insert into " + REFERENCE_TABLE + " select * from " + TABLE);
+			System.out.println("done");
+
+			Writer writer = new Writer(writerConn);
+			writer.start();
+
+			long start = System.currentTimeMillis();
+			new OnlineMigration(conn, chunkSize, pauseMillis).migrateTable(SCHEMA_V1);
+			long elapsed = System.currentTimeMillis() - start;
+
+			// Keep writing to the migrated table for a moment
+			Thread.sleep(1000L);
+			writer.done = true;
+			writer.join();
+			if (writer.error != null) {
+				throw writer.error;
+			}
+
+			System.out.println("Migration took " + elapsed + " ms");
+			System.out.println(writer.numWrites + " concurrent writes (" + writer.numRetries + " retried), longest took " +
+					writer.maxLatencyMillis + " ms");
+
+			int version = SchemaUtil.getDbSchemaVersion(conn, SCHEMA_V1);
+			int missing = count(conn,
+					"select count(*) from " + REFERENCE_TABLE + " as f left join " + TABLE + " as r on r.id = f.id" +
+					" where r.id is null or r.value <> f.value or r.text <> f.text");
+			int extra = count(conn,
+					"select count(*) from " + TABLE + " as r left join " + REFERENCE_TABLE + " as f on f.id = r.id" +
+					" where f.id is null");
+			System.out.println("Schema version: " + version);
+			System.out.println("Rows missing or different: " + missing);
+			System.out.println("Unexpected rows: " + extra);
+			ok = version == SCHEMA_V1.getVersion() && missing == 0 && extra == 0;
+			System.out.println(ok ? "Migrated table is correct" : "Migrated table is NOT correct");
+		} finally {
+			dropScratchTables(conn);
+			DBUtil.closeQuietly(writerConn);
+			DBUtil.closeQuietly(conn);
+		}
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+
+	private void generateRows(Connection conn) throws SQLException {
+		Random random = new Random(1L);
+		conn.setAutoCommit(false);
+		PreparedStatement stmt = conn.prepareStatement(DBUtil.createInsertStatement(SCHEMA_V0));
+		try {
+			CheckRow row = new CheckRow();
+			for (int i = 1; i <= numRows; i++) {
+				row.setValue(random.nextInt(1000));
+				row.setText("r" + random.nextLong());
+				DBUtil.bindModelObjectValuesForInsert(row, SCHEMA_V0, stmt);
+				stmt.addBatch();
+				if (i % 1000 == 0 || i == numRows) {
+					stmt.executeBatch();
+					conn.commit();
+				}
+			}
+		} finally {
+			DBUtil.closeQuietly(stmt);
+			conn.setAutoCommit(true);
+		}
+	}
+
+	private int count(Connection conn, String sql) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(sql);
+		ResultSet resultSet = null;
+		try {
+			resultSet = stmt.executeQuery();
+			resultSet.next();
+			return resultSet.getInt(1);
+		} finally {
+			DBUtil.closeQuietly(resultSet);
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	private void dropScratchTables(Connection conn) throws SQLException {
+		for (String suffix : new String[]{"_osc_ins", "_osc_upd", "_osc_del"}) {
+			DBUtil.execSql(conn, "drop trigger if exists " + TABLE + suffix);
+		}
+		for (String table : new String[]{TABLE, TABLE + "_osc_new", TABLE + "_osc_old", REFERENCE_TABLE}) {
+			DBUtil.execSql(conn, "drop table if exists " + table);
+		}
+		PreparedStatement stmt = conn.prepareStatement("delete from cc_schema_version where table_name = ?");
+		try {
+			stmt.setString(1, TABLE);
+			stmt.executeUpdate();
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1 || args.length > 4) {
+			System.err.println("Usage: " + OnlineMigrationCheck.class.getName() + " <config properties> [<rows> [<chunk size> [<pause millis>]]]");
+			System.exit(1);
+		}
+		OnlineMigrationCheck check = new OnlineMigrationCheck(args[0]);
+		check.setNumRows(args.length >= 2 ? Integer.parseInt(args[1]) : 1000000);
+		check.setChunkSize(args.length >= 3 ? Integer.parseInt(args[2]) : OnlineMigration.DEFAULT_CHUNK_SIZE);
+		check.setPauseMillis(args.length >= 4 ? Long.parseLong(args[3]) : OnlineMigration.DEFAULT_PAUSE_MILLIS);
+		check.run();
+	}
+}
@@ -36,6 +36,7 @@ import org.cloudcoder.app.shared.model.SubmissionException;
 import org.cloudcoder.app.shared.model.SubmissionReceipt;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestResult;
 
 /**
  * Re-test one or more submissions.
@@ -91,7 +92,8 @@ public class ReTest extends UsesDatabase {
 		// Find the Problem, TestCases, and the program text
 		Problem problem = Database.getInstance().getProblem(receipt.getEvent().getProblemId());
 		List<TestCase> testCaseList = Database.getInstance().getTestCasesForProblem(problem.getProblemId());
-		Change fullTextChange = Database.getInstance().getChange(receipt.getLastEditEventId());
+		Change fullTextChange = Database.getInstance().getChange(
+				receipt.getLastEditEventId(), receipt.getEvent().getUserId(), receipt.getEvent().getProblemId());
 		if (fullTextChange ==null) {
 			System.out.println("Could not find Change with event id=" + receipt.getLastEditEventId());
 		}
@@ -115,8 +117,10 @@ public class ReTest extends UsesDatabase {
 		
 		// Delete any old TestResults for submission, and 
 		// insert new TestResults, using the submission receipt's existing id
+		TestResult[] oldTestResults = Database.getInstance().getTestResultsForSubmission(receipt.getEventId());
 //		Database.getInstance().replaceTestResults(result.getTestResults(), receipt.getId());
 		Database.getInstance().replaceTestResults(result.getTestResults(), receipt.getEventId());
+		System.out.print(countChangedOutcomes(oldTestResults, result.getTestResults()) + " test outcome(s) changed...");
 		
 		// Update the submission receipt with the new status, num tests attempted,
 		// and num tests passed (which are the details which we would expect
@@ -127,6 +131,16 @@ public class ReTest extends UsesDatabase {
 		Database.getInstance().updateSubmissionReceipt(receipt);
 	}
 	
+	private static int countChangedOutcomes(TestResult[] oldTestResults, TestResult[] newTestResults) {
+		int count = Math.abs(oldTestResults.length - newTestResults.length);
+		for (int i = 0; i < Math.min(oldTestResults.length, newTestResults.length); i++) {
+			if (oldTestResults[i].getOutcome() != newTestResults[i].getOutcome()) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
 	public static void main(String[] args) throws Exception {
 		if (args.length != 2) {
 			System.err.println("Usage: " + ReTest.class.getName() +
@@ -0,0 +1,252 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.cloudcoder.app.server.submitsvc.oop.BuilderServerSocketFactory;
+import org.cloudcoder.app.server.submitsvc.oop.OOPBuildServiceSubmission;
+import org.cloudcoder.app.server.submitsvc.oop.OutOfProcessSubmitService;
+import org.cloudcoder.app.server.submitsvc.oop.ServerTask;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionStatus;
+
+/**
+ * Replay a {@link ReplayLog} against real Builders, preserving the
+ * recorded inter-arrival times of the submissions (optionally sped up),
+ * and report submission latency, throughput, and any differences
+ * between the replayed and the recorded grading outcomes.
+ * Builders should be started separately, and configured to connect
+ * to this host on the usual port.  As with the webapp, Builder
+ * connections use TLS, so the keystore must be the one the Builders
+ * were configured with.
+ * 
+ * @author David Hovemeyer
+ */
+public class Replay {
+	private static final long POLL_INTERVAL_MILLIS = 10L;
+	private static final int MAX_DIFFERENCES_REPORTED = 20;
+	
+	/**
+	 * A replayed submission that has been sent to the Builders.
+	 */
+	private static class PendingSubmission {
+		final ReplayEntry entry;
+		final OOPBuildServiceSubmission future;
+		final long dispatchTime;
+		
+		PendingSubmission(ReplayEntry entry, OOPBuildServiceSubmission future, long dispatchTime) {
+			this.entry = entry;
+			this.future = future;
+			this.dispatchTime = dispatchTime;
+		}
+	}
+
+	private ReplayLog replayLog;
+	private double speedup;
+	private int numBuilders;
+	private String keystoreFilename;
+	private String keystorePassword;
+	
+	private List<PendingSubmission> pendingList;
+	private List<Long> latencyList;
+	private List<String> differenceList;
+	private int numDifferences;
+	private int numErrors;
+
+	public Replay(ReplayLog replayLog, double speedup, int numBuilders) {
+		this.replayLog = replayLog;
+		this.speedup = speedup;
+		this.numBuilders = numBuilders;
+		this.pendingList = new ArrayList<PendingSubmission>();
+		this.latencyList = new ArrayList<Long>();
+		this.differenceList = new ArrayList<String>();
+		this.keystoreFilename = "defaultkeystore.jks";
+		this.keystorePassword = "changeit";
+	}
+	
+	/**
+	 * Set the keystore used for TLS connections from the Builders.
+	 * 
+	 * @param keystoreFilename classpath resource name of the keystore
+	 * @param keystorePassword the keystore password
+	 */
+	public void setKeystore(String keystoreFilename, String keystorePassword) {
+		this.keystoreFilename = keystoreFilename;
+		this.keystorePassword = keystorePassword;
+	}
+	
+	public void run() throws Exception {
+		List<ReplayEntry> entryList = replayLog.getEntryList();
+		if (entryList.isEmpty()) {
+			System.out.println("Replay log is empty");
+			return;
+		}
+		
+		// Start a server thread for communicating with the builders
+		ServerSocket serverSocket = BuilderServerSocketFactory.createSSLServerSocket(
+				OutOfProcessSubmitService.DEFAULT_PORT, keystoreFilename, keystorePassword);
+		ServerTask serverTask = new ServerTask(serverSocket);
+		Thread serverThread = new Thread(serverTask);
+		serverThread.start();
+		
+		System.out.print("Waiting for " + numBuilders + " builder connection(s)...");
+		System.out.flush();
+		while (serverTask.getNumWorkerTasks() < numBuilders) {
+			Thread.sleep(500L);
+		}
+		System.out.println("ready");
+		
+		// Dispatch each submission when it is due (according to its recorded
+		// submit time, relative to the first submission and scaled by the speedup),
+		// polling for completed submissions in between.
+		long firstSubmitTime = entryList.get(0).getSubmitTime();
+		long replayStart = System.currentTimeMillis();
+		int next = 0;
+		while (next < entryList.size() || !pendingList.isEmpty()) {
+			long now = System.currentTimeMillis();
+			while (next < entryList.size()) {
+				ReplayEntry entry = entryList.get(next);
+				long due = replayStart + (long) ((entry.getSubmitTime() - firstSubmitTime) / speedup);
+				if (due > now) {
+					break;
+				}
+				dispatch(serverTask, entry);
+				next++;
+			}
+			
+			checkPendingSubmissions();
+			
+			Thread.sleep(POLL_INTERVAL_MILLIS);
+		}
+		long replayEnd = System.currentTimeMillis();
+		
+		serverTask.shutdown();
+		serverThread.join();
+		
+		report(entryList, replayStart, replayEnd, firstSubmitTime);
+	}
+
+	private void dispatch(ServerTask serverTask, ReplayEntry entry) throws SubmissionException {
+		Submission submission = new Submission(
+				replayLog.getProblem(entry.getProblemId()),
+				replayLog.getTestCaseList(entry.getProblemId()),
+				entry.getProgramText());
+		OOPBuildServiceSubmission future = new OOPBuildServiceSubmission(submission);
+		serverTask.submit(future);
+		pendingList.add(new PendingSubmission(entry, future, System.currentTimeMillis()));
+	}
+
+	private void checkPendingSubmissions() {
+		for (Iterator<PendingSubmission> i = pendingList.iterator(); i.hasNext(); ) {
+			PendingSubmission pending = i.next();
+			SubmissionResult result;
+			try {
+				result = pending.future.poll();
+			} catch (SubmissionException e) {
+				i.remove();
+				numErrors++;
+				continue;
+			}
+			if (result == null) {
+				continue;
+			}
+			i.remove();
+			latencyList.add(System.currentTimeMillis() - pending.dispatchTime);
+			compareWithRecorded(pending.entry, result);
+		}
+	}
+	
+	private void compareWithRecorded(ReplayEntry entry, SubmissionResult result) {
+		SubmissionStatus status = result.determineSubmissionStatus();
+		if (status != entry.getRecordedStatus() || result.getNumTestsPassed() != entry.getRecordedNumTestsPassed()) {
+			numDifferences++;
+			if (differenceList.size() < MAX_DIFFERENCES_REPORTED) {
+				differenceList.add("user " + entry.getAnonymousUserId() + ", problem " + entry.getProblemId() +
+						", submitted " + entry.getSubmitTime() + ": recorded " + entry.getRecordedStatus() +
+						" (" + entry.getRecordedNumTestsPassed() + "/" + entry.getRecordedNumTestsAttempted() + ")" +
+						", replayed " + status +
+						" (" + result.getNumTestsPassed() + "/" + result.getNumTestsAttempted() + ")");
+			}
+		}
+	}
+
+	private void report(List<ReplayEntry> entryList, long replayStart, long replayEnd, long firstSubmitTime) {
+		long recordedSpan = entryList.get(entryList.size() - 1).getSubmitTime() - firstSubmitTime;
+		long replaySpan = replayEnd - replayStart;
+		
+		System.out.println();
+		System.out.println("Submissions replayed:  " + entryList.size() + " at " + speedup + "x recorded rate");
+		System.out.println("Builders:              " + numBuilders);
+		System.out.println("Recorded time span:    " + (recordedSpan / 1000.0) + " s");
+		System.out.println("Replay time span:      " + (replaySpan / 1000.0) + " s");
+		System.out.println("Throughput:            " +
+				(replaySpan > 0 ? String.format("%.2f", latencyList.size() * 1000.0 / replaySpan) : "n/a") + " submissions/s");
+		System.out.println("Errors:                " + numErrors);
+		
+		if (!latencyList.isEmpty()) {
+			long[] latencies = new long[latencyList.size()];
+			for (int i = 0; i < latencies.length; i++) {
+				latencies[i] = latencyList.get(i);
+			}
+			Arrays.sort(latencies);
+			System.out.println("Latency (ms):          p50=" + percentile(latencies, 50) +
+					", p90=" + percentile(latencies, 90) +
+					", p95=" + percentile(latencies, 95) +
+					", p99=" + percentile(latencies, 99) +
+					", max=" + latencies[latencies.length - 1]);
+		}
+		
+		System.out.println("Grading differences:   " + numDifferences);
+		for (String difference : differenceList) {
+			System.out.println("  " + difference);
+		}
+		if (numDifferences > differenceList.size()) {
+			System.out.println("  ...");
+		}
+	}
+
+	/**
+	 * Nearest-rank percentile of a sorted array.
+	 */
+	private static long percentile(long[] sorted, int p) {
+		int rank = (int) Math.ceil((p / 100.0) * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 3 && args.length != 5) {
+			System.err.println("Usage: " + Replay.class.getName() +
+					" <replay log> <speedup> <number of builders> [<keystore> <keystore password>]");
+			System.exit(1);
+		}
+		
+		ReplayLog replayLog = ReplayLog.read(args[0]);
+		Replay replay = new Replay(replayLog, Double.parseDouble(args[1]), Integer.parseInt(args[2]));
+		if (args.length == 5) {
+			replay.setKeystore(args[3], args[4]);
+		}
+		replay.run();
+	}
+}
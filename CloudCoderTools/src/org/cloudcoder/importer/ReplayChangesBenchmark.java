@@ -0,0 +1,113 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.cloudcoder.app.server.model.ApplyChangeToTextDocument;
+import org.cloudcoder.app.server.model.TextDocument;
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.User;
+
+/**
+ * Benchmark for replaying a recorded editing session using
+ * {@link TextDocument} and {@link ApplyChangeToTextDocument}, which is
+ * what the webapp does to reconstruct the current text of a problem.
+ * Pick a user and problem with a long session (e.g., 20,000 changes).
+ * Run with -Dcloudcoder.textdocument.validate=true to also check the
+ * integrity of the document after every change.
+ * 
+ * @author David Hovemeyer
+ */
+public class ReplayChangesBenchmark extends UsesDatabase {
+	private static final int WARMUP_ITERATIONS = 5;
+	
+	private int userId;
+	private int problemId;
+	private int maxChanges;
+	private int iterations;
+
+	public ReplayChangesBenchmark(String configPropertiesFileName) throws IOException {
+		super(configPropertiesFileName);
+	}
+	
+	public void setSession(int userId, int problemId) {
+		this.userId = userId;
+		this.problemId = problemId;
+	}
+	
+	public void setMaxChanges(int maxChanges) {
+		this.maxChanges = maxChanges;
+	}
+	
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	@Override
+	public void run() throws Exception {
+		User user = new User();
+		user.setId(userId);
+		List<Change> changeList = Database.getInstance().getAllChangesNewerThan(user, problemId, -1);
+		if (changeList.size() > maxChanges) {
+			changeList = changeList.subList(0, maxChanges);
+		}
+		System.out.println("Replaying " + changeList.size() + " changes for user " + userId + ", problem " + problemId);
+		
+		String text = null;
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			text = replay(changeList);
+		}
+		
+		long begin = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			replay(changeList);
+		}
+		long elapsed = System.nanoTime() - begin;
+		
+		double msPerReplay = (elapsed / 1000000.0) / iterations;
+		System.out.printf("%d iterations, %.3f ms per replay, %.0f changes/second%n",
+				iterations, msPerReplay, changeList.size() / (msPerReplay / 1000.0));
+		System.out.println("Final document: " + text.length() + " characters");
+	}
+
+	private String replay(List<Change> changeList) {
+		TextDocument doc = new TextDocument();
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		for (Change change : changeList) {
+			applicator.apply(change, doc);
+		}
+		return doc.getText();
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3 || args.length > 5) {
+			System.err.println("Usage: " + ReplayChangesBenchmark.class.getName() +
+					" <config properties> <user id> <problem id> [<max changes (default 20000)> [<iterations (default 20)>]]");
+			System.exit(1);
+		}
+		
+		ReplayChangesBenchmark benchmark = new ReplayChangesBenchmark(args[0]);
+		benchmark.setSession(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+		benchmark.setMaxChanges(args.length >= 4 ? Integer.parseInt(args[3]) : 20000);
+		benchmark.setIterations(args.length >= 5 ? Integer.parseInt(args[4]) : 20);
+		benchmark.run();
+	}
+}
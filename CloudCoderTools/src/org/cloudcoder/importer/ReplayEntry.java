@@ -0,0 +1,113 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.Serializable;
+
+import org.cloudcoder.app.shared.model.SubmissionStatus;
+
+/**
+ * One recorded submission in a {@link ReplayLog}: the program text
+ * submitted for a problem, when it was submitted, and how it was
+ * graded at the time.  The submitting user is identified only by
+ * an opaque number assigned during export.
+ * 
+ * @author David Hovemeyer
+ */
+public class ReplayEntry implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private int anonymousUserId;
+	private int problemId;
+	private long submitTime;
+	private String programText;
+	private SubmissionStatus recordedStatus;
+	private int recordedNumTestsAttempted;
+	private int recordedNumTestsPassed;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param anonymousUserId            opaque id of the submitting user (stable within one replay log)
+	 * @param problemId                  the problem id
+	 * @param submitTime                 original submit timestamp (milliseconds since the epoch)
+	 * @param programText                the submitted program text
+	 * @param recordedStatus             the recorded {@link SubmissionStatus}
+	 * @param recordedNumTestsAttempted  the recorded number of tests attempted
+	 * @param recordedNumTestsPassed     the recorded number of tests passed
+	 */
+	public ReplayEntry(int anonymousUserId, int problemId, long submitTime, String programText,
+			SubmissionStatus recordedStatus, int recordedNumTestsAttempted, int recordedNumTestsPassed) {
+		this.anonymousUserId = anonymousUserId;
+		this.problemId = problemId;
+		this.submitTime = submitTime;
+		this.programText = programText;
+		this.recordedStatus = recordedStatus;
+		this.recordedNumTestsAttempted = recordedNumTestsAttempted;
+		this.recordedNumTestsPassed = recordedNumTestsPassed;
+	}
+
+	/**
+	 * @return the opaque id of the submitting user
+	 */
+	public int getAnonymousUserId() {
+		return anonymousUserId;
+	}
+
+	/**
+	 * @return the problem id
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+
+	/**
+	 * @return the original submit timestamp
+	 */
+	public long getSubmitTime() {
+		return submitTime;
+	}
+
+	/**
+	 * @return the submitted program text
+	 */
+	public String getProgramText() {
+		return programText;
+	}
+
+	/**
+	 * @return the recorded {@link SubmissionStatus}
+	 */
+	public SubmissionStatus getRecordedStatus() {
+		return recordedStatus;
+	}
+
+	/**
+	 * @return the recorded number of tests attempted
+	 */
+	public int getRecordedNumTestsAttempted() {
+		return recordedNumTestsAttempted;
+	}
+
+	/**
+	 * @return the recorded number of tests passed
+	 */
+	public int getRecordedNumTestsPassed() {
+		return recordedNumTestsPassed;
+	}
+}
@@ -0,0 +1,149 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * A self-contained log of recorded submissions that can be replayed
+ * against Builders by {@link Replay}.  Contains every {@link Problem}
+ * and {@link TestCase} needed to test the submissions, so no database
+ * is needed to replay it.  Written by {@link ExportReplay} as a
+ * gzipped serialized object.
+ * 
+ * @author David Hovemeyer
+ */
+public class ReplayLog implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private Map<Integer, Problem> problemMap;
+	private Map<Integer, List<TestCase>> testCaseMap;
+	private List<ReplayEntry> entryList;
+	
+	/**
+	 * Constructor.
+	 */
+	public ReplayLog() {
+		problemMap = new HashMap<Integer, Problem>();
+		testCaseMap = new HashMap<Integer, List<TestCase>>();
+		entryList = new ArrayList<ReplayEntry>();
+	}
+	
+	/**
+	 * @param problemId a problem id
+	 * @return true if the given problem (and its test cases) have been added
+	 */
+	public boolean hasProblem(int problemId) {
+		return problemMap.containsKey(problemId);
+	}
+	
+	/**
+	 * Add a {@link Problem} and its {@link TestCase}s.
+	 * 
+	 * @param problem      the {@link Problem}
+	 * @param testCaseList the {@link TestCase}s
+	 */
+	public void addProblem(Problem problem, List<TestCase> testCaseList) {
+		problemMap.put(problem.getProblemId(), problem);
+		testCaseMap.put(problem.getProblemId(), new ArrayList<TestCase>(testCaseList));
+	}
+	
+	/**
+	 * @param problemId a problem id
+	 * @return the {@link Problem} with the given id
+	 */
+	public Problem getProblem(int problemId) {
+		return problemMap.get(problemId);
+	}
+	
+	/**
+	 * @param problemId a problem id
+	 * @return the {@link TestCase}s for the problem with the given id
+	 */
+	public List<TestCase> getTestCaseList(int problemId) {
+		return testCaseMap.get(problemId);
+	}
+	
+	/**
+	 * Add a {@link ReplayEntry}.  Entries should be added
+	 * in increasing order of submit time.
+	 * 
+	 * @param entry the {@link ReplayEntry} to add
+	 */
+	public void addEntry(ReplayEntry entry) {
+		entryList.add(entry);
+	}
+	
+	/**
+	 * @return the list of {@link ReplayEntry} objects, in increasing order of submit time
+	 */
+	public List<ReplayEntry> getEntryList() {
+		return entryList;
+	}
+	
+	/**
+	 * Write to a file.
+	 * 
+	 * @param fileName the file name
+	 * @throws IOException
+	 */
+	public void write(String fileName) throws IOException {
+		ObjectOutputStream out = new ObjectOutputStream(
+				new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(fileName))));
+		try {
+			out.writeObject(this);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Read from a file.
+	 * 
+	 * @param fileName the file name
+	 * @return the {@link ReplayLog}
+	 * @throws IOException
+	 */
+	public static ReplayLog read(String fileName) throws IOException {
+		ObjectInputStream in = new ObjectInputStream(
+				new GZIPInputStream(new BufferedInputStream(new FileInputStream(fileName))));
+		try {
+			return (ReplayLog) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Could not read replay log", e);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.cloudcoder.app.server.persist.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.JDBCDatabase;
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig;
+import org.cloudcoder.app.server.persist.ReadYourWrites;
+
+/**
+ * Check which database server (primary or replica) {@link JDBCDatabase}
+ * sends transactions to: read-only transactions with no session,
+ * read-write transactions, read-only transactions just after the
+ * session has written (which should stay on the primary database),
+ * and read-only transactions after the read-your-writes window has passed.
+ * Each transaction reports the server's host name and port, so a second
+ * MySQL server on the loopback interface (e.g., port 3307) configured as
+ * <code>cloudcoder.db.replica.host</code>/<code>cloudcoder.db.replica.portStr</code>
+ * is enough to check the routing.  Nothing is written to the database.
+ * 
+ * @author David Hovemeyer
+ */
+public class ReplicaRoutingCheck extends UsesDatabase {
+	private static final String SESSION_KEY = "ReplicaRoutingCheck";
+	
+	private JDBCDatabase db;
+	private String primaryServer;
+	private String replicaServer;
+	private boolean ok;
+
+	public ReplicaRoutingCheck(String configPropertiesFileName) throws IOException {
+		super(configPropertiesFileName);
+	}
+
+	@Override
+	public void run() throws Exception {
+		db = new JDBCDatabase();
+		ok = true;
+		
+		primaryServer = getServer(false);
+		System.out.println("Primary database server: " + primaryServer);
+		if (!db.hasReplica()) {
+			System.out.println("No replica is configured: all transactions use the primary database");
+			return;
+		}
+		replicaServer = getServer(true);
+		System.out.println("Replica database server: " + replicaServer);
+		if (replicaServer.equals(primaryServer)) {
+			System.out.println("Warning: the replica appears to be the same server as the primary database");
+		}
+		
+		try {
+			ReadYourWrites.setSessionKey(SESSION_KEY);
+			check("read-only, before any write", true, replicaServer);
+			check("read-write", false, primaryServer);
+			check("read-only, just after a write", true, primaryServer);
+			long window = JDBCDatabaseConfig.getInstance().getReadYourWritesMillis();
+			Thread.sleep(window + 100L);
+			check("read-only, " + window + " ms after a write", true, replicaServer);
+		} finally {
+			ReadYourWrites.clearSessionKey();
+		}
+		check("read-only, no session", true, replicaServer);
+		
+		System.out.println(ok ? "Routing is correct" : "Routing is NOT correct");
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+	
+	private void check(String what, boolean readOnly, String expected) {
+		String server = getServer(readOnly);
+		boolean correct = server.equals(expected);
+		System.out.printf("%-40s %-30s %s%n", what + ":", server, correct ? "ok" : "expected " + expected);
+		ok = ok && correct;
+	}
+	
+	private String getServer(boolean readOnly) {
+		AbstractDatabaseRunnableNoAuthException<String> txn = new AbstractDatabaseRunnableNoAuthException<String>() {
+			@Override
+			public String run(Connection conn) throws SQLException {
+				PreparedStatement stmt = prepareStatement(conn, "select @@hostname, @@port");
+				ResultSet resultSet = executeQuery(stmt);
+				resultSet.next();
+				return resultSet.getString(1) + ":" + resultSet.getInt(2);
+			}
+			@Override
+			public String getDescription() {
+				return " getting database server";
+			}
+		};
+		return readOnly ? db.databaseRunReadOnly(txn) : db.databaseRun(txn);
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			System.err.println("Usage: " + ReplicaRoutingCheck.class.getName() + " <config properties>");
+			System.exit(1);
+		}
+		ReplicaRoutingCheck check = new ReplicaRoutingCheck(args[0]);
+		check.run();
+	}
+}
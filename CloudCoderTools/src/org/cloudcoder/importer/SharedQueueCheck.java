@@ -0,0 +1,287 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudcoder.app.server.persist.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.oop.OOPBuildServiceSubmission;
+import org.cloudcoder.app.server.submitsvc.oop.SharedQueueSubmission;
+import org.cloudcoder.app.server.submitsvc.oop.SharedSubmissionQueue;
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.QueuedSubmission;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionType;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Check the {@link SharedSubmissionQueue} used in multi-node mode.
+ * Two simulated webapp nodes share the database, each with several
+ * simulated Builder connections.  Each node makes submissions, and the
+ * check verifies that every submission is tested exactly once (some are
+ * put back in the queue, as when a Builder connection fails), that
+ * Builders on either node test submissions made on either node, and that
+ * each submission's result can be retrieved using a copy of its future
+ * (as if the session had moved to a different node).  The simulated
+ * Builders don't run anything: the "result" echoes the program text.
+ * The check's queued submissions are deleted afterwards.
+ * 
+ * Pending submissions from a running webapp would be claimed by the
+ * simulated Builders, so run this against a database which isn't in use.
+ * 
+ * @author David Hovemeyer
+ */
+public class SharedQueueCheck extends UsesDatabase {
+	private static final String NODE_PREFIX = "shared-queue-check-";
+	
+	private int numSubmissions;
+	private int numWorkers;
+	private volatile boolean done;
+	private ConcurrentHashMap<Integer, String> testedBy;
+	private AtomicInteger numDuplicates;
+	private AtomicInteger numReleased;
+
+	public SharedQueueCheck(String configPropertiesFileName) throws IOException {
+		super(configPropertiesFileName);
+	}
+	
+	/**
+	 * @param numSubmissions number of submissions to make on each node
+	 */
+	public void setNumSubmissions(int numSubmissions) {
+		this.numSubmissions = numSubmissions;
+	}
+	
+	/**
+	 * @param numWorkers number of simulated Builder connections on each node
+	 */
+	public void setNumWorkers(int numWorkers) {
+		this.numWorkers = numWorkers;
+	}
+
+	public void run() throws Exception {
+		Problem problem = findProblem();
+		if (problem == null) {
+			System.err.println("No problems in database: create a problem (or sample data) first");
+			System.exit(1);
+		}
+		
+		SharedSubmissionQueue[] nodes = new SharedSubmissionQueue[] {
+			new SharedSubmissionQueue(NODE_PREFIX + "A"),
+			new SharedSubmissionQueue(NODE_PREFIX + "B"),
+		};
+		testedBy = new ConcurrentHashMap<Integer, String>();
+		numDuplicates = new AtomicInteger();
+		numReleased = new AtomicInteger();
+		
+		// Start simulated Builder connections on both nodes
+		List<Thread> workers = new ArrayList<Thread>();
+		for (SharedSubmissionQueue node : nodes) {
+			for (int i = 0; i < numWorkers; i++) {
+				Thread t = new Thread(new Worker(node));
+				t.start();
+				workers.add(t);
+			}
+		}
+		
+		try {
+			// Make submissions on both nodes
+			long start = System.currentTimeMillis();
+			List<IFutureSubmissionResult> futures = new ArrayList<IFutureSubmissionResult>();
+			List<String> programTexts = new ArrayList<String>();
+			for (int i = 0; i < numSubmissions; i++) {
+				for (SharedSubmissionQueue node : nodes) {
+					String programText = node.getNodeName() + " submission " + i;
+					futures.add(node.submit(problem, 0, 0, programText, SubmissionType.FULL));
+					programTexts.add(programText);
+				}
+			}
+			
+			// Wait for the results, using copies of the futures
+			int numWrong = 0, numFailed = 0;
+			for (int i = 0; i < futures.size(); i++) {
+				IFutureSubmissionResult future = copy(futures.get(i));
+				SubmissionResult result = null;
+				try {
+					while ((result = future.poll()) == null) {
+						Thread.sleep(20L);
+					}
+				} catch (SubmissionException e) {
+					System.out.println("Submission failed: " + e.getMessage());
+					numFailed++;
+					continue;
+				}
+				if (!programTexts.get(i).equals(result.getTestResults()[0].getMessage())) {
+					numWrong++;
+				}
+			}
+			long elapsed = System.currentTimeMillis() - start;
+			
+			// Count submissions tested on a node other than the one
+			// they were made on
+			int numCrossNode = 0;
+			for (String s : testedBy.values()) {
+				if (s.startsWith("cross")) {
+					numCrossNode++;
+				}
+			}
+			
+			int total = futures.size();
+			System.out.println(total + " submissions in " + elapsed + " ms");
+			System.out.println("Put back in queue:             " + numReleased.get());
+			System.out.println("Tested by other node:          " + numCrossNode);
+			System.out.println("Tested more than once:         " + numDuplicates.get());
+			System.out.println("Failed:                        " + numFailed);
+			System.out.println("Wrong result:                  " + numWrong);
+			boolean ok = numDuplicates.get() == 0 && numFailed == 0 && numWrong == 0 && testedBy.size() == total;
+			System.out.println(ok ? "OK" : "FAILED");
+			if (!ok) {
+				System.exit(1);
+			}
+		} finally {
+			done = true;
+			for (Thread t : workers) {
+				t.join();
+			}
+			deleteCheckSubmissions();
+		}
+	}
+
+	/**
+	 * Simulated Builder connection: claims submissions from the
+	 * shared queue, and "tests" them.
+	 */
+	private class Worker implements Runnable {
+		private SharedSubmissionQueue node;
+		private int count;
+		
+		public Worker(SharedSubmissionQueue node) {
+			this.node = node;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while (!done) {
+					OOPBuildServiceSubmission submission = node.poll(200L);
+					if (submission == null) {
+						continue;
+					}
+					QueuedSubmission queuedSubmission = ((SharedQueueSubmission) submission).getQueuedSubmission();
+					
+					// Every so often, the Builder connection "fails"
+					if (++count % 7 == 0) {
+						numReleased.incrementAndGet();
+						node.offer(submission);
+						continue;
+					}
+					
+					String how = queuedSubmission.getNode().equals(node.getNodeName()) ? "same" : "cross";
+					if (testedBy.putIfAbsent(queuedSubmission.getId(), how + " " + node.getNodeName()) != null) {
+						numDuplicates.incrementAndGet();
+					}
+					
+					SubmissionResult result = new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS));
+					result.setTestResults(new TestResult[]{ new TestResult(TestOutcome.PASSED, submission.getProgramText()) });
+					submission.setSubmissionResult(result);
+					submission.setReady();
+				}
+			} catch (InterruptedException e) {
+				// done
+			}
+		}
+	}
+	
+	/**
+	 * Copy a future by serializing and deserializing it,
+	 * as when a session is moved to a different node.
+	 */
+	private IFutureSubmissionResult copy(IFutureSubmissionResult future) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(future);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		try {
+			return (IFutureSubmissionResult) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+	
+	private Problem findProblem() {
+		Integer problemId = Database.getInstance().databaseRun(new AbstractDatabaseRunnableNoAuthException<Integer>() {
+			@Override
+			public Integer run(Connection conn) throws SQLException {
+				PreparedStatement stmt = prepareStatement(conn, "select problem_id from " + Problem.SCHEMA.getDbTableName() + " limit 1");
+				ResultSet resultSet = executeQuery(stmt);
+				return resultSet.next() ? resultSet.getInt(1) : null;
+			}
+			@Override
+			public String getDescription() {
+				return " finding a problem";
+			}
+		});
+		return problemId != null ? Database.getInstance().getProblem(problemId) : null;
+	}
+	
+	private void deleteCheckSubmissions() {
+		Database.getInstance().databaseRun(new AbstractDatabaseRunnableNoAuthException<Integer>() {
+			@Override
+			public Integer run(Connection conn) throws SQLException {
+				PreparedStatement stmt = prepareStatement(conn,
+						"delete from " + QueuedSubmission.SCHEMA.getDbTableName() + " where node like ?");
+				stmt.setString(1, NODE_PREFIX + "%");
+				return stmt.executeUpdate();
+			}
+			@Override
+			public String getDescription() {
+				return " deleting check submissions";
+			}
+		});
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1 || args.length > 3) {
+			System.err.println("Usage: " + SharedQueueCheck.class.getName() + " <config properties> [<submissions per node> [<workers per node>]]");
+			System.exit(1);
+		}
+		SharedQueueCheck check = new SharedQueueCheck(args[0]);
+		check.setNumSubmissions(args.length >= 2 ? Integer.parseInt(args[1]) : 200);
+		check.setNumWorkers(args.length >= 3 ? Integer.parseInt(args[2]) : 4);
+		check.run();
+	}
+}
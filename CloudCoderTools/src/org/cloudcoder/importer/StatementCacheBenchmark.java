@@ -0,0 +1,190 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2012, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2012, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.importer;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.cloudcoder.app.server.persist.DBUtil;
+import org.cloudcoder.app.server.persist.JDBCDatabase;
+import org.cloudcoder.app.server.persist.StatementCache;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemStats;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionStatus;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.User;
+import org.cloudcoder.app.shared.model.UserProblemStats;
+
+/**
+ * Benchmark for the throughput of {@link JDBCDatabase#storeChanges(Change[])}
+ * and {@link JDBCDatabase#insertSubmissionReceipt(SubmissionReceipt, TestResult[])},
+ * comparing a new connection (and newly prepared statements) for every
+ * transaction with reused connections and cached prepared statements.
+ * The data is stored for a nonexistent user and problem (id -1),
+ * and is deleted when the benchmark finishes.
+ * 
+ * @author David Hovemeyer
+ */
+public class StatementCacheBenchmark extends UsesDatabase {
+	private static final int BENCHMARK_ID = -1;
+	private static final int NUM_TESTS = 5;
+	private static final int WARMUP_OPERATIONS = 100;
+	
+	private Properties config;
+	private int numOperations;
+	private int changesPerBatch;
+	private User user;
+	private Problem problem;
+
+	public StatementCacheBenchmark(String configPropertiesFileName) throws IOException {
+		super(configPropertiesFileName);
+		config = new Properties();
+		FileReader fileReader = new FileReader(configPropertiesFileName);
+		try {
+			config.load(fileReader);
+		} finally {
+			fileReader.close();
+		}
+		user = new User();
+		user.setId(BENCHMARK_ID);
+		problem = new Problem();
+		problem.setProblemId(BENCHMARK_ID);
+	}
+	
+	public void setNumOperations(int numOperations) {
+		this.numOperations = numOperations;
+	}
+	
+	public void setChangesPerBatch(int changesPerBatch) {
+		this.changesPerBatch = changesPerBatch;
+	}
+
+	@Override
+	public void run() throws Exception {
+		Class.forName("com.mysql.jdbc.Driver");
+		Connection conn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		try {
+			deleteBenchmarkData(conn);
+			
+			JDBCDatabase uncached = new JDBCDatabase(false);
+			JDBCDatabase cached = new JDBCDatabase(true);
+			
+			storeChanges(uncached, WARMUP_OPERATIONS);
+			storeChanges(cached, WARMUP_OPERATIONS);
+			insertSubmissionReceipts(uncached, WARMUP_OPERATIONS);
+			insertSubmissionReceipts(cached, WARMUP_OPERATIONS);
+			
+			report("storeChanges, new connections", storeChanges(uncached, numOperations));
+			report("storeChanges, cached statements", storeChanges(cached, numOperations));
+			report("insertSubmissionReceipt, new connections", insertSubmissionReceipts(uncached, numOperations));
+			report("insertSubmissionReceipt, cached statements", insertSubmissionReceipts(cached, numOperations));
+			
+			System.out.printf("Statement cache: %d hits, %d misses, hit ratio %.3f%n",
+					StatementCache.getHits(), StatementCache.getMisses(), StatementCache.getHitRatio());
+		} finally {
+			try {
+				deleteBenchmarkData(conn);
+			} finally {
+				DBUtil.closeQuietly(conn);
+			}
+		}
+	}
+
+	private long storeChanges(JDBCDatabase db, int count) {
+		long begin = System.nanoTime();
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			Change[] batch = new Change[changesPerBatch];
+			for (int j = 0; j < changesPerBatch; j++) {
+				batch[j] = new Change(ChangeType.INSERT_TEXT, i, j, i, j + 1, now + j, BENCHMARK_ID, BENCHMARK_ID, "x");
+			}
+			db.storeChanges(batch);
+		}
+		return System.nanoTime() - begin;
+	}
+
+	private long insertSubmissionReceipts(JDBCDatabase db, int count) {
+		long begin = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			int numPassed = i % (NUM_TESTS + 1);
+			SubmissionReceipt receipt = SubmissionReceipt.create(user, problem,
+					numPassed == NUM_TESTS ? SubmissionStatus.TESTS_PASSED : SubmissionStatus.TESTS_FAILED,
+					-1, NUM_TESTS, numPassed);
+			TestResult[] testResults = new TestResult[NUM_TESTS];
+			for (int j = 0; j < NUM_TESTS; j++) {
+				testResults[j] = new TestResult(j < numPassed ? TestOutcome.PASSED : TestOutcome.FAILED_ASSERTION,
+						"Test " + j, "", "");
+			}
+			db.insertSubmissionReceipt(receipt, testResults);
+		}
+		return System.nanoTime() - begin;
+	}
+
+	private void report(String approach, long elapsed) {
+		double perSecond = numOperations / (elapsed / 1000000000.0);
+		System.out.printf("%-45s %10.1f operations/s%n", approach + ":", perSecond);
+	}
+
+	private void deleteBenchmarkData(Connection conn) throws SQLException {
+		execute(conn,
+				"delete tr from " + TestResult.SCHEMA.getDbTableName() + " as tr, " + Event.SCHEMA.getDbTableName() + " as e" +
+				" where tr.submission_receipt_event_id = e.id and e.user_id = ? and e.problem_id = ?");
+		execute(conn,
+				"delete sr from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " + Event.SCHEMA.getDbTableName() + " as e" +
+				" where sr.event_id = e.id and e.user_id = ? and e.problem_id = ?");
+		execute(conn,
+				"delete c from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e" +
+				" where c.event_id = e.id and e.user_id = ? and e.problem_id = ?");
+		execute(conn, "delete from " + Event.SCHEMA.getDbTableName() + " where user_id = ? and problem_id = ?");
+		execute(conn, "delete from " + UserProblemStats.SCHEMA.getDbTableName() + " where user_id = ? and problem_id = ?");
+		execute(conn, "delete from " + ProblemStats.SCHEMA.getDbTableName() + " where problem_id = ? or problem_id = ?");
+	}
+
+	private void execute(Connection conn, String sql) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(sql);
+		try {
+			stmt.setInt(1, BENCHMARK_ID);
+			stmt.setInt(2, BENCHMARK_ID);
+			stmt.executeUpdate();
+		} finally {
+			DBUtil.closeQuietly(stmt);
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1 || args.length > 3) {
+			System.err.println("Usage: " + StatementCacheBenchmark.class.getName() +
+					" <config properties> [<operations (default 2000)> [<changes per batch (default 10)>]]");
+			System.exit(1);
+		}
+		
+		StatementCacheBenchmark benchmark = new StatementCacheBenchmark(args[0]);
+		benchmark.setNumOperations(args.length >= 2 ? Integer.parseInt(args[1]) : 2000);
+		benchmark.setChangesPerBatch(args.length >= 3 ? Integer.parseInt(args[2]) : 10);
+		benchmark.run();
+	}
+}
@@ -38,7 +38,7 @@ public abstract class UsesDatabase {
 		} finally {
 			fileReader.close();
 		}
-		JDBCDatabaseConfig.create(new JDBCDatabaseConfig.ConfigProperties() {
+		JDBCDatabaseConfig.ConfigProperties primary = new JDBCDatabaseConfig.ConfigProperties() {
 			@Override
 			public String getUser() {
 				return config.getProperty("cloudcoder.db.user");
@@ -64,7 +64,18 @@ public abstract class UsesDatabase {
 				return config.getProperty("cloudcoder.db.portStr");
 			}
 			
-		});
+		};
+		
+		JDBCDatabaseConfig.ConfigProperties replica = null;
+		String replicaHost = config.getProperty("cloudcoder.db.replica.host");
+		if (replicaHost != null && !replicaHost.trim().equals("")) {
+			replica = JDBCDatabaseConfig.replicaOf(primary, replicaHost.trim(), config.getProperty("cloudcoder.db.replica.portStr", ""));
+		}
+		long readYourWritesMillis = Long.parseLong(config.getProperty(
+				"cloudcoder.db.replica.readYourWritesMillis",
+				String.valueOf(JDBCDatabaseConfig.DEFAULT_READ_YOUR_WRITES_MILLIS)));
+		
+		JDBCDatabaseConfig.create(primary, replica, readYourWritesMillis);
 	}
 
 	public abstract void run() throws Exception;
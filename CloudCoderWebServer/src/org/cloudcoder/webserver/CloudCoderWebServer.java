@@ -36,7 +36,21 @@ public class CloudCoderWebServer extends WebServer {
 				"currently executing.  This should only be done once!");
 		addAdminCommand("migratedb", "org.cloudcoder.app.server.persist.MigrateWebappDatabase", 
 				"Update the currently existing database with any new\n" +
-				"tables or columns");
+				"tables or columns (--online migrates large tables\n" +
+				"while CloudCoder is running)");
+		addAdminCommand("rebuildstats", "org.cloudcoder.app.server.persist.RebuildProblemStats",
+				"Rebuild the per-problem statistics shown to instructors\n" +
+				"from the submission receipts in the database");
+		addAdminCommand("checkstats", "org.cloudcoder.app.server.persist.CheckProblemStats",
+				"Check the per-problem statistics against the submission\n" +
+				"receipts in the database (--fix rebuilds them if needed)");
+		addAdminCommand("archivechanges", "org.cloudcoder.app.server.persist.ArchiveChanges",
+				"Move old code changes (--age-days=N, default 180) or\n" +
+				"the changes for an ended course (--course=ID) into\n" +
+				"compressed archives");
+		addAdminCommand("dedupoutputs", "org.cloudcoder.app.server.persist.DedupTestOutputs",
+				"Move test outputs into the deduplicated output store and\n" +
+				"delete unreferenced outputs (--report shows the savings)");
 		addAdminCommand("createcourse", "org.cloudcoder.app.server.persist.CreateCourse",
 				"Create a new course in the database of the CloudCoder\n" +
 				"installation");
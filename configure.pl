@@ -84,6 +84,9 @@ askprop("How many threads should the Builder use? (suggestion: 1 per core)",
 askprop("What port will the CloudCoder webapp use to listen for connections from\n" .
 	"Builders?",
 	"cloudcoder.submitsvc.oop.port", "47374");
+askprop("In what directory should the Builder create its scratch workspaces?\n" .
+	"(A RAM-backed file system such as /dev/shm is recommended)",
+	"cloudcoder.builder.workspace.root", "/dev/shm");
 
 section("TLS/SSL (secure communication between webapp and builder(s)");
 